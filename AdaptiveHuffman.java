@@ -0,0 +1,346 @@
+import java.nio.ByteBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * One-pass adaptive Huffman coding (the FGK algorithm). Encoder and decoder each start from a tree
+ * holding only the NYT ("not yet transmitted") leaf and update it identically after every symbol,
+ * so no seed or codebook is shared up front and the input is read only once.
+ * <p/>
+ * A symbol seen for the first time is sent as the current NYT code followed by the symbol itself
+ * in the alphabet's fixed width (8, 16 or 21 bits); the NYT leaf then splits to make room for it.
+ * Every symbol of the alphabet is therefore encodable.
+ * <p/>
+ * The tree is kept in arrays indexed by slot, where slot order is the FGK implicit numbering
+ * reversed: the root is slot 0, weights never increase with the slot, and the NYT leaf is always
+ * the last slot. Swapping two nodes swaps the contents of their slots, so each slot keeps its
+ * parent, and the leader of a weight block is found by binary search.
+ */
+public class AdaptiveHuffman {
+
+    private static final int INITIAL_SLOTS = 64;
+
+    private final Alphabet alphabet;
+    private final int symbolBits;
+    private final CompressionMetrics metrics;
+    private long[] weight;
+    private int[] parent, left, right;
+    // left and right are -1 for leaves
+    private int[] symbol;
+    // leaf symbol, or -1 for internal nodes and the NYT leaf
+    private int[] slotOf;
+    // leaf slot of each symbol, -1 if not seen yet
+    private int slots;
+    private int[] path;
+
+
+    public AdaptiveHuffman(Alphabet alphabet) {
+        this(alphabet, CompressionMetrics.NOOP);
+    }
+
+    /**
+     * @param alphabet the kind of symbol to code
+     * @param metrics  receives a {@link CompressionMetrics#escaped(long)} event for every symbol
+     *                 encoded or decoded through the escape
+     * @throws IllegalArgumentException if alphabet or metrics is null
+     */
+    public AdaptiveHuffman(Alphabet alphabet, CompressionMetrics metrics) {
+        if (alphabet == null || metrics == null) {
+            throw new IllegalArgumentException();
+        }
+        this.alphabet = alphabet;
+        this.metrics = metrics;
+        this.symbolBits = 32 - Integer.numberOfLeadingZeros(alphabet.size() - 1);
+        weight = new long[INITIAL_SLOTS];
+        parent = new int[INITIAL_SLOTS];
+        left = new int[INITIAL_SLOTS];
+        right = new int[INITIAL_SLOTS];
+        symbol = new int[INITIAL_SLOTS];
+        slotOf = new int[Math.min(alphabet.size(), 1 << 8)];
+        Arrays.fill(slotOf, -1);
+        path = new int[INITIAL_SLOTS];
+        slots = 1;
+        parent[0] = -1;
+        left[0] = -1;
+        right[0] = -1;
+        symbol[0] = -1;
+    }
+
+    /**
+     * @return the kind of symbol this instance codes
+     */
+    public Alphabet alphabet() {
+        return alphabet;
+    }
+
+    /**
+     * @return the number of distinct symbols seen so far
+     */
+    public int symbolCount() {
+        return slots / 2;
+    }
+
+    /**
+     * Encodes one symbol and updates the tree.
+     *
+     * @param s   the symbol
+     * @param out receives the code, escaped if the symbol is new
+     * @throws IllegalArgumentException if the symbol is outside the alphabet
+     */
+    public void encode(int s, BitWriter out) {
+        if (s < 0 || s >= alphabet.size()) {
+            throw new IllegalArgumentException();
+        }
+        int leaf = s < slotOf.length ? slotOf[s] : -1;
+        writePath(leaf < 0 ? slots - 1 : leaf, out);
+        if (leaf < 0) {
+            out.writeBits(s, symbolBits);
+            metrics.escaped(1);
+        }
+        update(s);
+    }
+
+    /**
+     * Decodes one symbol and updates the tree.
+     *
+     * @param in the bits to decode
+     * @return the symbol
+     * @throws IllegalArgumentException if the bits end partway through a code or escape
+     */
+    public int decodeSymbol(BitReader in) {
+        int node = 0;
+        while (left[node] >= 0) {
+            if (!in.hasRemaining()) {
+                throw new IllegalArgumentException();
+            }
+            node = in.readBit() == 0 ? left[node] : right[node];
+        }
+        int s = symbol[node];
+        if (s < 0) {
+            if (in.remaining() < symbolBits) {
+                throw new IllegalArgumentException();
+            }
+            s = (int) in.peekBits(symbolBits);
+            in.skipBits(symbolBits);
+            if (s >= alphabet.size() || (s < slotOf.length && slotOf[s] >= 0)) {
+                throw new IllegalArgumentException();
+            }
+            metrics.escaped(1);
+        }
+        update(s);
+        return s;
+    }
+
+    private void writePath(int node, BitWriter out) {
+        int depth = 0;
+        for (; node != 0; node = parent[node]) {
+            if (depth == path.length) {
+                path = Arrays.copyOf(path, depth * 2);
+            }
+            path[depth++] = right[parent[node]] == node ? 1 : 0;
+        }
+        // the path was collected leaf first; write it root first, up to 64 bits at a time
+        while (depth > 0) {
+            int n = Math.min(depth, 64);
+            long bits = 0;
+            for (int i = 0; i < n; i++) {
+                bits = bits << 1 | path[--depth];
+            }
+            out.writeBits(bits, n);
+        }
+    }
+
+    private void update(int s) {
+        int node;
+        if (s < slotOf.length && slotOf[s] >= 0) {
+            node = slotOf[s];
+        } else {
+            node = split(s);
+        }
+        while (true) {
+            int leader = leader(node);
+            if (leader != node && leader != parent[node]) {
+                swap(leader, node);
+                node = leader;
+            }
+            weight[node]++;
+            if (node == 0) {
+                break;
+            }
+            node = parent[node];
+        }
+    }
+
+    /**
+     * Turns the NYT leaf into an internal node whose children are a zero weight leaf for the new
+     * symbol and a new NYT leaf.
+     *
+     * @return the slot of the new leaf
+     */
+    private int split(int s) {
+        if (slots + 2 > weight.length) {
+            int capacity = weight.length * 2;
+            weight = Arrays.copyOf(weight, capacity);
+            parent = Arrays.copyOf(parent, capacity);
+            left = Arrays.copyOf(left, capacity);
+            right = Arrays.copyOf(right, capacity);
+            symbol = Arrays.copyOf(symbol, capacity);
+        }
+        if (s >= slotOf.length) {
+            int old = slotOf.length;
+            slotOf = Arrays.copyOf(slotOf, Math.min(alphabet.size(), Math.max(s + 1, old * 2)));
+            Arrays.fill(slotOf, old, slotOf.length, -1);
+        }
+        int nyt = slots - 1;
+        int leaf = slots;
+        int newNyt = slots + 1;
+        slots += 2;
+        left[nyt] = leaf;
+        right[nyt] = newNyt;
+        for (int child = leaf; child <= newNyt; child++) {
+            weight[child] = 0;
+            parent[child] = nyt;
+            left[child] = -1;
+            right[child] = -1;
+        }
+        symbol[leaf] = s;
+        symbol[newNyt] = -1;
+        slotOf[s] = leaf;
+        return leaf;
+    }
+
+    /**
+     * @return the lowest slot with the same weight as node
+     */
+    private int leader(int node) {
+        long w = weight[node];
+        int lo = 0;
+        int hi = node;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (weight[mid] > w) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    /**
+     * Exchanges the subtrees in two slots, neither an ancestor of the other.
+     */
+    private void swap(int a, int b) {
+        long w = weight[a];
+        weight[a] = weight[b];
+        weight[b] = w;
+        int t = left[a];
+        left[a] = left[b];
+        left[b] = t;
+        t = right[a];
+        right[a] = right[b];
+        right[b] = t;
+        t = symbol[a];
+        symbol[a] = symbol[b];
+        symbol[b] = t;
+        adopt(a);
+        adopt(b);
+    }
+
+    private void adopt(int node) {
+        if (left[node] >= 0) {
+            parent[left[node]] = node;
+            parent[right[node]] = node;
+        } else if (symbol[node] >= 0) {
+            slotOf[symbol[node]] = node;
+        }
+    }
+
+    /**
+     * Compresses a string in one pass. The symbols coded depend on the alphabet as in {@link
+     * Huffman#Huffman(String, Alphabet)}.
+     *
+     * @param input    the string to compress
+     * @param alphabet the kind of symbol to code
+     * @return the packed encoding, in the layout of {@link BitWriter#toByteArray()}
+     * @throws IllegalArgumentException if input or alphabet is null
+     */
+    public static byte[] compress(CharSequence input, Alphabet alphabet) {
+        if (input == null) {
+            throw new IllegalArgumentException();
+        }
+        if (alphabet == Alphabet.BYTES) {
+            return compressBytes(Huffman.utf8(input));
+        }
+        AdaptiveHuffman model = new AdaptiveHuffman(alphabet);
+        BitWriter out = new BitWriter(input.length() / 2 + 16);
+        for (int i = 0; i < input.length(); ) {
+            int s = alphabet == Alphabet.CODE_POINTS
+                    ? Character.codePointAt(input, i) : input.charAt(i);
+            model.encode(s, out);
+            i += alphabet == Alphabet.CODE_POINTS ? Character.charCount(s) : 1;
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * @param packed   bits produced by {@link #compress(CharSequence, Alphabet)}
+     * @param alphabet the alphabet they were compressed with
+     * @return the decoded string
+     * @throws IllegalArgumentException if an argument is null or the bits are not decodable
+     */
+    public static String decompress(byte[] packed, Alphabet alphabet) {
+        if (alphabet == Alphabet.BYTES) {
+            try {
+                return StandardCharsets.UTF_8.newDecoder()
+                        .decode(ByteBuffer.wrap(decompressBytes(packed))).toString();
+            } catch (CharacterCodingException e) {
+                throw new IllegalArgumentException(e);
+            }
+        }
+        AdaptiveHuffman model = new AdaptiveHuffman(alphabet);
+        BitReader in = BitReader.packed(packed);
+        StringBuilder out = new StringBuilder();
+        while (in.hasRemaining()) {
+            out.appendCodePoint(model.decodeSymbol(in));
+        }
+        return out.toString();
+    }
+
+    /**
+     * @param input the bytes to compress
+     * @return the packed encoding, in the layout of {@link BitWriter#toByteArray()}
+     * @throws IllegalArgumentException if input is null
+     */
+    public static byte[] compressBytes(byte[] input) {
+        if (input == null) {
+            throw new IllegalArgumentException();
+        }
+        AdaptiveHuffman model = new AdaptiveHuffman(Alphabet.BYTES);
+        BitWriter out = new BitWriter(input.length / 2 + 16);
+        for (byte b : input) {
+            model.encode(b & 0xFF, out);
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * @param packed bits produced by {@link #compressBytes(byte[])}
+     * @return the decoded bytes
+     * @throws IllegalArgumentException if packed is null or not decodable
+     */
+    public static byte[] decompressBytes(byte[] packed) {
+        AdaptiveHuffman model = new AdaptiveHuffman(Alphabet.BYTES);
+        BitReader in = BitReader.packed(packed);
+        byte[] out = new byte[Math.max(16, packed.length * 2)];
+        int size = 0;
+        while (in.hasRemaining()) {
+            if (size == out.length) {
+                out = Arrays.copyOf(out, size * 2);
+            }
+            out[size++] = (byte) model.decodeSymbol(in);
+        }
+        return Arrays.copyOf(out, size);
+    }
+}
@@ -0,0 +1,103 @@
+import org.junit.Test;
+
+import java.io.*;
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+public class AdaptiveHuffmanTest {
+
+    private static final String SEED = "the quick brown fox jumps over the lazy dog";
+
+    private static String randomText(int length) {
+        Random random = new Random(121);
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < length; i++) {
+            sb.append(SEED.charAt(random.nextInt(SEED.length())));
+        }
+        return sb.toString();
+    }
+
+    @Test
+    public void testRoundTripChars() {
+        String text = randomText(20000);
+        byte[] packed = AdaptiveHuffman.compress(text, Alphabet.CHARS);
+        assertEquals(text, AdaptiveHuffman.decompress(packed, Alphabet.CHARS));
+        // within a few percent of a static code built from the whole text
+        Huffman h = new Huffman(text);
+        assertTrue(packed.length < h.compressToBytes(text).length * 1.05);
+    }
+
+    @Test
+    public void testEmptyInput() {
+        byte[] packed = AdaptiveHuffman.compress("", Alphabet.CHARS);
+        assertArrayEquals(new byte[]{0}, packed);
+        assertEquals("", AdaptiveHuffman.decompress(packed, Alphabet.CHARS));
+    }
+
+    @Test
+    public void testFirstSymbolIsEscaped() {
+        // no tree yet, so the first symbol is just its 16 raw bits
+        byte[] packed = AdaptiveHuffman.compress("a", Alphabet.CHARS);
+        assertEquals("0000000001100001", BitReader.toBitString(packed));
+    }
+
+    @Test
+    public void testRoundTripCodePoints() {
+        String text = "a\uD83D\uDE00b\uD83D\uDE00\uD83D\uDE00c\uD83D\uDE01" + randomText(500);
+        assertEquals(text, AdaptiveHuffman.decompress(AdaptiveHuffman.compress(text, Alphabet.CODE_POINTS),
+                Alphabet.CODE_POINTS));
+        assertEquals("\u00E9t\u00E9", AdaptiveHuffman.decompress(AdaptiveHuffman.compress("\u00E9t\u00E9", Alphabet.BYTES),
+                Alphabet.BYTES));
+    }
+
+    @Test
+    public void testRoundTripEveryByte() {
+        Random random = new Random(121);
+        byte[] data = new byte[30000];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) (i < 256 ? i : random.nextInt(1 + i % 256));
+        }
+        assertArrayEquals(data, AdaptiveHuffman.decompressBytes(AdaptiveHuffman.compressBytes(data)));
+    }
+
+    @Test
+    public void testSymbolCount() {
+        AdaptiveHuffman model = new AdaptiveHuffman(Alphabet.BYTES);
+        BitWriter out = new BitWriter(16);
+        for (int s : new int[]{5, 7, 5, 5, 9, 7}) {
+            model.encode(s, out);
+        }
+        assertEquals(3, model.symbolCount());
+    }
+
+    @Test
+    public void testStreamingWithSeparateModels() throws IOException {
+        String text = randomText(10000);
+        AdaptiveHuffman encoder = new AdaptiveHuffman(Alphabet.CHARS);
+        BitWriter bits = new BitWriter(64);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        for (int i = 0; i < text.length(); i++) {
+            encoder.encode(text.charAt(i), bits);
+            bits.drainTo(bytes);
+        }
+        bits.finishTo(bytes);
+        AdaptiveHuffman decoder = new AdaptiveHuffman(Alphabet.CHARS);
+        BitReader in = new BitReader(new ByteArrayInputStream(bytes.toByteArray()), 16);
+        StringBuilder sb = new StringBuilder();
+        while (in.hasRemaining()) {
+            sb.append((char) decoder.decodeSymbol(in));
+        }
+        assertEquals(text, sb.toString());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testSymbolOutsideAlphabet() {
+        new AdaptiveHuffman(Alphabet.BYTES).encode(256, new BitWriter(16));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testTruncatedEscape() {
+        AdaptiveHuffman.decompress(new byte[]{0x61, 0}, Alphabet.CHARS);
+    }
+}
@@ -0,0 +1,30 @@
+/**
+ * The kind of symbol a {@link Huffman} instance codes, chosen at construction.
+ */
+public enum Alphabet {
+    /**
+     * Raw bytes, 256 symbols. Strings are coded as their UTF-8 bytes.
+     */
+    BYTES(1 << 8),
+    /**
+     * UTF-16 code units, so supplementary characters are coded as two surrogate halves.
+     */
+    CHARS(1 << 16),
+    /**
+     * Full Unicode code points.
+     */
+    CODE_POINTS(Character.MAX_CODE_POINT + 1);
+
+    private final int size;
+
+    Alphabet(int size) {
+        this.size = size;
+    }
+
+    /**
+     * @return the number of possible symbols; every symbol is below this value
+     */
+    public int size() {
+        return size;
+    }
+}
@@ -0,0 +1,326 @@
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.SubmissionPublisher;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
+
+/**
+ * Runs compressions with a {@link Huffman} codec off the caller's thread and hands back futures,
+ * or for streams a {@link Flow.Publisher} of compressed chunks.
+ * <p/>
+ * At most a fixed number of tasks run at once. Submitting beyond that blocks the submitting thread
+ * until a task finishes, so a fast producer is slowed to the codec's pace instead of queueing
+ * unbounded work; this is cheap when the producer is itself a virtual thread. Each task also has a
+ * memory budget: single compressions whose input and worst-case output would exceed it are
+ * rejected, and streams size their chunks so the chunks read, encoding and waiting for the
+ * subscriber stay within it. A stream's subscriber pulls chunks at its own pace, and cancelling its
+ * subscription stops the stream after the chunk being encoded.
+ * <p/>
+ * Unless given an executor, the compressor starts a virtual thread per task on runtimes that have
+ * them (Java 21 and later) and otherwise uses a pool of daemon threads. Stream chunks are delivered
+ * to subscribers on the common fork-join pool, as {@link SubmissionPublisher} does by default.
+ */
+public class AsyncCompressor implements AutoCloseable {
+
+    static final int DEFAULT_MAX_IN_FLIGHT = 64;
+    static final long DEFAULT_TASK_BUDGET = 64L << 20;
+    static final int STREAM_BUFFERED_CHUNKS = 4;
+    // chunks a stream keeps for a slow subscriber before its producer waits
+
+    private final Huffman huffman;
+    private final Semaphore permits;
+    private final int maxInFlight;
+    private final long taskBudget;
+    private final Executor executor;
+    private final ExecutorService owned;
+    // the executor this compressor created and shuts down, or null
+    private volatile boolean closed;
+
+
+    /**
+     * Uses the default bound on in-flight tasks and budget per task, with virtual threads where
+     * available.
+     *
+     * @param huffman the codec to compress with
+     * @throws IllegalArgumentException if huffman is null
+     */
+    public AsyncCompressor(Huffman huffman) {
+        this(huffman, DEFAULT_MAX_IN_FLIGHT, DEFAULT_TASK_BUDGET, null);
+    }
+
+    /**
+     * @param huffman     the codec to compress with
+     * @param maxInFlight the number of tasks that may run at once
+     * @param taskBudget  the bytes of working memory a task may use
+     * @param executor    runs the tasks; null for a thread per task
+     * @throws IllegalArgumentException if huffman is null or a bound is not positive
+     */
+    public AsyncCompressor(Huffman huffman, int maxInFlight, long taskBudget, Executor executor) {
+        if (huffman == null || maxInFlight < 1 || taskBudget < 1) {
+            throw new IllegalArgumentException();
+        }
+        this.huffman = huffman;
+        this.maxInFlight = maxInFlight;
+        this.permits = new Semaphore(maxInFlight);
+        this.taskBudget = taskBudget;
+        this.owned = executor == null ? threadPerTask() : null;
+        this.executor = executor == null ? owned : executor;
+    }
+
+    /**
+     * Looks the virtual-thread executor up reflectively, since the code is compiled for Java 11.
+     *
+     * @return an executor starting a virtual thread per task, or a daemon thread pool when the
+     *         runtime has no virtual threads
+     */
+    static ExecutorService threadPerTask() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor")
+                    .invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newCachedThreadPool(task -> {
+                Thread thread = new Thread(task, "huffman-async");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    /**
+     * Compresses a string as {@link Huffman#compressToBytes(String)} does, waiting first while the
+     * maximum number of tasks are in flight.
+     *
+     * @param input the string to compress
+     * @return the packed encoding, or an {@link IllegalArgumentException} if the input is not
+     *         compressible
+     * @throws IllegalArgumentException if the input is null or over the task budget
+     * @throws IllegalStateException    if the compressor is closed
+     * @throws CancellationException    if the thread is interrupted while waiting
+     */
+    public CompletableFuture<byte[]> compress(String input) {
+        if (input == null) {
+            throw new IllegalArgumentException();
+        }
+        // byte alphabets code a UTF-8 copy of up to 3 bytes a character
+        long symbols = huffman.alphabet() == Alphabet.BYTES ? 3L * input.length() : input.length();
+        long bytes = 2L * input.length() + (symbols > input.length() ? symbols : 0);
+        return submit(bytes, symbols, () -> huffman.compressToBytes(input));
+    }
+
+    /**
+     * Compresses binary data as {@link Huffman#compressBytes(byte[])} does, waiting first while the
+     * maximum number of tasks are in flight. The array must not change until the task completes.
+     *
+     * @param input the bytes to compress
+     * @return the packed encoding, or an {@link IllegalArgumentException} if the input is not
+     *         compressible
+     * @throws IllegalArgumentException if the input is null or over the task budget
+     * @throws IllegalStateException    if the compressor is closed or its codec does not code
+     *                                  {@link Alphabet#BYTES}
+     * @throws CancellationException    if the thread is interrupted while waiting
+     */
+    public CompletableFuture<byte[]> compressBytes(byte[] input) {
+        if (huffman.alphabet() != Alphabet.BYTES) {
+            throw new IllegalStateException();
+        }
+        if (input == null) {
+            throw new IllegalArgumentException();
+        }
+        return submit(input.length, input.length, () -> huffman.compressBytes(input));
+    }
+
+    private CompletableFuture<byte[]> submit(long inputBytes, long symbols,
+                                             Supplier<byte[]> task) {
+        long outputBytes = symbols * huffman.codebook().maxLength() / 8 + 2;
+        if (inputBytes + outputBytes > taskBudget) {
+            throw new IllegalArgumentException();
+        }
+        acquire();
+        CompletableFuture<byte[]> result = new CompletableFuture<>();
+        try {
+            executor.execute(() -> {
+                try {
+                    // a future cancelled while queued is not worth computing
+                    if (!result.isDone()) {
+                        result.complete(task.get());
+                    }
+                } catch (RuntimeException e) {
+                    result.completeExceptionally(e);
+                } finally {
+                    permits.release();
+                }
+            });
+        } catch (RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+        return result;
+    }
+
+    private void acquire() {
+        if (closed) {
+            throw new IllegalStateException();
+        }
+        try {
+            permits.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CancellationException();
+        }
+    }
+
+    /**
+     * Compresses a stream of bytes into a publisher of chunks whose concatenation is the packed
+     * form of {@link HuffmanOutputStream}. Nothing is read until a subscriber arrives. Subscribing
+     * then waits for room in flight, as the other methods do, and the stream is read on a task that
+     * counts as in flight until it ends, so waiting streams never hold executor threads. A slow
+     * subscriber makes the task wait once {@link #STREAM_BUFFERED_CHUNKS} chunks are waiting for
+     * it, and cancelling the subscription ends the task without emitting the rest. Read errors and
+     * bytes without a code are passed to {@link Flow.Subscriber#onError(Throwable)}. The input
+     * stream is not closed.
+     *
+     * @param in the bytes to compress
+     * @return a publisher accepting a single subscriber
+     * @throws IllegalArgumentException if in is null or the task budget is too small for a stream
+     * @throws IllegalStateException    if the compressor is closed or its codec does not code
+     *                                  {@link Alphabet#BYTES}
+     */
+    public Flow.Publisher<byte[]> compressStream(InputStream in) {
+        if (huffman.alphabet() != Alphabet.BYTES || closed) {
+            throw new IllegalStateException();
+        }
+        // the read buffer, the encoder's buffer, the chunk being handed over and the waiting ones
+        long chunkSize = Math.min(HuffmanWriter.DEFAULT_CHUNK_SIZE,
+                taskBudget / (STREAM_BUFFERED_CHUNKS + 3));
+        if (in == null || chunkSize < 16) {
+            throw new IllegalArgumentException();
+        }
+        return new Stream(in, (int) chunkSize);
+    }
+
+    private final class Stream implements Flow.Publisher<byte[]> {
+        private final InputStream in;
+        private final int chunkSize;
+        private final AtomicBoolean subscribed = new AtomicBoolean();
+        private final SubmissionPublisher<byte[]> chunks;
+
+        Stream(InputStream in, int chunkSize) {
+            this.in = in;
+            this.chunkSize = chunkSize;
+            this.chunks = new SubmissionPublisher<>(ForkJoinPool.commonPool(),
+                    STREAM_BUFFERED_CHUNKS);
+        }
+
+        @Override
+        public void subscribe(Flow.Subscriber<? super byte[]> subscriber) {
+            if (subscriber == null) {
+                throw new NullPointerException();
+            }
+            if (!subscribed.compareAndSet(false, true)) {
+                subscriber.onSubscribe(new Flow.Subscription() {
+                    @Override
+                    public void request(long n) {
+                    }
+
+                    @Override
+                    public void cancel() {
+                    }
+                });
+                subscriber.onError(new IllegalStateException());
+                return;
+            }
+            chunks.subscribe(subscriber);
+            try {
+                acquire();
+            } catch (RuntimeException e) {
+                chunks.closeExceptionally(e);
+                return;
+            }
+            try {
+                executor.execute(this::produce);
+            } catch (RuntimeException e) {
+                permits.release();
+                chunks.closeExceptionally(e);
+            }
+        }
+
+        /**
+         * Runs on the executor holding the permit subscribe took, and releases it.
+         */
+        private void produce() {
+            try {
+                HuffmanOutputStream out = new HuffmanOutputStream(new Sink(), huffman.codebook(),
+                        chunkSize);
+                byte[] buffer = new byte[chunkSize];
+                for (int n; (n = in.read(buffer)) >= 0; ) {
+                    if (chunks.getNumberOfSubscribers() == 0) {
+                        throw new CancellationException();
+                    }
+                    out.write(buffer, 0, n);
+                }
+                out.close();
+                chunks.close();
+            } catch (CancellationException e) {
+                chunks.close();
+            } catch (IOException e) {
+                chunks.closeExceptionally(new UncheckedIOException(e));
+            } catch (RuntimeException e) {
+                chunks.closeExceptionally(e);
+            } finally {
+                permits.release();
+            }
+        }
+
+        /**
+         * Hands each batch of encoded bytes to the subscriber, waiting while its buffer is full.
+         */
+        private final class Sink extends OutputStream {
+            @Override
+            public void write(int b) {
+                write(new byte[]{(byte) b}, 0, 1);
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) {
+                if (len == 0) {
+                    return;
+                }
+                byte[] chunk = new byte[len];
+                System.arraycopy(b, off, chunk, 0, len);
+                if (chunks.getNumberOfSubscribers() == 0) {
+                    throw new CancellationException();
+                }
+                chunks.submit(chunk);
+            }
+        }
+    }
+
+    /**
+     * @return the number of tasks running or queued to run
+     */
+    public int inFlight() {
+        return maxInFlight - permits.availablePermits();
+    }
+
+    /**
+     * Stops accepting work. Tasks already submitted run to completion; an executor the compressor
+     * created is shut down once they have.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        if (owned != null) {
+            owned.shutdown();
+        }
+    }
+}
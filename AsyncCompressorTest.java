@@ -0,0 +1,298 @@
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.*;
+
+public class AsyncCompressorTest {
+
+    private static final String TEXT = "the quick brown fox jumps over the lazy dog, again and again";
+
+    private static byte[] bytes(int length, long seed) {
+        Random random = new Random(seed);
+        byte[] out = new byte[length];
+        for (int i = 0; i < length; i++) {
+            out[i] = (byte) TEXT.charAt(random.nextInt(TEXT.length()));
+        }
+        return out;
+    }
+
+    /**
+     * Collects a stream's chunks, requesting one at a time and optionally cancelling after some.
+     */
+    private static final class Collector implements Flow.Subscriber<byte[]> {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final CountDownLatch done = new CountDownLatch(1);
+        final AtomicReference<Throwable> error = new AtomicReference<>();
+        final int cancelAfter;
+        int received;
+        Flow.Subscription subscription;
+
+        Collector(int cancelAfter) {
+            this.cancelAfter = cancelAfter;
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            this.subscription = subscription;
+            subscription.request(1);
+        }
+
+        @Override
+        public void onNext(byte[] item) {
+            out.write(item, 0, item.length);
+            if (++received == cancelAfter) {
+                subscription.cancel();
+                done.countDown();
+            } else {
+                subscription.request(1);
+            }
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            error.set(throwable);
+            done.countDown();
+        }
+
+        @Override
+        public void onComplete() {
+            done.countDown();
+        }
+    }
+
+    @Test
+    public void testCompress() throws Exception {
+        Huffman huffman = new Huffman(TEXT, true);
+        try (AsyncCompressor compressor = new AsyncCompressor(huffman)) {
+            byte[] packed = compressor.compress(TEXT).get(10, TimeUnit.SECONDS);
+            assertEquals(TEXT, huffman.decompressFromBytes(packed));
+            try {
+                compressor.compress("XYZ").get(10, TimeUnit.SECONDS);
+                fail();
+            } catch (ExecutionException e) {
+                assertTrue(e.getCause() instanceof IllegalArgumentException);
+            }
+        }
+    }
+
+    @Test
+    public void testThroughputUnderLoad() throws Exception {
+        byte[] seed = bytes(10000, 1);
+        Huffman huffman = new Huffman(seed);
+        int producers = 8;
+        int perProducer = 250;
+        try (AsyncCompressor compressor = new AsyncCompressor(huffman, 4, 1 << 20, null)) {
+            List<CompletableFuture<byte[]>> futures = new ArrayList<>();
+            List<byte[]> inputs = new ArrayList<>();
+            AtomicInteger peak = new AtomicInteger();
+            Thread[] threads = new Thread[producers];
+            for (int p = 0; p < producers; p++) {
+                int id = p;
+                threads[p] = new Thread(() -> {
+                    for (int i = 0; i < perProducer; i++) {
+                        byte[] input = bytes(2000, id * 1000L + i);
+                        CompletableFuture<byte[]> future = compressor.compressBytes(input);
+                        peak.accumulateAndGet(compressor.inFlight(), Math::max);
+                        synchronized (futures) {
+                            inputs.add(input);
+                            futures.add(future);
+                        }
+                    }
+                });
+                threads[p].start();
+            }
+            for (Thread thread : threads) {
+                thread.join();
+            }
+            CompletableFuture.allOf(futures.toArray(new CompletableFuture[0]))
+                    .get(60, TimeUnit.SECONDS);
+            assertTrue(peak.get() <= 4);
+            assertEquals(producers * perProducer, futures.size());
+            for (int i = 0; i < futures.size(); i++) {
+                assertArrayEquals(inputs.get(i), huffman.decompressBytes(futures.get(i).get()));
+            }
+        }
+    }
+
+    @Test
+    public void testBackpressure() throws Exception {
+        Huffman huffman = new Huffman(TEXT, true);
+        List<Runnable> held = new ArrayList<>();
+        Executor holding = task -> {
+            synchronized (held) {
+                held.add(task);
+            }
+        };
+        try (AsyncCompressor compressor = new AsyncCompressor(huffman, 2, 1 << 20, holding)) {
+            compressor.compress(TEXT);
+            compressor.compress(TEXT);
+            assertEquals(2, compressor.inFlight());
+            AtomicReference<CompletableFuture<byte[]>> third = new AtomicReference<>();
+            Thread producer = new Thread(() -> third.set(compressor.compress(TEXT)));
+            producer.start();
+            producer.join(200);
+            // the producer waits for a slot instead of queueing a third task
+            assertTrue(producer.isAlive());
+            synchronized (held) {
+                assertEquals(2, held.size());
+                held.remove(0).run();
+            }
+            producer.join(10000);
+            assertFalse(producer.isAlive());
+            synchronized (held) {
+                assertEquals(2, held.size());
+                held.forEach(Runnable::run);
+            }
+            assertEquals(TEXT, huffman.decompressFromBytes(third.get().get()));
+            assertEquals(0, compressor.inFlight());
+        }
+    }
+
+    @Test
+    public void testBudget() {
+        Huffman huffman = new Huffman(TEXT, true);
+        try (AsyncCompressor compressor = new AsyncCompressor(huffman, 2, 1000, null)) {
+            try {
+                compressor.compress(TEXT + TEXT + TEXT + TEXT + TEXT + TEXT + TEXT + TEXT);
+                fail();
+            } catch (IllegalArgumentException expected) {
+            }
+            assertEquals(0, compressor.inFlight());
+        }
+    }
+
+    @Test
+    public void testStream() throws Exception {
+        byte[] input = bytes(100000, 2);
+        Huffman huffman = new Huffman(input);
+        try (AsyncCompressor compressor = new AsyncCompressor(huffman, 2, 7 * 1024, null)) {
+            Collector collector = new Collector(-1);
+            compressor.compressStream(new ByteArrayInputStream(input)).subscribe(collector);
+            assertTrue(collector.done.await(30, TimeUnit.SECONDS));
+            assertNull(collector.error.get());
+            assertTrue(collector.received > 10);
+            assertArrayEquals(input, huffman.decompressBytes(collector.out.toByteArray()));
+        }
+    }
+
+    @Test
+    public void testStreamCancelledPartway() throws Exception {
+        byte[] input = bytes(1 << 20, 3);
+        Huffman huffman = new Huffman(input);
+        AtomicInteger read = new AtomicInteger();
+        InputStream counting = new ByteArrayInputStream(input) {
+            @Override
+            public synchronized int read(byte[] b, int off, int len) {
+                int n = super.read(b, off, len);
+                read.addAndGet(Math.max(n, 0));
+                return n;
+            }
+        };
+        try (AsyncCompressor compressor = new AsyncCompressor(huffman, 1, 7 * 1024, null)) {
+            Collector collector = new Collector(3);
+            compressor.compressStream(counting).subscribe(collector);
+            assertTrue(collector.done.await(30, TimeUnit.SECONDS));
+            // the producer stops and gives its permit back
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+            while (compressor.inFlight() > 0 && System.nanoTime() < deadline) {
+                Thread.sleep(10);
+            }
+            assertEquals(0, compressor.inFlight());
+            assertTrue(read.get() < input.length / 4);
+            assertArrayEquals(TEXT.getBytes(), huffman.decompressBytes(
+                    compressor.compressBytes(TEXT.getBytes()).get(10, TimeUnit.SECONDS)));
+        }
+    }
+
+    @Test
+    public void testStreamHoldsPermitFromSubscribe() throws Exception {
+        Huffman huffman = new Huffman(TEXT.getBytes());
+        List<Runnable> held = new ArrayList<>();
+        AtomicInteger rejected = new AtomicInteger();
+        Executor holding = task -> {
+            if (rejected.get() > 0) {
+                rejected.decrementAndGet();
+                throw new RejectedExecutionException();
+            }
+            held.add(task);
+        };
+        try (AsyncCompressor compressor = new AsyncCompressor(huffman, 1, 1 << 20, holding)) {
+            Collector collector = new Collector(-1);
+            compressor.compressStream(new ByteArrayInputStream(TEXT.getBytes()))
+                    .subscribe(collector);
+            // the permit is taken before the task is queued
+            assertEquals(1, compressor.inFlight());
+            assertEquals(1, held.size());
+            held.remove(0).run();
+            assertTrue(collector.done.await(10, TimeUnit.SECONDS));
+            assertArrayEquals(TEXT.getBytes(), huffman.decompressBytes(collector.out.toByteArray()));
+            assertEquals(0, compressor.inFlight());
+
+            rejected.set(1);
+            Collector refused = new Collector(-1);
+            compressor.compressStream(new ByteArrayInputStream(TEXT.getBytes())).subscribe(refused);
+            assertTrue(refused.done.await(10, TimeUnit.SECONDS));
+            assertNotNull(refused.error.get());
+            assertEquals(0, compressor.inFlight());
+        }
+    }
+
+    @Test
+    public void testStreamErrors() throws Exception {
+        Huffman huffman = new Huffman(TEXT.getBytes());
+        try (AsyncCompressor compressor = new AsyncCompressor(huffman)) {
+            Collector failed = new Collector(-1);
+            compressor.compressStream(new InputStream() {
+                @Override
+                public int read() throws IOException {
+                    throw new IOException();
+                }
+            }).subscribe(failed);
+            assertTrue(failed.done.await(10, TimeUnit.SECONDS));
+            assertNotNull(failed.error.get());
+
+            Flow.Publisher<byte[]> stream = compressor.compressStream(
+                    new ByteArrayInputStream(new byte[]{'Q'}));
+            Collector first = new Collector(-1);
+            stream.subscribe(first);
+            assertTrue(first.done.await(10, TimeUnit.SECONDS));
+            assertTrue(first.error.get() instanceof IllegalArgumentException);
+            Collector second = new Collector(-1);
+            stream.subscribe(second);
+            assertTrue(second.error.get() instanceof IllegalStateException);
+        }
+    }
+
+    @Test
+    public void testClosed() {
+        AsyncCompressor compressor = new AsyncCompressor(new Huffman(TEXT, true));
+        compressor.close();
+        try {
+            compressor.compress(TEXT);
+            fail();
+        } catch (IllegalStateException expected) {
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testStreamNeedsByteAlphabet() {
+        new AsyncCompressor(new Huffman(TEXT, true))
+                .compressStream(new ByteArrayInputStream(new byte[0]));
+    }
+}
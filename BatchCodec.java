@@ -0,0 +1,189 @@
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.IntConsumer;
+
+/**
+ * Codes many short messages per call into a reusable {@link MessageBatch}, so the costs that
+ * dominate one-message-at-a-time compression (a result array per message, per-call bookkeeping,
+ * padding every message out to a whole byte) are paid once per batch.
+ * <p/>
+ * Encoding runs two passes over the whole batch with the codebook's {@link BulkEncoder}. The first
+ * sums code lengths, recording where each message ends and checking every character has a code,
+ * and the second packs each message at the bit where the last one ended, so messages follow one
+ * another without padding. Messages given as ranges of one sequence are packed in a single call.
+ * Decoding uses the codebook's multi-symbol table, stopping exactly at each message's end.
+ * <p/>
+ * A codec is immutable and can be shared between threads; batches cannot.
+ */
+public final class BatchCodec {
+
+    private final Codebook codebook;
+    private final BulkEncoder encoder;
+    private final CompressionStats stats = new CompressionStats();
+
+
+    /**
+     * @param codebook a codebook whose symbols are all chars, below 65536
+     * @throws IllegalArgumentException if the codebook is null or has a larger symbol
+     */
+    public BatchCodec(Codebook codebook) {
+        if (codebook == null || codebook.symbol(codebook.size() - 1) > 0xFFFF) {
+            throw new IllegalArgumentException();
+        }
+        this.codebook = codebook;
+        this.encoder = codebook.bulkEncoder();
+    }
+
+    /**
+     * @return the codebook messages are coded with
+     */
+    public Codebook codebook() {
+        return codebook;
+    }
+
+    /**
+     * @return sizes of every batch encoded so far, one record per batch
+     */
+    public CompressionStats stats() {
+        return stats;
+    }
+
+    /**
+     * @param messages the messages to encode
+     * @param out      the batch to overwrite
+     * @throws IllegalArgumentException if an argument or message is null, or a message contains a
+     *                                  character without a code; out is then left empty
+     */
+    public void encode(CharSequence[] messages, MessageBatch out) {
+        if (messages == null) {
+            throw new IllegalArgumentException();
+        }
+        encode(Arrays.asList(messages), out);
+    }
+
+    /**
+     * @param messages the messages to encode
+     * @param out      the batch to overwrite
+     * @throws IllegalArgumentException if an argument or message is null, or a message contains a
+     *                                  character without a code; out is then left empty
+     */
+    public void encode(List<? extends CharSequence> messages, MessageBatch out) {
+        if (messages == null || out == null) {
+            throw new IllegalArgumentException();
+        }
+        out.reserve(messages.size());
+        long total = 0;
+        long chars = 0;
+        for (int m = 0; m < messages.size(); m++) {
+            CharSequence message = messages.get(m);
+            if (message == null) {
+                throw new IllegalArgumentException();
+            }
+            total += encoder.measure(message, 0, message.length());
+            chars += message.length();
+            out.ends[m] = total;
+        }
+        out.reserveBits(total);
+        long bit = 0;
+        for (CharSequence message : messages) {
+            bit = encoder.pack(message, 0, message.length(), out.data, bit);
+        }
+        out.size = messages.size();
+        stats.record(chars * 16, total);
+    }
+
+    /**
+     * Encodes messages that lie next to each other in one sequence: message i runs from
+     * offsets[i] up to offsets[i + 1].
+     *
+     * @param text    the characters of all messages
+     * @param offsets the start of each message followed by the end of the last, ascending
+     * @param out     the batch to overwrite
+     * @throws IllegalArgumentException if an argument is null, the offsets are out of order or out
+     *                                  of bounds, or a message contains a character without a code;
+     *                                  out is then left empty
+     */
+    public void encode(CharSequence text, int[] offsets, MessageBatch out) {
+        if (text == null || offsets == null || out == null) {
+            throw new IllegalArgumentException();
+        }
+        int count = Math.max(0, offsets.length - 1);
+        out.reserve(count);
+        long total = 0;
+        for (int m = 0; m < count; m++) {
+            if (offsets[m] < 0 || offsets[m] > offsets[m + 1] || offsets[m + 1] > text.length()) {
+                throw new IllegalArgumentException();
+            }
+            total += encoder.measure(text, offsets[m], offsets[m + 1]);
+            out.ends[m] = total;
+        }
+        out.reserveBits(total);
+        if (count > 0) {
+            // the messages are contiguous, so they pack as one range
+            encoder.pack(text, offsets[0], offsets[count], out.data, 0);
+        }
+        out.size = count;
+        stats.record(count == 0 ? 0 : (offsets[count] - offsets[0]) * 16L, total);
+    }
+
+    /**
+     * @param batch   a batch encoded with this codec's codebook
+     * @param message the index of a message
+     * @return the decoded message
+     * @throws IllegalArgumentException if an argument is null, the message does not exist or its
+     *                                  bits are not a sequence of whole codes
+     */
+    public String decode(MessageBatch batch, int message) {
+        if (batch == null) {
+            throw new IllegalArgumentException();
+        }
+        long start = batch.bitOffset(message);
+        long end = start + batch.bitLength(message);
+        BitReader in = new BitReader(batch.data, (int) (start >>> 3), end - (start & ~7L));
+        in.skipBits((int) (start & 7));
+        StringBuilder out = new StringBuilder((int) ((end - start) / 2));
+        codebook.decode(in, out);
+        return out.toString();
+    }
+
+    /**
+     * Decodes every message of a batch into one builder without allocating per message.
+     *
+     * @param batch a batch encoded with this codec's codebook
+     * @param out   receives the messages one after the other
+     * @param ends  receives, for each message, the length of out after it was appended
+     * @throws IllegalArgumentException if an argument is null, ends is shorter than the batch or a
+     *                                  message's bits are not a sequence of whole codes
+     */
+    public void decodeAll(MessageBatch batch, StringBuilder out, int[] ends) {
+        if (batch == null || out == null || ends == null || ends.length < batch.size) {
+            throw new IllegalArgumentException();
+        }
+        BitReader in = new BitReader(batch.data, 0, batch.totalBits());
+        IntConsumer append = symbol -> out.append((char) symbol);
+        for (int m = 0; m < batch.size; m++) {
+            codebook.decode(in, batch.bitLength(m), append);
+            ends[m] = out.length();
+        }
+    }
+
+    /**
+     * @param batch a batch encoded with this codec's codebook
+     * @return every message decoded
+     * @throws IllegalArgumentException if the batch is null or a message's bits are not a sequence
+     *                                  of whole codes
+     */
+    public String[] decodeAll(MessageBatch batch) {
+        if (batch == null) {
+            throw new IllegalArgumentException();
+        }
+        StringBuilder out = new StringBuilder((int) Math.min(batch.totalBits() / 2, 1 << 20));
+        int[] ends = new int[batch.size];
+        decodeAll(batch, out, ends);
+        String[] messages = new String[ends.length];
+        for (int m = 0; m < ends.length; m++) {
+            messages[m] = out.substring(m == 0 ? 0 : ends[m - 1], ends[m]);
+        }
+        return messages;
+    }
+}
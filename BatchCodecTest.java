@@ -0,0 +1,189 @@
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class BatchCodecTest {
+
+    private static final String SEED = "the quick brown fox jumps over the lazy dog 0123456789 {}:\",";
+
+    private static final Codebook CODEBOOK = new Huffman(SEED, true).codebook();
+
+    private static String[] messages(int count, long seed) {
+        Random random = new Random(seed);
+        String[] messages = new String[count];
+        for (int m = 0; m < count; m++) {
+            char[] chars = new char[random.nextInt(60)];
+            for (int i = 0; i < chars.length; i++) {
+                chars[i] = SEED.charAt(random.nextInt(SEED.length()));
+            }
+            messages[m] = new String(chars);
+        }
+        return messages;
+    }
+
+    @Test
+    public void testRoundTrip() {
+        BatchCodec codec = new BatchCodec(CODEBOOK);
+        String[] messages = messages(500, 1);
+        MessageBatch batch = new MessageBatch();
+        codec.encode(messages, batch);
+        assertEquals(messages.length, batch.size());
+        assertArrayEquals(messages, codec.decodeAll(batch));
+        for (int m = 0; m < messages.length; m++) {
+            assertEquals(messages[m], codec.decode(batch, m));
+        }
+        assertEquals(1, codec.stats().calls());
+    }
+
+    @Test
+    public void testMatchesSingleMessageCoding() {
+        BatchCodec codec = new BatchCodec(CODEBOOK);
+        String[] messages = messages(50, 2);
+        MessageBatch batch = new MessageBatch();
+        codec.encode(Arrays.asList(messages), batch);
+        long offset = 0;
+        for (int m = 0; m < messages.length; m++) {
+            byte[] single = CODEBOOK.compress(messages[m]);
+            long bits = (single.length - 1) * 8L - single[single.length - 1];
+            assertEquals(offset, batch.bitOffset(m));
+            assertEquals(bits, batch.bitLength(m));
+            offset += bits;
+        }
+        assertEquals(offset, batch.totalBits());
+    }
+
+    @Test
+    public void testOffsetsIntoSharedText() {
+        BatchCodec codec = new BatchCodec(CODEBOOK);
+        String[] messages = messages(100, 3);
+        StringBuilder text = new StringBuilder("xx");
+        int[] offsets = new int[messages.length + 1];
+        offsets[0] = text.length();
+        for (int m = 0; m < messages.length; m++) {
+            text.append(messages[m]);
+            offsets[m + 1] = text.length();
+        }
+        MessageBatch batch = new MessageBatch();
+        codec.encode(text, offsets, batch);
+        StringBuilder out = new StringBuilder();
+        int[] ends = new int[messages.length];
+        codec.decodeAll(batch, out, ends);
+        assertEquals(text.substring(2), out.toString());
+        for (int m = 0; m < messages.length; m++) {
+            assertEquals(offsets[m + 1] - 2, ends[m]);
+        }
+    }
+
+    @Test
+    public void testBatchIsReused() {
+        BatchCodec codec = new BatchCodec(CODEBOOK);
+        MessageBatch batch = new MessageBatch();
+        codec.encode(messages(300, 4), batch);
+        byte[] data = batch.data();
+        String[] smaller = messages(200, 5);
+        codec.encode(smaller, batch);
+        assertSame(data, batch.data());
+        assertArrayEquals(smaller, codec.decodeAll(batch));
+        codec.encode(new String[0], batch);
+        assertEquals(0, batch.size());
+        assertEquals(0, codec.decodeAll(batch).length);
+    }
+
+    @Test
+    public void testSerializedRoundTrip() {
+        BatchCodec codec = new BatchCodec(CODEBOOK);
+        String[] messages = messages(150, 6);
+        MessageBatch batch = new MessageBatch();
+        codec.encode(messages, batch);
+        byte[] serialized = batch.toByteArray();
+        assertEquals(batch.serializedSize(), serialized.length);
+        MessageBatch read = new MessageBatch();
+        read.readFrom(ByteBuffer.wrap(serialized));
+        assertArrayEquals(messages, codec.decodeAll(read));
+        try {
+            read.readFrom(ByteBuffer.wrap(Arrays.copyOf(serialized, serialized.length - 1)));
+            fail();
+        } catch (IllegalArgumentException expected) {
+        }
+        assertEquals(0, read.size());
+    }
+
+    @Test
+    public void testLongCodes() {
+        int[] symbols = new int[61];
+        int[] lengths = new int[61];
+        for (int i = 0; i < 61; i++) {
+            symbols[i] = 40 + i;
+            lengths[i] = Math.min(i + 1, 60);
+        }
+        Codebook deep = Codebook.canonical(symbols, lengths);
+        BatchCodec codec = new BatchCodec(deep);
+        List<String> messages = new ArrayList<>();
+        messages.add("(((");
+        messages.add("" + (char) 40 + (char) 100 + (char) 99 + (char) 41);
+        messages.add("");
+        MessageBatch batch = new MessageBatch();
+        codec.encode(messages, batch);
+        assertArrayEquals(messages.toArray(), codec.decodeAll(batch));
+    }
+
+    @Test
+    public void testMissingCharacterLeavesBatchEmpty() {
+        BatchCodec codec = new BatchCodec(CODEBOOK);
+        MessageBatch batch = new MessageBatch();
+        codec.encode(messages(10, 7), batch);
+        try {
+            codec.encode(new String[]{"fox", "FOX"}, batch);
+            fail();
+        } catch (IllegalArgumentException expected) {
+        }
+        assertEquals(0, batch.size());
+        try {
+            codec.encode(new String[]{"fox", "\u4e00"}, batch);
+            fail();
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testOffsetsOutOfOrder() {
+        new BatchCodec(CODEBOOK).encode("the fox", new int[]{0, 4, 2}, new MessageBatch());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testMessageOutOfRange() {
+        BatchCodec codec = new BatchCodec(CODEBOOK);
+        MessageBatch batch = new MessageBatch();
+        codec.encode(new String[]{"fox"}, batch);
+        codec.decode(batch, 1);
+    }
+
+    @Test
+    public void testBitLengthOutOfRange() {
+        BatchCodec codec = new BatchCodec(CODEBOOK);
+        MessageBatch batch = new MessageBatch();
+        codec.encode(new String[]{"the", "quick", "fox"}, batch);
+        // a smaller batch in the same buffers leaves stale ends past its size
+        codec.encode(new String[]{"fox"}, batch);
+        for (int message : new int[]{-1, 1, 2, Integer.MAX_VALUE}) {
+            try {
+                batch.bitLength(message);
+                fail();
+            } catch (IllegalArgumentException expected) {
+            }
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testCodePointCodebook() {
+        String input = "a\ud83d\ude00b";
+        new BatchCodec(new Huffman(FrequencyCounter.countCodePoints(input), Alphabet.CODE_POINTS,
+                true).codebook());
+    }
+}
@@ -1,8 +1,19 @@
-
 import java.util.*;
 
 
 /**
+ * A min-heap laid out in an array, with a map from each value to its index so that {@link
+ * #decreaseKey} and {@link #remove} find entries in constant time. Every operation moves entries
+ * by swapping them along one root-to-leaf path, so adding, decreasing, extracting and removing all
+ * take O(log n).
+ * <p/>
+ * Each node has {@code arity} children, two by default. Four keeps a node's children within one or
+ * two cache lines and halves the depth of large heaps, at the cost of more comparisons per level
+ * when sifting down.
+ * <p/>
+ * A heap built with a capacity serves bounded top-k selection: {@link #offer} keeps the capacity's
+ * worth of entries with the largest keys, evicting the minimum when a larger key arrives.
+ *
  * @param <V>   {@inheritDoc}
  * @param <Key> {@inheritDoc}
  */
@@ -12,39 +23,82 @@ public class BinaryMinHeapImpl<Key extends Comparable<Key>, V> implements Binary
      */
     private ArrayList<Entry<Key, V>> heap;
     private HashMap<V, Integer> map;
+    private final int arity;
+    private final int capacity;
+    // the most entries the heap holds
 
 
     public BinaryMinHeapImpl() {
+        this(2, Integer.MAX_VALUE);
+    }
+
+    /**
+     * @param arity    the number of children per node, at least 2
+     * @param capacity the most entries the heap may hold
+     * @throws IllegalArgumentException if arity is below 2 or capacity is not positive
+     */
+    public BinaryMinHeapImpl(int arity, int capacity) {
+        if (arity < 2 || capacity < 1) {
+            throw new IllegalArgumentException();
+        }
+        this.arity = arity;
+        this.capacity = capacity;
         heap = new ArrayList<Entry<Key, V>>();
         map = new HashMap<V, Integer>();
     }
 
-    private void minHeapify(int index) {
-        int l, r, smallest;
-        l = index * 2 + 1;
-        r = index * 2 + 2;
+    /**
+     * Builds a heap of the given entries in O(n), as {@link #addAll} does.
+     *
+     * @param entries the entries, whose keys and values are copied
+     * @param arity   the number of children per node, at least 2
+     * @throws IllegalArgumentException if entries is null, holds a null entry or key or repeats a
+     *                                  value, or arity is below 2
+     */
+    public BinaryMinHeapImpl(Collection<? extends Entry<Key, V>> entries, int arity) {
+        this(arity, Integer.MAX_VALUE);
+        addAll(entries);
+    }
 
-        //compareTo check
-        if (l < heap.size() && heap.get(l).key.compareTo(heap.get(index).key) < 0) {
-            smallest = l;
-        } else {
-            smallest = index;
-        }
-        if (r < heap.size() && heap.get(r).key.compareTo(heap.get(smallest).key) < 0) {
-            smallest = r;
+    private void minHeapify(int index) {
+        int size = heap.size();
+        while (true) {
+            int first = index * arity + 1;
+            if (first >= size || first < 0) {
+                return;
+            }
+            int smallest = index;
+            for (int c = first; c < Math.min(first + arity, size); c++) {
+                if (heap.get(c).key.compareTo(heap.get(smallest).key) < 0) {
+                    smallest = c;
+                }
+            }
+            if (smallest == index) {
+                return;
+            }
+            swap(index, smallest);
+            index = smallest;
         }
-        if (smallest != index) {
-            V s, i;
-            s = heap.get(smallest).value;
-            i = heap.get(index).value;
+    }
 
-            map.replace(i, smallest);
-            map.replace(s, index);
-            Collections.swap(heap, smallest, index);
-            minHeapify(smallest);
+    private void siftUp(int index) {
+        while (index > 0) {
+            int parent = (index - 1) / arity;
+            if (heap.get(parent).key.compareTo(heap.get(index).key) <= 0) {
+                return;
+            }
+            swap(index, parent);
+            index = parent;
         }
+    }
 
-
+    private void swap(int i, int j) {
+        Entry<Key, V> a = heap.get(i);
+        Entry<Key, V> b = heap.get(j);
+        heap.set(i, b);
+        heap.set(j, a);
+        map.put(b.value, i);
+        map.put(a.value, j);
     }
 
     @Override
@@ -67,6 +121,8 @@ public class BinaryMinHeapImpl<Key extends Comparable<Key>, V> implements Binary
 
     /**
      * {@inheritDoc}
+     *
+     * @throws IllegalStateException if the heap is at its capacity
      */
     @Override
     public void add(Key key, V value) {
@@ -76,10 +132,98 @@ public class BinaryMinHeapImpl<Key extends Comparable<Key>, V> implements Binary
         if (containsValue(value)) {
             throw new IllegalArgumentException();
         }
+        if (heap.size() == capacity) {
+            throw new IllegalStateException();
+        }
         heap.add(new Entry<>(key, value));
         map.put(value, heap.size() - 1);
-        decreaseKey(value, key);
+        siftUp(heap.size() - 1);
+    }
+
+    /**
+     * Adds an entry if the heap has room or the key is larger than the minimum, which it then
+     * replaces. Offering every candidate to a heap with capacity k leaves it holding the k entries
+     * with the largest keys, in O(n log k).
+     *
+     * @param key   the key
+     * @param value the value, not already in the heap
+     * @return whether the entry was added
+     * @throws IllegalArgumentException if key is null or the value is already in the heap
+     */
+    public boolean offer(Key key, V value) {
+        if (key == null || containsValue(value)) {
+            throw new IllegalArgumentException();
+        }
+        if (heap.size() < capacity) {
+            add(key, value);
+            return true;
+        }
+        if (key.compareTo(heap.get(0).key) <= 0) {
+            return false;
+        }
+        map.remove(heap.get(0).value);
+        heap.set(0, new Entry<>(key, value));
+        map.put(value, 0);
+        minHeapify(0);
+        return true;
+    }
+
+    /**
+     * Adds many entries at once. When they are many relative to the heap, they are appended and the
+     * whole heap is rebuilt bottom-up in O(n), rather than sifting each one up.
+     *
+     * @param entries the entries, whose keys and values are copied
+     * @throws IllegalArgumentException if entries is null, holds a null entry or key, or repeats a
+     *                                  value or one already in the heap; the heap is then unchanged
+     * @throws IllegalStateException    if the entries do not fit in the capacity
+     */
+    public void addAll(Collection<? extends Entry<Key, V>> entries) {
+        if (entries == null) {
+            throw new IllegalArgumentException();
+        }
+        Set<V> added = new HashSet<>();
+        for (Entry<Key, V> entry : entries) {
+            if (entry == null || entry.key == null || containsValue(entry.value)
+                    || !added.add(entry.value)) {
+                throw new IllegalArgumentException();
+            }
+        }
+        if (entries.size() > capacity - heap.size()) {
+            throw new IllegalStateException();
+        }
+        int before = heap.size();
+        heap.ensureCapacity(before + entries.size());
+        for (Entry<Key, V> entry : entries) {
+            map.put(entry.value, heap.size());
+            heap.add(new Entry<>(entry.key, entry.value));
+        }
+        int depth = 32 - Integer.numberOfLeadingZeros(heap.size());
+        if ((long) entries.size() * depth > heap.size()) {
+            for (int i = (heap.size() - 2) / arity; i >= 0; i--) {
+                minHeapify(i);
+            }
+        } else {
+            for (int i = before; i < heap.size(); i++) {
+                siftUp(i);
+            }
+        }
+    }
 
+    /**
+     * Moves every entry of another heap into this one, leaving the other empty.
+     *
+     * @param other the heap to take entries from
+     * @throws IllegalArgumentException if other is null or this heap, or the heaps share a value;
+     *                                  both are then unchanged
+     * @throws IllegalStateException    if the entries do not fit in the capacity
+     */
+    public void merge(BinaryMinHeapImpl<Key, V> other) {
+        if (other == null || other == this) {
+            throw new IllegalArgumentException();
+        }
+        addAll(other.heap);
+        other.heap.clear();
+        other.map.clear();
     }
 
     /**
@@ -91,24 +235,13 @@ public class BinaryMinHeapImpl<Key extends Comparable<Key>, V> implements Binary
         if (!containsValue(value)) {
             throw new NoSuchElementException();
         }
-        if (newKey == null || newKey.compareTo(heap.get(map.get(value)).key) > 0) {
-            throw new IllegalArgumentException();
-        }
-
-        heap.remove((int) map.get(value));
-        heap.add(map.get(value), new Entry<>(newKey, value));
-
         int i = map.get(value);
-        while ((map.get(value)) > 0 && (heap.get((i - 1) / 2).key).compareTo(heap.get(i).key) > 0) {
-            Collections.swap(heap, i, (i - 1) / 2);
-
-            map.replace(heap.get((i - 1) / 2).value, i);
-            map.replace(heap.get(i).value, (i - 1) / 2);
-
-            i = (i - 1) / 2;
-
+        if (newKey == null || newKey.compareTo(heap.get(i).key) > 0) {
+            throw new IllegalArgumentException();
         }
 
+        heap.set(i, new Entry<>(newKey, value));
+        siftUp(i);
     }
 
     /**
@@ -127,28 +260,40 @@ public class BinaryMinHeapImpl<Key extends Comparable<Key>, V> implements Binary
      */
     @Override
     public Entry<Key, V> extractMin() {
-        Entry<Key, V> first, last;
         if (isEmpty()) {
             throw new NoSuchElementException();
         }
+        return removeAt(0);
+    }
 
-        first = heap.get(0);
-        last = heap.get(heap.size() - 1);
-
-        heap.remove(0);
-        map.remove(first.value);
-        if (size() != 0) {
-            heap.add(0, last);
-            heap.remove(heap.size() - 1);
-
-
-            map.replace(last.value, 0);
-            minHeapify(0);
+    /**
+     * Removes the entry of a value, wherever it is in the heap.
+     *
+     * @param value the value to remove
+     * @return the removed entry
+     * @throws NoSuchElementException if the value is not in the heap
+     */
+    public Entry<Key, V> remove(V value) {
+        if (!containsValue(value)) {
+            throw new NoSuchElementException();
         }
+        return removeAt(map.get(value));
+    }
 
-
-        return first;
-
+    /**
+     * Fills the hole with the last entry and moves that up or down to where it belongs.
+     */
+    private Entry<Key, V> removeAt(int index) {
+        Entry<Key, V> removed = heap.get(index);
+        Entry<Key, V> last = heap.remove(heap.size() - 1);
+        map.remove(removed.value);
+        if (index < heap.size()) {
+            heap.set(index, last);
+            map.put(last.value, index);
+            siftUp(index);
+            minHeapify(map.get(last.value));
+        }
+        return removed;
     }
 
     /**
@@ -158,4 +303,4 @@ public class BinaryMinHeapImpl<Key extends Comparable<Key>, V> implements Binary
     public Set<V> values() {
         return map.keySet();
     }
-}
\ No newline at end of file
+}
@@ -138,4 +138,191 @@ public class BinaryMinHeapImplTest {
     }
 
 
+    private static List<BinaryMinHeap.Entry<Integer, Integer>> randomEntries(int n, long seed) {
+        Random random = new Random(seed);
+        List<BinaryMinHeap.Entry<Integer, Integer>> entries = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            entries.add(new BinaryMinHeap.Entry<>(random.nextInt(1000), i));
+        }
+        return entries;
+    }
+
+    private static List<Integer> drainKeys(BinaryMinHeap<Integer, Integer> heap) {
+        List<Integer> keys = new ArrayList<>();
+        while (!heap.isEmpty()) {
+            keys.add(heap.extractMin().key);
+        }
+        return keys;
+    }
+
+    private static List<Integer> sortedKeys(List<BinaryMinHeap.Entry<Integer, Integer>> entries) {
+        List<Integer> keys = new ArrayList<>();
+        for (BinaryMinHeap.Entry<Integer, Integer> e : entries) {
+            keys.add(e.key);
+        }
+        Collections.sort(keys);
+        return keys;
+    }
+
+    @Test
+    public void testBulkBuild() {
+        List<BinaryMinHeap.Entry<Integer, Integer>> entries = randomEntries(5000, 1);
+        for (int arity : new int[]{2, 4}) {
+            BinaryMinHeapImpl<Integer, Integer> heap = new BinaryMinHeapImpl<>(entries, arity);
+            assertEquals(5000, heap.size());
+            assertTrue(heap.containsValue(4999));
+            assertEquals(sortedKeys(entries), drainKeys(heap));
+        }
+    }
+
+    @Test
+    public void testAddAllToNonEmptyHeap() {
+        List<BinaryMinHeap.Entry<Integer, Integer>> entries = randomEntries(1000, 2);
+        BinaryMinHeapImpl<Integer, Integer> heap = new BinaryMinHeapImpl<>(4, Integer.MAX_VALUE);
+        for (BinaryMinHeap.Entry<Integer, Integer> e : entries.subList(0, 900)) {
+            heap.add(e.key, e.value);
+        }
+        heap.addAll(entries.subList(900, 910));
+        heap.addAll(entries.subList(910, 1000));
+        assertEquals(sortedKeys(entries), drainKeys(heap));
+    }
+
+    @Test
+    public void testAddAllRejectsDuplicatesUnchanged() {
+        BinaryMinHeapImpl<Integer, String> heap = new BinaryMinHeapImpl<>();
+        heap.add(3, "a");
+        try {
+            heap.addAll(Arrays.asList(new BinaryMinHeap.Entry<>(1, "b"),
+                    new BinaryMinHeap.Entry<>(2, "a")));
+            fail();
+        } catch (IllegalArgumentException expected) {
+        }
+        try {
+            heap.addAll(Arrays.asList(new BinaryMinHeap.Entry<>(1, "b"),
+                    new BinaryMinHeap.Entry<>(2, "b")));
+            fail();
+        } catch (IllegalArgumentException expected) {
+        }
+        assertEquals(1, heap.size());
+        assertFalse(heap.containsValue("b"));
+    }
+
+    @Test
+    public void testMerge() {
+        List<BinaryMinHeap.Entry<Integer, Integer>> entries = randomEntries(300, 3);
+        BinaryMinHeapImpl<Integer, Integer> a = new BinaryMinHeapImpl<>(entries.subList(0, 100), 2);
+        BinaryMinHeapImpl<Integer, Integer> b = new BinaryMinHeapImpl<>(entries.subList(100, 300), 2);
+        a.merge(b);
+        assertTrue(b.isEmpty());
+        assertFalse(b.containsValue(150));
+        assertEquals(300, a.size());
+        assertEquals(sortedKeys(entries), drainKeys(a));
+
+        BinaryMinHeapImpl<Integer, Integer> c = new BinaryMinHeapImpl<>(entries.subList(0, 5), 2);
+        BinaryMinHeapImpl<Integer, Integer> d = new BinaryMinHeapImpl<>(entries.subList(4, 6), 2);
+        try {
+            c.merge(d);
+            fail();
+        } catch (IllegalArgumentException expected) {
+        }
+        assertEquals(5, c.size());
+        assertEquals(2, d.size());
+    }
+
+    @Test
+    public void testTopK() {
+        List<BinaryMinHeap.Entry<Integer, Integer>> entries = randomEntries(10000, 4);
+        BinaryMinHeapImpl<Integer, Integer> top = new BinaryMinHeapImpl<>(2, 10);
+        for (BinaryMinHeap.Entry<Integer, Integer> e : entries) {
+            top.offer(e.key, e.value);
+        }
+        List<Integer> largest = sortedKeys(entries);
+        assertEquals(largest.subList(largest.size() - 10, largest.size()), drainKeys(top));
+
+        for (int i = 1; i <= 10; i++) {
+            top.add(i, i);
+        }
+        try {
+            top.add(100, 11);
+            fail();
+        } catch (IllegalStateException expected) {
+        }
+        assertFalse(top.offer(1, 12));
+        assertTrue(top.offer(100, 11));
+        assertFalse(top.containsValue(1));
+        assertEquals((Integer) 2, top.peek().key);
+    }
+
+    @Test
+    public void testRemove() {
+        List<BinaryMinHeap.Entry<Integer, Integer>> entries = randomEntries(2000, 5);
+        BinaryMinHeapImpl<Integer, Integer> heap = new BinaryMinHeapImpl<>(entries, 4);
+        List<BinaryMinHeap.Entry<Integer, Integer>> kept = new ArrayList<>();
+        for (BinaryMinHeap.Entry<Integer, Integer> e : entries) {
+            if (e.value % 3 == 0) {
+                assertEquals(e.key, heap.remove(e.value).key);
+            } else {
+                kept.add(e);
+            }
+        }
+        assertEquals(kept.size(), heap.size());
+        assertEquals(sortedKeys(kept), drainKeys(heap));
+    }
+
+    @Test(expected = NoSuchElementException.class)
+    public void testRemoveMissing() {
+        new BinaryMinHeapImpl<Integer, String>().remove("a");
+    }
+
+    @Test
+    public void testMatchesSortedSetUnderChurn() {
+        Random random = new Random(6);
+        BinaryMinHeapImpl<Integer, Integer> heap = new BinaryMinHeapImpl<>(4, Integer.MAX_VALUE);
+        Map<Integer, Integer> keys = new HashMap<>();
+        List<Integer> live = new ArrayList<>();
+        // key * 2^20 + value, so the first element is the expected minimum
+        TreeSet<Long> reference = new TreeSet<>();
+        int next = 0;
+        // a scheduling-like mix over a few hundred thousand entries
+        for (int step = 0; step < 400000; step++) {
+            int op = random.nextInt(10);
+            if (op < 5 || live.isEmpty()) {
+                int key = random.nextInt(1 << 20);
+                heap.add(key, next);
+                keys.put(next, key);
+                live.add(next);
+                reference.add(((long) key << 20) + next++);
+                continue;
+            }
+            int slot = random.nextInt(live.size());
+            int value = live.get(slot);
+            int key = keys.get(value);
+            if (op < 7) {
+                long min = reference.pollFirst();
+                BinaryMinHeap.Entry<Integer, Integer> entry = heap.extractMin();
+                assertEquals(min >>> 20, (long) entry.key);
+                keys.remove(entry.value);
+                live.remove(live.indexOf(entry.value));
+            } else if (op < 9) {
+                heap.remove(value);
+                reference.remove(((long) key << 20) + value);
+                keys.remove(value);
+                live.set(slot, live.get(live.size() - 1));
+                live.remove(live.size() - 1);
+            } else {
+                int smaller = key / 2;
+                heap.decreaseKey(value, smaller);
+                reference.remove(((long) key << 20) + value);
+                reference.add(((long) smaller << 20) + value);
+                keys.put(value, smaller);
+            }
+            assertEquals(reference.size(), heap.size());
+        }
+        List<Integer> remaining = drainKeys(heap);
+        assertEquals(reference.size(), remaining.size());
+        for (int key : remaining) {
+            assertEquals(reference.pollFirst() >>> 20, key);
+        }
+    }
+
 }
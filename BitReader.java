@@ -0,0 +1,216 @@
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+
+/**
+ * Reads bits, most significant first, from bytes packed by {@link BitWriter}. Up to 57 bits can be
+ * looked at without consuming them, which lets decoders probe several code bits at once.
+ * <p/>
+ * A reader can also pull packed bits from an {@link InputStream} through a fixed size buffer. The
+ * last two bytes read are held back until the stream ends, since only then is it known which byte
+ * is the padding trailer. The stream is only read when a call needs more bits than are buffered,
+ * so decoders can stop at {@link #available()} to hand back what they have before blocking.
+ */
+public class BitReader {
+
+    private final byte[] data;
+    private int position;
+    private int end;
+    // bytes before end are known to hold data bits
+    private final InputStream source;
+    private int buffered;
+    private boolean exhausted;
+    private long window;
+    private int windowBits;
+    // window holds windowBits not yet consumed bits, left-aligned
+    private long remaining;
+
+
+    /**
+     * @param data      the packed bytes
+     * @param offset    index of the first byte to read
+     * @param bitLength number of meaningful bits starting at offset
+     * @throws IllegalArgumentException if data is null or shorter than bitLength
+     */
+    public BitReader(byte[] data, int offset, long bitLength) {
+        if (data == null || offset < 0 || bitLength < 0
+                || offset + (bitLength + 7) / 8 > data.length) {
+            throw new IllegalArgumentException();
+        }
+        this.data = data;
+        this.position = offset;
+        this.end = offset + (int) ((bitLength + 7) / 8);
+        this.buffered = end;
+        this.remaining = bitLength;
+        this.source = null;
+        this.exhausted = true;
+    }
+
+    /**
+     * Creates a reader that pulls the packed form produced by {@link BitWriter} from a stream.
+     * {@link IOException}s from the stream are rethrown as {@link UncheckedIOException}.
+     *
+     * @param source     the stream to read
+     * @param bufferSize the number of bytes to buffer, at least 16
+     * @throws IllegalArgumentException if source is null or bufferSize is too small
+     */
+    public BitReader(InputStream source, int bufferSize) {
+        if (source == null || bufferSize < 16) {
+            throw new IllegalArgumentException();
+        }
+        this.data = new byte[bufferSize];
+        this.source = source;
+    }
+
+    /**
+     * Creates a reader over the packed form produced by {@link BitWriter#toByteArray()}.
+     *
+     * @param packed data bytes followed by the padding trailer
+     * @return a reader positioned at the first bit
+     * @throws IllegalArgumentException if packed is null or has a malformed trailer
+     */
+    public static BitReader packed(byte[] packed) {
+        if (packed == null || packed.length == 0) {
+            throw new IllegalArgumentException();
+        }
+        int padding = packed[packed.length - 1];
+        if (padding < 0 || padding > 7 || (padding > 0 && packed.length == 1)) {
+            throw new IllegalArgumentException();
+        }
+        return new BitReader(packed, 0, (packed.length - 1) * 8L - padding);
+    }
+
+    /**
+     * @return the number of bits not consumed yet
+     */
+    public long remaining() {
+        if (remaining < 64) {
+            fill();
+        }
+        return remaining;
+    }
+
+    /**
+     * @return the number of bits that can be consumed without reading the stream
+     */
+    long available() {
+        return remaining;
+    }
+
+    /**
+     * @return whether every remaining bit is buffered, because the stream has ended or there is
+     *         none
+     */
+    boolean complete() {
+        return exhausted;
+    }
+
+    public boolean hasRemaining() {
+        return remaining > 0 || remaining() > 0;
+    }
+
+    /**
+     * Returns the next {@code n} bits without consuming them. Bits past the end read as zero.
+     *
+     * @param n number of bits, between 1 and 57
+     * @return the bits, right-aligned
+     */
+    public long peekBits(int n) {
+        if (windowBits < n) {
+            refill(n);
+        }
+        return window >>> (64 - n);
+    }
+
+    /**
+     * Consumes {@code n} bits previously looked at with {@link #peekBits(int)}.
+     *
+     * @throws IllegalArgumentException if fewer than n bits remain
+     */
+    public void skipBits(int n) {
+        if (n > remaining && n > remaining()) {
+            throw new IllegalArgumentException();
+        }
+        if (windowBits < n) {
+            refill(n);
+        }
+        window <<= n;
+        windowBits -= n;
+        remaining -= n;
+    }
+
+    /**
+     * @return the next bit, 0 or 1
+     * @throws IllegalArgumentException if no bits remain
+     */
+    public int readBit() {
+        int bit = (int) peekBits(1);
+        skipBits(1);
+        return bit;
+    }
+
+    /**
+     * Loads the window from the buffer, reading the stream only if that leaves it short of n bits.
+     */
+    private void refill(int n) {
+        if (end - position < 8 && windowBits + 8 * (end - position) < n) {
+            fill();
+        }
+        while (windowBits <= 56 && position < end) {
+            window |= (data[position++] & 0xFFL) << (56 - windowBits);
+            windowBits += 8;
+        }
+    }
+
+    private void fill() {
+        if (exhausted) {
+            return;
+        }
+        int unread = buffered - position;
+        System.arraycopy(data, position, data, 0, unread);
+        end -= position;
+        buffered = unread;
+        position = 0;
+        try {
+            while (buffered - end < 10 && buffered < data.length) {
+                int read = source.read(data, buffered, data.length - buffered);
+                if (read < 0) {
+                    exhausted = true;
+                    break;
+                }
+                buffered += read;
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        if (exhausted) {
+            if (buffered == end) {
+                throw new IllegalArgumentException();
+            }
+            int padding = data[buffered - 1];
+            if (padding < 0 || padding > 7 || (padding > 0 && buffered - 1 == end)) {
+                throw new IllegalArgumentException();
+            }
+            remaining += 8L * (buffered - 1 - end) - padding;
+            end = buffered - 1;
+        } else if (buffered - 2 > end) {
+            remaining += 8L * (buffered - 2 - end);
+            end = buffered - 2;
+        }
+    }
+
+    /**
+     * Renders packed bits as a string of '0' and '1' characters.
+     *
+     * @param packed the packed form produced by {@link BitWriter#toByteArray()}
+     * @return the bit string
+     */
+    public static String toBitString(byte[] packed) {
+        BitReader reader = packed(packed);
+        StringBuilder out = new StringBuilder((int) reader.remaining());
+        while (reader.hasRemaining()) {
+            out.append(reader.readBit());
+        }
+        return out.toString();
+    }
+}
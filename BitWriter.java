@@ -0,0 +1,154 @@
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+/**
+ * Packs variable-length codes into bytes, most significant bit first. Codes are collected in a
+ * 64-bit accumulator and drained into the output a byte at a time.
+ * <p/>
+ * The packed form produced by {@link #toByteArray()} is the data bytes followed by a single trailer
+ * byte holding the number of padding bits (0-7) in the last data byte. Streaming encoders instead
+ * move whole bytes out with {@link #drainTo(OutputStream)} as they go and end the stream with
+ * {@link #finishTo(OutputStream)}, so the buffer stays bounded.
+ */
+public class BitWriter {
+
+    private byte[] buffer;
+    private int position;
+    private long accumulator;
+    private int pending;
+    // number of bits held in the accumulator that have not been drained yet
+    private long bitLength;
+
+
+    public BitWriter() {
+        this(64);
+    }
+
+    public BitWriter(int initialCapacity) {
+        if (initialCapacity < 1) {
+            throw new IllegalArgumentException();
+        }
+        buffer = new byte[initialCapacity];
+    }
+
+    /**
+     * Appends the low {@code length} bits of {@code bits}, most significant first.
+     *
+     * @param bits   the code word, right-aligned
+     * @param length the number of bits to write, between 0 and 64
+     * @throws IllegalArgumentException if length is out of range
+     */
+    public void writeBits(long bits, int length) {
+        if (length < 0 || length > 64) {
+            throw new IllegalArgumentException();
+        }
+        if (length > 56) {
+            writeBits(bits >>> 32, length - 32);
+            writeBits(bits, 32);
+            return;
+        }
+        accumulator = (accumulator << length) | (bits & ((1L << length) - 1));
+        pending += length;
+        bitLength += length;
+        while (pending >= 8) {
+            pending -= 8;
+            put((byte) (accumulator >>> pending));
+        }
+    }
+
+    public void writeBit(boolean one) {
+        writeBits(one ? 1 : 0, 1);
+    }
+
+    /**
+     * @return the number of bits written so far
+     */
+    public long bitLength() {
+        return bitLength;
+    }
+
+    /**
+     * @return the packed bits, padded to a whole byte and followed by the padding trailer
+     */
+    public byte[] toByteArray() {
+        int padding = (8 - pending) & 7;
+        byte[] out = Arrays.copyOf(buffer, position + (pending > 0 ? 2 : 1));
+        if (pending > 0) {
+            out[position] = (byte) (accumulator << padding);
+        }
+        out[out.length - 1] = (byte) padding;
+        return out;
+    }
+
+    /**
+     * @return the number of whole bytes buffered since the last drain
+     */
+    public int bufferedBytes() {
+        return position;
+    }
+
+    /**
+     * Writes the whole bytes buffered so far to the stream. Bits that do not fill a byte yet stay
+     * in the accumulator.
+     *
+     * @param out the stream to write to
+     * @throws IOException if the stream fails
+     */
+    public void drainTo(OutputStream out) throws IOException {
+        out.write(buffer, 0, position);
+        position = 0;
+    }
+
+    /**
+     * Writes everything not drained yet, including the padded last byte and the padding trailer,
+     * leaving the stream in the layout of {@link #toByteArray()}, and resets the writer.
+     *
+     * @param out the stream to write to
+     * @throws IOException if the stream fails
+     */
+    public void finishTo(OutputStream out) throws IOException {
+        byte[] rest = toByteArray();
+        out.write(rest);
+        reset();
+    }
+
+    /**
+     * Discards everything written so far, keeping the allocated buffer.
+     */
+    public void reset() {
+        position = 0;
+        accumulator = 0;
+        pending = 0;
+        bitLength = 0;
+    }
+
+    private void put(byte b) {
+        if (position == buffer.length) {
+            buffer = Arrays.copyOf(buffer, buffer.length * 2);
+        }
+        buffer[position++] = b;
+    }
+
+    /**
+     * Packs a string of '0' and '1' characters.
+     *
+     * @param bits the bit string
+     * @return the packed form of the bits
+     * @throws IllegalArgumentException if bits is null or contains characters other than 0 and 1
+     */
+    public static byte[] fromBitString(String bits) {
+        if (bits == null) {
+            throw new IllegalArgumentException();
+        }
+        BitWriter writer = new BitWriter(bits.length() / 8 + 1);
+        for (int i = 0; i < bits.length(); i++) {
+            char c = bits.charAt(i);
+            if (c != '0' && c != '1') {
+                throw new IllegalArgumentException();
+            }
+            writer.writeBit(c == '1');
+        }
+        return writer.toByteArray();
+    }
+}
@@ -0,0 +1,65 @@
+import org.junit.Test;
+
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+public class BitWriterTest {
+
+    @Test
+    public void testWriteBitsMostSignificantFirst() {
+        BitWriter w = new BitWriter();
+        w.writeBits(0b101, 3);
+        w.writeBits(0b11, 2);
+        assertEquals(5, w.bitLength());
+        assertArrayEquals(new byte[]{(byte) 0b10111000, 3}, w.toByteArray());
+    }
+
+    @Test
+    public void testWholeBytesHaveZeroPadding() {
+        BitWriter w = new BitWriter(1);
+        w.writeBits(0xABCD, 16);
+        assertArrayEquals(new byte[]{(byte) 0xAB, (byte) 0xCD, 0}, w.toByteArray());
+    }
+
+    @Test
+    public void testLongCodesRoundTrip() {
+        BitWriter w = new BitWriter();
+        w.writeBits(1, 1);
+        w.writeBits(0x8000000000000001L, 64);
+        w.writeBits(0x123456789ABCDL, 50);
+        BitReader r = BitReader.packed(w.toByteArray());
+        assertEquals(115, r.remaining());
+        assertEquals(1, r.readBit());
+        assertEquals(0x8000000000000001L >>> 7, r.peekBits(57));
+        r.skipBits(57);
+        assertEquals(1, r.peekBits(7));
+        r.skipBits(7);
+        assertEquals(0x123456789ABCDL, r.peekBits(50));
+        r.skipBits(50);
+        assertFalse(r.hasRemaining());
+    }
+
+    @Test
+    public void testPeekPastEndReadsZero() {
+        BitReader r = BitReader.packed(BitWriter.fromBitString("11"));
+        assertEquals(0b1100, r.peekBits(4));
+    }
+
+    @Test
+    public void testBitStringRoundTrip() {
+        String bits = "0110100111010";
+        assertEquals(bits, BitReader.toBitString(BitWriter.fromBitString(bits)));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testSkipPastEnd() {
+        BitReader r = BitReader.packed(BitWriter.fromBitString("101"));
+        r.skipBits(4);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testFromBitStringRejectsOtherCharacters() {
+        BitWriter.fromBitString("0120");
+    }
+}
@@ -0,0 +1,217 @@
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.IntConsumer;
+
+/**
+ * Compresses large inputs as independent fixed-size blocks, encoded and decoded in parallel on a
+ * {@link ForkJoinPool} with one shared {@link Codebook}.
+ * <p/>
+ * The output starts with the block count and block size, followed by an index entry per block
+ * holding its byte offset into the data section, its length in bits and its number of characters.
+ * Every block starts on a byte boundary, so any one block can be decoded on its own with {@link
+ * #decompressBlock(byte[], int)}.
+ */
+public class BlockCompressor {
+
+    static final int DEFAULT_BLOCK_SIZE = 1 << 16;
+    static final int HEADER_BYTES = 8;
+    static final int INDEX_ENTRY_BYTES = 12;
+
+    private final Codebook codebook;
+    private final int blockSize;
+    private final ForkJoinPool pool;
+
+
+    public BlockCompressor(Codebook codebook) {
+        this(codebook, DEFAULT_BLOCK_SIZE, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * @param codebook  the codes shared by every block
+     * @param blockSize the number of characters per block
+     * @param pool      the pool to run block tasks on
+     * @throws IllegalArgumentException if codebook or pool is null, blockSize is not positive, or a
+     *                                  block's bit length could overflow an int
+     */
+    public BlockCompressor(Codebook codebook, int blockSize, ForkJoinPool pool) {
+        if (codebook == null || pool == null || blockSize < 1
+                || (long) blockSize * codebook.maxLength() > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException();
+        }
+        this.codebook = codebook;
+        this.blockSize = blockSize;
+        this.pool = pool;
+    }
+
+    /**
+     * @param input the characters to compress
+     * @return the block container
+     * @throws IllegalArgumentException if the input is null or contains a character without a code
+     */
+    public byte[] compress(CharSequence input) {
+        if (input == null) {
+            throw new IllegalArgumentException();
+        }
+        int blocks = (input.length() + blockSize - 1) / blockSize;
+        byte[][] encoded = new byte[blocks][];
+        long[] bitLengths = new long[blocks];
+        pool.invoke(new BlockTask(0, blocks, block -> {
+            int start = block * blockSize;
+            BitWriter bits = new BitWriter(blockSize / 4 + 8);
+            int end = start + symbolsIn(block, input.length());
+            codebook.encode(input.subSequence(start, end), bits);
+            encoded[block] = bits.toByteArray();
+            bitLengths[block] = bits.bitLength();
+        }));
+
+        long dataBytes = 0;
+        for (byte[] block : encoded) {
+            dataBytes += block.length - 1;
+        }
+        long total = HEADER_BYTES + (long) INDEX_ENTRY_BYTES * blocks + dataBytes;
+        if (total > Integer.MAX_VALUE - 8) {
+            throw new IllegalArgumentException();
+        }
+        ByteBuffer out = ByteBuffer.allocate((int) total);
+        out.putInt(blocks).putInt(blockSize);
+        int offset = 0;
+        for (int b = 0; b < blocks; b++) {
+            out.putInt(offset).putInt((int) bitLengths[b]).putInt(symbolsIn(b, input.length()));
+            offset += encoded[b].length - 1;
+        }
+        for (byte[] block : encoded) {
+            // drop the padding trailer, the index records the exact bit length
+            out.put(block, 0, block.length - 1);
+        }
+        return out.array();
+    }
+
+    private int symbolsIn(int block, int inputLength) {
+        return Math.min(blockSize, inputLength - block * blockSize);
+    }
+
+    /**
+     * @param container a block container produced by {@link #compress(CharSequence)}
+     * @return the decoded characters of every block
+     * @throws IllegalArgumentException if the container is null, malformed or not decodable
+     */
+    public String decompress(byte[] container) {
+        Index index = new Index(container);
+        long totalChars = 0;
+        for (int b = 0; b < index.blocks; b++) {
+            totalChars += index.symbols[b];
+        }
+        if (totalChars > Integer.MAX_VALUE - 8) {
+            throw new IllegalArgumentException();
+        }
+        char[] out = new char[(int) totalChars];
+        int[] starts = new int[index.blocks];
+        for (int b = 1; b < index.blocks; b++) {
+            starts[b] = starts[b - 1] + index.symbols[b - 1];
+        }
+        pool.invoke(new BlockTask(0, index.blocks, block -> {
+            String decoded = index.decode(container, codebook, block);
+            decoded.getChars(0, decoded.length(), out, starts[block]);
+        }));
+        return new String(out);
+    }
+
+    /**
+     * Decodes one block without touching the data of the others.
+     *
+     * @param container a block container produced by {@link #compress(CharSequence)}
+     * @param block     the index of the block to decode
+     * @return the decoded characters of that block
+     * @throws IllegalArgumentException if the container is malformed, the block does not exist or
+     *                                  is not decodable
+     */
+    public String decompressBlock(byte[] container, int block) {
+        Index index = new Index(container);
+        if (block < 0 || block >= index.blocks) {
+            throw new IllegalArgumentException();
+        }
+        return index.decode(container, codebook, block);
+    }
+
+    /**
+     * @param container a block container produced by {@link #compress(CharSequence)}
+     * @return the number of blocks in the container
+     * @throws IllegalArgumentException if the container is null or malformed
+     */
+    public static int blockCount(byte[] container) {
+        return new Index(container).blocks;
+    }
+
+    private static class Index {
+        final int blocks;
+        final int dataStart;
+        final int[] offsets, bitLengths, symbols;
+
+        Index(byte[] container) {
+            if (container == null) {
+                throw new IllegalArgumentException();
+            }
+            try {
+                ByteBuffer in = ByteBuffer.wrap(container);
+                blocks = in.getInt();
+                int blockSize = in.getInt();
+                if (blocks < 0 || blockSize < 1
+                        || blocks > (container.length - HEADER_BYTES) / INDEX_ENTRY_BYTES) {
+                    throw new IllegalArgumentException();
+                }
+                dataStart = HEADER_BYTES + INDEX_ENTRY_BYTES * blocks;
+                offsets = new int[blocks];
+                bitLengths = new int[blocks];
+                symbols = new int[blocks];
+                for (int b = 0; b < blocks; b++) {
+                    offsets[b] = in.getInt();
+                    bitLengths[b] = in.getInt();
+                    symbols[b] = in.getInt();
+                    long blockEnd = dataStart + (long) offsets[b] + (bitLengths[b] + 7L) / 8;
+                    if (offsets[b] < 0 || bitLengths[b] < 0 || symbols[b] < 0
+                            || symbols[b] > blockSize || blockEnd > container.length) {
+                        throw new IllegalArgumentException();
+                    }
+                }
+            } catch (BufferUnderflowException e) {
+                throw new IllegalArgumentException(e);
+            }
+        }
+
+        String decode(byte[] container, Codebook codebook, int block) {
+            StringBuilder out = new StringBuilder(symbols[block]);
+            int start = dataStart + offsets[block];
+            codebook.decode(new BitReader(container, start, bitLengths[block]), out);
+            if (out.length() != symbols[block]) {
+                throw new IllegalArgumentException();
+            }
+            return out.toString();
+        }
+    }
+
+    /**
+     * Runs the body for a range of blocks, splitting the range in halves across the pool.
+     */
+    private static class BlockTask extends RecursiveAction {
+        private final int from, to;
+        private final IntConsumer body;
+
+        BlockTask(int from, int to, IntConsumer body) {
+            this.from = from;
+            this.to = to;
+            this.body = body;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from == 1) {
+                body.accept(from);
+            } else if (to - from > 1) {
+                int mid = (from + to) >>> 1;
+                invokeAll(new BlockTask(from, mid, body), new BlockTask(mid, to, body));
+            }
+        }
+    }
+}
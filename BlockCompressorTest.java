@@ -0,0 +1,69 @@
+import org.junit.Test;
+
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.*;
+
+public class BlockCompressorTest {
+
+    private static final String SEED = "the quick brown fox jumps over the lazy dog";
+
+    private static String randomText(int length) {
+        Random random = new Random(121);
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < length; i++) {
+            sb.append(SEED.charAt(random.nextInt(SEED.length())));
+        }
+        return sb.toString();
+    }
+
+    @Test
+    public void testRoundTrip() {
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            BlockCompressor blocks = new BlockCompressor(new Huffman(SEED).codebook(), 1000, pool);
+            String text = randomText(123456);
+            byte[] container = blocks.compress(text);
+            assertEquals(124, BlockCompressor.blockCount(container));
+            assertEquals(text, blocks.decompress(container));
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void testDecompressSingleBlock() {
+        BlockCompressor blocks = new BlockCompressor(new Huffman(SEED).codebook(), 100, ForkJoinPool.commonPool());
+        String text = randomText(1050);
+        byte[] container = blocks.compress(text);
+        assertEquals(text.substring(300, 400), blocks.decompressBlock(container, 3));
+        assertEquals(text.substring(1000), blocks.decompressBlock(container, 10));
+    }
+
+    @Test
+    public void testEmptyInput() {
+        BlockCompressor blocks = new BlockCompressor(new Huffman(SEED).codebook());
+        byte[] container = blocks.compress("");
+        assertEquals(0, BlockCompressor.blockCount(container));
+        assertEquals("", blocks.decompress(container));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testBlockOutOfRange() {
+        BlockCompressor blocks = new BlockCompressor(new Huffman(SEED).codebook());
+        blocks.decompressBlock(blocks.compress("the dog"), 1);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testTruncatedContainer() {
+        BlockCompressor blocks = new BlockCompressor(new Huffman(SEED).codebook(), 10, ForkJoinPool.commonPool());
+        byte[] container = blocks.compress(randomText(100));
+        blocks.decompress(Arrays.copyOf(container, container.length - 5));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testUncompressibleCharacter() {
+        new BlockCompressor(new Huffman(SEED).codebook()).compress("the cat!");
+    }
+}
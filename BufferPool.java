@@ -0,0 +1,178 @@
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A pool of direct {@link ByteBuffer}s, kept in power-of-two size classes so that released buffers
+ * can serve any later request of up to their size. Direct buffers live outside the Java heap, so
+ * what the pool holds costs the collector nothing to trace; reusing them also avoids the slow
+ * allocation and deferred freeing of direct memory.
+ * <p/>
+ * The pool keeps at most a fixed number of bytes of released buffers. Buffers released beyond
+ * that are dropped and freed by the collector as usual. The pool remembers, by identity and
+ * without keeping them alive, which buffers it has handed out, so buffers it did not hand out
+ * (including slices and duplicates of ones it did) and buffers released twice are never pooled.
+ * All methods are thread-safe.
+ */
+public final class BufferPool {
+
+    static final int MIN_CLASS = 6;
+    // the smallest buffer handed out is 64 bytes
+    static final int MAX_CLASS = 30;
+    static final long DEFAULT_RETAINED_BYTES = 64L << 20;
+
+    private static final BufferPool SHARED = new BufferPool(DEFAULT_RETAINED_BYTES);
+
+    private final List<ArrayDeque<ByteBuffer>> free;
+    // indexed by size class
+    private final Map<Integer, Issued> issued = new HashMap<>();
+    // buffers handed out and not yet released, by identity hash, chained on collisions
+    private final ReferenceQueue<ByteBuffer> collected = new ReferenceQueue<>();
+    private final long maxRetainedBytes;
+    private long retainedBytes;
+
+
+    /**
+     * @param maxRetainedBytes how many bytes of released buffers to keep for reuse
+     * @throws IllegalArgumentException if maxRetainedBytes is negative
+     */
+    public BufferPool(long maxRetainedBytes) {
+        if (maxRetainedBytes < 0) {
+            throw new IllegalArgumentException();
+        }
+        this.maxRetainedBytes = maxRetainedBytes;
+        free = new ArrayList<>(MAX_CLASS + 1);
+        for (int c = 0; c <= MAX_CLASS; c++) {
+            free.add(c < MIN_CLASS ? null : new ArrayDeque<>());
+        }
+    }
+
+    /**
+     * A buffer handed out, weakly held so that one never released is still freed.
+     */
+    private static final class Issued extends WeakReference<ByteBuffer> {
+        final int hash;
+        Issued next;
+
+        Issued(ByteBuffer buffer, int hash, Issued next, ReferenceQueue<ByteBuffer> queue) {
+            super(buffer, queue);
+            this.hash = hash;
+            this.next = next;
+        }
+    }
+
+    /**
+     * @return the pool shared by codecs that are not given one, retaining up to 64 MiB
+     */
+    public static BufferPool shared() {
+        return SHARED;
+    }
+
+    /**
+     * @param size the number of bytes needed
+     * @return a direct, big-endian buffer with position 0 and limit size, whose capacity may be
+     *         larger; its contents are undefined
+     * @throws IllegalArgumentException if size is negative or above 2^30
+     */
+    public ByteBuffer acquire(int size) {
+        int sizeClass = sizeClass(size);
+        ByteBuffer buffer;
+        synchronized (this) {
+            buffer = free.get(sizeClass).pollLast();
+            if (buffer != null) {
+                retainedBytes -= buffer.capacity();
+            }
+        }
+        if (buffer == null) {
+            buffer = ByteBuffer.allocateDirect(1 << sizeClass);
+        }
+        synchronized (this) {
+            expunge();
+            int hash = System.identityHashCode(buffer);
+            issued.put(hash, new Issued(buffer, hash, issued.get(hash), collected));
+        }
+        buffer.clear().limit(size);
+        return buffer.order(ByteOrder.BIG_ENDIAN);
+    }
+
+    /**
+     * Returns a buffer for reuse. The caller must not touch it, or any view of it, afterwards.
+     *
+     * @param buffer a buffer from {@link #acquire(int)}; others, and buffers already released, are
+     *               ignored
+     * @throws IllegalArgumentException if buffer is null
+     */
+    public void release(ByteBuffer buffer) {
+        if (buffer == null) {
+            throw new IllegalArgumentException();
+        }
+        int capacity = buffer.capacity();
+        synchronized (this) {
+            expunge();
+            int hash = System.identityHashCode(buffer);
+            Issued previous = null;
+            Issued entry = issued.get(hash);
+            while (entry != null && entry.get() != buffer) {
+                previous = entry;
+                entry = entry.next;
+            }
+            if (entry == null) {
+                return;
+            }
+            unlink(previous, entry);
+            if (retainedBytes + capacity <= maxRetainedBytes) {
+                free.get(Integer.numberOfTrailingZeros(capacity)).addLast(buffer);
+                retainedBytes += capacity;
+            }
+        }
+    }
+
+    /**
+     * Forgets the buffers handed out that were collected without being released.
+     */
+    private void expunge() {
+        for (Reference<? extends ByteBuffer> r; (r = collected.poll()) != null; ) {
+            Issued dead = (Issued) r;
+            Issued previous = null;
+            Issued entry = issued.get(dead.hash);
+            while (entry != null && entry != dead) {
+                previous = entry;
+                entry = entry.next;
+            }
+            if (entry != null) {
+                unlink(previous, entry);
+            }
+        }
+    }
+
+    private void unlink(Issued previous, Issued entry) {
+        if (previous != null) {
+            previous.next = entry.next;
+        } else if (entry.next != null) {
+            issued.put(entry.hash, entry.next);
+        } else {
+            issued.remove(entry.hash);
+        }
+    }
+
+    /**
+     * @return the total capacity of the buffers held for reuse
+     */
+    public synchronized long retainedBytes() {
+        return retainedBytes;
+    }
+
+    private static int sizeClass(int size) {
+        if (size < 0 || size > 1 << MAX_CLASS) {
+            throw new IllegalArgumentException();
+        }
+        return size <= 1 << MIN_CLASS ? MIN_CLASS : 32 - Integer.numberOfLeadingZeros(size - 1);
+    }
+}
@@ -0,0 +1,298 @@
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+
+/**
+ * Encodes whole arrays of byte or char symbols at once with a {@link Codebook}'s codes laid out in
+ * flat primitive tables indexed by symbol value. The tables stop at the codebook's largest symbol,
+ * so they cost 9 bytes per symbol value up to it rather than per possible char.
+ * <p/>
+ * A first pass, {@link #measure}, sums the code lengths, which both sizes the output exactly and
+ * checks every symbol has a code with a branch-free accumulate, so the second pass, {@link #pack},
+ * needs no checks at all. That pass packs codes into a left-aligned 64-bit accumulator and stores
+ * it as one big-endian word, then advances by the whole bytes it held. As many codes as are
+ * guaranteed to fit in 56 bits are added between stores, four at a time for codes up to 14 bits,
+ * which covers typical byte alphabets. Codebooks with codes longer than 56 bits are packed a byte
+ * at a time, with each long code added in two halves.
+ * <p/>
+ * {@link #pack} starts at any bit offset of an existing array, so callers that lay several inputs
+ * end to end, or stream output through a fixed buffer, share this one packing loop.
+ */
+public final class BulkEncoder {
+
+    private static final VarHandle WORDS =
+            MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.BIG_ENDIAN);
+    private static final int WORD_BITS = 56;
+    // codes added between stores; keeps the accumulator below 64 bits with up to 7 left over
+
+    private final long[] codes;
+    private final byte[] lengths;
+    // indexed by symbol up to the largest, 0 where the symbol has no code
+    private final int maxSymbol;
+    private final int perWord;
+
+
+    /**
+     * @param codebook a codebook whose symbols are all below 65536
+     * @throws IllegalArgumentException if the codebook is null or has a larger symbol
+     */
+    public BulkEncoder(Codebook codebook) {
+        if (codebook == null || codebook.symbol(codebook.size() - 1) > 0xFFFF) {
+            throw new IllegalArgumentException();
+        }
+        maxSymbol = codebook.symbol(codebook.size() - 1);
+        codes = new long[maxSymbol + 1];
+        lengths = new byte[maxSymbol + 1];
+        for (int i = 0; i < codebook.size(); i++) {
+            codes[codebook.symbol(i)] = codebook.code(i);
+            lengths[codebook.symbol(i)] = (byte) codebook.length(i);
+        }
+        perWord = WORD_BITS / codebook.maxLength();
+    }
+
+    /**
+     * @param input  the array holding the bytes to encode, each an unsigned symbol 0-255
+     * @param offset index of the first byte
+     * @param length number of bytes
+     * @return the packed encoding, in the layout of {@link BitWriter#toByteArray()}
+     * @throws IllegalArgumentException if the range is out of bounds or a byte has no code
+     */
+    public byte[] encode(byte[] input, int offset, int length) {
+        if (input == null || offset < 0 || length < 0 || offset + length > input.length) {
+            throw new IllegalArgumentException();
+        }
+        long totalBits = measure(input, offset, offset + length);
+        byte[] out = allocate(totalBits);
+        pack(input, offset, offset + length, out, 0);
+        out[out.length - 1] = (byte) ((8 - totalBits) & 7);
+        return out;
+    }
+
+    /**
+     * @param input the characters to encode
+     * @return the packed encoding, in the layout of {@link BitWriter#toByteArray()}
+     * @throws IllegalArgumentException if the input is null or a character has no code
+     */
+    public byte[] encode(CharSequence input) {
+        if (input == null) {
+            throw new IllegalArgumentException();
+        }
+        long totalBits = measure(input, 0, input.length());
+        byte[] out = allocate(totalBits);
+        pack(input, 0, input.length(), out, 0);
+        out[out.length - 1] = (byte) ((8 - totalBits) & 7);
+        return out;
+    }
+
+    /**
+     * @return an array for the data bytes and the trailer
+     */
+    private static byte[] allocate(long totalBits) {
+        long dataBytes = (totalBits + 7) >>> 3;
+        if (dataBytes > Integer.MAX_VALUE - 9) {
+            throw new IllegalArgumentException();
+        }
+        return new byte[(int) dataBytes + 1];
+    }
+
+    /**
+     * @param input the array holding the bytes, each an unsigned symbol 0-255
+     * @param from  index of the first byte
+     * @param to    index after the last byte
+     * @return the number of bits the bytes code to
+     * @throws IllegalArgumentException if a byte has no code
+     */
+    long measure(byte[] input, int from, int to) {
+        long totalBits = 0;
+        int missing = 0;
+        for (int i = from; i < to; i++) {
+            int s = input[i] & 0xFF;
+            int codeLength = lengths[Math.min(s, maxSymbol)];
+            totalBits += codeLength;
+            missing |= (codeLength - 1) | (maxSymbol - s);
+        }
+        if (missing < 0) {
+            throw new IllegalArgumentException();
+        }
+        return totalBits;
+    }
+
+    /**
+     * @param input the characters
+     * @param from  index of the first character
+     * @param to    index after the last character
+     * @return the number of bits the characters code to
+     * @throws IllegalArgumentException if a character has no code
+     */
+    long measure(CharSequence input, int from, int to) {
+        long totalBits = 0;
+        int missing = 0;
+        for (int i = from; i < to; i++) {
+            char c = input.charAt(i);
+            int codeLength = lengths[Math.min(c, maxSymbol)];
+            totalBits += codeLength;
+            missing |= (codeLength - 1) | (maxSymbol - c);
+        }
+        if (missing < 0) {
+            throw new IllegalArgumentException();
+        }
+        return totalBits;
+    }
+
+    /**
+     * Packs the codes of bytes {@link #measure(byte[], int, int)} accepted into an array, starting
+     * at a bit offset. Bits before the offset are kept. Bytes after the last one written may be
+     * overwritten with zeros, so the array needs no slack beyond the packed bits, but must not hold
+     * anything else there.
+     *
+     * @param input     the array holding the bytes, each an unsigned symbol 0-255 with a code
+     * @param from      index of the first byte
+     * @param to        index after the last byte
+     * @param out       the array to pack into, with room for the measured bits
+     * @param bitOffset the bit of out to start at, counting from the top bit of out[0]
+     * @return the bit offset just past the packed codes
+     */
+    long pack(byte[] input, int from, int to, byte[] out, long bitOffset) {
+        int pos = (int) (bitOffset >>> 3);
+        int bits = (int) bitOffset & 7;
+        long acc = bits == 0 ? 0 : (long) (out[pos] & 0xFF00 >>> bits) << 56;
+        // acc holds bits not yet stored, left-aligned; out[pos] is the first byte they go to
+        int i = from;
+        int lastWord = out.length - 8;
+        if (perWord >= 4) {
+            for (; i + 4 <= to && pos <= lastWord; i += 4) {
+                int s0 = input[i] & 0xFF;
+                int s1 = input[i + 1] & 0xFF;
+                int s2 = input[i + 2] & 0xFF;
+                int s3 = input[i + 3] & 0xFF;
+                bits += lengths[s0];
+                acc |= codes[s0] << (64 - bits);
+                bits += lengths[s1];
+                acc |= codes[s1] << (64 - bits);
+                bits += lengths[s2];
+                acc |= codes[s2] << (64 - bits);
+                bits += lengths[s3];
+                acc |= codes[s3] << (64 - bits);
+                WORDS.set(out, pos, acc);
+                pos += bits >>> 3;
+                acc <<= bits & ~7;
+                bits &= 7;
+            }
+        }
+        if (perWord > 0) {
+            for (; i + perWord <= to && pos <= lastWord; i += perWord) {
+                for (int k = i; k < i + perWord; k++) {
+                    int s = input[k] & 0xFF;
+                    bits += lengths[s];
+                    acc |= codes[s] << (64 - bits);
+                }
+                WORDS.set(out, pos, acc);
+                pos += bits >>> 3;
+                acc <<= bits & ~7;
+                bits &= 7;
+            }
+        }
+        for (; i < to; i++) {
+            int s = input[i] & 0xFF;
+            long code = codes[s];
+            int length = lengths[s];
+            if (length > 32) {
+                bits += length - 32;
+                acc |= (code >>> 32) << (64 - bits);
+                for (; bits >= 8; bits -= 8) {
+                    out[pos++] = (byte) (acc >>> 56);
+                    acc <<= 8;
+                }
+                code &= 0xFFFFFFFFL;
+                length = 32;
+            }
+            bits += length;
+            acc |= code << (64 - bits);
+            for (; bits >= 8; bits -= 8) {
+                out[pos++] = (byte) (acc >>> 56);
+                acc <<= 8;
+            }
+        }
+        if (bits > 0) {
+            out[pos] = (byte) (acc >>> 56);
+        }
+        return (long) pos * 8 + bits;
+    }
+
+    /**
+     * Packs the codes of characters {@link #measure(CharSequence, int, int)} accepted, as {@link
+     * #pack(byte[], int, int, byte[], long)} does.
+     *
+     * @param input     the characters, each with a code
+     * @param from      index of the first character
+     * @param to        index after the last character
+     * @param out       the array to pack into, with room for the measured bits
+     * @param bitOffset the bit of out to start at, counting from the top bit of out[0]
+     * @return the bit offset just past the packed codes
+     */
+    long pack(CharSequence input, int from, int to, byte[] out, long bitOffset) {
+        int pos = (int) (bitOffset >>> 3);
+        int bits = (int) bitOffset & 7;
+        long acc = bits == 0 ? 0 : (long) (out[pos] & 0xFF00 >>> bits) << 56;
+        int i = from;
+        int lastWord = out.length - 8;
+        if (perWord >= 4) {
+            for (; i + 4 <= to && pos <= lastWord; i += 4) {
+                char s0 = input.charAt(i);
+                char s1 = input.charAt(i + 1);
+                char s2 = input.charAt(i + 2);
+                char s3 = input.charAt(i + 3);
+                bits += lengths[s0];
+                acc |= codes[s0] << (64 - bits);
+                bits += lengths[s1];
+                acc |= codes[s1] << (64 - bits);
+                bits += lengths[s2];
+                acc |= codes[s2] << (64 - bits);
+                bits += lengths[s3];
+                acc |= codes[s3] << (64 - bits);
+                WORDS.set(out, pos, acc);
+                pos += bits >>> 3;
+                acc <<= bits & ~7;
+                bits &= 7;
+            }
+        }
+        if (perWord > 0) {
+            for (; i + perWord <= to && pos <= lastWord; i += perWord) {
+                for (int k = i; k < i + perWord; k++) {
+                    char s = input.charAt(k);
+                    bits += lengths[s];
+                    acc |= codes[s] << (64 - bits);
+                }
+                WORDS.set(out, pos, acc);
+                pos += bits >>> 3;
+                acc <<= bits & ~7;
+                bits &= 7;
+            }
+        }
+        for (; i < to; i++) {
+            char s = input.charAt(i);
+            long code = codes[s];
+            int length = lengths[s];
+            if (length > 32) {
+                bits += length - 32;
+                acc |= (code >>> 32) << (64 - bits);
+                for (; bits >= 8; bits -= 8) {
+                    out[pos++] = (byte) (acc >>> 56);
+                    acc <<= 8;
+                }
+                code &= 0xFFFFFFFFL;
+                length = 32;
+            }
+            bits += length;
+            acc |= code << (64 - bits);
+            for (; bits >= 8; bits -= 8) {
+                out[pos++] = (byte) (acc >>> 56);
+                acc <<= 8;
+            }
+        }
+        if (bits > 0) {
+            out[pos] = (byte) (acc >>> 56);
+        }
+        return (long) pos * 8 + bits;
+    }
+}
@@ -0,0 +1,135 @@
+import org.junit.Test;
+
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+public class BulkEncoderTest {
+
+    private static byte[] reference(Codebook codebook, byte[] input) {
+        BitWriter out = new BitWriter(16);
+        codebook.encode(input, 0, input.length, out);
+        return out.toByteArray();
+    }
+
+    private static byte[] reference(Codebook codebook, String input) {
+        BitWriter out = new BitWriter(16);
+        codebook.encode(input, out);
+        return out.toByteArray();
+    }
+
+    /**
+     * A complete code with lengths 1, 2, ..., n - 1, n - 1.
+     */
+    private static Codebook skewed(int n, int base) {
+        int[] symbols = new int[n];
+        int[] lengths = new int[n];
+        for (int i = 0; i < n; i++) {
+            symbols[i] = base + i;
+            lengths[i] = Math.min(i + 1, n - 1);
+        }
+        return Codebook.canonical(symbols, lengths);
+    }
+
+    @Test
+    public void testMatchesBitWriterForEveryWordPacking() {
+        Random random = new Random(121);
+        // maximum code lengths that pack 4, 3, 2, 1 and 0 (fallback) codes per word
+        for (int n : new int[]{8, 15, 19, 29, 58}) {
+            Codebook codebook = skewed(n, 0);
+            for (int length : new int[]{0, 1, 3, 7, 8, 9, 63, 1000}) {
+                byte[] input = new byte[length];
+                for (int i = 0; i < length; i++) {
+                    input[i] = (byte) (random.nextBoolean() ? n - 1 : random.nextInt(n));
+                }
+                assertArrayEquals(reference(codebook, input), new BulkEncoder(codebook).encode(input, 0, length));
+            }
+        }
+    }
+
+    @Test
+    public void testCharsMatchBitWriter() {
+        Random random = new Random(121);
+        for (int base : new int[]{'a', 0x3000}) {
+            Codebook codebook = skewed(30, base);
+            StringBuilder sb = new StringBuilder();
+            for (int i = 0; i < 5000; i++) {
+                sb.append((char) (base + random.nextInt(30)));
+            }
+            String input = sb.toString();
+            assertArrayEquals(reference(codebook, input), new BulkEncoder(codebook).encode(input));
+            assertEquals(input, codebook.decompress(codebook.compress(input)));
+        }
+    }
+
+    @Test
+    public void testRange() {
+        Codebook codebook = skewed(4, 0);
+        byte[] input = {9, 0, 1, 2, 3, 9};
+        assertArrayEquals(reference(codebook, new byte[]{0, 1, 2, 3}),
+                new BulkEncoder(codebook).encode(input, 1, 4));
+    }
+
+    @Test
+    public void testPackAtBitOffsets() {
+        Random random = new Random(7);
+        for (int n : new int[]{8, 29, 58}) {
+            Codebook codebook = skewed(n, 0);
+            BulkEncoder encoder = new BulkEncoder(codebook);
+            byte[] input = new byte[300];
+            for (int i = 0; i < input.length; i++) {
+                input[i] = (byte) random.nextInt(n);
+            }
+            byte[] whole = encoder.encode(input, 0, input.length);
+            // pack in uneven pieces, each continuing where the last left off
+            byte[] out = new byte[whole.length - 1];
+            long bit = 0;
+            for (int from = 0, step = 1; from < input.length; from += step, step = step * 2 + 1) {
+                int to = Math.min(input.length, from + step);
+                long measured = encoder.measure(input, from, to);
+                assertEquals(bit + measured, encoder.pack(input, from, to, out, bit));
+                bit += measured;
+            }
+            assertArrayEquals(Arrays.copyOf(whole, out.length), out);
+
+            StringBuilder chars = new StringBuilder();
+            for (byte b : input) {
+                chars.append((char) b);
+            }
+            Arrays.fill(out, (byte) 0);
+            bit = encoder.pack(chars, 0, 100, out, 0);
+            encoder.pack(chars, 100, chars.length(), out, bit);
+            assertArrayEquals(Arrays.copyOf(whole, out.length), out);
+        }
+    }
+
+    @Test
+    public void testCharsAboveTable() {
+        Codebook codebook = Codebook.canonical(new int[]{'a', 'b', 0x201C}, new int[]{1, 2, 2});
+        BulkEncoder encoder = new BulkEncoder(codebook);
+        StringBuilder input = new StringBuilder("ab\u201cba");
+        assertArrayEquals(reference(codebook, input.toString()), encoder.encode(input));
+        for (String bad : new String[]{"a\u201d", "a\u201b", "\uffffa", "c"}) {
+            try {
+                encoder.encode(bad);
+                fail();
+            } catch (IllegalArgumentException expected) {
+            }
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testByteWithoutCode() {
+        new BulkEncoder(skewed(4, 0)).encode(new byte[]{0, 1, 4, 2}, 0, 4);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testCharOutsideByteTable() {
+        new BulkEncoder(skewed(4, 'a')).encode("ab\u0161");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testSymbolsAboveCharRange() {
+        new BulkEncoder(new Huffman("a\uD83D\uDE00b", Alphabet.CODE_POINTS).codebook());
+    }
+}
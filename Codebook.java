@@ -0,0 +1,664 @@
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+
+/**
+ * An immutable prefix code over integer symbols, holding each symbol's code word and length and the
+ * tables to decode them.
+ * <p/>
+ * A canonical codebook assigns code words from the code lengths alone: symbols are ordered by code
+ * length and then by symbol, and each code is the previous code plus one, shifted left whenever the
+ * length grows. Such a codebook is fully described by its lengths, which {@link #toHeader()}
+ * serializes compactly and {@link #fromHeader(byte[])} turns back into a working decoder. Since
+ * codes of one length are consecutive, a canonical codebook also keeps the first code and symbol
+ * count of each length, which decode a code with one subtraction per candidate length.
+ * <p/>
+ * Encoding finds each symbol's code through a table indexed by the symbol's high and low bytes, so
+ * a sparse alphabet only pays for the 256 symbol pages it touches.
+ */
+public final class Codebook {
+
+    static final int MAX_LENGTH = 64;
+    private static final int[] EMPTY_PAGE = new int[256];
+
+    private final int[] symbols;
+    // ascending
+    private final long[] codes;
+    private final int[] lengths;
+    private final boolean canonical;
+    private final int maxLength;
+    private final DecodeTable decodeTable;
+    private final long[] byteCodes;
+    private final int[] byteLengths;
+    // indexed by byte value, length 0 where the byte has no code
+    private final int[][] indexPages;
+    // index + 1 of each symbol by symbol >>> 8 and symbol & 0xFF, 0 where it has no code; null
+    // when symbols go past Unicode and are found by binary search instead
+    private final long[] firstCode;
+    private final int[] firstIndex;
+    private final int[] lengthCount;
+    // per length, the first canonical code, where its symbols start in byCode and how many there
+    // are; null unless canonical
+    private final int[] byCode;
+    // symbols ordered by length and then symbol, that is by canonical code
+    private volatile BulkEncoder bulkEncoder;
+    // built on first use
+
+
+    private Codebook(int[] symbols, long[] codes, int[] lengths, boolean canonical) {
+        this(symbols, codes, lengths, canonical, FlatTree.fromCodes(symbols, codes, lengths));
+    }
+
+    private Codebook(int[] symbols, long[] codes, int[] lengths, boolean canonical, FlatTree tree) {
+        this.symbols = symbols;
+        this.codes = codes;
+        this.lengths = lengths;
+        this.canonical = canonical;
+        int max = 0;
+        for (int length : lengths) {
+            max = Math.max(max, length);
+        }
+        this.maxLength = max;
+        this.decodeTable = new DecodeTable(tree);
+        byteCodes = new long[256];
+        byteLengths = new int[256];
+        for (int i = 0; i < symbols.length && symbols[i] < 256; i++) {
+            byteCodes[symbols[i]] = codes[i];
+            byteLengths[symbols[i]] = lengths[i];
+        }
+        int maxSymbol = symbols[symbols.length - 1];
+        if (maxSymbol <= Character.MAX_CODE_POINT) {
+            indexPages = new int[(maxSymbol >>> 8) + 1][];
+            Arrays.fill(indexPages, EMPTY_PAGE);
+            for (int i = 0; i < symbols.length; i++) {
+                int page = symbols[i] >>> 8;
+                if (indexPages[page] == EMPTY_PAGE) {
+                    indexPages[page] = new int[256];
+                }
+                indexPages[page][symbols[i] & 0xFF] = i + 1;
+            }
+        } else {
+            indexPages = null;
+        }
+        if (canonical) {
+            firstCode = new long[MAX_LENGTH + 1];
+            firstIndex = new int[MAX_LENGTH + 2];
+            lengthCount = new int[MAX_LENGTH + 1];
+            for (int length : lengths) {
+                lengthCount[length]++;
+            }
+            for (int length = 1; length <= MAX_LENGTH; length++) {
+                firstIndex[length + 1] = firstIndex[length] + lengthCount[length];
+            }
+            byCode = new int[symbols.length];
+            int[] next = firstIndex.clone();
+            for (int i = 0; i < symbols.length; i++) {
+                int at = next[lengths[i]]++;
+                byCode[at] = symbols[i];
+                if (at == firstIndex[lengths[i]]) {
+                    firstCode[lengths[i]] = codes[i];
+                }
+            }
+        } else {
+            firstCode = null;
+            firstIndex = null;
+            lengthCount = null;
+            byCode = null;
+        }
+    }
+
+    /**
+     * Builds a codebook from the codes of a tree, which then also serves as the decoder's fallback
+     * for long codes.
+     *
+     * @param tree a code tree no deeper than 64
+     * @return the codebook
+     * @throws IllegalArgumentException if the tree is null, deeper than 64 or repeats a symbol
+     */
+    public static Codebook fromTree(FlatTree tree) {
+        if (tree == null) {
+            throw new IllegalArgumentException();
+        }
+        int[] symbols = new int[tree.leafCount()];
+        long[] codes = new long[symbols.length];
+        int[] lengths = new int[symbols.length];
+        tree.codes(symbols, codes, lengths);
+        Integer[] order = sortedBySymbol(symbols);
+        int[] s = new int[symbols.length];
+        long[] c = new long[symbols.length];
+        int[] l = new int[symbols.length];
+        for (int i = 0; i < order.length; i++) {
+            s[i] = symbols[order[i]];
+            c[i] = codes[order[i]];
+            l[i] = lengths[order[i]];
+            if (l[i] > MAX_LENGTH) {
+                throw new IllegalArgumentException();
+            }
+        }
+        return new Codebook(s, c, l, false, tree);
+    }
+
+    /**
+     * Builds a codebook from explicit code words, such as those read off a Huffman tree.
+     *
+     * @param symbols the symbols, in any order and without duplicates
+     * @param codes   the code word of each symbol, right-aligned
+     * @param lengths the code length of each symbol, between 1 and 64
+     * @return the codebook
+     * @throws IllegalArgumentException if the arrays are null or differ in size, a symbol is
+     *                                  repeated or negative, or the codes are not prefix free
+     */
+    public static Codebook fromCodes(int[] symbols, long[] codes, int[] lengths) {
+        if (symbols == null || codes == null || lengths == null || symbols.length != codes.length
+                || symbols.length != lengths.length) {
+            throw new IllegalArgumentException();
+        }
+        Integer[] order = sortedBySymbol(symbols);
+        int[] s = new int[symbols.length];
+        long[] c = new long[symbols.length];
+        int[] l = new int[symbols.length];
+        for (int i = 0; i < order.length; i++) {
+            s[i] = symbols[order[i]];
+            c[i] = codes[order[i]];
+            l[i] = lengths[order[i]];
+        }
+        return new Codebook(s, c, l, false);
+    }
+
+    /**
+     * Builds the canonical codebook for the given code lengths.
+     *
+     * @param symbols the symbols, in any order and without duplicates
+     * @param lengths the code length of each symbol, between 1 and 64
+     * @return the canonical codebook
+     * @throws IllegalArgumentException if the arrays are null or differ in size, a symbol is
+     *                                  repeated or negative, or the lengths cannot form a prefix
+     *                                  code
+     */
+    public static Codebook canonical(int[] symbols, int[] lengths) {
+        if (symbols == null || lengths == null || symbols.length != lengths.length) {
+            throw new IllegalArgumentException();
+        }
+        Integer[] order = sortedBySymbol(symbols);
+        int[] s = new int[symbols.length];
+        int[] l = new int[symbols.length];
+        for (int i = 0; i < order.length; i++) {
+            s[i] = symbols[order[i]];
+            l[i] = lengths[order[i]];
+            if (l[i] < 1 || l[i] > MAX_LENGTH) {
+                throw new IllegalArgumentException();
+            }
+        }
+        return new Codebook(s, assignCanonical(l), l, true);
+    }
+
+    /**
+     * Builds the canonical Huffman codebook of a frequency table, limiting codes to {@link
+     * #MAX_LENGTH} bits with {@link PackageMerge} when the tree is deeper.
+     *
+     * @param symbols at least 2 distinct symbols in ascending order
+     * @param counts  the frequency of each symbol
+     * @return the canonical codebook
+     */
+    static Codebook fromCounts(int[] symbols, long[] counts) {
+        int[] lengths = HuffmanTreeBuilder.depths(HuffmanTreeBuilder.build(counts), counts.length);
+        for (int length : lengths) {
+            if (length > MAX_LENGTH) {
+                lengths = PackageMerge.codeLengths(counts, MAX_LENGTH);
+                break;
+            }
+        }
+        return canonical(symbols, lengths);
+    }
+
+    private static Integer[] sortedBySymbol(int[] symbols) {
+        Integer[] order = new Integer[symbols.length];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> Integer.compare(symbols[a], symbols[b]));
+        for (int i = 0; i < order.length; i++) {
+            if (symbols[order[i]] < 0 || (i > 0 && symbols[order[i]] == symbols[order[i - 1]])) {
+                throw new IllegalArgumentException();
+            }
+        }
+        return order;
+    }
+
+    /**
+     * Assigns canonical code words to lengths listed in symbol order.
+     */
+    private static long[] assignCanonical(int[] lengths) {
+        int[] countPerLength = new int[MAX_LENGTH + 1];
+        for (int length : lengths) {
+            countPerLength[length]++;
+        }
+        long[] nextCode = new long[MAX_LENGTH + 1];
+        long code = 0;
+        long available = 1;
+        // unused code words at the current length, capped once it exceeds the symbol count
+        for (int length = 1; length <= MAX_LENGTH; length++) {
+            code = (code + countPerLength[length - 1]) << 1;
+            nextCode[length] = code;
+            available = Math.min(2 * available, lengths.length) - countPerLength[length];
+            if (available < 0) {
+                throw new IllegalArgumentException();
+            }
+        }
+        long[] codes = new long[lengths.length];
+        for (int i = 0; i < lengths.length; i++) {
+            codes[i] = nextCode[lengths[i]]++;
+        }
+        return codes;
+    }
+
+    /**
+     * Serializes the code lengths of a canonical codebook. The header is a varint symbol count
+     * followed by one varint per symbol, in ascending symbol order, holding the gap since the
+     * previous symbol shifted left by six bits plus the code length minus one. Dense alphabets
+     * therefore cost one byte per symbol.
+     *
+     * @return the header bytes
+     * @throws IllegalStateException if this codebook is not canonical
+     */
+    public byte[] toHeader() {
+        if (!canonical) {
+            throw new IllegalStateException();
+        }
+        ByteBuffer out = ByteBuffer.allocate(6 * (symbols.length + 1));
+        putVarint(out, symbols.length);
+        int previous = -1;
+        for (int i = 0; i < symbols.length; i++) {
+            putVarint(out, (symbols[i] - previous - 1L) << 6 | (lengths[i] - 1));
+            previous = symbols[i];
+        }
+        return Arrays.copyOf(out.array(), out.position());
+    }
+
+    /**
+     * Reads a codebook serialized by {@link #toHeader()}.
+     *
+     * @param header the header bytes
+     * @return the canonical codebook
+     * @throws IllegalArgumentException if the header is null or malformed
+     */
+    public static Codebook fromHeader(byte[] header) {
+        if (header == null) {
+            throw new IllegalArgumentException();
+        }
+        ByteBuffer in = ByteBuffer.wrap(header);
+        Codebook codebook = fromHeader(in);
+        if (in.hasRemaining()) {
+            throw new IllegalArgumentException();
+        }
+        return codebook;
+    }
+
+    /**
+     * Reads a codebook serialized by {@link #toHeader()} at the buffer's position, leaving the
+     * position just past the header.
+     *
+     * @param in the buffer to read
+     * @return the canonical codebook
+     * @throws IllegalArgumentException if the header is null or malformed
+     */
+    public static Codebook fromHeader(ByteBuffer in) {
+        if (in == null) {
+            throw new IllegalArgumentException();
+        }
+        try {
+            long count = getVarint(in);
+            if (count < 1 || count > in.remaining()) {
+                throw new IllegalArgumentException();
+            }
+            int[] symbols = new int[(int) count];
+            int[] lengths = new int[symbols.length];
+            long previous = -1;
+            for (int i = 0; i < symbols.length; i++) {
+                long value = getVarint(in);
+                long symbol = previous + 1 + (value >>> 6);
+                if (symbol > Integer.MAX_VALUE) {
+                    throw new IllegalArgumentException();
+                }
+                symbols[i] = (int) symbol;
+                lengths[i] = (int) (value & 63) + 1;
+                previous = symbol;
+            }
+            return canonical(symbols, lengths);
+        } catch (BufferUnderflowException e) {
+            throw new IllegalArgumentException(e);
+        }
+    }
+
+    static void putVarint(ByteBuffer out, long value) {
+        while ((value & ~0x7FL) != 0) {
+            out.put((byte) (value & 0x7F | 0x80));
+            value >>>= 7;
+        }
+        out.put((byte) value);
+    }
+
+    static long getVarint(ByteBuffer in) {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = in.get();
+            value |= (b & 0x7FL) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+        throw new IllegalArgumentException();
+    }
+
+    /**
+     * @return the number of symbols
+     */
+    public int size() {
+        return symbols.length;
+    }
+
+    /**
+     * @return whether the code words are the canonical ones for their lengths
+     */
+    public boolean isCanonical() {
+        return canonical;
+    }
+
+    /**
+     * @return the longest code length
+     */
+    public int maxLength() {
+        return maxLength;
+    }
+
+    /**
+     * @param i index in ascending symbol order
+     * @return the i-th symbol
+     */
+    public int symbol(int i) {
+        return symbols[i];
+    }
+
+    /**
+     * @param i index in ascending symbol order
+     * @return the code word of the i-th symbol, right-aligned
+     */
+    public long code(int i) {
+        return codes[i];
+    }
+
+    /**
+     * @param i index in ascending symbol order
+     * @return the code length of the i-th symbol
+     */
+    public int length(int i) {
+        return lengths[i];
+    }
+
+    /**
+     * @param symbol the symbol to look up
+     * @return the index of the symbol in ascending order, or a negative value if it has no code
+     */
+    public int indexOf(int symbol) {
+        if (indexPages == null) {
+            return Arrays.binarySearch(symbols, symbol);
+        }
+        int page = symbol >>> 8;
+        return page < indexPages.length ? indexPages[page][symbol & 0xFF] - 1 : -1;
+    }
+
+    /**
+     * @param symbol a symbol with a code
+     * @return its code length, read from the byte table or the symbol pages without a search
+     */
+    int codeLength(int symbol) {
+        return symbol >= 0 && symbol < 256 ? byteLengths[symbol] : lengths[indexOf(symbol)];
+    }
+
+    /**
+     * Decodes the canonical code at the top of a window of bits, trying lengths upwards from the
+     * given one. Codes of one length are consecutive in a canonical codebook, so each length costs
+     * a subtraction and a comparison against the first code and count of that length.
+     *
+     * @param window    the next bits of input, left-aligned, with zeros past the end of input
+     * @param minLength the shortest length to try, for callers that have ruled out shorter codes
+     * @return the symbol shifted left by 8 bits plus the code length, or -1 if no code matches
+     * @throws IllegalStateException if this codebook is not canonical
+     */
+    long decodeCanonical(long window, int minLength) {
+        if (byCode == null) {
+            throw new IllegalStateException();
+        }
+        for (int length = Math.max(minLength, 1); length <= maxLength; length++) {
+            long index = (window >>> (64 - length)) - firstCode[length];
+            if (Long.compareUnsigned(index, lengthCount[length]) < 0) {
+                return (long) byCode[firstIndex[length] + (int) index] << 8 | length;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @param length a code length between 1 and 64
+     * @return the first canonical code of that length, right-aligned
+     */
+    long firstCode(int length) {
+        return firstCode[length];
+    }
+
+    /**
+     * @param length a code length between 1 and 64
+     * @return the number of codes of that length
+     */
+    int lengthCount(int length) {
+        return lengthCount[length];
+    }
+
+    /**
+     * @param length a code length between 1 and 64
+     * @return the index in {@link #symbolByCode(int)} order of the first symbol of that length
+     */
+    int firstIndex(int length) {
+        return firstIndex[length];
+    }
+
+    /**
+     * @param i index in canonical code order, by length and then symbol
+     * @return the i-th symbol in that order
+     */
+    int symbolByCode(int i) {
+        return byCode[i];
+    }
+
+    /**
+     * Appends the codes of every character of the input.
+     *
+     * @param input the characters to encode
+     * @param out   receives the code bits
+     * @throws IllegalArgumentException if the input contains a character without a code
+     */
+    public void encode(CharSequence input, BitWriter out) {
+        for (int i = 0; i < input.length(); i++) {
+            int index = indexOf(input.charAt(i));
+            if (index < 0) {
+                throw new IllegalArgumentException();
+            }
+            out.writeBits(codes[index], lengths[index]);
+        }
+    }
+
+    /**
+     * Encodes the input one code point at a time, so a supplementary character is a single symbol
+     * rather than two surrogates.
+     *
+     * @throws IllegalArgumentException if a code point has no code
+     */
+    public void encodeCodePoints(CharSequence input, BitWriter out) {
+        for (int i = 0; i < input.length(); ) {
+            int codePoint = Character.codePointAt(input, i);
+            int index = indexOf(codePoint);
+            if (index < 0) {
+                throw new IllegalArgumentException();
+            }
+            out.writeBits(codes[index], lengths[index]);
+            i += Character.charCount(codePoint);
+        }
+    }
+
+    /**
+     * Encodes a range of bytes, each taken as an unsigned symbol 0-255 and looked up directly in a
+     * 256 entry table.
+     *
+     * @throws IllegalArgumentException if a byte has no code
+     */
+    public void encode(byte[] input, int offset, int length, BitWriter out) {
+        for (int i = offset; i < offset + length; i++) {
+            int b = input[i] & 0xFF;
+            int codeLength = byteLengths[b];
+            if (codeLength == 0) {
+                throw new IllegalArgumentException();
+            }
+            out.writeBits(byteCodes[b], codeLength);
+        }
+    }
+
+    /**
+     * Decodes every remaining bit of the reader.
+     *
+     * @throws IllegalArgumentException if the bits are not a sequence of whole codes
+     */
+    public void decode(BitReader in, StringBuilder out) {
+        decodeTable.decode(in, out);
+    }
+
+    /**
+     * Decodes every remaining bit of the reader, passing each symbol on as an int.
+     *
+     * @throws IllegalArgumentException if the bits are not a sequence of whole codes
+     */
+    public void decode(BitReader in, IntConsumer out) {
+        decodeTable.decode(in, out);
+    }
+
+    /**
+     * Decodes the codes in the next given number of bits, as {@link DecodeTable#decode(BitReader,
+     * long, IntConsumer)} does.
+     *
+     * @throws IllegalArgumentException if fewer bits remain or they do not end with a whole code
+     */
+    public void decode(BitReader in, long bits, IntConsumer out) {
+        decodeTable.decode(in, bits, out);
+    }
+
+    /**
+     * Decodes up to max symbols, reading the stream behind the reader only while none have been
+     * decoded, as {@link DecodeTable#decodeUpTo(BitReader, int, int, IntConsumer)} does.
+     *
+     * @return the number of symbols decoded, 0 only if max is 0 or no bits remain
+     * @throws IllegalArgumentException if the bits are not a sequence of whole codes
+     */
+    public int decodeUpTo(BitReader in, int max, IntConsumer out) {
+        return decodeTable.decodeUpTo(in, max, maxLength(), out);
+    }
+
+    /**
+     * Decodes a single symbol.
+     *
+     * @throws IllegalArgumentException if the bits end partway through a code
+     */
+    public int decodeSymbol(BitReader in) {
+        return decodeTable.decodeSymbol(in);
+    }
+
+    /**
+     * @param input the characters to encode
+     * @return the packed encoding, in the layout of {@link BitWriter#toByteArray()}
+     * @throws IllegalArgumentException if the input is null or contains a character without a code
+     */
+    public byte[] compress(CharSequence input) {
+        if (input == null) {
+            throw new IllegalArgumentException();
+        }
+        if (symbols[symbols.length - 1] <= 0xFFFF) {
+            return bulkEncoder().encode(input);
+        }
+        BitWriter out = new BitWriter(input.length() / 4 + 1);
+        encode(input, out);
+        return out.toByteArray();
+    }
+
+    /**
+     * @return the shared {@link BulkEncoder} for this codebook, whose symbols must all be below
+     *         65536
+     */
+    BulkEncoder bulkEncoder() {
+        BulkEncoder encoder = bulkEncoder;
+        if (encoder == null) {
+            // racing threads may each build one; they are identical and immutable
+            encoder = new BulkEncoder(this);
+            bulkEncoder = encoder;
+        }
+        return encoder;
+    }
+
+    /**
+     * @param packed packed bits in the layout of {@link BitWriter#toByteArray()}
+     * @return the decoded characters
+     * @throws IllegalArgumentException if the input is null, malformed or not decodable
+     */
+    public String decompress(byte[] packed) {
+        StringBuilder out = new StringBuilder();
+        decode(BitReader.packed(packed), out);
+        return out.toString();
+    }
+
+    /**
+     * @param input the bytes to encode
+     * @return the packed encoding, in the layout of {@link BitWriter#toByteArray()}
+     * @throws IllegalArgumentException if the input is null or contains a byte without a code
+     */
+    public byte[] compress(byte[] input) {
+        if (input == null) {
+            throw new IllegalArgumentException();
+        }
+        if (symbols[symbols.length - 1] <= 0xFFFF) {
+            return bulkEncoder().encode(input, 0, input.length);
+        }
+        BitWriter out = new BitWriter(input.length / 2 + 1);
+        encode(input, 0, input.length, out);
+        return out.toByteArray();
+    }
+
+    /**
+     * @param packed packed bits in the layout of {@link BitWriter#toByteArray()}
+     * @return the decoded bytes
+     * @throws IllegalArgumentException if the input is null, malformed, not decodable or decodes to
+     *                                  a symbol above 255
+     */
+    public byte[] decompressToBytes(byte[] packed) {
+        ByteSink out = new ByteSink(packed == null ? 0 : packed.length * 2);
+        decode(BitReader.packed(packed), out);
+        return Arrays.copyOf(out.bytes, out.size);
+    }
+
+    private static class ByteSink implements IntConsumer {
+        byte[] bytes;
+        int size;
+
+        ByteSink(int capacity) {
+            bytes = new byte[Math.max(16, capacity)];
+        }
+
+        @Override
+        public void accept(int symbol) {
+            if (symbol > 0xFF) {
+                throw new IllegalArgumentException();
+            }
+            if (size == bytes.length) {
+                bytes = Arrays.copyOf(bytes, size * 2);
+            }
+            bytes[size++] = (byte) symbol;
+        }
+    }
+}
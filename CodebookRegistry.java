@@ -0,0 +1,272 @@
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A thread-safe, size-bounded cache of canonical {@link Codebook}s, keyed by a 64-bit fingerprint
+ * of the frequency table they were built from. Asking again for the same frequencies returns the
+ * same shared codebook without rebuilding it; the least recently used codebook is evicted once the
+ * registry is full.
+ * <p/>
+ * Every cached codebook also has a short id derived from its code lengths alone, so two registries
+ * holding the same codebook agree on its id. {@link #compress(Codebook, CharSequence)} prefixes
+ * the packed bits with that id instead of the codebook, and {@link #decompress(byte[])} looks the
+ * codebook up again.
+ * <p/>
+ * Codebooks passed to {@link #register(Codebook)} are cached under their id rather than a
+ * fingerprint, so the two kinds of key cannot collide. Several keys can lead to one shared
+ * codebook; it stays known by id until the last of them is evicted. Ids are 32-bit hashes, so
+ * two cached codebooks can share one. The first cached keeps it; the other, when built by {@link
+ * #get(long[], Alphabet)}, is still cached by fingerprint but cannot be looked up by id.
+ */
+public class CodebookRegistry {
+
+    static final int DEFAULT_CAPACITY = 64;
+    static final int ID_BYTES = 4;
+
+    private final int capacity;
+    private final LinkedHashMap<Object, Cached> byKey;
+    // Long fingerprints from get, Integer ids from register, in least recently used order
+    private final Map<Integer, Cached> byId;
+    private long hits, misses;
+
+
+    public CodebookRegistry() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param capacity the most codebooks to keep
+     * @throws IllegalArgumentException if capacity is not positive
+     */
+    public CodebookRegistry(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException();
+        }
+        this.capacity = capacity;
+        this.byId = new HashMap<>();
+        this.byKey = new LinkedHashMap<Object, Cached>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Object, Cached> eldest) {
+                if (size() <= CodebookRegistry.this.capacity) {
+                    return false;
+                }
+                if (--eldest.getValue().keys == 0) {
+                    // only if it is the codebook known by that id
+                    byId.remove(eldest.getValue().id, eldest.getValue());
+                }
+                return true;
+            }
+        };
+    }
+
+    private static class Cached {
+        final Codebook codebook;
+        final int id;
+        int keys;
+        // the number of keys in byKey that lead to this entry
+
+        Cached(Codebook codebook, int id) {
+            this.codebook = codebook;
+            this.id = id;
+        }
+    }
+
+    /**
+     * @param seed the characters to count
+     * @return the canonical codebook for the seed's character frequencies
+     * @throws IllegalArgumentException if seed is null or has fewer than 2 distinct characters
+     */
+    public Codebook get(String seed) {
+        return get(FrequencyCounter.count(seed), Alphabet.CHARS);
+    }
+
+    /**
+     * Returns the cached codebook for a frequency table, building and caching it on a miss.
+     *
+     * @param histogram entry s holds the frequency of symbol s
+     * @param alphabet  the kind of symbol the histogram counts
+     * @return the canonical codebook for the frequencies
+     * @throws IllegalArgumentException if the histogram is not valid for {@link
+     *                                  Huffman#Huffman(long[], Alphabet, boolean)}
+     */
+    public Codebook get(long[] histogram, Alphabet alphabet) {
+        if (histogram == null || alphabet == null) {
+            throw new IllegalArgumentException();
+        }
+        long key = fingerprint(histogram, alphabet);
+        synchronized (this) {
+            Cached entry = byKey.get(key);
+            if (entry != null) {
+                hits++;
+                return entry.codebook;
+            }
+            misses++;
+        }
+        // build outside the lock; if another thread got there first its codebook wins
+        return insert(key, new Huffman(histogram, alphabet, true).codebook(), false).codebook;
+    }
+
+    /**
+     * Caches a codebook that was built or received elsewhere, such as one read back with {@link
+     * Codebook#fromHeader(byte[])}.
+     *
+     * @param codebook a canonical codebook
+     * @return its id
+     * @throws IllegalArgumentException if the codebook is null or not canonical
+     * @throws IllegalStateException    if a different codebook with the same id is cached
+     */
+    public int register(Codebook codebook) {
+        if (codebook == null || !codebook.isCanonical()) {
+            throw new IllegalArgumentException();
+        }
+        return insert(id(codebook), codebook, true).id;
+    }
+
+    /**
+     * @param key      a Long fingerprint or an Integer id
+     * @param register whether the codebook must be known by its id; otherwise a codebook whose id
+     *                 another one already has is cached under the key alone
+     * @throws IllegalStateException if register is set and a different codebook has the same id
+     */
+    private synchronized Cached insert(Object key, Codebook codebook, boolean register) {
+        Cached entry = byKey.get(key);
+        if (entry == null) {
+            entry = new Cached(codebook, id(codebook));
+            Cached sameId = byId.get(entry.id);
+            if (sameId != null) {
+                if (Arrays.equals(sameId.codebook.toHeader(), codebook.toHeader())) {
+                    // same code lengths reached through another frequency table: share one
+                    entry = sameId;
+                } else if (register) {
+                    throw new IllegalStateException();
+                }
+            }
+            entry.keys++;
+            byKey.put(key, entry);
+            byId.putIfAbsent(entry.id, entry);
+        }
+        return entry;
+    }
+
+    /**
+     * @param id an id returned by {@link #register(Codebook)} or {@link #id(Codebook)}
+     * @return the cached codebook with that id, or null if it is not (or no longer) cached
+     */
+    public synchronized Codebook byId(int id) {
+        Cached entry = byId.get(id);
+        return entry == null ? null : entry.codebook;
+    }
+
+    /**
+     * Computes the short id of a codebook from its code lengths. Equal canonical codebooks have
+     * equal ids wherever they are built.
+     *
+     * @param codebook a canonical codebook
+     * @return the id
+     * @throws IllegalArgumentException if the codebook is null or not canonical
+     */
+    public static int id(Codebook codebook) {
+        if (codebook == null || !codebook.isCanonical()) {
+            throw new IllegalArgumentException();
+        }
+        return (int) headerHash(codebook);
+    }
+
+    private static long headerHash(Codebook codebook) {
+        long h = 0;
+        for (byte b : codebook.toHeader()) {
+            h = mix(h ^ (b & 0xFF));
+        }
+        return h;
+    }
+
+    /**
+     * Hashes the nonzero entries of a frequency table; trailing zeros do not change the result.
+     *
+     * @param histogram entry s holds the frequency of symbol s
+     * @param alphabet  the kind of symbol the histogram counts
+     * @return the fingerprint
+     */
+    public static long fingerprint(long[] histogram, Alphabet alphabet) {
+        long h = mix(alphabet.ordinal() + 1);
+        for (int s = 0; s < histogram.length; s++) {
+            if (histogram[s] != 0) {
+                h = mix(h ^ s);
+                h = mix(h ^ histogram[s]);
+            }
+        }
+        return h;
+    }
+
+    private static long mix(long z) {
+        z = (z ^ (z >>> 33)) * 0xFF51AFD7ED558CCDL;
+        z = (z ^ (z >>> 33)) * 0xC4CEB9FE1A85EC53L;
+        return z ^ (z >>> 33);
+    }
+
+    /**
+     * Compresses the input, prefixed by the codebook's id rather than the codebook itself. The
+     * codebook is registered if it is not cached already.
+     *
+     * @param codebook a canonical codebook
+     * @param input    the characters to compress
+     * @return the id followed by the packed bits
+     * @throws IllegalArgumentException if the codebook is not canonical, or the input is null or
+     *                                  contains a character without a code
+     * @throws IllegalStateException    if a different codebook with the same id is cached
+     */
+    public byte[] compress(Codebook codebook, CharSequence input) {
+        int id = register(codebook);
+        byte[] packed = codebook.compress(input);
+        return ByteBuffer.allocate(ID_BYTES + packed.length).putInt(id).put(packed).array();
+    }
+
+    /**
+     * @param framed bytes produced by {@link #compress(Codebook, CharSequence)}
+     * @return the decoded characters
+     * @throws IllegalArgumentException if the input is null, malformed, not decodable or refers to
+     *                                  a codebook that is not cached
+     */
+    public String decompress(byte[] framed) {
+        if (framed == null) {
+            throw new IllegalArgumentException();
+        }
+        try {
+            ByteBuffer in = ByteBuffer.wrap(framed);
+            Codebook codebook = byId(in.getInt());
+            if (codebook == null) {
+                throw new IllegalArgumentException();
+            }
+            byte[] packed = new byte[in.remaining()];
+            in.get(packed);
+            return codebook.decompress(packed);
+        } catch (BufferUnderflowException e) {
+            throw new IllegalArgumentException(e);
+        }
+    }
+
+    /**
+     * @return the number of codebooks cached
+     */
+    public synchronized int size() {
+        return byKey.size();
+    }
+
+    /**
+     * @return the number of lookups answered from the cache
+     */
+    public synchronized long hits() {
+        return hits;
+    }
+
+    /**
+     * @return the number of lookups that had to build a codebook
+     */
+    public synchronized long misses() {
+        return misses;
+    }
+}
@@ -0,0 +1,122 @@
+import org.junit.Test;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+import static org.junit.Assert.*;
+
+public class CodebookRegistryTest {
+
+    @Test
+    public void testRepeatedLookupsShareOneCodebook() {
+        CodebookRegistry registry = new CodebookRegistry();
+        Codebook first = registry.get("abracadabra");
+        assertSame(first, registry.get("abracadabra"));
+        assertSame(first, registry.get("aaaaabbcdrr"));
+        assertTrue(first.isCanonical());
+        assertEquals(1, registry.misses());
+        assertEquals(2, registry.hits());
+    }
+
+    @Test
+    public void testFingerprintIgnoresTrailingZeros() {
+        assertEquals(CodebookRegistry.fingerprint(new long[]{1, 2}, Alphabet.CHARS),
+                CodebookRegistry.fingerprint(new long[]{1, 2, 0, 0}, Alphabet.CHARS));
+        assertNotEquals(CodebookRegistry.fingerprint(new long[]{1, 2}, Alphabet.CHARS),
+                CodebookRegistry.fingerprint(new long[]{2, 1}, Alphabet.CHARS));
+        assertNotEquals(CodebookRegistry.fingerprint(new long[]{1, 2}, Alphabet.CHARS),
+                CodebookRegistry.fingerprint(new long[]{1, 2}, Alphabet.BYTES));
+    }
+
+    @Test
+    public void testLeastRecentlyUsedIsEvicted() {
+        CodebookRegistry registry = new CodebookRegistry(2);
+        Codebook ab = registry.get("aab");
+        int abId = CodebookRegistry.id(ab);
+        registry.get("xxxyz");
+        registry.get("aab");
+        registry.get("pqqqqrrs");
+        assertEquals(2, registry.size());
+        assertSame(ab, registry.get("aab"));
+        assertSame(ab, registry.byId(abId));
+        assertEquals(3, registry.misses());
+        registry.get("xxxyz");
+        assertEquals(4, registry.misses());
+    }
+
+    @Test
+    public void testSharedCodebookKeptUntilLastKeyEvicted() {
+        CodebookRegistry registry = new CodebookRegistry(2);
+        Codebook ab = registry.get("aab");
+        int abId = registry.register(Codebook.fromHeader(ab.toHeader()));
+        assertEquals(2, registry.size());
+        registry.get("xxxyz");
+        // the fingerprint key is gone, the id key still leads to the codebook
+        assertSame(ab, registry.byId(abId));
+        registry.get("pqqqqrrs");
+        assertNull(registry.byId(abId));
+    }
+
+    @Test
+    public void testIdCollisionStaysUsableByFingerprint() {
+        // two different codebooks whose 32-bit ids collide, found by search
+        long[] first = new long['a' + 14];
+        long[] second = new long['a' + 14];
+        long[] firstCounts = {30, 20, 10, 28, 29, 34, 2, 32, 11, 6, 32, 26, 27, 7};
+        long[] secondCounts = {12, 35, 1, 26, 15, 7, 16, 25, 35, 39, 33, 25, 26, 1};
+        System.arraycopy(firstCounts, 0, first, 'a', 14);
+        System.arraycopy(secondCounts, 0, second, 'a', 14);
+        CodebookRegistry registry = new CodebookRegistry();
+        Codebook a = registry.get(first, Alphabet.CHARS);
+        Codebook b = registry.get(second, Alphabet.CHARS);
+        assertEquals(CodebookRegistry.id(a), CodebookRegistry.id(b));
+        assertFalse(Arrays.equals(a.toHeader(), b.toHeader()));
+        assertSame(b, registry.get(second, Alphabet.CHARS));
+        assertSame(a, registry.byId(CodebookRegistry.id(b)));
+        try {
+            registry.register(b);
+            fail();
+        } catch (IllegalStateException expected) {
+        }
+        assertEquals(1, registry.hits());
+    }
+
+    @Test
+    public void testIdsAgreeAcrossRegistries() {
+        CodebookRegistry sender = new CodebookRegistry();
+        CodebookRegistry receiver = new CodebookRegistry();
+        Codebook codebook = sender.get("the quick brown fox");
+        byte[] framed = sender.compress(codebook, "the fox");
+        assertEquals(codebook.compress("the fox").length + CodebookRegistry.ID_BYTES, framed.length);
+        assertEquals(CodebookRegistry.id(codebook), receiver.register(Codebook.fromHeader(codebook.toHeader())));
+        assertEquals("the fox", receiver.decompress(framed));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testUnknownId() {
+        CodebookRegistry registry = new CodebookRegistry();
+        registry.decompress(new CodebookRegistry().compress(new Huffman("abc", true).codebook(), "cab"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testRegisterNeedsCanonical() {
+        new CodebookRegistry().register(new Huffman("abc").codebook());
+    }
+
+    @Test
+    public void testConcurrentLookups() throws Exception {
+        CodebookRegistry registry = new CodebookRegistry(4);
+        String[] seeds = {"aab", "xxxyz", "pqqqqrrs", "hello world", "mississippi", "banana"};
+        ExecutorService pool = Executors.newFixedThreadPool(4);
+        List<Future<String>> results = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            String seed = seeds[i % seeds.length];
+            results.add(pool.submit(() -> registry.get(seed).decompress(registry.get(seed).compress(seed))));
+        }
+        for (int i = 0; i < results.size(); i++) {
+            assertEquals(seeds[i % seeds.length], results.get(i).get());
+        }
+        pool.shutdown();
+        assertTrue(registry.size() <= 4);
+    }
+}
@@ -0,0 +1,103 @@
+import org.junit.Test;
+
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+public class CodebookTest {
+
+    @Test
+    public void testCanonicalCodes() {
+        // the example from RFC 1951 section 3.2.2
+        Codebook c = Codebook.canonical(new int[]{'A', 'B', 'C', 'D', 'E', 'F', 'G', 'H'},
+                new int[]{3, 3, 3, 3, 3, 2, 4, 4});
+        assertTrue(c.isCanonical());
+        assertEquals(0b010, c.code(c.indexOf('A')));
+        assertEquals(0b110, c.code(c.indexOf('E')));
+        assertEquals(0b00, c.code(c.indexOf('F')));
+        assertEquals(0b1110, c.code(c.indexOf('G')));
+        assertEquals(0b1111, c.code(c.indexOf('H')));
+        assertEquals(4, c.maxLength());
+    }
+
+    @Test
+    public void testHeaderRoundTrip() {
+        Codebook c = Codebook.canonical(new int[]{'z', 'a', 'b', 0x1F600}, new int[]{1, 3, 3, 2});
+        byte[] header = c.toHeader();
+        Codebook read = Codebook.fromHeader(header);
+        assertEquals(4, read.size());
+        for (int i = 0; i < c.size(); i++) {
+            assertEquals(c.symbol(i), read.symbol(i));
+            assertEquals(c.code(i), read.code(i));
+            assertEquals(c.length(i), read.length(i));
+        }
+        assertEquals("zabba", read.decompress(c.compress("zabba")));
+    }
+
+    @Test
+    public void testDenseHeaderIsOneBytePerSymbol() {
+        int[] symbols = new int[16];
+        int[] lengths = new int[16];
+        for (int i = 0; i < 16; i++) {
+            symbols[i] = 'a' + i;
+            lengths[i] = 4;
+        }
+        // count, two bytes for the gap up to 'a', then one byte for each following symbol
+        assertEquals(18, Codebook.canonical(symbols, lengths).toHeader().length);
+    }
+
+    @Test
+    public void testDecodeCanonical() {
+        Codebook c = Codebook.canonical(new int[]{'A', 'B', 'C', 'D', 'E', 'F', 'G', 'H'},
+                new int[]{3, 3, 3, 3, 3, 2, 4, 4});
+        for (int i = 0; i < c.size(); i++) {
+            long window = c.code(i) << (64 - c.length(i)) | 0x5555L;
+            assertEquals((long) c.symbol(i) << 8 | c.length(i), c.decodeCanonical(window, 1));
+        }
+        assertEquals((long) 'H' << 8 | 4, c.decodeCanonical(-1L, 3));
+        assertEquals(-1, c.decodeCanonical(0, 3));
+    }
+
+    @Test
+    public void testIndexOfSparseSymbols() {
+        int[] symbols = {'a', 0x201C, 0x1F600, 0x7FFFFFFF};
+        Codebook c = Codebook.canonical(Arrays.copyOf(symbols, 3), new int[]{1, 2, 2});
+        Codebook past = Codebook.canonical(symbols, new int[]{2, 2, 2, 2});
+        for (int i = 0; i < 3; i++) {
+            assertEquals(i, c.indexOf(symbols[i]));
+            assertEquals(i, past.indexOf(symbols[i]));
+        }
+        assertEquals(3, past.indexOf(0x7FFFFFFF));
+        for (int missing : new int[]{-1, 0, 'b', 0x201D, 0x1F601, 0x1F700, 0x10FFFF}) {
+            assertTrue(c.indexOf(missing) < 0);
+            assertTrue(past.indexOf(missing) < 0);
+        }
+        assertEquals("a\u201ca", c.decompress(c.compress("a\u201ca")));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testHeaderNeedsCanonicalCodes() {
+        Codebook.fromCodes(new int[]{'a', 'b'}, new long[]{1, 0}, new int[]{1, 1}).toHeader();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testLengthsOverfullKraft() {
+        Codebook.canonical(new int[]{'a', 'b', 'c'}, new int[]{1, 1, 2});
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testDuplicateSymbol() {
+        Codebook.canonical(new int[]{'a', 'a'}, new int[]{1, 1});
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testTruncatedHeader() {
+        byte[] header = Codebook.canonical(new int[]{'a', 'b', 'c'}, new int[]{1, 2, 2}).toHeader();
+        Codebook.fromHeader(Arrays.copyOf(header, header.length - 1));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testEncodeUnknownSymbol() {
+        Codebook.canonical(new int[]{'a', 'b'}, new int[]{1, 1}).compress("abc");
+    }
+}
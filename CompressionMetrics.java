@@ -0,0 +1,70 @@
+/**
+ * Receives instrumentation events from the codecs. Every method does nothing by default, so a
+ * backend overrides only what it records; {@link #NOOP} records nothing and is what codecs use
+ * unless given another backend. Implementations must be thread-safe, since a shared codec reports
+ * from every thread that uses it.
+ *
+ * @see InMemoryMetrics
+ */
+public interface CompressionMetrics {
+
+    /**
+     * A backend that records nothing.
+     */
+    CompressionMetrics NOOP = new CompressionMetrics() {
+    };
+
+    /**
+     * Reports one successful compression.
+     *
+     * @param symbols      the number of symbols encoded
+     * @param inputBytes   the uncompressed size in bytes
+     * @param outputBits   the number of code bits written
+     * @param nanos        how long encoding took
+     * @param expectedBits the code bits the seed distribution predicts for this many symbols, so
+     *                     that outputBits / expectedBits - 1 is how far live data has drifted
+     */
+    default void encoded(long symbols, long inputBytes, long outputBits, long nanos,
+                         double expectedBits) {
+    }
+
+    /**
+     * Reports one successful decompression.
+     *
+     * @param symbols   the number of symbols decoded
+     * @param inputBits the number of code bits read
+     * @param nanos     how long decoding took
+     */
+    default void decoded(long symbols, long inputBits, long nanos) {
+    }
+
+    /**
+     * @return whether {@link #codeLengths(long[])} should be called; counting code lengths costs
+     *         an extra pass over the input
+     */
+    default boolean recordsCodeLengths() {
+        return false;
+    }
+
+    /**
+     * Reports how many of the symbols just encoded had each code length.
+     *
+     * @param symbolsByLength entry L holds the number of symbols coded with L bits
+     */
+    default void codeLengths(long[] symbolsByLength) {
+    }
+
+    /**
+     * Reports symbols sent through an escape because the model had not seen them yet.
+     *
+     * @param count the number of escaped symbols
+     */
+    default void escaped(long count) {
+    }
+
+    /**
+     * Reports an input rejected as not encodable or not decodable.
+     */
+    default void invalidInput() {
+    }
+}
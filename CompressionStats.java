@@ -0,0 +1,70 @@
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Running totals of how much input went into compression and how many bits came out. Counters
+ * are striped {@link LongAdder}s, so many threads can record into one collector without
+ * contending on a single word; reads sum the stripes and are exact once writers are quiet.
+ * <p/>
+ * A {@link Huffman} codec keeps one collector of its own, and callers that want separate figures
+ * (per tenant, per message type) can pass their own to the compress methods.
+ */
+public class CompressionStats {
+
+    private final LongAdder calls = new LongAdder();
+    private final LongAdder inputBits = new LongAdder();
+    private final LongAdder outputBits = new LongAdder();
+
+
+    /**
+     * Records one compression.
+     *
+     * @param input  the uncompressed size in bits
+     * @param output the compressed size in bits, excluding padding and trailer
+     */
+    public void record(long input, long output) {
+        calls.increment();
+        inputBits.add(input);
+        outputBits.add(output);
+    }
+
+    /**
+     * @return the number of compressions recorded
+     */
+    public long calls() {
+        return calls.sum();
+    }
+
+    /**
+     * @return the total uncompressed size in bits
+     */
+    public long inputBits() {
+        return inputBits.sum();
+    }
+
+    /**
+     * @return the total compressed size in bits
+     */
+    public long outputBits() {
+        return outputBits.sum();
+    }
+
+    /**
+     * @return the total output bits divided by the total input bits
+     * @throws IllegalStateException if nothing has been recorded
+     */
+    public double compressionRatio() {
+        if (calls.sum() == 0) {
+            throw new IllegalStateException();
+        }
+        return (double) outputBits.sum() / inputBits.sum();
+    }
+
+    /**
+     * Clears every counter. Compressions recorded concurrently with a reset may be partly lost.
+     */
+    public void reset() {
+        calls.reset();
+        inputBits.reset();
+        outputBits.reset();
+    }
+}
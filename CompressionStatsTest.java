@@ -0,0 +1,47 @@
+import org.junit.Test;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+import static org.junit.Assert.*;
+
+public class CompressionStatsTest {
+
+    @Test(expected = IllegalStateException.class)
+    public void testRatioBeforeAnyRecord() {
+        new CompressionStats().compressionRatio();
+    }
+
+    @Test
+    public void testTotals() {
+        CompressionStats stats = new CompressionStats();
+        stats.record(160, 40);
+        stats.record(80, 20);
+        assertEquals(2, stats.calls());
+        assertEquals(240, stats.inputBits());
+        assertEquals(60, stats.outputBits());
+        assertEquals(0.25, stats.compressionRatio(), .00001);
+        stats.reset();
+        assertEquals(0, stats.calls());
+    }
+
+    @Test
+    public void testSharedCodecAcrossThreads() throws Exception {
+        Huffman h = new Huffman("aabbbcccccdddddddd");
+        CompressionStats tenant = new CompressionStats();
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        List<Future<String>> results = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            results.add(pool.submit(() -> h.decompressFromBytes(h.compressToBytes("ababacd"))));
+            results.add(pool.submit(() -> h.decompressFromBytes(h.compressToBytes("dddd", tenant))));
+        }
+        for (int i = 0; i < results.size(); i++) {
+            assertEquals(i % 2 == 0 ? "ababacd" : "dddd", results.get(i).get());
+        }
+        pool.shutdown();
+        assertEquals(1000, h.stats().calls());
+        assertEquals(18.0 / (7.0 * 16.0), h.compressionRatio(), .00001);
+        assertEquals(1000, tenant.calls());
+        assertEquals(4.0 / (4.0 * 16.0), tenant.compressionRatio(), .00001);
+    }
+}
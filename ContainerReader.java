@@ -0,0 +1,372 @@
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.IntConsumer;
+import java.util.zip.CRC32C;
+
+/**
+ * Reads a container written by {@link ContainerWriter}. Opening one checks the header and locates
+ * the frames, from the trailing index when it is present and intact and otherwise by walking them,
+ * without decoding any block.
+ * <p/>
+ * Damage is confined to the blocks it touches. A block whose checksum or counts do not match is
+ * reported by {@link #isIntact(int)} and refuses to decode, while the others still decode. When a
+ * frame header is damaged and there is no index to skip it, the walk resumes at the next frame
+ * magic; the damaged region then counts as one block that is not intact.
+ * <p/>
+ * Blocks are decoded with the header codebook, their own codebook or as stored symbols, as
+ * {@link #coding(int)} reports.
+ */
+public class ContainerReader {
+
+    private final byte[] container;
+    private final ByteBuffer view;
+    private final Alphabet alphabet;
+    private final Codebook codebook;
+    private final int blockSize;
+    private final int version;
+    private final int[] frames;
+    // offset of each frame, or of the damaged region standing in for it
+    private final boolean indexed;
+
+
+    /**
+     * @param container a container written by {@link ContainerWriter}
+     * @throws IllegalArgumentException if the container is null or its header is malformed,
+     *                                  damaged or of an unknown version
+     */
+    public ContainerReader(byte[] container) {
+        if (container == null) {
+            throw new IllegalArgumentException();
+        }
+        this.container = container;
+        this.view = ByteBuffer.wrap(container);
+        ByteBuffer in = view.duplicate();
+        int flags;
+        try {
+            if (in.getInt() != ContainerWriter.MAGIC) {
+                throw new IllegalArgumentException();
+            }
+            version = in.get();
+            if (version < 1 || version > ContainerWriter.VERSION) {
+                throw new IllegalArgumentException();
+            }
+            flags = in.get();
+            int ordinal = in.get();
+            if (ordinal < 0 || ordinal >= Alphabet.values().length) {
+                throw new IllegalArgumentException();
+            }
+            alphabet = Alphabet.values()[ordinal];
+            blockSize = in.getInt();
+            codebook = Codebook.fromHeader(in);
+            int headerEnd = in.position();
+            if (in.getInt() != ContainerWriter.crc32c(container, 0, headerEnd)) {
+                throw new IllegalArgumentException();
+            }
+        } catch (BufferUnderflowException e) {
+            throw new IllegalArgumentException(e);
+        }
+        if (blockSize < 1 || codebook.symbol(codebook.size() - 1) >= alphabet.size()) {
+            throw new IllegalArgumentException();
+        }
+        int dataStart = in.position();
+        int[] fromIndex = (flags & ContainerWriter.FLAG_INDEX) != 0 ? readIndex(dataStart) : null;
+        indexed = fromIndex != null;
+        frames = indexed ? fromIndex : walk(dataStart);
+    }
+
+    /**
+     * @return the frame offsets in the index, or null if it is damaged
+     */
+    private int[] readIndex(int dataStart) {
+        int length = container.length;
+        if (length < dataStart + ContainerWriter.END_BYTES + ContainerWriter.INDEX_TRAILER_BYTES) {
+            return null;
+        }
+        long indexStart = view.getLong(length - 8);
+        long entryBytes = length - ContainerWriter.INDEX_TRAILER_BYTES - indexStart;
+        if (indexStart < dataStart + ContainerWriter.END_BYTES || entryBytes < 0
+                || entryBytes % 8 != 0
+                || getInt(length - 12)
+                != ContainerWriter.crc32c(container, (int) indexStart, (int) entryBytes)
+                || getInt((int) indexStart - 8) != ContainerWriter.END_MAGIC
+                || getInt((int) indexStart - 4) != entryBytes / 8) {
+            return null;
+        }
+        int[] offsets = new int[(int) (entryBytes / 8)];
+        long previous = dataStart - 1;
+        for (int b = 0; b < offsets.length; b++) {
+            long offset = view.getLong((int) indexStart + 8 * b);
+            if (offset <= previous || offset >= indexStart - ContainerWriter.END_BYTES) {
+                return null;
+            }
+            offsets[b] = (int) offset;
+            previous = offset;
+        }
+        return offsets;
+    }
+
+    private int[] walk(int dataStart) {
+        List<Integer> found = new ArrayList<>();
+        int position = dataStart;
+        while (position + 4 <= container.length
+                && getInt(position) != ContainerWriter.END_MAGIC) {
+            found.add(position);
+            int length = frameLength(position);
+            position = length > 0 ? position + length : resync(position + 1);
+        }
+        return found.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    /**
+     * @return the offset of the next frame or end magic from position on, or the container length
+     */
+    private int resync(int position) {
+        for (; position + 4 <= container.length; position++) {
+            int magic = getInt(position);
+            if (codingOf(magic) != null || magic == ContainerWriter.END_MAGIC) {
+                return position;
+            }
+        }
+        return container.length;
+    }
+
+    /**
+     * @return the length of the frame at offset, or -1 if its header is not plausible
+     */
+    private int frameLength(int offset) {
+        if (offset + ContainerWriter.FRAME_HEADER_BYTES > container.length) {
+            return -1;
+        }
+        ContainerWriter.BlockCoding coding = codingOf(getInt(offset));
+        int symbols = getInt(offset + 4);
+        long bits = getInt(offset + 8) & 0xFFFFFFFFL;
+        long length = ContainerWriter.FRAME_HEADER_BYTES + (bits + 7) / 8;
+        if (coding == null || symbols < 1 || symbols > blockSize || bits < symbols
+                || offset + length > container.length) {
+            return -1;
+        }
+        switch (coding) {
+            case SHARED:
+                return bits > (long) symbols * codebook.maxLength() ? -1 : (int) length;
+            case STORED:
+                return bits != (long) symbols * ContainerWriter.storedWidth(alphabet)
+                        ? -1 : (int) length;
+            default:
+                return (int) length;
+        }
+    }
+
+    /**
+     * @return the coding a frame magic stands for, or null if it is not a frame magic of this
+     *         container's version
+     */
+    private ContainerWriter.BlockCoding codingOf(int magic) {
+        switch (magic) {
+            case ContainerWriter.FRAME_MAGIC:
+                return ContainerWriter.BlockCoding.SHARED;
+            case ContainerWriter.LOCAL_MAGIC:
+                return version > 1 ? ContainerWriter.BlockCoding.LOCAL : null;
+            case ContainerWriter.STORED_MAGIC:
+                return version > 1 ? ContainerWriter.BlockCoding.STORED : null;
+            default:
+                return null;
+        }
+    }
+
+    private int getInt(int offset) {
+        return view.getInt(offset);
+    }
+
+    /**
+     * @return the kind of symbol the container codes
+     */
+    public Alphabet alphabet() {
+        return alphabet;
+    }
+
+    /**
+     * @return the codebook stored in the header
+     */
+    public Codebook codebook() {
+        return codebook;
+    }
+
+    /**
+     * @return the number of blocks found, counting damaged regions
+     */
+    public int blockCount() {
+        return frames.length;
+    }
+
+    /**
+     * @return whether the frames were located through an intact trailing index
+     */
+    public boolean indexed() {
+        return indexed;
+    }
+
+    /**
+     * Checks a block's framing and checksum without decoding it.
+     *
+     * @param block the index of the block
+     * @return whether the block is undamaged
+     * @throws IllegalArgumentException if the block does not exist
+     */
+    public boolean isIntact(int block) {
+        if (block < 0 || block >= frames.length) {
+            throw new IllegalArgumentException();
+        }
+        int offset = frames[block];
+        int length = frameLength(offset);
+        return length > 0 && getInt(offset + 12) == crc(offset, length);
+    }
+
+    private int crc(int offset, int length) {
+        CRC32C crc = new CRC32C();
+        crc.update(container, offset + 4, 8);
+        crc.update(container, offset + ContainerWriter.FRAME_HEADER_BYTES,
+                length - ContainerWriter.FRAME_HEADER_BYTES);
+        return (int) crc.getValue();
+    }
+
+    /**
+     * @param block the index of the block
+     * @return how the block is coded, or null if it is damaged
+     * @throws IllegalArgumentException if the block does not exist
+     */
+    public ContainerWriter.BlockCoding coding(int block) {
+        return isIntact(block) ? codingOf(getInt(frames[block])) : null;
+    }
+
+    /**
+     * @return the indexes of every damaged block, in ascending order
+     */
+    public int[] damagedBlocks() {
+        List<Integer> damaged = new ArrayList<>();
+        for (int b = 0; b < frames.length; b++) {
+            if (!isIntact(b)) {
+                damaged.add(b);
+            }
+        }
+        return damaged.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    /**
+     * Decodes one block without touching the data of the others.
+     *
+     * @param block the index of the block
+     * @param out   receives the decoded symbols
+     * @throws IllegalArgumentException if the block does not exist, is damaged or not decodable
+     */
+    public void decodeBlock(int block, IntConsumer out) {
+        if (!isIntact(block)) {
+            throw new IllegalArgumentException();
+        }
+        int offset = frames[block];
+        int symbols = getInt(offset + 4);
+        int data = offset + ContainerWriter.FRAME_HEADER_BYTES;
+        long bitLength = getInt(offset + 8) & 0xFFFFFFFFL;
+        ContainerWriter.BlockCoding coding = codingOf(getInt(offset));
+        if (coding == ContainerWriter.BlockCoding.STORED) {
+            int width = ContainerWriter.storedWidth(alphabet);
+            BitReader bits = new BitReader(container, data, bitLength);
+            for (int i = 0; i < symbols; i++) {
+                int symbol = (int) bits.peekBits(width);
+                if (symbol >= alphabet.size()) {
+                    throw new IllegalArgumentException();
+                }
+                bits.skipBits(width);
+                out.accept(symbol);
+            }
+            return;
+        }
+        Codebook codes = codebook;
+        if (coding == ContainerWriter.BlockCoding.LOCAL) {
+            ByteBuffer header = ByteBuffer.wrap(container, data, (int) ((bitLength + 7) / 8));
+            codes = Codebook.fromHeader(header);
+            if (codes.symbol(codes.size() - 1) >= alphabet.size()) {
+                throw new IllegalArgumentException();
+            }
+            bitLength -= 8L * (header.position() - data);
+            data = header.position();
+        }
+        BitReader bits = new BitReader(container, data, bitLength);
+        int[] decoded = new int[1];
+        codes.decode(bits, symbol -> {
+            if (++decoded[0] > symbols) {
+                throw new IllegalArgumentException();
+            }
+            out.accept(symbol);
+        });
+        if (decoded[0] != symbols) {
+            throw new IllegalArgumentException();
+        }
+    }
+
+    /**
+     * @param block the index of the block
+     * @return the decoded characters of a {@link Alphabet#CHARS} or {@link Alphabet#CODE_POINTS}
+     *         block
+     * @throws IllegalArgumentException if the block does not exist, is damaged or not decodable
+     * @throws IllegalStateException    if the container codes {@link Alphabet#BYTES}
+     */
+    public String readBlock(int block) {
+        if (alphabet == Alphabet.BYTES) {
+            throw new IllegalStateException();
+        }
+        StringBuilder out = new StringBuilder();
+        decodeBlock(block, out::appendCodePoint);
+        return out.toString();
+    }
+
+    /**
+     * @return every block decoded; {@link Alphabet#BYTES} containers are decoded as UTF-8
+     * @throws IllegalArgumentException if any block is damaged or not decodable
+     */
+    public String readString() {
+        if (alphabet == Alphabet.BYTES) {
+            try {
+                return StandardCharsets.UTF_8.newDecoder()
+                        .decode(ByteBuffer.wrap(readBytes())).toString();
+            } catch (CharacterCodingException e) {
+                throw new IllegalArgumentException(e);
+            }
+        }
+        StringBuilder out = new StringBuilder();
+        for (int b = 0; b < frames.length; b++) {
+            decodeBlock(b, out::appendCodePoint);
+        }
+        return out.toString();
+    }
+
+    /**
+     * @return every block of a {@link Alphabet#BYTES} container decoded
+     * @throws IllegalArgumentException if any block is damaged or not decodable
+     * @throws IllegalStateException    if the container does not code {@link Alphabet#BYTES}
+     */
+    public byte[] readBytes() {
+        if (alphabet != Alphabet.BYTES) {
+            throw new IllegalStateException();
+        }
+        long total = 0;
+        for (int b = 0; b < frames.length; b++) {
+            if (!isIntact(b)) {
+                throw new IllegalArgumentException();
+            }
+            total += getInt(frames[b] + 4);
+        }
+        if (total > Integer.MAX_VALUE - 8) {
+            throw new IllegalArgumentException();
+        }
+        byte[] out = new byte[(int) total];
+        int[] size = new int[1];
+        for (int b = 0; b < frames.length; b++) {
+            decodeBlock(b, symbol -> out[size[0]++] = (byte) symbol);
+        }
+        return out;
+    }
+}
@@ -0,0 +1,395 @@
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.IntConsumer;
+import java.util.function.Supplier;
+import java.util.zip.CRC32C;
+
+/**
+ * Writes a self-describing, versioned container holding the codebook and the input coded in
+ * framed blocks, read back with {@link ContainerReader}. Unlike a bare bit string, a container
+ * records everything needed to decode it and lets readers check and skip blocks without decoding.
+ * <p/>
+ * All integers are big-endian. The container starts with a header:
+ * <pre>
+ *   int   magic "HUFC"
+ *   byte  version
+ *   byte  flags, bit 0 set when a trailing index is present
+ *   byte  alphabet ordinal
+ *   int   block size, the most symbols per block
+ *   ...   codebook in the form of {@link Codebook#toHeader()}
+ *   int   CRC32C of the header bytes before it
+ * </pre>
+ * followed by one frame per block:
+ * <pre>
+ *   int   magic, "HUFB", "HUFL" or "HUFS" for the block's {@link BlockCoding}
+ *   int   number of symbols
+ *   int   number of bits
+ *   int   CRC32C of the two counts and the data
+ *   ...   the data, without a padding trailer
+ * </pre>
+ * and an end marker, the magic "HUFE" and the number of blocks. When the index flag is set the
+ * container ends with the offset of every frame as a long, the CRC32C of those offsets, and the
+ * offset of the first of them as a long, so a reader can find any block from the last 8 bytes.
+ * <p/>
+ * A writer that selects codings per block counts each block's symbols and writes it in whichever
+ * of the shared codebook, a codebook of its own or stored symbols takes the fewest bits, header
+ * included. Data unlike the seed then cannot expand much past its stored size. Typical blocks stay
+ * on the shared codebook without building another: a block-local code cannot beat the block's
+ * entropy, so it is only built when that bound leaves room to win. Containers that use only the
+ * shared codebook are written as version 1.
+ */
+public class ContainerWriter {
+
+    static final int MAGIC = 0x48554643;
+    static final int FRAME_MAGIC = 0x48554642;
+    static final int LOCAL_MAGIC = 0x4855464C;
+    static final int STORED_MAGIC = 0x48554653;
+    static final int END_MAGIC = 0x48554645;
+    static final int VERSION = 2;
+    // version 1 containers hold shared codebook frames only
+    static final int FLAG_INDEX = 1;
+    static final int DEFAULT_BLOCK_SIZE = 1 << 16;
+    static final int HEADER_BYTES = 15;
+    // fixed header fields, not counting the codebook
+    static final int FRAME_HEADER_BYTES = 16;
+    static final int END_BYTES = 8;
+    static final int INDEX_TRAILER_BYTES = 12;
+    private static final byte[] EMPTY = new byte[0];
+
+    private final Codebook codebook;
+    private final Alphabet alphabet;
+    private final int blockSize;
+    private final boolean index;
+    private final boolean select;
+    private final int storedWidth;
+
+
+    public ContainerWriter(Huffman huffman) {
+        this(huffman.codebook(), huffman.alphabet(), DEFAULT_BLOCK_SIZE, true);
+    }
+
+    public ContainerWriter(Codebook codebook, Alphabet alphabet, int blockSize, boolean index) {
+        this(codebook, alphabet, blockSize, index, false);
+    }
+
+    /**
+     * How a block's symbols are coded.
+     */
+    public enum BlockCoding {
+        /**
+         * With the codebook in the container header.
+         */
+        SHARED,
+        /**
+         * With a codebook of the block's own, stored in front of its bits.
+         */
+        LOCAL,
+        /**
+         * Uncoded, each symbol in the fixed width of the alphabet.
+         */
+        STORED
+    }
+
+    /**
+     * @param codebook  a canonical codebook
+     * @param alphabet  the kind of symbol the codebook codes
+     * @param blockSize the most symbols per block
+     * @param index     whether to append the index of frame offsets
+     * @param select    whether to pick the cheapest {@link BlockCoding} for each block rather than
+     *                  always using the shared codebook
+     * @throws IllegalArgumentException if codebook or alphabet is null, the codebook is not
+     *                                  canonical or has a symbol outside the alphabet, blockSize is
+     *                                  not positive, or a block's bit length could overflow an int
+     */
+    public ContainerWriter(Codebook codebook, Alphabet alphabet, int blockSize, boolean index,
+                           boolean select) {
+        if (codebook == null || alphabet == null || !codebook.isCanonical()
+                || codebook.symbol(codebook.size() - 1) >= alphabet.size() || blockSize < 1
+                || (long) blockSize * codebook.maxLength() > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException();
+        }
+        this.codebook = codebook;
+        this.alphabet = alphabet;
+        this.blockSize = blockSize;
+        this.index = index;
+        this.select = select;
+        this.storedWidth = storedWidth(alphabet);
+    }
+
+    /**
+     * @return the width of a {@link BlockCoding#STORED} symbol
+     */
+    static int storedWidth(Alphabet alphabet) {
+        return 32 - Integer.numberOfLeadingZeros(alphabet.size() - 1);
+    }
+
+    /**
+     * Writes a string as symbols of the writer's alphabet, as {@link Huffman#Huffman(String,
+     * Alphabet)} counts them.
+     *
+     * @param input the characters to write
+     * @return the container
+     * @throws IllegalArgumentException if the input is null or has a symbol without a code
+     */
+    public byte[] write(CharSequence input) {
+        if (input == null) {
+            throw new IllegalArgumentException();
+        }
+        if (alphabet == Alphabet.BYTES) {
+            return write(Huffman.utf8(input));
+        }
+        List<Frame> frames = new ArrayList<>();
+        BlockCounts counts = new BlockCounts();
+        for (int start = 0; start < input.length(); ) {
+            int end = start;
+            int count = 0;
+            if (alphabet == Alphabet.CHARS) {
+                end = Math.min(input.length(), start + blockSize);
+                count = end - start;
+            } else {
+                for (; end < input.length() && count < blockSize; count++) {
+                    end += Character.charCount(Character.codePointAt(input, end));
+                }
+            }
+            CharSequence block = input.subSequence(start, end);
+            Supplier<BitWriter> shared = () -> {
+                BitWriter bits = new BitWriter(blockSize / 4 + 8);
+                if (alphabet == Alphabet.CHARS) {
+                    codebook.encode(block, bits);
+                } else {
+                    codebook.encodeCodePoints(block, bits);
+                }
+                return bits;
+            };
+            if (select) {
+                forEachSymbol(block, counts);
+                frames.add(select(counts, out -> forEachSymbol(block, out), shared));
+            } else {
+                frames.add(new Frame(FRAME_MAGIC, count, EMPTY, shared.get()));
+            }
+            start = end;
+        }
+        return frame(frames);
+    }
+
+    /**
+     * @param input the bytes to write
+     * @return the container
+     * @throws IllegalArgumentException if the input is null or has a byte without a code
+     * @throws IllegalStateException    if the writer does not code {@link Alphabet#BYTES}
+     */
+    public byte[] write(byte[] input) {
+        if (alphabet != Alphabet.BYTES) {
+            throw new IllegalStateException();
+        }
+        if (input == null) {
+            throw new IllegalArgumentException();
+        }
+        List<Frame> frames = new ArrayList<>();
+        BlockCounts counts = new BlockCounts();
+        for (int start = 0; start < input.length; start += blockSize) {
+            int offset = start;
+            int count = Math.min(blockSize, input.length - start);
+            Supplier<BitWriter> shared = () -> {
+                BitWriter bits = new BitWriter(blockSize / 4 + 8);
+                codebook.encode(input, offset, count, bits);
+                return bits;
+            };
+            if (select) {
+                Consumer<IntConsumer> symbols = out -> {
+                    for (int i = offset; i < offset + count; i++) {
+                        out.accept(input[i] & 0xFF);
+                    }
+                };
+                symbols.accept(counts);
+                frames.add(select(counts, symbols, shared));
+            } else {
+                frames.add(new Frame(FRAME_MAGIC, count, EMPTY, shared.get()));
+            }
+        }
+        return frame(frames);
+    }
+
+    /**
+     * Passes each symbol of a block to a consumer, as chars or code points per the alphabet.
+     */
+    private void forEachSymbol(CharSequence block, IntConsumer out) {
+        if (alphabet == Alphabet.CHARS) {
+            for (int i = 0; i < block.length(); i++) {
+                out.accept(block.charAt(i));
+            }
+        } else {
+            for (int i = 0; i < block.length(); ) {
+                int codePoint = Character.codePointAt(block, i);
+                out.accept(codePoint);
+                i += Character.charCount(codePoint);
+            }
+        }
+    }
+
+    /**
+     * Counts the symbols of one block at a time into a table indexed by symbol. The table grows to
+     * the largest symbol seen and is reused across blocks, clearing only the entries a block set.
+     */
+    private static final class BlockCounts implements IntConsumer {
+        long[] counts = new long[256];
+        int[] seen = new int[64];
+        // the distinct symbols of the block, in the order first seen
+        int distinct;
+        int length;
+
+        @Override
+        public void accept(int symbol) {
+            if (symbol >= counts.length) {
+                counts = Arrays.copyOf(counts, Math.max(symbol + 1,
+                        Math.min(counts.length * 2, Character.MAX_CODE_POINT + 1)));
+            }
+            if (counts[symbol]++ == 0) {
+                if (distinct == seen.length) {
+                    seen = Arrays.copyOf(seen, distinct * 2);
+                }
+                seen[distinct++] = symbol;
+            }
+            length++;
+        }
+
+        void clear() {
+            for (int d = 0; d < distinct; d++) {
+                counts[seen[d]] = 0;
+            }
+            distinct = 0;
+            length = 0;
+        }
+    }
+
+    /**
+     * A coded block: the frame magic, symbol count, any bytes in front of the bits, and the bits.
+     */
+    private static class Frame {
+        final int magic;
+        final int symbols;
+        final byte[] prefix;
+        final BitWriter bits;
+
+        Frame(int magic, int symbols, byte[] prefix, BitWriter bits) {
+            this.magic = magic;
+            this.symbols = symbols;
+            this.prefix = prefix;
+            this.bits = bits;
+        }
+
+        long bitLength() {
+            return 8L * prefix.length + bits.bitLength();
+        }
+    }
+
+    /**
+     * Codes a block in whichever {@link BlockCoding} takes the fewest bits. Ties go to the shared
+     * codebook, then to the local one.
+     *
+     * @param blockCounts the block's symbol counts, cleared before returning
+     * @param block       passes the block's symbols to a consumer
+     * @param shared      encodes the block with the shared codebook
+     */
+    private Frame select(BlockCounts blockCounts, Consumer<IntConsumer> block,
+                         Supplier<BitWriter> shared) {
+        int distinct = blockCounts.distinct;
+        int length = blockCounts.length;
+        // only the distinct symbols are sorted, for Codebook#fromCounts
+        int[] symbols = Arrays.copyOf(blockCounts.seen, distinct);
+        Arrays.sort(symbols);
+        long[] counts = new long[distinct];
+        for (int d = 0; d < distinct; d++) {
+            counts[d] = blockCounts.counts[symbols[d]];
+        }
+        blockCounts.clear();
+
+        long sharedBits = 0;
+        double entropy = 0;
+        for (int d = 0; d < distinct; d++) {
+            int index = codebook.indexOf(symbols[d]);
+            sharedBits = index < 0 || sharedBits == Long.MAX_VALUE
+                    ? Long.MAX_VALUE : sharedBits + counts[d] * codebook.length(index);
+            entropy += counts[d] * (Math.log((double) length / counts[d]) / Math.log(2));
+        }
+        long storedBits = (long) length * storedWidth;
+        long best = Math.min(sharedBits, storedBits);
+
+        // the local header takes at least a byte per symbol plus the count
+        if (distinct >= 2 && entropy + 8.0 * (distinct + 1) < best) {
+            Codebook local = Codebook.fromCounts(symbols, counts);
+            byte[] header = local.toHeader();
+            long localBits = 8L * header.length;
+            for (int d = 0; d < distinct; d++) {
+                localBits += counts[d] * local.length(d);
+            }
+            if (localBits < best && localBits <= Integer.MAX_VALUE) {
+                BitWriter bits = new BitWriter((int) (localBits / 8) + 8);
+                block.accept(s -> {
+                    int index = local.indexOf(s);
+                    bits.writeBits(local.code(index), local.length(index));
+                });
+                return new Frame(LOCAL_MAGIC, length, header, bits);
+            }
+        }
+        if (sharedBits <= storedBits) {
+            return new Frame(FRAME_MAGIC, length, EMPTY, shared.get());
+        }
+        BitWriter bits = new BitWriter((int) (storedBits / 8) + 8);
+        block.accept(s -> bits.writeBits(s, storedWidth));
+        return new Frame(STORED_MAGIC, length, EMPTY, bits);
+    }
+
+    private byte[] frame(List<Frame> frames) {
+        byte[] header = codebook.toHeader();
+        long total = HEADER_BYTES + header.length + END_BYTES
+                + (index ? 8L * frames.size() + INDEX_TRAILER_BYTES : 0);
+        for (Frame frame : frames) {
+            if (frame.bitLength() > Integer.MAX_VALUE) {
+                throw new IllegalArgumentException();
+            }
+            total += FRAME_HEADER_BYTES + (frame.bitLength() + 7) / 8;
+        }
+        if (total > Integer.MAX_VALUE - 8) {
+            throw new IllegalArgumentException();
+        }
+        ByteBuffer out = ByteBuffer.allocate((int) total);
+        out.putInt(MAGIC).put((byte) (select ? VERSION : 1)).put((byte) (index ? FLAG_INDEX : 0))
+                .put((byte) alphabet.ordinal()).putInt(blockSize).put(header);
+        out.putInt(crc32c(out.array(), 0, out.position()));
+
+        long[] offsets = new long[frames.size()];
+        for (int b = 0; b < frames.size(); b++) {
+            Frame frame = frames.get(b);
+            byte[] packed = frame.bits.toByteArray();
+            int dataBytes = packed.length - 1;
+            offsets[b] = out.position();
+            out.putInt(frame.magic).putInt(frame.symbols).putInt((int) frame.bitLength());
+            CRC32C crc = new CRC32C();
+            crc.update(out.array(), out.position() - 8, 8);
+            crc.update(frame.prefix);
+            // the packed form ends with the padding trailer, which the bit count makes redundant
+            crc.update(packed, 0, dataBytes);
+            out.putInt((int) crc.getValue()).put(frame.prefix).put(packed, 0, dataBytes);
+        }
+        out.putInt(END_MAGIC).putInt(frames.size());
+        if (index) {
+            int indexStart = out.position();
+            for (long offset : offsets) {
+                out.putLong(offset);
+            }
+            out.putInt(crc32c(out.array(), indexStart, out.position() - indexStart));
+            out.putLong(indexStart);
+        }
+        return out.array();
+    }
+
+    static int crc32c(byte[] data, int offset, int length) {
+        CRC32C crc = new CRC32C();
+        crc.update(data, offset, length);
+        return (int) crc.getValue();
+    }
+}
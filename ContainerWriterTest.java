@@ -0,0 +1,288 @@
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class ContainerWriterTest {
+
+    private static final String TEXT = "the quick brown fox jumps over the lazy dog, again and again";
+
+    private static String repeat(int times) {
+        StringBuilder out = new StringBuilder();
+        for (int i = 0; i < times; i++) {
+            out.append(TEXT).append(i % 10);
+        }
+        return out.toString();
+    }
+
+    @Test
+    public void testRoundTripChars() {
+        String input = repeat(40);
+        Huffman h = new Huffman(input, true);
+        ContainerWriter writer = new ContainerWriter(h.codebook(), Alphabet.CHARS, 100, true);
+        byte[] container = writer.write(input);
+        ContainerReader reader = new ContainerReader(container);
+        assertEquals(Alphabet.CHARS, reader.alphabet());
+        assertArrayEquals(h.codebook().toHeader(), reader.codebook().toHeader());
+        assertTrue(reader.indexed());
+        assertEquals((input.length() + 99) / 100, reader.blockCount());
+        assertEquals(0, reader.damagedBlocks().length);
+        assertEquals(input, reader.readString());
+        assertEquals(input.substring(300, 400), reader.readBlock(3));
+    }
+
+    @Test
+    public void testRoundTripCodePointsAndBytes() {
+        String input = "h\u00e9llo \ud83d\ude00 w\u00f6rld \ud83d\ude00\ud83d\ude01 " + repeat(3);
+        Huffman points = new Huffman(FrequencyCounter.countCodePoints(input), Alphabet.CODE_POINTS,
+                true);
+        ContainerWriter writer = new ContainerWriter(points.codebook(), Alphabet.CODE_POINTS, 7, false);
+        ContainerReader reader = new ContainerReader(writer.write(input));
+        assertFalse(reader.indexed());
+        assertEquals(input, reader.readString());
+        assertEquals("h\u00e9llo \ud83d\ude00", reader.readBlock(0));
+
+        byte[] utf8 = Huffman.utf8(input);
+        Huffman bytes = new Huffman(FrequencyCounter.countBytes(utf8, 0, utf8.length),
+                Alphabet.BYTES, true);
+        reader = new ContainerReader(new ContainerWriter(bytes).write(input));
+        assertEquals(Alphabet.BYTES, reader.alphabet());
+        assertEquals(input, reader.readString());
+        assertArrayEquals(utf8, reader.readBytes());
+    }
+
+    @Test
+    public void testEmptyInput() {
+        Huffman h = new Huffman(TEXT, true);
+        ContainerReader reader = new ContainerReader(new ContainerWriter(h).write(""));
+        assertEquals(0, reader.blockCount());
+        assertTrue(reader.indexed());
+        assertEquals("", reader.readString());
+    }
+
+    @Test
+    public void testDamagedPayloadIsIsolated() {
+        String input = repeat(20);
+        Huffman h = new Huffman(input, true);
+        for (boolean index : new boolean[]{true, false}) {
+            byte[] container = new ContainerWriter(h.codebook(), Alphabet.CHARS, 64, index)
+                    .write(input);
+            ContainerReader clean = new ContainerReader(container);
+            int blocks = clean.blockCount();
+            // flip a bit in the middle of block 2's data
+            container[frameOffset(container, clean, 2) + ContainerWriter.FRAME_HEADER_BYTES + 3]
+                    ^= 0x10;
+            ContainerReader reader = new ContainerReader(container);
+            assertEquals(blocks, reader.blockCount());
+            assertArrayEquals(new int[]{2}, reader.damagedBlocks());
+            assertEquals(input.substring(64, 128), reader.readBlock(1));
+            assertEquals(input.substring(192, 256), reader.readBlock(3));
+            try {
+                reader.readBlock(2);
+                fail();
+            } catch (IllegalArgumentException expected) {
+            }
+            try {
+                reader.readString();
+                fail();
+            } catch (IllegalArgumentException expected) {
+            }
+        }
+    }
+
+    @Test
+    public void testDamagedFrameHeaderWithoutIndexResyncs() {
+        String input = repeat(20);
+        Huffman h = new Huffman(input, true);
+        byte[] container = new ContainerWriter(h.codebook(), Alphabet.CHARS, 64, false)
+                .write(input);
+        ContainerReader clean = new ContainerReader(container);
+        int offset = frameOffset(container, clean, 4);
+        // an impossible bit count
+        ByteBuffer.wrap(container).putInt(offset + 8, -1);
+        ContainerReader reader = new ContainerReader(container);
+        assertEquals(clean.blockCount(), reader.blockCount());
+        assertArrayEquals(new int[]{4}, reader.damagedBlocks());
+        assertEquals(input.substring(320, 384), reader.readBlock(5));
+    }
+
+    @Test
+    public void testDamagedIndexFallsBackToWalking() {
+        String input = repeat(10);
+        Huffman h = new Huffman(input, true);
+        byte[] container = new ContainerWriter(h.codebook(), Alphabet.CHARS, 50, true)
+                .write(input);
+        container[container.length - 14] ^= 1;
+        ContainerReader reader = new ContainerReader(container);
+        assertFalse(reader.indexed());
+        assertEquals(input, reader.readString());
+    }
+
+    @Test
+    public void testDamagedHeaderIsRejected() {
+        Huffman h = new Huffman(TEXT, true);
+        byte[] container = new ContainerWriter(h).write(TEXT);
+        Random random = new Random(5);
+        for (int i = 0; i < 20; i++) {
+            byte[] damaged = container.clone();
+            int headerBytes = ContainerWriter.HEADER_BYTES + h.codebook().toHeader().length;
+            damaged[random.nextInt(headerBytes)] ^= 1 << random.nextInt(8);
+            try {
+                new ContainerReader(damaged);
+                fail();
+            } catch (IllegalArgumentException expected) {
+            }
+        }
+        try {
+            new ContainerReader(Arrays.copyOf(container, 6));
+            fail();
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+
+    @Test
+    public void testSelectsCheapestCodingPerBlock() {
+        String seed = repeat(20);
+        Huffman h = new Huffman(seed, true);
+        StringBuilder input = new StringBuilder(seed.substring(0, 200));
+        // only two characters, one of them missing from the seed: a local code wins
+        for (int i = 0; i < 200; i++) {
+            input.append(i % 3 == 0 ? 'Q' : 'e');
+        }
+        // spread evenly over many characters, most without a shared code: storing wins
+        Random random = new Random(3);
+        for (int i = 0; i < 200; i++) {
+            input.append((char) (0x4E00 + random.nextInt(4096)));
+        }
+        ContainerWriter writer = new ContainerWriter(h.codebook(), Alphabet.CHARS, 200, true, true);
+        byte[] container = writer.write(input);
+        ContainerReader reader = new ContainerReader(container);
+        assertEquals(3, reader.blockCount());
+        assertEquals(ContainerWriter.BlockCoding.SHARED, reader.coding(0));
+        assertEquals(ContainerWriter.BlockCoding.LOCAL, reader.coding(1));
+        assertEquals(ContainerWriter.BlockCoding.STORED, reader.coding(2));
+        assertEquals(input.toString(), reader.readString());
+        assertEquals(input.substring(200, 400), reader.readBlock(1));
+        // the shared codebook alone cannot code the input at all
+        try {
+            new ContainerWriter(h.codebook(), Alphabet.CHARS, 200, true).write(input);
+            fail();
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+
+    @Test
+    public void testSelectionBoundsExpansion() {
+        byte[] seed = Huffman.utf8(repeat(10));
+        long[] histogram = FrequencyCounter.countBytes(seed, 0, seed.length);
+        for (int b = 0; b < histogram.length; b++) {
+            histogram[b]++;
+        }
+        Huffman h = new Huffman(histogram, Alphabet.BYTES, true);
+        byte[] noise = new byte[10000];
+        new Random(9).nextBytes(noise);
+        ContainerWriter writer = new ContainerWriter(h.codebook(), Alphabet.BYTES, 1000, false, true);
+        byte[] selected = writer.write(noise);
+        byte[] shared = new ContainerWriter(h.codebook(), Alphabet.BYTES, 1000, false).write(noise);
+        ContainerReader reader = new ContainerReader(selected);
+        for (int b = 0; b < reader.blockCount(); b++) {
+            assertEquals(ContainerWriter.BlockCoding.STORED, reader.coding(b));
+        }
+        assertArrayEquals(noise, reader.readBytes());
+        assertTrue(selected.length < shared.length);
+        assertTrue(selected.length < noise.length + 10 * ContainerWriter.FRAME_HEADER_BYTES + 300);
+
+        // text like the seed keeps the shared codebook once it is not diluted by the smoothing
+        Huffman exact = new Huffman(FrequencyCounter.countBytes(seed, 0, seed.length),
+                Alphabet.BYTES, true);
+        byte[] typical = Huffman.utf8(repeat(50));
+        writer = new ContainerWriter(exact.codebook(), Alphabet.BYTES, 1000, false, true);
+        reader = new ContainerReader(writer.write(typical));
+        for (int b = 0; b < reader.blockCount(); b++) {
+            assertEquals(ContainerWriter.BlockCoding.SHARED, reader.coding(b));
+        }
+        assertArrayEquals(typical, reader.readBytes());
+    }
+
+    @Test
+    public void testDamagedLocalBlockIsIsolated() {
+        String seed = repeat(5);
+        Huffman h = new Huffman(seed, true);
+        String input = seed.substring(0, 100) + "zzzzzyyyyyxxxxxwwwwwZZZZZYYYYYXXXXXWWWWW"
+                + seed.substring(0, 60) + seed.substring(100, 200);
+        ContainerWriter writer = new ContainerWriter(h.codebook(), Alphabet.CHARS, 100, true, true);
+        byte[] container = writer.write(input);
+        ContainerReader clean = new ContainerReader(container);
+        assertEquals(ContainerWriter.BlockCoding.LOCAL, clean.coding(1));
+        container[frameOffset(container, clean, 1) + ContainerWriter.FRAME_HEADER_BYTES + 1] ^= 4;
+        ContainerReader reader = new ContainerReader(container);
+        assertArrayEquals(new int[]{1}, reader.damagedBlocks());
+        assertNull(reader.coding(1));
+        assertEquals(input.substring(200), reader.readBlock(2));
+    }
+
+    @Test
+    public void testVersionOneHoldsSharedFramesOnly() {
+        String seed = repeat(5);
+        Huffman h = new Huffman(seed, true);
+        String input = seed.substring(0, 100) + "zzzzzyyyyyxxxxxwwwwwZZZZZYYYYYXXXXXWWWWW";
+        ContainerWriter writer = new ContainerWriter(h.codebook(), Alphabet.CHARS, 100, true, true);
+        byte[] container = writer.write(input);
+        assertEquals(ContainerWriter.BlockCoding.LOCAL, new ContainerReader(container).coding(1));
+        // relabel it version 1, keeping the header checksum valid
+        container[4] = 1;
+        int headerEnd = ContainerWriter.HEADER_BYTES - 4 + h.codebook().toHeader().length;
+        ByteBuffer.wrap(container).putInt(headerEnd,
+                ContainerWriter.crc32c(container, 0, headerEnd));
+        ContainerReader reader = new ContainerReader(container);
+        assertEquals(ContainerWriter.BlockCoding.SHARED, reader.coding(0));
+        assertArrayEquals(new int[]{1}, reader.damagedBlocks());
+        assertNull(reader.coding(1));
+        assertEquals(input.substring(0, 100), reader.readBlock(0));
+    }
+
+    @Test
+    public void testSelectionCountsCodePoints() {
+        String seed = repeat(5);
+        Codebook canonical = new Huffman(FrequencyCounter.countCodePoints(seed),
+                Alphabet.CODE_POINTS, true).codebook();
+        StringBuilder input = new StringBuilder(seed.substring(0, 50));
+        for (int i = 0; i < 50; i++) {
+            input.appendCodePoint(i % 2 == 0 ? 0x1F600 : 0x10FFFF);
+        }
+        input.append(seed, 0, 50);
+        ContainerWriter writer = new ContainerWriter(canonical, Alphabet.CODE_POINTS, 50, true,
+                true);
+        ContainerReader reader = new ContainerReader(writer.write(input));
+        assertEquals(3, reader.blockCount());
+        assertEquals(ContainerWriter.BlockCoding.SHARED, reader.coding(0));
+        assertEquals(ContainerWriter.BlockCoding.LOCAL, reader.coding(1));
+        assertEquals(ContainerWriter.BlockCoding.SHARED, reader.coding(2));
+        assertEquals(input.toString(), reader.readString());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testBytesNeedByteAlphabet() {
+        new ContainerWriter(new Huffman(TEXT, true)).write(new byte[]{1, 2});
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNonCanonicalCodebook() {
+        new ContainerWriter(new Huffman(TEXT).codebook(), Alphabet.CHARS, 10, true);
+    }
+
+    /**
+     * Walks the frames of an intact container to the given block.
+     */
+    private static int frameOffset(byte[] container, ContainerReader reader, int block) {
+        ByteBuffer in = ByteBuffer.wrap(container);
+        int offset = ContainerWriter.HEADER_BYTES + reader.codebook().toHeader().length;
+        for (int b = 0; b < block; b++) {
+            offset += ContainerWriter.FRAME_HEADER_BYTES + (in.getInt(offset + 8) + 7) / 8;
+        }
+        return offset;
+    }
+}
@@ -0,0 +1,239 @@
+import java.util.function.IntConsumer;
+
+/**
+ * Table driven decoder for a prefix code. The next {@link #TABLE_BITS} bits of input index a
+ * primary table whose entries hold up to two complete symbols and the number of bits they use, so
+ * short codes are decoded several at a time with a single probe. Codes longer than the table width
+ * resume from the {@link FlatTree} node the table bits lead to.
+ */
+public class DecodeTable {
+
+    static final int TABLE_BITS = 10;
+    private static final int INVALID = 0;
+
+    private final int[] info;
+    // count | first length << 8 | total length << 16, or tree node << 8 when count is 0
+    private final int[] symbols;
+    // two symbol slots per table entry
+    private final FlatTree tree;
+
+
+    /**
+     * Builds the decoding tables for a prefix code.
+     *
+     * @param symbols the symbol of each code
+     * @param codes   the code words, right-aligned
+     * @param lengths the code lengths, between 1 and 64
+     * @throws IllegalArgumentException if the arrays differ in size or the codes are not prefix
+     *                                  free
+     */
+    public DecodeTable(int[] symbols, long[] codes, int[] lengths) {
+        this(FlatTree.fromCodes(symbols, codes, lengths));
+    }
+
+    /**
+     * Builds the decoding tables for the code described by a tree.
+     *
+     * @param tree the code tree
+     */
+    public DecodeTable(FlatTree tree) {
+        this.tree = tree;
+        info = new int[1 << TABLE_BITS];
+        symbols = new int[2 << TABLE_BITS];
+        for (int index = 0; index < info.length; index++) {
+            fillEntry(index);
+        }
+    }
+
+    private void fillEntry(int index) {
+        int node = 0;
+        int used = 0;
+        int count = 0;
+        int firstLength = 0;
+        boolean dead = false;
+        while (used < TABLE_BITS && count < 2) {
+            int bit = (index >>> (TABLE_BITS - 1 - used)) & 1;
+            int child = tree.child(node, bit);
+            used++;
+            if (child == 0) {
+                dead = true;
+                break;
+            } else if (child < 0) {
+                symbols[2 * index + count] = ~child;
+                count++;
+                if (count == 1) {
+                    firstLength = used;
+                }
+                node = 0;
+            } else {
+                node = child;
+            }
+        }
+        if (count > 0) {
+            int total = count == 2 ? used : firstLength;
+            info[index] = count | firstLength << 8 | total << 16;
+        } else if (!dead) {
+            info[index] = node << 8;
+        } else {
+            info[index] = INVALID;
+        }
+    }
+
+    /**
+     * Decodes every remaining bit of the reader, appending each symbol as a UTF-16 char.
+     *
+     * @param in  the bits to decode
+     * @param out receives the decoded characters
+     * @throws IllegalArgumentException if the bits end partway through a code or contain a
+     *                                  sequence that is not a code
+     */
+    public void decode(BitReader in, StringBuilder out) {
+        decode(in, symbol -> out.append((char) symbol));
+    }
+
+    /**
+     * Decodes every remaining bit of the reader.
+     *
+     * @param in  the bits to decode
+     * @param out receives the decoded symbols
+     * @throws IllegalArgumentException if the bits end partway through a code or contain a
+     *                                  sequence that is not a code
+     */
+    public void decode(BitReader in, IntConsumer out) {
+        decodeUntil(in, 0, out);
+    }
+
+    /**
+     * Decodes codes until exactly the given number of bits have been consumed, leaving the rest of
+     * the reader for the next caller. Pairs of symbols are only taken together when both end
+     * within those bits.
+     *
+     * @param in   the bits to decode
+     * @param bits the number of bits to decode
+     * @param out  receives the decoded symbols
+     * @throws IllegalArgumentException if fewer bits remain or the last code runs past them
+     */
+    public void decode(BitReader in, long bits, IntConsumer out) {
+        long stop = in.remaining() - bits;
+        if (bits < 0 || stop < 0) {
+            throw new IllegalArgumentException();
+        }
+        decodeUntil(in, stop, out);
+        if (in.remaining() != stop) {
+            throw new IllegalArgumentException();
+        }
+    }
+
+    /**
+     * Decodes up to max symbols, taking pairs with one probe where both fit. Only the first symbol
+     * may wait for the stream behind a reader; the rest are decoded while the reader has at least
+     * minBits buffered or the stream has ended, so a caller gets back what could be decoded before
+     * the stream blocks.
+     *
+     * @param in      the bits to decode
+     * @param max     the most symbols to decode
+     * @param minBits the length of the longest code, or more
+     * @param out     receives the decoded symbols
+     * @return the number of symbols decoded, 0 only if max is 0 or no bits remain
+     * @throws IllegalArgumentException if the bits end partway through a code or contain a
+     *                                  sequence that is not a code
+     */
+    public int decodeUpTo(BitReader in, int max, int minBits, IntConsumer out) {
+        long buffered = Math.max(minBits, TABLE_BITS);
+        int count = 0;
+        while (count < max && (count == 0 || in.complete()
+                ? in.hasRemaining() : in.available() >= buffered)) {
+            int index = (int) in.peekBits(TABLE_BITS);
+            int entry = info[index];
+            if ((entry & 0xFF) == 0) {
+                out.accept(decodeLong(in, entry));
+                count++;
+                continue;
+            }
+            int firstLength = (entry >>> 8) & 0xFF;
+            // with that many bits buffered, every pair fits
+            long remaining = in.available() >= buffered ? buffered : in.remaining();
+            if (firstLength > remaining) {
+                throw new IllegalArgumentException();
+            }
+            out.accept(symbols[2 * index]);
+            int total = entry >>> 16;
+            if ((entry & 0xFF) == 2 && total <= remaining && count + 2 <= max) {
+                out.accept(symbols[2 * index + 1]);
+                in.skipBits(total);
+                count += 2;
+            } else {
+                in.skipBits(firstLength);
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Decodes while more than stop bits remain.
+     */
+    private void decodeUntil(BitReader in, long stop, IntConsumer out) {
+        while (in.remaining() > stop) {
+            int index = (int) in.peekBits(TABLE_BITS);
+            int entry = info[index];
+            int count = entry & 0xFF;
+            if (count == 0) {
+                out.accept(decodeLong(in, entry));
+                continue;
+            }
+            int firstLength = (entry >>> 8) & 0xFF;
+            long remaining = in.remaining() - stop;
+            if (firstLength > remaining) {
+                throw new IllegalArgumentException();
+            }
+            out.accept(symbols[2 * index]);
+            int total = entry >>> 16;
+            if (count == 2 && total <= remaining) {
+                out.accept(symbols[2 * index + 1]);
+                in.skipBits(total);
+            } else {
+                in.skipBits(firstLength);
+            }
+        }
+    }
+
+    /**
+     * Decodes a single symbol.
+     *
+     * @param in the bits to decode
+     * @return the next symbol
+     * @throws IllegalArgumentException if the bits end partway through a code or contain a
+     *                                  sequence that is not a code
+     */
+    public int decodeSymbol(BitReader in) {
+        int index = (int) in.peekBits(TABLE_BITS);
+        int entry = info[index];
+        if ((entry & 0xFF) == 0) {
+            return decodeLong(in, entry);
+        }
+        int firstLength = (entry >>> 8) & 0xFF;
+        in.skipBits(firstLength);
+        return symbols[2 * index];
+    }
+
+    private int decodeLong(BitReader in, int entry) {
+        if (entry == INVALID || in.available() < TABLE_BITS && in.remaining() < TABLE_BITS) {
+            throw new IllegalArgumentException();
+        }
+        in.skipBits(TABLE_BITS);
+        int node = entry >>> 8;
+        while (true) {
+            if (!in.hasRemaining()) {
+                throw new IllegalArgumentException();
+            }
+            int child = tree.child(node, in.readBit());
+            if (child < 0) {
+                return ~child;
+            } else if (child == 0) {
+                throw new IllegalArgumentException();
+            }
+            node = child;
+        }
+    }
+}
@@ -0,0 +1,76 @@
+import org.junit.Test;
+
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+public class DecodeTableTest {
+
+    private static String decode(DecodeTable table, String bits) {
+        StringBuilder out = new StringBuilder();
+        table.decode(BitReader.packed(BitWriter.fromBitString(bits)), out);
+        return out.toString();
+    }
+
+    @Test
+    public void testShortCodes() {
+        DecodeTable table = new DecodeTable(new int[]{'a', 'b', 'c'}, new long[]{0b0, 0b10, 0b11},
+                new int[]{1, 2, 2});
+        assertEquals("abcab", decode(table, "01011010"));
+        assertEquals("", decode(table, ""));
+    }
+
+    @Test
+    public void testCodesLongerThanTable() {
+        int n = DecodeTable.TABLE_BITS + 4;
+        int[] symbols = new int[n + 1];
+        long[] codes = new long[n + 1];
+        int[] lengths = new int[n + 1];
+        for (int i = 0; i < n; i++) {
+            symbols[i] = 'a' + i;
+            codes[i] = (1L << (i + 1)) - 2;
+            lengths[i] = i + 1;
+        }
+        symbols[n] = 'z';
+        codes[n] = (1L << n) - 1;
+        lengths[n] = n;
+        DecodeTable table = new DecodeTable(symbols, codes, lengths);
+        String longest = "11111111111111";
+        assertEquals("za" + (char) ('a' + n - 1) + "z", decode(table, longest + "0" + "11111111111110" + longest));
+    }
+
+    @Test
+    public void testDecodeSymbol() {
+        DecodeTable table = new DecodeTable(new int[]{'x', 'y'}, new long[]{0, 1}, new int[]{1, 1});
+        BitReader reader = BitReader.packed(BitWriter.fromBitString("10"));
+        assertEquals('y', table.decodeSymbol(reader));
+        assertEquals('x', table.decodeSymbol(reader));
+        assertFalse(reader.hasRemaining());
+    }
+
+    @Test
+    public void testDecodeUpTo() {
+        DecodeTable table = new DecodeTable(new int[]{'a', 'b', 'c'}, new long[]{0b0, 0b10, 0b11},
+                new int[]{1, 2, 2});
+        BitReader reader = BitReader.packed(BitWriter.fromBitString("01011010"));
+        StringBuilder out = new StringBuilder();
+        // a pair is split rather than overrun max
+        assertEquals(3, table.decodeUpTo(reader, 3, 2, symbol -> out.append((char) symbol)));
+        assertEquals("abc", out.toString());
+        assertEquals(2, table.decodeUpTo(reader, 5, 2, symbol -> out.append((char) symbol)));
+        assertEquals(0, table.decodeUpTo(reader, 5, 2, symbol -> out.append((char) symbol)));
+        assertEquals("abcab", out.toString());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testTruncatedCode() {
+        DecodeTable table = new DecodeTable(new int[]{'a', 'b', 'c'}, new long[]{0b0, 0b10, 0b11},
+                new int[]{1, 2, 2});
+        decode(table, "01");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNotPrefixFree() {
+        new DecodeTable(new int[]{'a', 'b'}, new long[]{0b0, 0b01}, new int[]{1, 2});
+    }
+}
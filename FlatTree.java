@@ -0,0 +1,163 @@
+import java.util.Arrays;
+
+/**
+ * A binary code tree flattened into one {@code int} array in breadth-first order. Internal node
+ * {@code i} keeps its children at {@code 2i} and {@code 2i + 1}; a child entry is the index of
+ * another internal node, {@code ~symbol} (always negative) for a leaf, or 0 where the code set has
+ * no such branch. The root is node 0, and every node comes after its parent, so a single forward
+ * pass visits the tree top down.
+ */
+public final class FlatTree {
+
+    private final int[] nodes;
+    private final int leaves;
+
+
+    private FlatTree(int[] nodes, int leaves) {
+        this.nodes = nodes;
+        this.leaves = leaves;
+    }
+
+    /**
+     * Flattens a tree in the children array layout of {@link HuffmanTreeBuilder}.
+     *
+     * @param children    the children array
+     * @param leafSymbols the symbol of each leaf
+     * @return the flattened tree
+     */
+    public static FlatTree fromChildren(int[] children, int[] leafSymbols) {
+        int n = leafSymbols.length;
+        int[] raw = new int[children.length];
+        // internal node n + k becomes raw node (n - 2 - k) so that the root is raw node 0
+        for (int k = 0; k < n - 1; k++) {
+            for (int c = 0; c < 2; c++) {
+                int child = children[2 * k + c];
+                raw[2 * (n - 2 - k) + c] = child < n ? ~leafSymbols[child] : n - 2 - (child - n);
+            }
+        }
+        return new FlatTree(breadthFirst(raw), n);
+    }
+
+    /**
+     * Builds the tree of a prefix code.
+     *
+     * @param symbols the symbol of each code, non-negative
+     * @param codes   the code words, right-aligned
+     * @param lengths the code lengths, between 1 and 64
+     * @return the tree
+     * @throws IllegalArgumentException if the arrays differ in size or the codes are not prefix
+     *                                  free
+     */
+    public static FlatTree fromCodes(int[] symbols, long[] codes, int[] lengths) {
+        if (symbols.length != codes.length || codes.length != lengths.length) {
+            throw new IllegalArgumentException();
+        }
+        int[] raw = new int[2 * Math.max(symbols.length, 2)];
+        int next = 1;
+        for (int s = 0; s < symbols.length; s++) {
+            if (lengths[s] < 1 || lengths[s] > Codebook.MAX_LENGTH || symbols[s] < 0) {
+                throw new IllegalArgumentException();
+            }
+            int node = 0;
+            for (int b = lengths[s] - 1; b >= 0; b--) {
+                int slot = 2 * node + (int) ((codes[s] >>> b) & 1);
+                if (slot >= raw.length) {
+                    raw = Arrays.copyOf(raw, raw.length * 2);
+                }
+                if (raw[slot] < 0 || (b == 0 && raw[slot] != 0)) {
+                    throw new IllegalArgumentException();
+                }
+                if (b == 0) {
+                    raw[slot] = ~symbols[s];
+                } else {
+                    if (raw[slot] == 0) {
+                        raw[slot] = next++;
+                    }
+                    node = raw[slot];
+                }
+            }
+        }
+        return new FlatTree(breadthFirst(Arrays.copyOf(raw, 2 * next)), symbols.length);
+    }
+
+    /**
+     * Renumbers the internal nodes of a tree rooted at node 0 in breadth-first order.
+     */
+    private static int[] breadthFirst(int[] raw) {
+        int count = raw.length / 2;
+        int[] queue = new int[count];
+        int[] renamed = new int[count];
+        int head = 0;
+        int tail = 1;
+        while (head < tail) {
+            int node = queue[head++];
+            for (int c = 0; c < 2; c++) {
+                int child = raw[2 * node + c];
+                if (child > 0) {
+                    renamed[child] = tail;
+                    queue[tail++] = child;
+                }
+            }
+        }
+        int[] nodes = new int[2 * tail];
+        for (int i = 0; i < tail; i++) {
+            for (int c = 0; c < 2; c++) {
+                int child = raw[2 * queue[i] + c];
+                nodes[2 * i + c] = child > 0 ? renamed[child] : child;
+            }
+        }
+        return nodes;
+    }
+
+    /**
+     * @return the number of internal nodes
+     */
+    public int nodeCount() {
+        return nodes.length / 2;
+    }
+
+    /**
+     * @return the number of leaves
+     */
+    public int leafCount() {
+        return leaves;
+    }
+
+    /**
+     * @param node an internal node
+     * @param bit  0 for the left branch, 1 for the right
+     * @return the child node, {@code ~symbol} for a leaf, or 0 if there is no such branch
+     */
+    public int child(int node, int bit) {
+        return nodes[2 * node + bit];
+    }
+
+    /**
+     * Reads off the code of every leaf with one forward pass over the nodes. Codes deeper than 64
+     * bits keep only their last 64 bits, but their lengths are exact.
+     *
+     * @param symbols receives the symbol of each leaf, in breadth-first order
+     * @param codes   receives the code words, right-aligned
+     * @param lengths receives the code lengths
+     */
+    public void codes(int[] symbols, long[] codes, int[] lengths) {
+        int count = nodeCount();
+        long[] nodeCode = new long[count];
+        int[] depth = new int[count];
+        int leaf = 0;
+        for (int node = 0; node < count; node++) {
+            for (int c = 0; c < 2; c++) {
+                int child = nodes[2 * node + c];
+                long code = nodeCode[node] << 1 | c;
+                if (child < 0) {
+                    symbols[leaf] = ~child;
+                    codes[leaf] = code;
+                    lengths[leaf++] = depth[node] + 1;
+                } else if (child > 0) {
+                    nodeCode[child] = code;
+                    depth[child] = depth[node] + 1;
+                }
+            }
+        }
+    }
+}
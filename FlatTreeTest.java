@@ -0,0 +1,68 @@
+import org.junit.Test;
+
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+public class FlatTreeTest {
+
+    @Test
+    public void testBreadthFirstLayout() {
+        // a = 0, b = 10, c = 11
+        FlatTree tree = FlatTree.fromCodes(new int[]{'a', 'b', 'c'}, new long[]{0b0, 0b10, 0b11},
+                new int[]{1, 2, 2});
+        assertEquals(2, tree.nodeCount());
+        assertEquals(3, tree.leafCount());
+        assertEquals(~'a', tree.child(0, 0));
+        assertEquals(1, tree.child(0, 1));
+        assertEquals(~'b', tree.child(1, 0));
+        assertEquals(~'c', tree.child(1, 1));
+    }
+
+    @Test
+    public void testFromChildrenCodes() {
+        long[] weights = {8, 2, 5, 3};
+        int[] symbols = {'d', 'a', 'c', 'b'};
+        FlatTree tree = FlatTree.fromChildren(HuffmanTreeBuilder.build(weights), symbols);
+        int[] leafSymbols = new int[4];
+        long[] codes = new long[4];
+        int[] lengths = new int[4];
+        tree.codes(leafSymbols, codes, lengths);
+        Map<Integer, Integer> lengthOf = new HashMap<>();
+        for (int i = 0; i < 4; i++) {
+            lengthOf.put(leafSymbols[i], lengths[i]);
+        }
+        assertEquals((Integer) 1, lengthOf.get((int) 'd'));
+        assertEquals((Integer) 2, lengthOf.get((int) 'c'));
+        assertEquals((Integer) 3, lengthOf.get((int) 'b'));
+        assertEquals((Integer) 3, lengthOf.get((int) 'a'));
+        // breadth-first order lists shallower leaves first
+        assertEquals('d', leafSymbols[0]);
+    }
+
+    @Test
+    public void testCodesRoundTrip() {
+        int[] symbols = {'w', 'x', 'y', 'z'};
+        long[] codes = {0b00, 0b01, 0b10, 0b11};
+        int[] lengths = {2, 2, 2, 2};
+        FlatTree tree = FlatTree.fromCodes(symbols, codes, lengths);
+        int[] s = new int[4];
+        long[] c = new long[4];
+        int[] l = new int[4];
+        tree.codes(s, c, l);
+        assertArrayEquals(symbols, s);
+        assertArrayEquals(codes, c);
+        assertArrayEquals(lengths, l);
+    }
+
+    @Test
+    public void testMissingBranch() {
+        FlatTree tree = FlatTree.fromCodes(new int[]{'a', 'b'}, new long[]{0b0, 0b10}, new int[]{1, 2});
+        assertEquals(0, tree.child(1, 1));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNotPrefixFree() {
+        FlatTree.fromCodes(new int[]{'a', 'b'}, new long[]{0b1, 0b10}, new int[]{1, 2});
+    }
+}
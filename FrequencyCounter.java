@@ -0,0 +1,199 @@
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.nio.CharBuffer;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Counts character frequencies into a primitive histogram indexed by character value. Large inputs
+ * are split into chunks counted in parallel on the common {@link ForkJoinPool} and merged, small
+ * ones are counted in place with a histogram only as long as the largest character seen.
+ */
+public final class FrequencyCounter {
+
+    static final int ALPHABET_SIZE = 1 << 16;
+    static final int BYTE_ALPHABET_SIZE = 1 << 8;
+    static final int PARALLEL_CHUNK = 1 << 20;
+    private static final int READ_BUFFER = 8192;
+
+    private FrequencyCounter() {
+    }
+
+    /**
+     * @param seed the characters to count
+     * @return the histogram, where entry c holds the number of occurrences of character c; its
+     *         length is at least one more than the largest character present
+     * @throws IllegalArgumentException if seed is null
+     */
+    public static long[] count(CharSequence seed) {
+        if (seed == null) {
+            throw new IllegalArgumentException();
+        }
+        if (seed.length() > PARALLEL_CHUNK) {
+            return ForkJoinPool.commonPool().invoke(new ChunkTask(seed, 0, seed.length()));
+        }
+        int max = -1;
+        for (int i = 0; i < seed.length(); i++) {
+            max = Math.max(max, seed.charAt(i));
+        }
+        long[] histogram = new long[max + 1];
+        for (int i = 0; i < seed.length(); i++) {
+            histogram[seed.charAt(i)]++;
+        }
+        return histogram;
+    }
+
+    /**
+     * @param seed   the array holding the characters to count
+     * @param offset index of the first character
+     * @param length number of characters to count
+     * @return the histogram, see {@link #count(CharSequence)}
+     * @throws IllegalArgumentException if seed is null or the range is out of bounds
+     */
+    public static long[] count(char[] seed, int offset, int length) {
+        if (seed == null || offset < 0 || length < 0 || offset + length > seed.length) {
+            throw new IllegalArgumentException();
+        }
+        return count(CharBuffer.wrap(seed, offset, length));
+    }
+
+    /**
+     * Counts everything the reader produces, holding only a small buffer in memory. The reader is
+     * not closed.
+     *
+     * @param seed the reader to drain
+     * @return the histogram, see {@link #count(CharSequence)}
+     * @throws IllegalArgumentException if seed is null
+     * @throws IOException              if reading fails
+     */
+    public static long[] count(Reader seed) throws IOException {
+        if (seed == null) {
+            throw new IllegalArgumentException();
+        }
+        long[] histogram = new long[ALPHABET_SIZE];
+        char[] buffer = new char[READ_BUFFER];
+        int read;
+        while ((read = seed.read(buffer)) != -1) {
+            for (int i = 0; i < read; i++) {
+                histogram[buffer[i]]++;
+            }
+        }
+        return histogram;
+    }
+
+    /**
+     * Counts code points rather than chars, so a surrogate pair is one supplementary symbol.
+     * Unpaired surrogates are counted as themselves.
+     *
+     * @param seed the characters to count
+     * @return the histogram, where entry c holds the number of occurrences of code point c; its
+     *         length is one more than the largest code point present
+     * @throws IllegalArgumentException if seed is null
+     */
+    public static long[] countCodePoints(CharSequence seed) {
+        if (seed == null) {
+            throw new IllegalArgumentException();
+        }
+        int max = -1;
+        for (int i = 0; i < seed.length(); ) {
+            int codePoint = Character.codePointAt(seed, i);
+            max = Math.max(max, codePoint);
+            i += Character.charCount(codePoint);
+        }
+        long[] histogram = new long[max + 1];
+        for (int i = 0; i < seed.length(); ) {
+            int codePoint = Character.codePointAt(seed, i);
+            histogram[codePoint]++;
+            i += Character.charCount(codePoint);
+        }
+        return histogram;
+    }
+
+    /**
+     * @param seed   the array holding the bytes to count
+     * @param offset index of the first byte
+     * @param length number of bytes to count
+     * @return the 256 entry histogram, where entry b holds the number of occurrences of the
+     *         unsigned byte value b
+     * @throws IllegalArgumentException if seed is null or the range is out of bounds
+     */
+    public static long[] countBytes(byte[] seed, int offset, int length) {
+        if (seed == null || offset < 0 || length < 0 || offset + length > seed.length) {
+            throw new IllegalArgumentException();
+        }
+        long[] histogram = new long[BYTE_ALPHABET_SIZE];
+        for (int i = offset; i < offset + length; i++) {
+            histogram[seed[i] & 0xFF]++;
+        }
+        return histogram;
+    }
+
+    /**
+     * Counts every byte the stream produces. The stream is not closed.
+     *
+     * @param seed the stream to drain
+     * @return the 256 entry histogram, see {@link #countBytes(byte[], int, int)}
+     * @throws IllegalArgumentException if seed is null
+     * @throws IOException              if reading fails
+     */
+    public static long[] countBytes(InputStream seed) throws IOException {
+        if (seed == null) {
+            throw new IllegalArgumentException();
+        }
+        long[] histogram = new long[BYTE_ALPHABET_SIZE];
+        byte[] buffer = new byte[READ_BUFFER];
+        int read;
+        while ((read = seed.read(buffer)) != -1) {
+            for (int i = 0; i < read; i++) {
+                histogram[buffer[i] & 0xFF]++;
+            }
+        }
+        return histogram;
+    }
+
+    /**
+     * Adds the counts of one histogram into another.
+     *
+     * @param into the histogram to add to, at least as long as from
+     * @param from the histogram to add
+     * @return into
+     */
+    static long[] merge(long[] into, long[] from) {
+        for (int c = 0; c < from.length; c++) {
+            into[c] += from[c];
+        }
+        return into;
+    }
+
+    private static class ChunkTask extends RecursiveTask<long[]> {
+        private final CharSequence seed;
+        private final int from, to;
+
+        ChunkTask(CharSequence seed, int from, int to) {
+            this.seed = seed;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected long[] compute() {
+            if (to - from > PARALLEL_CHUNK) {
+                int mid = (from + to) >>> 1;
+                ChunkTask right = new ChunkTask(seed, mid, to);
+                right.fork();
+                long[] left = new ChunkTask(seed, from, mid).compute();
+                return merge(left, right.join());
+            }
+            int[] counts = new int[ALPHABET_SIZE];
+            for (int i = from; i < to; i++) {
+                counts[seed.charAt(i)]++;
+            }
+            long[] histogram = new long[ALPHABET_SIZE];
+            for (int c = 0; c < ALPHABET_SIZE; c++) {
+                histogram[c] = counts[c];
+            }
+            return histogram;
+        }
+    }
+}
@@ -0,0 +1,77 @@
+import org.junit.Test;
+
+import java.io.StringReader;
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+public class FrequencyCounterTest {
+
+    @Test
+    public void testCountString() {
+        long[] h = FrequencyCounter.count("abracadabra");
+        assertEquals('r' + 1, h.length);
+        assertEquals(5, h['a']);
+        assertEquals(2, h['b']);
+        assertEquals(2, h['r']);
+        assertEquals(0, h['e']);
+    }
+
+    @Test
+    public void testCountEmpty() {
+        assertEquals(0, FrequencyCounter.count("").length);
+    }
+
+    @Test
+    public void testCountCharArrayRange() {
+        long[] h = FrequencyCounter.count("xxabcxx".toCharArray(), 2, 3);
+        assertEquals(1, h['a']);
+        assertEquals(1, h['c']);
+        assertEquals('c' + 1, h.length);
+    }
+
+    @Test
+    public void testParallelMatchesSequential() {
+        char[] text = new char[3 * FrequencyCounter.PARALLEL_CHUNK + 17];
+        Random random = new Random(121);
+        long[] expected = new long[FrequencyCounter.ALPHABET_SIZE];
+        for (int i = 0; i < text.length; i++) {
+            text[i] = (char) (random.nextInt(300) * 200);
+            expected[text[i]]++;
+        }
+        assertArrayEquals(expected, FrequencyCounter.count(new String(text)));
+    }
+
+    @Test
+    public void testCountReader() throws Exception {
+        long[] h = FrequencyCounter.count(new StringReader("hello \u4e16\u754c"));
+        assertEquals(FrequencyCounter.ALPHABET_SIZE, h.length);
+        assertEquals(2, h['l']);
+        assertEquals(1, h['\u754c']);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testCountNull() {
+        FrequencyCounter.count((CharSequence) null);
+    }
+
+    @Test
+    public void testCountCodePoints() {
+        long[] h = FrequencyCounter.countCodePoints("a\uD83D\uDE00\uD83D\uDE00");
+        assertEquals(0x1F600 + 1, h.length);
+        assertEquals(2, h[0x1F600]);
+        assertEquals(1, h['a']);
+        assertEquals(0, h[0xD83D]);
+    }
+
+    @Test
+    public void testCountBytes() throws Exception {
+        byte[] data = {0, (byte) 0xFF, (byte) 0xFF, 7};
+        long[] h = FrequencyCounter.countBytes(data, 1, 3);
+        assertEquals(256, h.length);
+        assertEquals(2, h[0xFF]);
+        assertEquals(0, h[0]);
+        assertArrayEquals(FrequencyCounter.countBytes(data, 0, 4),
+                FrequencyCounter.countBytes(new java.io.ByteArrayInputStream(data)));
+    }
+}
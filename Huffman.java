@@ -1,27 +1,44 @@
 
 
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.StandardCharsets;
 import java.util.*;
+import java.util.function.IntConsumer;
 
 /**
  * Implements construction, encoding, and decoding logic of the Huffman coding algorithm. Characters
  * not in the given seed or alphabet should not be compressible, and attempts to use those
  * characters should result in the throwing of an {@link IllegalArgumentException} if used in {@link
  * #compress(String)}.
+ * <p/>
+ * Compressed data is produced as packed bits by {@link #compressToBytes(String)}; the String based
+ * {@link #compress(String)} and {@link #decompress(String)} are a readable view of the same bits.
+ * In canonical mode the codes are reassigned canonically from the tree's code lengths, so the
+ * whole codebook can be shipped as the compact header of {@link #codebookHeader()}. Capping the
+ * code length (which implies canonical mode) replaces over-long tree codes with optimal
+ * length-limited ones computed by {@link PackageMerge}.
+ * <p/>
+ * The symbols coded are UTF-16 chars unless another {@link Alphabet} is chosen at construction:
+ * full code points, or raw bytes for binary data through {@link #compressBytes(byte[])}.
+ * <p/>
+ * Instances are immutable apart from their {@link CompressionStats}, which are thread-safe, so one
+ * instance can be shared by any number of threads.
  */
 
 
 public class Huffman {
 
-    private Map<Character, Integer> frequencyMap;
-    // character = character, Integer = frequency of the character
-    private BinaryMinHeap<Integer, Node> heap;
-    // Character = node character, Integer = frequency of the character
-    private Map<Character, StringBuilder> alphabetEncoded;
-    // Character = character, StringBuilder = encoded bits
-    private Node tree;
-    private double inputLength, outputLength;
-    private boolean compressCalled;
-    private int decompressIndex;
+    private final Alphabet alphabet;
+    private final long[] weights;
+    // frequency of each codebook symbol, in the codebook's ascending symbol order
+    private final Codebook codebook;
+    private final double unlimitedEncodingLength;
+    private final double encodingLength;
+    // expected bits per symbol of the codebook, reported with every instrumented compression
+    private final CompressionStats stats = new CompressionStats();
+    private final CompressionMetrics metrics;
 
 
     /**
@@ -35,29 +52,95 @@ public class Huffman {
      *                                  1 character
      */
     public Huffman(String seed) {
-        if (seed == null || seed.isEmpty()) {
-            throw new IllegalArgumentException();
-        }
-        inputLength = 0;
-        outputLength = 0;
-        heap = new BinaryMinHeapImpl<>();
-        frequencyMap = new HashMap<>();
-        alphabetEncoded = new HashMap<>();
+        this(seed, false);
+    }
 
-        for (int i = 0; i < seed.length(); i++) {
+    /**
+     * Constructs a {@code Huffman} instance from a seed string, optionally with canonical codes.
+     *
+     * @param seed      the String from which to build the encoding
+     * @param canonical whether to assign canonical codes from the tree's code lengths
+     * @throws IllegalArgumentException seed is null, seed is empty, or resulting alphabet only has
+     *                                  1 character
+     */
+    public Huffman(String seed, boolean canonical) {
+        this(seed, Alphabet.CHARS, canonical, Codebook.MAX_LENGTH);
+    }
 
-            if (frequencyMap.containsKey(seed.charAt(i))) {
-                frequencyMap.replace(seed.charAt(i), frequencyMap.get(seed.charAt(i)) + 1);
+    /**
+     * Constructs a {@code Huffman} instance from a seed string with canonical codes no longer than
+     * {@code maxCodeLength} bits.
+     *
+     * @param seed          the String from which to build the encoding
+     * @param maxCodeLength the longest code allowed, between 1 and 64
+     * @throws IllegalArgumentException seed is null, seed is empty, resulting alphabet only has 1
+     *                                  character, or the alphabet does not fit in the code length
+     */
+    public Huffman(String seed, int maxCodeLength) {
+        this(seed, Alphabet.CHARS, true, maxCodeLength);
+    }
 
-            } else {
-                frequencyMap.put(seed.charAt(i), 1);
-            }
-        }
-        if (frequencyMap.size() == 1) {
-            throw new IllegalArgumentException();
-        }
-        tree = mapToHeapReturnRoot(frequencyMap);
+    /**
+     * Constructs a {@code Huffman} instance from a seed string over the given kind of symbol. With
+     * {@link Alphabet#CODE_POINTS} supplementary characters are single symbols; with {@link
+     * Alphabet#BYTES} the seed, and every string later compressed, is coded as its UTF-8 bytes.
+     *
+     * @param seed     the String from which to build the encoding
+     * @param alphabet the kind of symbol to code
+     * @throws IllegalArgumentException seed or alphabet is null, or the seed has fewer than 2
+     *                                  distinct symbols
+     */
+    public Huffman(String seed, Alphabet alphabet) {
+        this(seed, alphabet, false, Codebook.MAX_LENGTH);
+    }
+
+    private Huffman(String seed, Alphabet alphabet, boolean canonical, int maxCodeLength) {
+        this(histogram(seed, alphabet), alphabet, canonical, maxCodeLength);
+    }
+
+    /**
+     * Constructs a {@code Huffman} instance over the byte alphabet from a binary seed.
+     *
+     * @param seed the bytes from which to build the encoding
+     * @throws IllegalArgumentException seed is null or has fewer than 2 distinct byte values
+     */
+    public Huffman(byte[] seed) {
+        this(FrequencyCounter.countBytes(seed, 0, seed == null ? 0 : seed.length), Alphabet.BYTES,
+                false, Codebook.MAX_LENGTH);
+    }
 
+    /**
+     * Constructs a {@code Huffman} instance from a character histogram, such as one produced by
+     * {@link FrequencyCounter} from a {@code CharSequence}, {@code char[]} or {@code Reader} seed.
+     *
+     * @param histogram entry c holds the frequency of character c, zero for characters not in the
+     *                  alphabet
+     * @param canonical whether to assign canonical codes from the tree's code lengths
+     * @throws IllegalArgumentException if the histogram is null, longer than the character range,
+     *                                  has negative or too large counts, or fewer than 2
+     *                                  characters
+     */
+    public Huffman(long[] histogram, boolean canonical) {
+        this(histogram, Alphabet.CHARS, canonical, Codebook.MAX_LENGTH);
+    }
+
+    /**
+     * Constructs a {@code Huffman} instance from a symbol histogram over the given alphabet.
+     *
+     * @param histogram entry s holds the frequency of symbol s, zero for symbols not in the
+     *                  alphabet
+     * @param alphabet  the kind of symbol the histogram counts
+     * @param canonical whether to assign canonical codes from the tree's code lengths
+     * @throws IllegalArgumentException if the histogram or alphabet is null, the histogram is
+     *                                  longer than the alphabet, has negative or too large counts,
+     *                                  or fewer than 2 symbols
+     */
+    public Huffman(long[] histogram, Alphabet alphabet, boolean canonical) {
+        this(histogram, alphabet, canonical, Codebook.MAX_LENGTH);
+    }
+
+    private Huffman(long[] histogram, Alphabet alphabet, boolean canonical, int maxCodeLength) {
+        this(alphabet, Frequencies.of(histogram, alphabet), canonical, maxCodeLength);
     }
 
     /**
@@ -70,61 +153,240 @@ public class Huffman {
      *                                  or has any non-positive frequencies
      */
     public Huffman(Map<Character, Integer> alphabet) {
-        if (alphabet == null || alphabet.isEmpty() || alphabet.size() < 2) {
+        this(alphabet, false);
+    }
+
+    /**
+     * Constructs a {@code Huffman} instance from a frequency map, optionally with canonical codes.
+     *
+     * @param alphabet  a frequency map for characters in the alphabet
+     * @param canonical whether to assign canonical codes from the tree's code lengths
+     * @throws IllegalArgumentException if the alphabet is null, empty, has fewer than 2 characters,
+     *                                  or has any non-positive frequencies
+     */
+    public Huffman(Map<Character, Integer> alphabet, boolean canonical) {
+        this(alphabet, canonical, Codebook.MAX_LENGTH);
+    }
+
+    /**
+     * Constructs a {@code Huffman} instance from a frequency map with canonical codes no longer
+     * than {@code maxCodeLength} bits.
+     *
+     * @param alphabet      a frequency map for characters in the alphabet
+     * @param maxCodeLength the longest code allowed, between 1 and 64
+     * @throws IllegalArgumentException if the alphabet is null, empty, has fewer than 2 characters,
+     *                                  has any non-positive frequencies, or does not fit in the
+     *                                  code length
+     */
+    public Huffman(Map<Character, Integer> alphabet, int maxCodeLength) {
+        this(alphabet, true, maxCodeLength);
+    }
+
+    private Huffman(Map<Character, Integer> alphabet, boolean canonical, int maxCodeLength) {
+        this(Alphabet.CHARS, Frequencies.of(alphabet), canonical, maxCodeLength);
+    }
+
+    private Huffman(Alphabet alphabet, Frequencies frequencies, boolean canonical,
+                    int maxCodeLength) {
+        if (maxCodeLength < 1 || maxCodeLength > Codebook.MAX_LENGTH) {
             throw new IllegalArgumentException();
         }
-        for (Integer i : alphabet.values()) {
-            if (i < 0) {
+        this.alphabet = alphabet;
+        this.weights = frequencies.counts;
+        this.metrics = CompressionMetrics.NOOP;
+        int[] children = HuffmanTreeBuilder.build(weights);
+        FlatTree tree = FlatTree.fromChildren(children, frequencies.symbols);
+        int[] lengths = treeLengths(tree, frequencies.symbols);
+        this.unlimitedEncodingLength = expectedLength(lengths);
+        this.codebook = buildCodebook(tree, frequencies.symbols, lengths, canonical, maxCodeLength);
+        int[] codeLengths = new int[codebook.size()];
+        for (int i = 0; i < codeLengths.length; i++) {
+            codeLengths[i] = codebook.length(i);
+        }
+        this.encodingLength = expectedLength(codeLengths);
+    }
+
+    /**
+     * The symbols of a frequency table in ascending order, with their counts.
+     */
+    private static class Frequencies {
+        final int[] symbols;
+        final long[] counts;
+
+        private Frequencies(int[] symbols, long[] counts) {
+            if (symbols.length < 2) {
                 throw new IllegalArgumentException();
             }
+            this.symbols = symbols;
+            this.counts = counts;
         }
-        inputLength = 0;
-        outputLength = 0;
-        heap = new BinaryMinHeapImpl<>();
-        alphabetEncoded = new HashMap<>();
-        frequencyMap = alphabet;
-        tree = mapToHeapReturnRoot(frequencyMap);
 
+        static Frequencies of(long[] histogram, Alphabet alphabet) {
+            if (histogram == null || alphabet == null || histogram.length > alphabet.size()) {
+                throw new IllegalArgumentException();
+            }
+            int n = 0;
+            for (long count : histogram) {
+                if (count < 0 || count > Integer.MAX_VALUE) {
+                    throw new IllegalArgumentException();
+                } else if (count > 0) {
+                    n++;
+                }
+            }
+            int[] symbols = new int[n];
+            long[] counts = new long[n];
+            n = 0;
+            for (int s = 0; s < histogram.length; s++) {
+                if (histogram[s] > 0) {
+                    symbols[n] = s;
+                    counts[n++] = histogram[s];
+                }
+            }
+            return new Frequencies(symbols, counts);
+        }
+
+        static Frequencies of(Map<Character, Integer> alphabet) {
+            if (alphabet == null || alphabet.isEmpty() || alphabet.size() < 2) {
+                throw new IllegalArgumentException();
+            }
+            for (Integer i : alphabet.values()) {
+                if (i < 0) {
+                    throw new IllegalArgumentException();
+                }
+            }
+            List<Character> keys = new ArrayList<>(alphabet.keySet());
+            Collections.sort(keys);
+            int[] symbols = new int[keys.size()];
+            long[] counts = new long[keys.size()];
+            for (int i = 0; i < symbols.length; i++) {
+                symbols[i] = keys.get(i);
+                counts[i] = alphabet.get(keys.get(i));
+            }
+            return new Frequencies(symbols, counts);
+        }
     }
 
-    public Node mapToHeapReturnRoot(Map<Character, Integer> map) {
-        for (Character c : map.keySet()) {
-            heap.add(map.get(c), new Node(c));
+    private static long[] histogram(String seed, Alphabet alphabet) {
+        if (seed == null || alphabet == null) {
+            throw new IllegalArgumentException();
         }
-        while (heap.size() > 1) {
-            BinaryMinHeap.Entry<Integer, Node> firstLowest = heap.extractMin();
-            BinaryMinHeap.Entry<Integer, Node> secondLowest = heap.extractMin();
-            Node firstLowestN = firstLowest.value;
-            Node secondLowestN = secondLowest.value;
-            Node combinedNode = new Node(firstLowestN, secondLowestN);
-            heap.add(firstLowest.key + secondLowest.key, combinedNode);
+        switch (alphabet) {
+            case BYTES:
+                byte[] bytes = utf8(seed);
+                return FrequencyCounter.countBytes(bytes, 0, bytes.length);
+            case CODE_POINTS:
+                return FrequencyCounter.countCodePoints(seed);
+            default:
+                return FrequencyCounter.count(seed);
         }
-        Node t = heap.extractMin().value;
-
+    }
 
-        if (heap.isEmpty()) {
-            heapToTree(t, new StringBuilder());
+    /**
+     * Builds the Huffman tree for a frequency map with {@link HuffmanTreeBuilder}, which picks a
+     * primitive heap or the linear two-queue merge depending on the alphabet size.
+     *
+     * @param map a frequency map for at least 2 characters
+     * @return the tree, flattened in breadth-first order
+     */
+    public FlatTree mapToHeapReturnRoot(Map<Character, Integer> map) {
+        int[] symbols = new int[map.size()];
+        long[] weights = new long[map.size()];
+        int n = 0;
+        for (Map.Entry<Character, Integer> e : map.entrySet()) {
+            symbols[n] = e.getKey();
+            weights[n++] = e.getValue();
         }
+        return FlatTree.fromChildren(HuffmanTreeBuilder.build(weights), symbols);
+    }
 
-        return t;
-
+    /**
+     * @return the code length of each leaf of the tree, in ascending symbol order
+     */
+    private static int[] treeLengths(FlatTree tree, int[] sortedSymbols) {
+        int[] symbols = new int[tree.leafCount()];
+        long[] codes = new long[symbols.length];
+        int[] lengths = new int[symbols.length];
+        tree.codes(symbols, codes, lengths);
+        int[] sortedLengths = new int[symbols.length];
+        for (int i = 0; i < symbols.length; i++) {
+            sortedLengths[Arrays.binarySearch(sortedSymbols, symbols[i])] = lengths[i];
+        }
+        return sortedLengths;
     }
 
-    public void heapToTree(Node node, StringBuilder bits) {
-        StringBuilder lT, rT;
-        if (node.isLeaf) {
-            alphabetEncoded.put(node.character, bits);
+    private Codebook buildCodebook(FlatTree tree, int[] sortedSymbols, int[] sortedLengths,
+                                   boolean canonical, int maxCodeLength) {
+        int longest = 0;
+        for (int length : sortedLengths) {
+            longest = Math.max(longest, length);
         }
-        if (node.left != null) {
-            lT = new StringBuilder(bits).append(0);
-            heapToTree(node.left, lT);
+        if (longest > maxCodeLength) {
+            return Codebook.canonical(sortedSymbols,
+                    PackageMerge.codeLengths(weights, maxCodeLength));
         }
-        if (node.right != null) {
-            rT = new StringBuilder(bits).append(1);
-            heapToTree(node.right, rT);
+        return canonical ? Codebook.canonical(sortedSymbols, sortedLengths)
+                : Codebook.fromTree(tree);
+    }
+
+    private Huffman(Huffman source, CompressionMetrics metrics) {
+        this.alphabet = source.alphabet;
+        this.weights = source.weights;
+        this.codebook = source.codebook;
+        this.unlimitedEncodingLength = source.unlimitedEncodingLength;
+        this.encodingLength = source.encodingLength;
+        this.metrics = metrics;
+    }
+
+    /**
+     * Returns a codec with the same codebook that reports every compression and decompression to
+     * the given metrics backend. The copy starts with empty {@link CompressionStats}.
+     *
+     * @param metrics the backend to report to
+     * @return the instrumented codec
+     * @throws IllegalArgumentException if metrics is null
+     */
+    public Huffman withMetrics(CompressionMetrics metrics) {
+        if (metrics == null) {
+            throw new IllegalArgumentException();
         }
+        return new Huffman(this, metrics);
+    }
+
+    /**
+     * @return the kind of symbol this instance codes
+     */
+    public Alphabet alphabet() {
+        return alphabet;
+    }
+
+    /**
+     * Reports what capping the code length costs: the expected encoding length of the capped codes
+     * minus that of unrestricted Huffman codes for the same frequencies.
+     *
+     * @return the expected extra bits per character caused by the code length limit, 0 if no code
+     *         had to be shortened
+     */
+    public double lengthLimitCost() {
+        return expectedEncodingLength() - unlimitedEncodingLength;
+    }
 
+    /**
+     * @return the immutable codebook this instance encodes and decodes with
+     */
+    public Codebook codebook() {
+        return codebook;
+    }
 
+    /**
+     * Serializes the codebook as its code lengths; see {@link Codebook#toHeader()}. A decoder is
+     * rebuilt from the header with {@link Codebook#fromHeader(byte[])}, without frequencies or a
+     * tree.
+     *
+     * @return the codebook header
+     * @throws IllegalStateException if this instance was not constructed in canonical mode
+     */
+    public byte[] codebookHeader() {
+        return codebook.toHeader();
     }
 
     /**
@@ -136,23 +398,169 @@ public class Huffman {
      *                                  that are not compressible
      */
     public String compress(String input) {
-        compressCalled = true;
-        StringBuilder output;
-        if (input == null) {
+        return BitReader.toBitString(compressToBytes(input));
+    }
+
+    /**
+     * Compresses the input string into packed bits. The result holds the code bits eight to a byte,
+     * followed by one trailer byte giving the number of padding bits in the last data byte.
+     *
+     * @param input the string to compress, can be the empty string
+     * @return the packed encoding of the input
+     * @throws IllegalArgumentException if the input is null or if the input contains characters
+     *                                  that are not compressible
+     */
+    public byte[] compressToBytes(String input) {
+        return compressToBytes(input, stats);
+    }
+
+    /**
+     * Compresses the input string into packed bits, recording the sizes in the given collector
+     * instead of this instance's own.
+     *
+     * @param input the string to compress, can be the empty string
+     * @param stats the collector to record into
+     * @return the packed encoding of the input
+     * @throws IllegalArgumentException if the input or collector is null or if the input contains
+     *                                  characters that are not compressible
+     */
+    public byte[] compressToBytes(String input, CompressionStats stats) {
+        if (input == null || stats == null) {
+            metrics.invalidInput();
             throw new IllegalArgumentException();
         }
-        output = new StringBuilder();
-        for (int i = 0; i < input.length(); i++) {
-            if (!alphabetEncoded.containsKey(input.charAt(i))) {
-                throw new IllegalArgumentException();
+        long start = metrics == CompressionMetrics.NOOP ? 0 : System.nanoTime();
+        byte[] packed;
+        byte[] bytes = null;
+        try {
+            switch (alphabet) {
+                case BYTES:
+                    bytes = utf8(input);
+                    packed = codebook.compress(bytes);
+                    break;
+                case CODE_POINTS:
+                    BitWriter output = new BitWriter(input.length() / 4 + 1);
+                    codebook.encodeCodePoints(input, output);
+                    packed = output.toByteArray();
+                    break;
+                default:
+                    packed = codebook.compress(input);
+            }
+        } catch (IllegalArgumentException e) {
+            metrics.invalidInput();
+            throw e;
+        }
+        long outputBits = codeBits(packed);
+        stats.record(input.length() * 16L, outputBits);
+        if (metrics != CompressionMetrics.NOOP) {
+            long nanos = System.nanoTime() - start;
+            long[] byLength = metrics.recordsCodeLengths()
+                    ? new long[codebook.maxLength() + 1] : null;
+            long symbols;
+            if (bytes != null) {
+                symbols = bytes.length;
+                for (int i = 0; byLength != null && i < bytes.length; i++) {
+                    byLength[codebook.codeLength(bytes[i] & 0xFF)]++;
+                }
+            } else if (alphabet == Alphabet.CODE_POINTS) {
+                symbols = input.codePointCount(0, input.length());
+                for (int i = 0; byLength != null && i < input.length(); ) {
+                    int codePoint = input.codePointAt(i);
+                    byLength[codebook.codeLength(codePoint)]++;
+                    i += Character.charCount(codePoint);
+                }
             } else {
-                output.append(alphabetEncoded.get(input.charAt(i)));
+                symbols = input.length();
+                for (int i = 0; byLength != null && i < input.length(); i++) {
+                    byLength[codebook.codeLength(input.charAt(i))]++;
+                }
             }
+            // the bytes actually coded: UTF-8 for a byte alphabet, UTF-16 otherwise
+            long inputBytes = bytes != null ? bytes.length : input.length() * 2L;
+            report(symbols, inputBytes, outputBits, nanos, byLength);
         }
-        inputLength += input.length();
-        outputLength += output.length();
-        return output.toString();
+        return packed;
+    }
 
+    private void report(long symbols, long inputBytes, long outputBits, long nanos,
+                        long[] byLength) {
+        metrics.encoded(symbols, inputBytes, outputBits, nanos,
+                symbols * encodingLength);
+        if (byLength != null) {
+            metrics.codeLengths(byLength);
+        }
+    }
+
+    /**
+     * Compresses binary data into packed bits, in the layout of {@link #compressToBytes(String)}.
+     *
+     * @param input the bytes to compress, can be empty
+     * @return the packed encoding of the input
+     * @throws IllegalArgumentException if the input is null or contains bytes that are not
+     *                                  compressible
+     * @throws IllegalStateException    if this instance does not code {@link Alphabet#BYTES}
+     */
+    public byte[] compressBytes(byte[] input) {
+        return compressBytes(input, stats);
+    }
+
+    /**
+     * Compresses binary data into packed bits, recording the sizes in the given collector instead
+     * of this instance's own.
+     *
+     * @param input the bytes to compress, can be empty
+     * @param stats the collector to record into
+     * @return the packed encoding of the input
+     * @throws IllegalArgumentException if the input or collector is null or the input contains
+     *                                  bytes that are not compressible
+     * @throws IllegalStateException    if this instance does not code {@link Alphabet#BYTES}
+     */
+    public byte[] compressBytes(byte[] input, CompressionStats stats) {
+        if (alphabet != Alphabet.BYTES) {
+            throw new IllegalStateException();
+        }
+        if (stats == null) {
+            throw new IllegalArgumentException();
+        }
+        long start = metrics == CompressionMetrics.NOOP ? 0 : System.nanoTime();
+        byte[] packed;
+        try {
+            packed = codebook.compress(input);
+        } catch (IllegalArgumentException e) {
+            metrics.invalidInput();
+            throw e;
+        }
+        long outputBits = codeBits(packed);
+        stats.record(input.length * 8L, outputBits);
+        if (metrics != CompressionMetrics.NOOP) {
+            long nanos = System.nanoTime() - start;
+            long[] byLength = null;
+            if (metrics.recordsCodeLengths()) {
+                byLength = new long[codebook.maxLength() + 1];
+                for (byte b : input) {
+                    byLength[codebook.codeLength(b & 0xFF)]++;
+                }
+            }
+            report(input.length, input.length, outputBits, nanos, byLength);
+        }
+        return packed;
+    }
+
+    /**
+     * Compresses the input string into packed bits written at the buffer's current position, in
+     * the same layout as {@link #compressToBytes(String)}.
+     *
+     * @param input the string to compress, can be the empty string
+     * @param out   the buffer to write to
+     * @throws IllegalArgumentException if the input or buffer is null or if the input contains
+     *                                  characters that are not compressible
+     * @throws java.nio.BufferOverflowException if the buffer does not have enough room
+     */
+    public void compress(String input, ByteBuffer out) {
+        if (out == null) {
+            throw new IllegalArgumentException();
+        }
+        out.put(compressToBytes(input));
     }
 
     /**
@@ -166,55 +574,119 @@ public class Huffman {
      *                                  that is not decodable
      */
     public String decompress(String input) {
-        if (input == null) {
-            throw new IllegalArgumentException();
+        return decompressFromBytes(BitWriter.fromBitString(input));
+    }
+
+    /**
+     * Decompresses packed bits produced by {@link #compressToBytes(String)}.
+     *
+     * @param input the packed bits, including the padding trailer
+     * @return the decoded version of the compressed input
+     * @throws IllegalArgumentException if the input is null, malformed, or contains a sequence of
+     *                                  bits that is not decodable
+     */
+    public String decompressFromBytes(byte[] input) {
+        if (alphabet == Alphabet.BYTES) {
+            try {
+                return StandardCharsets.UTF_8.newDecoder()
+                        .decode(ByteBuffer.wrap(decompressBytes(input))).toString();
+            } catch (CharacterCodingException e) {
+                metrics.invalidInput();
+                throw new IllegalArgumentException(e);
+            }
         }
-        decompressIndex = 0;
+        long start = metrics == CompressionMetrics.NOOP ? 0 : System.nanoTime();
         StringBuilder result = new StringBuilder();
-
-        while (decompressIndex < input.length()) {
-            decompressIndex = decompressRecursion(tree, input, result, decompressIndex);
+        try {
+            BitReader reader = BitReader.packed(input);
+            if (alphabet == Alphabet.CODE_POINTS) {
+                codebook.decode(reader, (IntConsumer) result::appendCodePoint);
+            } else {
+                codebook.decode(reader, result);
+            }
+        } catch (IllegalArgumentException e) {
+            metrics.invalidInput();
+            throw e;
+        }
+        if (metrics != CompressionMetrics.NOOP) {
+            long symbols = alphabet == Alphabet.CODE_POINTS
+                    ? result.codePointCount(0, result.length()) : result.length();
+            metrics.decoded(symbols, codeBits(input), System.nanoTime() - start);
         }
         return result.toString();
     }
 
-    public int decompressRecursion(Node n, String input, StringBuilder out, int index) {
+    /**
+     * @return the number of code bits in well-formed packed bits
+     */
+    private static long codeBits(byte[] packed) {
+        return packed.length * 8L - 8 - packed[packed.length - 1];
+    }
 
-        if (!n.isLeaf && index == input.length()) {
-            throw new IllegalArgumentException();
+    /**
+     * Decompresses packed bits produced by {@link #compressBytes(byte[])}.
+     *
+     * @param input the packed bits, including the padding trailer
+     * @return the decoded bytes
+     * @throws IllegalArgumentException if the input is null, malformed, or contains a sequence of
+     *                                  bits that is not decodable
+     * @throws IllegalStateException    if this instance does not code {@link Alphabet#BYTES}
+     */
+    public byte[] decompressBytes(byte[] input) {
+        if (alphabet != Alphabet.BYTES) {
+            throw new IllegalStateException();
         }
-
-        if (n.isLeaf) {
-            out.append(n.character);
-            return index;
-
+        long start = metrics == CompressionMetrics.NOOP ? 0 : System.nanoTime();
+        byte[] result;
+        try {
+            result = codebook.decompressToBytes(input);
+        } catch (IllegalArgumentException e) {
+            metrics.invalidInput();
+            throw e;
         }
+        if (metrics != CompressionMetrics.NOOP) {
+            metrics.decoded(result.length, codeBits(input), System.nanoTime() - start);
+        }
+        return result;
+    }
 
-        if (input.charAt(index) == '0') {
-            return decompressRecursion(n.left, input, out, index + 1);
-        } else if (input.charAt(index) != '1' && input.charAt(index) != '0') {
+    /**
+     * Decompresses the packed bits remaining in the buffer, in the layout produced by {@link
+     * #compress(String, ByteBuffer)}. The buffer's position is advanced to its limit.
+     *
+     * @param input the buffer holding the packed bits
+     * @return the decoded version of the compressed input
+     * @throws IllegalArgumentException if the input is null, malformed, or contains a sequence of
+     *                                  bits that is not decodable
+     */
+    public String decompressFromBuffer(ByteBuffer input) {
+        if (input == null) {
             throw new IllegalArgumentException();
-        } else {
-            return decompressRecursion(n.right, input, out, index + 1);
         }
-
-
+        byte[] packed = new byte[input.remaining()];
+        input.get(packed);
+        return decompressFromBytes(packed);
     }
 
     /**
      * Computes the compression ratio so far. This is the length of all output strings from {@link
      * #compress(String)} divided by the length of all input strings to {@link #compress(String)}.
-     * Assume that each char in the input string is a 16 bit int.
+     * Assume that each char in the input string is a 16 bit int. Inputs to {@link
+     * #compressBytes(byte[])} count 8 bits per byte.
      *
      * @return the ratio of the total output length to the total input length in bits
      * @throws IllegalStateException if no calls have been made to {@link #compress(String)} before
      *                               calling this method
      */
     public double compressionRatio() {
-        if (!compressCalled) {
-            throw new IllegalStateException();
-        }
-        return (outputLength / (inputLength * 16.0));
+        return stats.compressionRatio();
+    }
+
+    /**
+     * @return the collector that the compress methods record into unless given another
+     */
+    public CompressionStats stats() {
+        return stats;
     }
 
     /**
@@ -222,41 +694,37 @@ public class Huffman {
      * objective function of the compression.
      * <p>
      * The expected encoding length is simply the sum of the length of the encoding of each
-     * character multiplied by the probability that character occurs.
+     * character multiplied by the probability that character occurs. When the code length is capped
+     * this is the length of the capped codes; see {@link #lengthLimitCost()}.
      *
      * @return the expected encoding length of an arbitrary character in the alphabet
      */
     public double expectedEncodingLength() {
+        return encodingLength;
+    }
+
+    /**
+     * @param lengths the code length of each symbol, in ascending symbol order
+     */
+    private double expectedLength(int[] lengths) {
         double expec = 0;
         double totCount = 0;
-        for (Character c : alphabetEncoded.keySet()) {
-            totCount += frequencyMap.get(c);
+        for (long weight : weights) {
+            totCount += weight;
         }
 
-        for (Character c : alphabetEncoded.keySet()) {
-            expec += alphabetEncoded.get(c).length() * (frequencyMap.get(c) / totCount);
+        for (int i = 0; i < lengths.length; i++) {
+            expec += lengths[i] * (weights[i] / totCount);
         }
         return expec;
     }
 
-    class Node {
-        Character character;
-        Node left, right;
-        boolean isLeaf;
-
-        public Node(Character c) {
-            isLeaf = true;
-            character = c;
-
-
-        }
-
-        public Node(Node l, Node r) {
-            isLeaf = false;
-            left = l;
-            right = r;
+    static byte[] utf8(CharSequence input) {
+        try {
+            ByteBuffer encoded = StandardCharsets.UTF_8.newEncoder().encode(CharBuffer.wrap(input));
+            return Arrays.copyOf(encoded.array(), encoded.limit());
+        } catch (CharacterCodingException e) {
+            throw new IllegalArgumentException(e);
         }
     }
 }
-
-
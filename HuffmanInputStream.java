@@ -0,0 +1,82 @@
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+
+/**
+ * An {@link InputStream} that decodes packed Huffman bits of a byte alphabet, as written by {@link
+ * HuffmanOutputStream} or {@link Codebook#compress(byte[])}, from an underlying stream in constant
+ * memory. It is the binary counterpart of {@link HuffmanReader}, and like it returns the bytes the
+ * buffered bits hold rather than wait for more of the stream.
+ */
+public class HuffmanInputStream extends InputStream {
+
+    private final InputStream in;
+    private final Codebook codebook;
+    private final BitReader bits;
+    private boolean closed;
+
+
+    public HuffmanInputStream(InputStream in, Codebook codebook) {
+        this(in, codebook, HuffmanWriter.DEFAULT_CHUNK_SIZE);
+    }
+
+    /**
+     * @param in         the stream holding the packed bits
+     * @param codebook   the codes the bits were encoded with, all for symbols 0-255
+     * @param bufferSize the number of bytes to read ahead, at least 16
+     * @throws IllegalArgumentException if in or codebook is null, the codebook has a symbol above
+     *                                  255 or bufferSize is too small
+     */
+    public HuffmanInputStream(InputStream in, Codebook codebook, int bufferSize) {
+        if (in == null || codebook == null || codebook.symbol(codebook.size() - 1) > 0xFF) {
+            throw new IllegalArgumentException();
+        }
+        this.in = in;
+        this.codebook = codebook;
+        this.bits = new BitReader(in, bufferSize);
+    }
+
+    public HuffmanInputStream(ReadableByteChannel channel, Codebook codebook) {
+        this(Channels.newInputStream(channel), codebook);
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @throws IllegalArgumentException if the stream holds bits that are not decodable or ends
+     *                                  without a valid padding trailer
+     */
+    @Override
+    public int read() throws IOException {
+        byte[] one = new byte[1];
+        return read(one, 0, 1) == -1 ? -1 : one[0] & 0xFF;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @throws IllegalArgumentException if the stream holds bits that are not decodable or ends
+     *                                  without a valid padding trailer
+     */
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (closed) {
+            throw new IOException("closed");
+        }
+        try {
+            int[] next = {off};
+            int count = codebook.decodeUpTo(bits, len, symbol -> b[next[0]++] = (byte) symbol);
+            return count == 0 && len > 0 ? -1 : count;
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        in.close();
+    }
+}
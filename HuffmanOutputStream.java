@@ -0,0 +1,107 @@
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * An {@link OutputStream} that Huffman encodes the bytes written to it with a byte alphabet {@link
+ * Codebook} and writes the packed bits to an underlying stream. It is the binary counterpart of
+ * {@link HuffmanWriter}: bytes are encoded through the codebook's 256 entry table as they arrive,
+ * whole bytes are passed on once a chunk has accumulated, and closing emits the padding trailer.
+ * Read the result back with {@link HuffmanInputStream}.
+ */
+public class HuffmanOutputStream extends OutputStream {
+
+    private final OutputStream out;
+    private final Codebook codebook;
+    private final BitWriter bits;
+    private final int chunkSize;
+    private boolean closed;
+
+
+    public HuffmanOutputStream(OutputStream out, Codebook codebook) {
+        this(out, codebook, HuffmanWriter.DEFAULT_CHUNK_SIZE);
+    }
+
+    /**
+     * @param out       the stream receiving the packed bits
+     * @param codebook  the codes to encode with
+     * @param chunkSize the number of encoded bytes to collect before writing them out
+     * @throws IllegalArgumentException if out or codebook is null or chunkSize is not positive
+     */
+    public HuffmanOutputStream(OutputStream out, Codebook codebook, int chunkSize) {
+        if (out == null || codebook == null || chunkSize < 1) {
+            throw new IllegalArgumentException();
+        }
+        this.out = out;
+        this.codebook = codebook;
+        this.chunkSize = chunkSize;
+        this.bits = new BitWriter(chunkSize + 8);
+    }
+
+    public HuffmanOutputStream(WritableByteChannel channel, Codebook codebook) {
+        this(Channels.newOutputStream(channel), codebook);
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @throws IllegalArgumentException if the byte has no code
+     */
+    @Override
+    public void write(int b) throws IOException {
+        write(new byte[]{(byte) b}, 0, 1);
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @throws IllegalArgumentException if a byte has no code
+     */
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        if (closed) {
+            throw new IOException("closed");
+        }
+        int step = Math.max(1, chunkSize / Math.max(1, codebook.maxLength() / 8 + 1));
+        for (int start = off; start < off + len; start += step) {
+            codebook.encode(b, start, Math.min(step, off + len - start), bits);
+            if (bits.bufferedBytes() >= chunkSize) {
+                bits.drainTo(out);
+            }
+        }
+    }
+
+    /**
+     * @return the number of code bits written so far
+     */
+    public long bitLength() {
+        return bits.bitLength();
+    }
+
+    /**
+     * Writes out the whole bytes encoded so far. Up to seven bits of the last code stay buffered
+     * until more bytes arrive or the stream is closed.
+     */
+    @Override
+    public void flush() throws IOException {
+        if (closed) {
+            throw new IOException("closed");
+        }
+        bits.drainTo(out);
+        out.flush();
+    }
+
+    /**
+     * Writes the remaining bits and the padding trailer, then closes the underlying stream.
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        bits.finishTo(out);
+        out.close();
+    }
+}
@@ -0,0 +1,92 @@
+import org.junit.Test;
+
+import java.io.*;
+import java.nio.channels.Pipe;
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+public class HuffmanOutputStreamTest {
+
+    private static byte[] randomBytes(int length) {
+        Random random = new Random(121);
+        byte[] data = new byte[length];
+        for (int i = 0; i < length; i++) {
+            // skewed towards small values, like typical protocol data
+            data[i] = (byte) (random.nextInt(4) == 0 ? random.nextInt(256) : random.nextInt(8));
+        }
+        return data;
+    }
+
+    private static byte[] readAll(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buf = new byte[37];
+        int n;
+        while ((n = in.read(buf)) != -1) {
+            out.write(buf, 0, n);
+        }
+        return out.toByteArray();
+    }
+
+    @Test
+    public void testMatchesInMemoryLayout() throws IOException {
+        byte[] data = randomBytes(5000);
+        Codebook codebook = new Huffman(data).codebook();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (HuffmanOutputStream out = new HuffmanOutputStream(bytes, codebook)) {
+            out.write(data, 0, 100);
+            out.write(data[100]);
+            out.write(data, 101, data.length - 101);
+        }
+        assertArrayEquals(codebook.compress(data), bytes.toByteArray());
+    }
+
+    @Test
+    public void testRoundTripWithSmallBuffers() throws IOException {
+        byte[] data = randomBytes(50000);
+        Codebook codebook = new Huffman(data).codebook();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (HuffmanOutputStream out = new HuffmanOutputStream(bytes, codebook, 16)) {
+            for (int i = 0; i < data.length; i += 1000) {
+                out.write(data, i, Math.min(1000, data.length - i));
+                out.flush();
+            }
+        }
+        InputStream in = new HuffmanInputStream(new ByteArrayInputStream(bytes.toByteArray()), codebook, 16);
+        assertArrayEquals(data, readAll(in));
+    }
+
+    @Test
+    public void testSingleByteReads() throws IOException {
+        byte[] data = {(byte) 0x80, 1, (byte) 0xFF, 1};
+        Codebook codebook = new Huffman(data).codebook();
+        InputStream in = new HuffmanInputStream(new ByteArrayInputStream(codebook.compress(data)), codebook);
+        assertEquals(0x80, in.read());
+        assertEquals(1, in.read());
+        assertEquals(0xFF, in.read());
+        assertEquals(1, in.read());
+        assertEquals(-1, in.read());
+    }
+
+    @Test
+    public void testChannels() throws Exception {
+        byte[] data = randomBytes(100000);
+        Codebook codebook = new Huffman(data).codebook();
+        Pipe pipe = Pipe.open();
+        Thread producer = new Thread(() -> {
+            try (HuffmanOutputStream out = new HuffmanOutputStream(pipe.sink(), codebook)) {
+                out.write(data);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+        producer.start();
+        assertArrayEquals(data, readAll(new HuffmanInputStream(pipe.source(), codebook)));
+        producer.join();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInputStreamRejectsCharCodebook() {
+        new HuffmanInputStream(new ByteArrayInputStream(new byte[0]), new Huffman("a\u0100").codebook());
+    }
+}
@@ -0,0 +1,73 @@
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+
+/**
+ * A {@link Reader} that decodes packed Huffman bits, as written by {@link HuffmanWriter} or {@link
+ * Codebook#compress(CharSequence)}, from an underlying stream. The stream is consumed through a
+ * fixed size buffer, so arbitrarily long inputs are decoded in constant memory.
+ * <p/>
+ * Reads decode with the codebook's multi-symbol table. A read waits for the stream only until it
+ * has one character, then returns what the buffered bits hold, so characters that have arrived
+ * are not held up behind a stream that is still open.
+ */
+public class HuffmanReader extends Reader {
+
+    private final InputStream in;
+    private final Codebook codebook;
+    private final BitReader bits;
+    private boolean closed;
+
+
+    public HuffmanReader(InputStream in, Codebook codebook) {
+        this(in, codebook, HuffmanWriter.DEFAULT_CHUNK_SIZE);
+    }
+
+    /**
+     * @param in         the stream holding the packed bits
+     * @param codebook   the codes the bits were encoded with
+     * @param bufferSize the number of bytes to read ahead, at least 16
+     * @throws IllegalArgumentException if in or codebook is null or bufferSize is too small
+     */
+    public HuffmanReader(InputStream in, Codebook codebook, int bufferSize) {
+        if (in == null || codebook == null) {
+            throw new IllegalArgumentException();
+        }
+        this.in = in;
+        this.codebook = codebook;
+        this.bits = new BitReader(in, bufferSize);
+    }
+
+    public HuffmanReader(ReadableByteChannel channel, Codebook codebook) {
+        this(Channels.newInputStream(channel), codebook);
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @throws IllegalArgumentException if the stream holds bits that are not decodable or ends
+     *                                  without a valid padding trailer
+     */
+    @Override
+    public int read(char[] cbuf, int off, int len) throws IOException {
+        if (closed) {
+            throw new IOException("closed");
+        }
+        try {
+            int[] next = {off};
+            int count = codebook.decodeUpTo(bits, len, symbol -> cbuf[next[0]++] = (char) symbol);
+            return count == 0 && len > 0 ? -1 : count;
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        in.close();
+    }
+}
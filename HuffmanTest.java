@@ -143,6 +143,178 @@ public class HuffmanTest {
         h.decompress("001");
     }
 
+    @Test
+    public void testCompressToBytesRoundTrip() {
+        Huffman h = new Huffman("aabbbcccccdddddddd");
+        byte[] packed = h.compressToBytes("ababacd");
+        assertEquals(4, packed.length);
+        assertEquals("ababacd", h.decompressFromBytes(packed));
+        assertEquals(18.0 / (7.0 * 16.0), h.compressionRatio(), .00001);
+    }
 
-}
+    @Test
+    public void testStringViewMatchesPackedBits() {
+        Huffman h = new Huffman("aabbbcccccdddddddd");
+        String bits = h.compress("dcbaabcd");
+        assertEquals(bits, BitReader.toBitString(h.compressToBytes("dcbaabcd")));
+        assertArrayEquals(h.compressToBytes("dcbaabcd"), BitWriter.fromBitString(bits));
+    }
+
+    @Test
+    public void testCompressEmptyToBytes() {
+        Huffman h = new Huffman("ab");
+        byte[] packed = h.compressToBytes("");
+        assertArrayEquals(new byte[]{0}, packed);
+        assertEquals("", h.decompressFromBytes(packed));
+    }
+
+    @Test
+    public void testCompressIntoByteBuffer() {
+        Huffman h = new Huffman("hello world");
+        java.nio.ByteBuffer buffer = java.nio.ByteBuffer.allocate(64);
+        h.compress("hello", buffer);
+        buffer.flip();
+        assertEquals("hello", h.decompressFromBuffer(buffer));
+        assertFalse(buffer.hasRemaining());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testDecompressBytesBadTrailer() {
+        Huffman h = new Huffman("aabbccdd");
+        h.decompressFromBytes(new byte[]{0, 9});
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testDecompressBytesNotDecodable() {
+        Huffman h = new Huffman("aabbccdd");
+        h.decompressFromBytes(BitWriter.fromBitString("001"));
+    }
+
+    @Test
+    public void testDeepTreeRoundTrip() {
+        Map<Character, Integer> m = new HashMap<>();
+        int a = 1, b = 1;
+        for (char c = 'a'; c <= 'x'; c++) {
+            m.put(c, a);
+            int t = a + b;
+            a = b;
+            b = t;
+        }
+        Huffman h = new Huffman(m);
+        String text = "abcdefghijklmnopqrstuvwxxxxwvutsrqponmlkjihgfedcba";
+        assertEquals(text, h.decompress(h.compress(text)));
+        assertEquals(text, h.decompressFromBytes(h.compressToBytes(text)));
+    }
+
+    @Test
+    public void testCanonicalMode() {
+        Huffman h = new Huffman("aabbbcccccdddddddd", true);
+        Huffman tree = new Huffman("aabbbcccccdddddddd");
+        assertTrue(h.codebook().isCanonical());
+        assertEquals(tree.expectedEncodingLength(), h.expectedEncodingLength(), .00001);
+        assertEquals("ababacd", h.decompress(h.compress("ababacd")));
+        assertEquals("0", h.compress("d"));
+    }
+
+    @Test
+    public void testDecodeFromCodebookHeader() {
+        Huffman h = new Huffman("the quick brown fox jumps over the lazy dog", true);
+        Codebook decoder = Codebook.fromHeader(h.codebookHeader());
+        assertEquals("the lazy fox", decoder.decompress(h.compressToBytes("the lazy fox")));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testCodebookHeaderNeedsCanonicalMode() {
+        new Huffman("aabbcc").codebookHeader();
+    }
+
+    @Test
+    public void testMaxCodeLength() {
+        Map<Character, Integer> m = new HashMap<>();
+        int a = 1, b = 1;
+        for (char c = 'a'; c <= 'x'; c++) {
+            m.put(c, a);
+            int t = a + b;
+            a = b;
+            b = t;
+        }
+        Huffman unlimited = new Huffman(m);
+        Huffman h = new Huffman(m, 12);
+        assertTrue(h.codebook().maxLength() <= 12);
+        assertTrue(unlimited.codebook().maxLength() > 12);
+        assertTrue(h.lengthLimitCost() > 0);
+        assertEquals(0.0, unlimited.lengthLimitCost(), .00001);
+        assertEquals(unlimited.expectedEncodingLength() + h.lengthLimitCost(), h.expectedEncodingLength(), .00001);
+        assertEquals("axbwcv", h.decompress(h.compress("axbwcv")));
+        assertEquals("axbwcv", Codebook.fromHeader(h.codebookHeader()).decompress(h.compressToBytes("axbwcv")));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testMaxCodeLengthTooShortForAlphabet() {
+        new Huffman("abcde", 2);
+    }
+
+    @Test
+    public void testHistogramConstructor() throws Exception {
+        Huffman h = new Huffman(FrequencyCounter.count(new java.io.StringReader("aabbbcccccdddddddd")), false);
+        assertEquals((2.0 * 3.0 + 3.0 * 3.0 + 5.0 * 2.0 + 8.0) / 18.0, h.expectedEncodingLength(), .00001);
+        assertEquals("dcba", h.decompress(h.compress("dcba")));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testHuffmanEmptySeed() {
+        new Huffman("");
+    }
 
+    @Test(expected = IllegalArgumentException.class)
+    public void testHistogramNegativeCount() {
+        new Huffman(new long[]{1, -1, 2}, false);
+    }
+
+    @Test
+    public void testCodePointAlphabet() {
+        String seed = "a\uD83D\uDE00b\uD83D\uDE00\uD83D\uDE00c";
+        Huffman h = new Huffman(seed, Alphabet.CODE_POINTS);
+        assertEquals(Alphabet.CODE_POINTS, h.alphabet());
+        assertEquals(4, h.codebook().size());
+        assertTrue(h.codebook().indexOf(0x1F600) >= 0);
+        assertEquals(seed, h.decompress(h.compress(seed)));
+        assertEquals(1, h.compress("\uD83D\uDE00").length());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testCodePointAlphabetRejectsLoneSurrogate() {
+        new Huffman("a\uD83D\uDE00b", Alphabet.CODE_POINTS).compress("\uD83D");
+    }
+
+    @Test
+    public void testByteAlphabet() {
+        byte[] seed = new byte[1000];
+        for (int i = 0; i < seed.length; i++) {
+            seed[i] = (byte) (i % 7 == 0 ? 0xFF : i % 3);
+        }
+        Huffman h = new Huffman(seed);
+        assertEquals(Alphabet.BYTES, h.alphabet());
+        byte[] packed = h.compressBytes(seed);
+        assertArrayEquals(seed, h.decompressBytes(packed));
+        assertEquals(h.codebook().compress(seed).length, packed.length);
+        assertTrue(h.compressionRatio() < 0.5);
+    }
+
+    @Test
+    public void testByteAlphabetCodesStringsAsUtf8() {
+        Huffman h = new Huffman("caf\u00e9 na\u00efve", Alphabet.BYTES);
+        assertTrue(h.codebook().symbol(h.codebook().size() - 1) < 256);
+        assertEquals("\u00e9 na", h.decompress(h.compress("\u00e9 na")));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testByteAlphabetRejectsUnseenByte() {
+        new Huffman(new byte[]{1, 2, 3}).compressBytes(new byte[]{1, 4});
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testCompressBytesNeedsByteAlphabet() {
+        new Huffman("abc").compressBytes(new byte[]{'a'});
+    }
+}
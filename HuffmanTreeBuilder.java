@@ -0,0 +1,160 @@
+import java.util.Arrays;
+
+/**
+ * Builds Huffman trees over primitive weight arrays. Leaves are numbered {@code 0..n-1} in the
+ * order of the weights and internal nodes {@code n..2n-2} in the order they are created, so the
+ * root is always node {@code 2n-2}. The result is a children array in which internal node
+ * {@code n + k} has its children at indices {@code 2k} (the lighter, taken first) and {@code 2k+1}.
+ */
+public final class HuffmanTreeBuilder {
+
+    static final int HEAP_THRESHOLD = 32;
+    // below this many symbols the heap beats sorting first
+
+    private HuffmanTreeBuilder() {
+    }
+
+    /**
+     * Builds with whichever method is fastest for the alphabet: a primitive heap for small
+     * alphabets, otherwise a sort followed by the linear two-queue merge. Already sorted weights
+     * skip the sort.
+     *
+     * @param weights the weight of each symbol, non-negative
+     * @return the children array
+     * @throws IllegalArgumentException if there are fewer than 2 weights or a weight is negative
+     */
+    public static int[] build(long[] weights) {
+        checkWeights(weights);
+        boolean sorted = true;
+        for (int i = 1; i < weights.length && sorted; i++) {
+            sorted = weights[i - 1] <= weights[i];
+        }
+        if (sorted) {
+            return buildTwoQueue(weights, identity(weights.length));
+        } else if (weights.length < HEAP_THRESHOLD) {
+            return buildWithHeap(weights);
+        }
+        int n = weights.length;
+        int[] order = new int[n];
+        long[] packed = new long[n];
+        // weight in the high bits and index in the low 21, so one primitive sort orders both
+        boolean fits = true;
+        for (int i = 0; i < n && fits; i++) {
+            fits = weights[i] < (1L << 42);
+            packed[i] = weights[i] << 21 | i;
+        }
+        if (fits) {
+            Arrays.sort(packed);
+            for (int i = 0; i < n; i++) {
+                order[i] = (int) (packed[i] & 0x1FFFFF);
+            }
+        } else {
+            Integer[] boxed = new Integer[n];
+            for (int i = 0; i < n; i++) {
+                boxed[i] = i;
+            }
+            Arrays.sort(boxed, (x, y) -> Long.compare(weights[x], weights[y]));
+            for (int i = 0; i < n; i++) {
+                order[i] = boxed[i];
+            }
+        }
+        return buildTwoQueue(weights, order);
+    }
+
+    /**
+     * Builds by repeatedly merging the two lightest nodes of a {@link LongMinHeap}.
+     *
+     * @param weights the weight of each symbol, non-negative
+     * @return the children array
+     */
+    public static int[] buildWithHeap(long[] weights) {
+        checkWeights(weights);
+        int n = weights.length;
+        LongMinHeap heap = new LongMinHeap(2 * n - 1);
+        for (int i = 0; i < n; i++) {
+            heap.add(weights[i], i);
+        }
+        int[] children = new int[2 * (n - 1)];
+        for (int next = n; heap.size() > 1; next++) {
+            long firstKey = heap.minKey();
+            int first = heap.extractMin();
+            long secondKey = heap.minKey();
+            int second = heap.extractMin();
+            children[2 * (next - n)] = first;
+            children[2 * (next - n) + 1] = second;
+            heap.add(firstKey + secondKey, next);
+        }
+        return children;
+    }
+
+    /**
+     * Builds in linear time from symbols visited in ascending weight order. Leaves are taken from
+     * the sorted order and merged nodes from a second queue, which is itself sorted because each
+     * merge is at least as heavy as the one before.
+     *
+     * @param weights the weight of each symbol, non-negative
+     * @param order   the symbol indices sorted by ascending weight
+     * @return the children array
+     */
+    public static int[] buildTwoQueue(long[] weights, int[] order) {
+        checkWeights(weights);
+        int n = weights.length;
+        long[] merged = new long[n - 1];
+        int[] children = new int[2 * (n - 1)];
+        int leaf = 0;
+        int head = 0;
+        for (int k = 0; k < n - 1; k++) {
+            for (int c = 0; c < 2; c++) {
+                if (leaf < n && (head == k || weights[order[leaf]] <= merged[head])) {
+                    children[2 * k + c] = order[leaf];
+                    merged[k] += weights[order[leaf++]];
+                } else {
+                    children[2 * k + c] = n + head;
+                    merged[k] += merged[head++];
+                }
+            }
+        }
+        return children;
+    }
+
+    /**
+     * Computes the depth of every leaf of a tree produced by this class.
+     *
+     * @param children the children array
+     * @param n        the number of leaves
+     * @return the code length of each symbol
+     */
+    public static int[] depths(int[] children, int n) {
+        int[] depth = new int[2 * n - 1];
+        int[] lengths = new int[n];
+        for (int node = 2 * n - 2; node >= n; node--) {
+            for (int c = 0; c < 2; c++) {
+                int child = children[2 * (node - n) + c];
+                depth[child] = depth[node] + 1;
+                if (child < n) {
+                    lengths[child] = depth[child];
+                }
+            }
+        }
+        return lengths;
+    }
+
+    private static int[] identity(int n) {
+        int[] order = new int[n];
+        for (int i = 0; i < n; i++) {
+            order[i] = i;
+        }
+        return order;
+    }
+
+    private static void checkWeights(long[] weights) {
+        if (weights == null || weights.length < 2) {
+            throw new IllegalArgumentException();
+        }
+        for (long w : weights) {
+            if (w < 0) {
+                throw new IllegalArgumentException();
+            }
+        }
+    }
+}
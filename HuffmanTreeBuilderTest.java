@@ -0,0 +1,56 @@
+import org.junit.Test;
+
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+public class HuffmanTreeBuilderTest {
+
+    private static long cost(long[] weights, int[] lengths) {
+        long cost = 0;
+        for (int i = 0; i < weights.length; i++) {
+            cost += weights[i] * lengths[i];
+        }
+        return cost;
+    }
+
+    @Test
+    public void testSmallAlphabet() {
+        long[] weights = {8, 2, 5, 3};
+        int[] lengths = HuffmanTreeBuilder.depths(HuffmanTreeBuilder.build(weights), 4);
+        assertArrayEquals(new int[]{1, 3, 2, 3}, lengths);
+    }
+
+    @Test
+    public void testAllMethodsAgreeOnCost() {
+        Random random = new Random(121);
+        long[] weights = new long[5000];
+        for (int i = 0; i < weights.length; i++) {
+            weights[i] = 1 + random.nextInt(100000);
+        }
+        long heapCost = cost(weights, HuffmanTreeBuilder.depths(HuffmanTreeBuilder.buildWithHeap(weights), 5000));
+        long buildCost = cost(weights, HuffmanTreeBuilder.depths(HuffmanTreeBuilder.build(weights), 5000));
+        assertEquals(heapCost, buildCost);
+
+        long[] sorted = weights.clone();
+        Arrays.sort(sorted);
+        long sortedCost = cost(sorted, HuffmanTreeBuilder.depths(HuffmanTreeBuilder.build(sorted), 5000));
+        assertEquals(heapCost, sortedCost);
+    }
+
+    @Test
+    public void testRootIsLastNode() {
+        int[] children = HuffmanTreeBuilder.build(new long[]{1, 1});
+        assertArrayEquals(new int[]{0, 1}, children);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testSingleWeight() {
+        HuffmanTreeBuilder.build(new long[]{1});
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNegativeWeight() {
+        HuffmanTreeBuilder.build(new long[]{1, -1, 3});
+    }
+}
@@ -0,0 +1,102 @@
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.nio.CharBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * A {@link Writer} that Huffman encodes the characters written to it with a {@link Codebook} and
+ * writes the packed bits to an underlying stream. Characters are encoded as they arrive and whole
+ * bytes are passed on once a chunk has accumulated, so memory use is bounded by the chunk size no
+ * matter how much is written. Closing the writer emits the padding trailer, giving the same layout
+ * as {@link Codebook#compress(CharSequence)}; read it back with {@link HuffmanReader}.
+ */
+public class HuffmanWriter extends Writer {
+
+    static final int DEFAULT_CHUNK_SIZE = 8192;
+
+    private final OutputStream out;
+    private final Codebook codebook;
+    private final BitWriter bits;
+    private final int chunkSize;
+    private boolean closed;
+
+
+    public HuffmanWriter(OutputStream out, Codebook codebook) {
+        this(out, codebook, DEFAULT_CHUNK_SIZE);
+    }
+
+    /**
+     * @param out       the stream receiving the packed bits
+     * @param codebook  the codes to encode with
+     * @param chunkSize the number of encoded bytes to collect before writing them out
+     * @throws IllegalArgumentException if out or codebook is null or chunkSize is not positive
+     */
+    public HuffmanWriter(OutputStream out, Codebook codebook, int chunkSize) {
+        if (out == null || codebook == null || chunkSize < 1) {
+            throw new IllegalArgumentException();
+        }
+        this.out = out;
+        this.codebook = codebook;
+        this.chunkSize = chunkSize;
+        this.bits = new BitWriter(chunkSize + 8);
+    }
+
+    public HuffmanWriter(WritableByteChannel channel, Codebook codebook) {
+        this(Channels.newOutputStream(channel), codebook);
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @throws IllegalArgumentException if a character has no code
+     */
+    @Override
+    public void write(char[] cbuf, int off, int len) throws IOException {
+        if (closed) {
+            throw new IOException("closed");
+        }
+        // encode a chunk's worth of characters at a time so the bit buffer never grows past it
+        int step = Math.max(1, chunkSize / Math.max(1, codebook.maxLength() / 8 + 1));
+        for (int start = off; start < off + len; start += step) {
+            codebook.encode(CharBuffer.wrap(cbuf, start, Math.min(step, off + len - start)), bits);
+            if (bits.bufferedBytes() >= chunkSize) {
+                bits.drainTo(out);
+            }
+        }
+    }
+
+    /**
+     * @return the number of code bits written so far
+     */
+    public long bitLength() {
+        return bits.bitLength();
+    }
+
+    /**
+     * Writes out the whole bytes encoded so far. Up to seven bits of the last code stay buffered
+     * until more characters arrive or the writer is closed.
+     */
+    @Override
+    public void flush() throws IOException {
+        if (closed) {
+            throw new IOException("closed");
+        }
+        bits.drainTo(out);
+        out.flush();
+    }
+
+    /**
+     * Writes the remaining bits and the padding trailer, then closes the underlying stream.
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        bits.finishTo(out);
+        out.close();
+    }
+}
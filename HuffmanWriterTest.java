@@ -0,0 +1,136 @@
+import org.junit.Test;
+
+import java.io.*;
+import java.nio.channels.Pipe;
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+public class HuffmanWriterTest {
+
+    private static final String SEED = "the quick brown fox jumps over the lazy dog";
+
+    private static String randomText(int length) {
+        Random random = new Random(121);
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < length; i++) {
+            sb.append(SEED.charAt(random.nextInt(SEED.length())));
+        }
+        return sb.toString();
+    }
+
+    private static String readAll(Reader reader) throws IOException {
+        StringBuilder sb = new StringBuilder();
+        char[] buf = new char[37];
+        int n;
+        while ((n = reader.read(buf)) != -1) {
+            sb.append(buf, 0, n);
+        }
+        return sb.toString();
+    }
+
+    @Test
+    public void testMatchesInMemoryLayout() throws IOException {
+        Codebook codebook = new Huffman(SEED, true).codebook();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (HuffmanWriter writer = new HuffmanWriter(bytes, codebook)) {
+            writer.write("the dog");
+            writer.write(" jumps");
+        }
+        assertArrayEquals(codebook.compress("the dog jumps"), bytes.toByteArray());
+    }
+
+    @Test
+    public void testRoundTripWithSmallBuffers() throws IOException {
+        Codebook codebook = new Huffman(SEED).codebook();
+        String text = randomText(50000);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (HuffmanWriter writer = new HuffmanWriter(bytes, codebook, 16)) {
+            for (int i = 0; i < text.length(); i += 1000) {
+                writer.write(text, i, Math.min(1000, text.length() - i));
+                writer.flush();
+            }
+        }
+        HuffmanReader reader = new HuffmanReader(new ByteArrayInputStream(bytes.toByteArray()), codebook, 16);
+        assertEquals(text, readAll(reader));
+    }
+
+    @Test
+    public void testEmptyStream() throws IOException {
+        Codebook codebook = new Huffman(SEED).codebook();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        new HuffmanWriter(bytes, codebook).close();
+        assertEquals(-1, new HuffmanReader(new ByteArrayInputStream(bytes.toByteArray()), codebook).read());
+    }
+
+    @Test
+    public void testChannels() throws Exception {
+        Codebook codebook = new Huffman(SEED).codebook();
+        String text = randomText(100000);
+        Pipe pipe = Pipe.open();
+        Thread producer = new Thread(() -> {
+            try (HuffmanWriter writer = new HuffmanWriter(pipe.sink(), codebook)) {
+                writer.write(text);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+        producer.start();
+        assertEquals(text, readAll(new HuffmanReader(pipe.source(), codebook)));
+        producer.join();
+    }
+
+    @Test
+    public void testReadReturnsBeforeStreamBlocks() throws IOException {
+        Codebook codebook = new Huffman(SEED).codebook();
+        String text = randomText(2000);
+        byte[] packed = codebook.compress(text);
+        boolean[] released = new boolean[1];
+        InputStream in = new InputStream() {
+            int position;
+
+            @Override
+            public int read() {
+                throw new UnsupportedOperationException();
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                if (position >= 500 && !released[0]) {
+                    // stands in for a stream with nothing more to read yet
+                    throw new IOException("would block");
+                }
+                int limit = released[0] ? packed.length : 500;
+                if (position == limit) {
+                    return -1;
+                }
+                int n = Math.min(len, limit - position);
+                System.arraycopy(packed, position, b, off, n);
+                position += n;
+                return n;
+            }
+        };
+        HuffmanReader reader = new HuffmanReader(in, codebook, 4096);
+        char[] buf = new char[text.length()];
+        int first = reader.read(buf, 0, buf.length);
+        assertTrue(first > 0);
+        assertEquals(text.substring(0, first), new String(buf, 0, first));
+        released[0] = true;
+        assertEquals(text.substring(first), readAll(reader));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testTruncatedStream() throws IOException {
+        Codebook codebook = new Huffman(SEED).codebook();
+        byte[] packed = codebook.compress(randomText(100));
+        InputStream in = new ByteArrayInputStream(Arrays.copyOf(packed, packed.length - 2));
+        readAll(new HuffmanReader(in, codebook));
+    }
+
+    @Test(expected = IOException.class)
+    public void testWriteAfterClose() throws IOException {
+        HuffmanWriter writer = new HuffmanWriter(new ByteArrayOutputStream(), new Huffman(SEED).codebook());
+        writer.close();
+        writer.write("the");
+    }
+}
@@ -0,0 +1,201 @@
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A {@link CompressionMetrics} backend that keeps running totals in memory: striped counters for
+ * sizes and events, power-of-two latency histograms, and the distribution of code lengths actually
+ * used. {@link #ratioDrift()} compares the bits produced with what the seed distribution predicts,
+ * which is the figure to alert on when live data stops matching the seed.
+ */
+public class InMemoryMetrics implements CompressionMetrics {
+
+    private final LongAdder encodes = new LongAdder();
+    private final LongAdder decodes = new LongAdder();
+    private final LongAdder bytesIn = new LongAdder();
+    private final LongAdder bitsOut = new LongAdder();
+    private final LongAdder symbolsEncoded = new LongAdder();
+    private final LongAdder symbolsDecoded = new LongAdder();
+    private final LongAdder encodeNanos = new LongAdder();
+    private final LongAdder decodeNanos = new LongAdder();
+    private final DoubleAdder expectedBits = new DoubleAdder();
+    private final LongAdder escapes = new LongAdder();
+    private final LongAdder invalid = new LongAdder();
+    private final AtomicLongArray codeLengths = new AtomicLongArray(Codebook.MAX_LENGTH + 1);
+    private final LatencyHistogram encodeLatency = new LatencyHistogram();
+    private final LatencyHistogram decodeLatency = new LatencyHistogram();
+    private final boolean countCodeLengths;
+
+
+    public InMemoryMetrics() {
+        this(true);
+    }
+
+    /**
+     * @param countCodeLengths whether to ask codecs for the code length distribution, which costs
+     *                         an extra pass over each input
+     */
+    public InMemoryMetrics(boolean countCodeLengths) {
+        this.countCodeLengths = countCodeLengths;
+    }
+
+    @Override
+    public void encoded(long symbols, long inputBytes, long outputBits, long nanos,
+                        double expectedBits) {
+        encodes.increment();
+        symbolsEncoded.add(symbols);
+        bytesIn.add(inputBytes);
+        bitsOut.add(outputBits);
+        encodeNanos.add(nanos);
+        this.expectedBits.add(expectedBits);
+        encodeLatency.record(nanos);
+    }
+
+    @Override
+    public void decoded(long symbols, long inputBits, long nanos) {
+        decodes.increment();
+        symbolsDecoded.add(symbols);
+        decodeNanos.add(nanos);
+        decodeLatency.record(nanos);
+    }
+
+    @Override
+    public boolean recordsCodeLengths() {
+        return countCodeLengths;
+    }
+
+    @Override
+    public void codeLengths(long[] symbolsByLength) {
+        for (int length = 0; length < symbolsByLength.length; length++) {
+            if (symbolsByLength[length] != 0) {
+                codeLengths.addAndGet(length, symbolsByLength[length]);
+            }
+        }
+    }
+
+    @Override
+    public void escaped(long count) {
+        escapes.add(count);
+    }
+
+    @Override
+    public void invalidInput() {
+        invalid.increment();
+    }
+
+    public long encodes() {
+        return encodes.sum();
+    }
+
+    public long decodes() {
+        return decodes.sum();
+    }
+
+    /**
+     * @return the total uncompressed size of every encoded input, in bytes
+     */
+    public long bytesIn() {
+        return bytesIn.sum();
+    }
+
+    /**
+     * @return the total compressed size of every encoded input, in bytes rounded up
+     */
+    public long bytesOut() {
+        return (bitsOut.sum() + 7) / 8;
+    }
+
+    public long escapes() {
+        return escapes.sum();
+    }
+
+    public long invalidInputs() {
+        return invalid.sum();
+    }
+
+    /**
+     * @return symbols encoded per second of encoding time, 0 before any encode
+     */
+    public double encodeSymbolsPerSecond() {
+        long nanos = encodeNanos.sum();
+        return nanos == 0 ? 0 : symbolsEncoded.sum() * 1e9 / nanos;
+    }
+
+    /**
+     * @return symbols decoded per second of decoding time, 0 before any decode
+     */
+    public double decodeSymbolsPerSecond() {
+        long nanos = decodeNanos.sum();
+        return nanos == 0 ? 0 : symbolsDecoded.sum() * 1e9 / nanos;
+    }
+
+    /**
+     * @param length a code length, 1 to 64
+     * @return the number of encoded symbols whose code had that length
+     */
+    public long symbolsWithCodeLength(int length) {
+        return codeLengths.get(length);
+    }
+
+    /**
+     * @return the bits actually produced divided by the bits the seed distribution predicts, minus
+     *         one: 0 while live data matches the seed, positive once it costs more; 0 before any
+     *         encode
+     */
+    public double ratioDrift() {
+        double expected = expectedBits.sum();
+        return expected == 0 ? 0 : bitsOut.sum() / expected - 1;
+    }
+
+    public LatencyHistogram encodeLatency() {
+        return encodeLatency;
+    }
+
+    public LatencyHistogram decodeLatency() {
+        return decodeLatency;
+    }
+
+    /**
+     * Counts latencies in power-of-two nanosecond buckets: bucket b holds values below 2^b.
+     */
+    public static class LatencyHistogram {
+        private final AtomicLongArray buckets = new AtomicLongArray(64);
+
+        void record(long nanos) {
+            buckets.incrementAndGet(64 - Long.numberOfLeadingZeros(Math.max(0, nanos)));
+        }
+
+        /**
+         * @return the number of latencies recorded
+         */
+        public long count() {
+            long count = 0;
+            for (int b = 0; b < buckets.length(); b++) {
+                count += buckets.get(b);
+            }
+            return count;
+        }
+
+        /**
+         * @param quantile between 0 and 1, such as 0.99
+         * @return an upper bound in nanoseconds for that quantile of the latencies, within a
+         *         factor of two; 0 if nothing was recorded
+         * @throws IllegalArgumentException if quantile is out of range
+         */
+        public long percentile(double quantile) {
+            if (!(quantile >= 0 && quantile <= 1)) {
+                throw new IllegalArgumentException();
+            }
+            long count = count();
+            long rank = (long) Math.ceil(quantile * count);
+            long seen = 0;
+            for (int b = 0; b < buckets.length(); b++) {
+                seen += buckets.get(b);
+                if (seen >= Math.max(1, rank) && seen > 0) {
+                    return b == 63 ? Long.MAX_VALUE : 1L << b;
+                }
+            }
+            return 0;
+        }
+    }
+}
@@ -0,0 +1,97 @@
+import org.junit.Test;
+
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+public class InMemoryMetricsTest {
+
+    @Test
+    public void testEncodeAndDecodeEvents() {
+        InMemoryMetrics metrics = new InMemoryMetrics();
+        Huffman h = new Huffman("aabbbcccccdddddddd").withMetrics(metrics);
+        byte[] packed = h.compressToBytes("aabbbcccccdddddddd");
+        assertEquals("aabbbcccccdddddddd", h.decompressFromBytes(packed));
+        assertEquals(1, metrics.encodes());
+        assertEquals(1, metrics.decodes());
+        assertEquals(36, metrics.bytesIn());
+        assertEquals(packed.length - 1, metrics.bytesOut());
+        // the seed itself matches its own distribution exactly
+        assertEquals(0.0, metrics.ratioDrift(), .00001);
+        assertEquals(8, metrics.symbolsWithCodeLength(1));
+        assertEquals(5, metrics.symbolsWithCodeLength(2));
+        assertEquals(5, metrics.symbolsWithCodeLength(3));
+        assertEquals(1, metrics.encodeLatency().count());
+        assertTrue(metrics.encodeLatency().percentile(0.5) > 0);
+        assertTrue(metrics.encodeSymbolsPerSecond() > 0);
+    }
+
+    @Test
+    public void testByteAlphabetReportsUtf8Bytes() {
+        InMemoryMetrics metrics = new InMemoryMetrics();
+        Huffman h = new Huffman("caf\u00e9 au lait", Alphabet.BYTES).withMetrics(metrics);
+        h.compressToBytes("caf\u00e9");
+        // four chars, five UTF-8 bytes, each byte one coded symbol
+        assertEquals(5, metrics.bytesIn());
+        long coded = 0;
+        for (int length = 0; length <= h.codebook().maxLength(); length++) {
+            coded += metrics.symbolsWithCodeLength(length);
+        }
+        assertEquals(5, coded);
+    }
+
+    @Test
+    public void testDriftWhenDataStopsMatchingSeed() {
+        InMemoryMetrics metrics = new InMemoryMetrics(false);
+        Huffman h = new Huffman("aabbbcccccdddddddd").withMetrics(metrics);
+        h.compressToBytes("aaaaaaaa");
+        // 'a' costs 3 bits against an expected 33 / 18
+        assertEquals(3 / (33.0 / 18.0) - 1, metrics.ratioDrift(), .00001);
+        assertEquals(0, metrics.symbolsWithCodeLength(3));
+    }
+
+    @Test
+    public void testInvalidInputsAndEscapes() {
+        InMemoryMetrics metrics = new InMemoryMetrics();
+        Huffman h = new Huffman("abc").withMetrics(metrics);
+        try {
+            h.compressToBytes("abz");
+            fail();
+        } catch (IllegalArgumentException expected) {
+        }
+        try {
+            h.decompressFromBytes(new byte[]{0, 9});
+            fail();
+        } catch (IllegalArgumentException expected) {
+        }
+        assertEquals(2, metrics.invalidInputs());
+        assertEquals(0, metrics.encodes());
+
+        AdaptiveHuffman model = new AdaptiveHuffman(Alphabet.BYTES, metrics);
+        BitWriter out = new BitWriter(16);
+        for (int s : new int[]{1, 2, 1, 3, 2}) {
+            model.encode(s, out);
+        }
+        assertEquals(3, metrics.escapes());
+    }
+
+    @Test
+    public void testNoopDoesNotChangeResults() {
+        Huffman h = new Huffman("abracadabra");
+        assertArrayEquals(h.compressToBytes("cadabra"),
+                h.withMetrics(CompressionMetrics.NOOP).compressToBytes("cadabra"));
+    }
+
+    @Test
+    public void testLatencyPercentiles() {
+        InMemoryMetrics.LatencyHistogram histogram = new InMemoryMetrics().encodeLatency();
+        assertEquals(0, histogram.percentile(0.99));
+        for (int i = 0; i < 99; i++) {
+            histogram.record(100);
+        }
+        histogram.record(5000);
+        assertEquals(128, histogram.percentile(0.5));
+        assertEquals(128, histogram.percentile(0.99));
+        assertEquals(8192, histogram.percentile(1.0));
+    }
+}
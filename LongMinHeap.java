@@ -0,0 +1,153 @@
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+
+/**
+ * A binary min-heap of {@code int} ids keyed by {@code long} priorities, stored in parallel
+ * primitive arrays. Ids range over {@code [0, capacity)}; a position index per id makes {@link
+ * #decreaseKey(int, long)} a true O(log n) sift-up. No operation allocates.
+ */
+public class LongMinHeap {
+
+    private final long[] keys;
+    private final int[] ids;
+    private final int[] positions;
+    // positions[id] is the heap index of id, or -1 if absent
+    private int size;
+
+
+    /**
+     * @param capacity the number of distinct ids the heap can hold
+     * @throws IllegalArgumentException if capacity is negative
+     */
+    public LongMinHeap(int capacity) {
+        if (capacity < 0) {
+            throw new IllegalArgumentException();
+        }
+        keys = new long[capacity];
+        ids = new int[capacity];
+        positions = new int[capacity];
+        Arrays.fill(positions, -1);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public boolean contains(int id) {
+        return id >= 0 && id < positions.length && positions[id] >= 0;
+    }
+
+    /**
+     * @throws IllegalArgumentException if the id is out of range or already in the heap
+     */
+    public void add(long key, int id) {
+        if (id < 0 || id >= positions.length || positions[id] >= 0) {
+            throw new IllegalArgumentException();
+        }
+        keys[size] = key;
+        ids[size] = id;
+        positions[id] = size;
+        siftUp(size++);
+    }
+
+    /**
+     * @throws NoSuchElementException   if the id is not in the heap
+     * @throws IllegalArgumentException if the new key is greater than the current key
+     */
+    public void decreaseKey(int id, long newKey) {
+        if (!contains(id)) {
+            throw new NoSuchElementException();
+        }
+        int i = positions[id];
+        if (newKey > keys[i]) {
+            throw new IllegalArgumentException();
+        }
+        keys[i] = newKey;
+        siftUp(i);
+    }
+
+    /**
+     * @return the smallest key
+     * @throws NoSuchElementException if the heap is empty
+     */
+    public long minKey() {
+        if (size == 0) {
+            throw new NoSuchElementException();
+        }
+        return keys[0];
+    }
+
+    /**
+     * @return the id with the smallest key
+     * @throws NoSuchElementException if the heap is empty
+     */
+    public int peek() {
+        if (size == 0) {
+            throw new NoSuchElementException();
+        }
+        return ids[0];
+    }
+
+    /**
+     * Removes the id with the smallest key.
+     *
+     * @return the removed id
+     * @throws NoSuchElementException if the heap is empty
+     */
+    public int extractMin() {
+        int min = peek();
+        positions[min] = -1;
+        size--;
+        if (size > 0) {
+            keys[0] = keys[size];
+            ids[0] = ids[size];
+            positions[ids[0]] = 0;
+            siftDown(0);
+        }
+        return min;
+    }
+
+    private void siftUp(int i) {
+        long key = keys[i];
+        int id = ids[i];
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (keys[parent] <= key) {
+                break;
+            }
+            keys[i] = keys[parent];
+            ids[i] = ids[parent];
+            positions[ids[i]] = i;
+            i = parent;
+        }
+        keys[i] = key;
+        ids[i] = id;
+        positions[id] = i;
+    }
+
+    private void siftDown(int i) {
+        long key = keys[i];
+        int id = ids[i];
+        int half = size >>> 1;
+        while (i < half) {
+            int child = 2 * i + 1;
+            if (child + 1 < size && keys[child + 1] < keys[child]) {
+                child++;
+            }
+            if (key <= keys[child]) {
+                break;
+            }
+            keys[i] = keys[child];
+            ids[i] = ids[child];
+            positions[ids[i]] = i;
+            i = child;
+        }
+        keys[i] = key;
+        ids[i] = id;
+        positions[id] = i;
+    }
+}
@@ -0,0 +1,73 @@
+import org.junit.Test;
+
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+public class LongMinHeapTest {
+
+    @Test
+    public void testExtractInKeyOrder() {
+        LongMinHeap heap = new LongMinHeap(1000);
+        Random random = new Random(121);
+        long[] keys = new long[1000];
+        for (int id = 0; id < keys.length; id++) {
+            keys[id] = random.nextInt(500);
+            heap.add(keys[id], id);
+        }
+        long previous = Long.MIN_VALUE;
+        while (!heap.isEmpty()) {
+            long key = heap.minKey();
+            int id = heap.extractMin();
+            assertEquals(keys[id], key);
+            assertTrue(key >= previous);
+            assertFalse(heap.contains(id));
+            previous = key;
+        }
+    }
+
+    @Test
+    public void testDecreaseKey() {
+        LongMinHeap heap = new LongMinHeap(4);
+        heap.add(5, 0);
+        heap.add(10, 1);
+        heap.add(7, 2);
+        heap.decreaseKey(1, 1);
+        assertEquals(1, heap.peek());
+        assertEquals(1, heap.minKey());
+        heap.decreaseKey(2, 1);
+        assertEquals(3, heap.size());
+        heap.extractMin();
+        heap.extractMin();
+        assertEquals(0, heap.extractMin());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testAddDuplicateId() {
+        LongMinHeap heap = new LongMinHeap(2);
+        heap.add(1, 0);
+        heap.add(2, 0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testAddIdOutOfRange() {
+        new LongMinHeap(2).add(1, 2);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testIncreaseKey() {
+        LongMinHeap heap = new LongMinHeap(2);
+        heap.add(1, 0);
+        heap.decreaseKey(0, 2);
+    }
+
+    @Test(expected = NoSuchElementException.class)
+    public void testDecreaseKeyMissing() {
+        new LongMinHeap(2).decreaseKey(1, 0);
+    }
+
+    @Test(expected = NoSuchElementException.class)
+    public void testExtractMinEmpty() {
+        new LongMinHeap(2).extractMin();
+    }
+}
@@ -0,0 +1,387 @@
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Compresses and decompresses files through memory mappings, so neither side is ever read whole
+ * into a {@code String} or array. Files are mapped a window at a time with {@link
+ * FileChannel#map}, which lets them grow past the 2 GB a single mapping can cover.
+ * <p/>
+ * Files are coded over the byte alphabet with a canonical codebook. Unless one is supplied, it is
+ * built from a sample of the input with every byte value counted once more, so bytes the sample
+ * missed still have a code. The compressed file holds the original length as a big-endian long,
+ * the codebook in the form of {@link Codebook#toHeader()}, then the packed bits and padding
+ * trailer exactly as {@link Codebook#compress(byte[])} lays them out.
+ * <p/>
+ * Compression reads the input twice: once to size the output, which is then mapped at its final
+ * length, and once to encode it into the output windows. Both passes go through the codebook's
+ * {@link BulkEncoder} a fixed size chunk at a time. The encoder packs arrays, so each chunk is
+ * copied out of the input window and its packed bytes copied into the output window; that keeps
+ * one packing loop for every codec, and a copy of 64 KiB costs little next to encoding it.
+ */
+public class MappedFileCodec {
+
+    static final int DEFAULT_WINDOW_SIZE = 1 << 30;
+    static final int SAMPLE_BYTES = 1 << 20;
+    static final int SAMPLE_SLICES = 16;
+    static final int LENGTH_BYTES = 8;
+    static final int MAX_CODE_LENGTH = 56;
+    // a code is added to at most 7 pending bits of a 64-bit accumulator
+    private static final int MAX_HEADER_BYTES = 6 * (FrequencyCounter.BYTE_ALPHABET_SIZE + 1);
+    private static final int READ_BUFFER = 1 << 16;
+
+    private final int windowSize;
+
+
+    public MappedFileCodec() {
+        this(DEFAULT_WINDOW_SIZE);
+    }
+
+    /**
+     * @param windowSize the most bytes of a file to map at once
+     * @throws IllegalArgumentException if windowSize is not positive
+     */
+    public MappedFileCodec(int windowSize) {
+        if (windowSize < 1) {
+            throw new IllegalArgumentException();
+        }
+        this.windowSize = windowSize;
+    }
+
+    /**
+     * Builds a codebook from up to {@link #SAMPLE_BYTES} of a file, taken as evenly spaced slices
+     * when the file is larger. Every byte value gets a code. The sample bounds the histogram total,
+     * which keeps codes far shorter than {@link #MAX_CODE_LENGTH}.
+     *
+     * @param input the file to sample
+     * @return a canonical byte alphabet codebook
+     * @throws IllegalArgumentException if input is null
+     * @throws IOException              if the file cannot be read
+     */
+    public static Codebook sample(Path input) throws IOException {
+        if (input == null) {
+            throw new IllegalArgumentException();
+        }
+        long[] histogram = new long[FrequencyCounter.BYTE_ALPHABET_SIZE];
+        Arrays.fill(histogram, 1);
+        try (FileChannel in = FileChannel.open(input, StandardOpenOption.READ)) {
+            long size = in.size();
+            int slices = size <= SAMPLE_BYTES ? 1 : SAMPLE_SLICES;
+            int sliceBytes = (int) Math.min(size, SAMPLE_BYTES / slices);
+            for (int k = 0; k < slices; k++) {
+                long start = slices == 1 ? 0 : (size - sliceBytes) / (slices - 1) * k;
+                MappedByteBuffer slice = in.map(FileChannel.MapMode.READ_ONLY, start, sliceBytes);
+                for (int i = 0; i < sliceBytes; i++) {
+                    histogram[slice.get(i) & 0xFF]++;
+                }
+            }
+        }
+        return new Huffman(histogram, Alphabet.BYTES, true).codebook();
+    }
+
+    /**
+     * Compresses a file with a codebook sampled from it by {@link #sample(Path)}.
+     *
+     * @param input  the file to compress
+     * @param output the file to write, replaced if it exists
+     * @return the size of the output in bytes
+     * @throws IllegalArgumentException if input or output is null
+     * @throws IOException              if a file cannot be read, written or mapped
+     */
+    public long compress(Path input, Path output) throws IOException {
+        return compress(input, output, sample(input));
+    }
+
+    /**
+     * Compresses a file. An output left incomplete by a failure is deleted.
+     *
+     * @param input    the file to compress
+     * @param output   the file to write, replaced if it exists
+     * @param codebook a canonical byte alphabet codebook with codes of at most {@link
+     *                 #MAX_CODE_LENGTH} bits
+     * @return the size of the output in bytes
+     * @throws IllegalArgumentException if an argument is null, the codebook does not qualify or the
+     *                                  input holds a byte without a code
+     * @throws IOException              if a file cannot be read, written or mapped
+     */
+    public long compress(Path input, Path output, Codebook codebook) throws IOException {
+        if (input == null || output == null || codebook == null || !codebook.isCanonical()
+                || codebook.symbol(codebook.size() - 1) >= FrequencyCounter.BYTE_ALPHABET_SIZE
+                || codebook.maxLength() > MAX_CODE_LENGTH) {
+            throw new IllegalArgumentException();
+        }
+        BulkEncoder encoder = codebook.bulkEncoder();
+        byte[] chunk = new byte[READ_BUFFER];
+
+        try (FileChannel in = FileChannel.open(input, StandardOpenOption.READ)) {
+            long size = in.size();
+            long totalBits = 0;
+            for (long start = 0; start < size; start += windowSize) {
+                MappedByteBuffer window = map(in, FileChannel.MapMode.READ_ONLY, start, size);
+                while (window.hasRemaining()) {
+                    int n = Math.min(chunk.length, window.remaining());
+                    window.get(chunk, 0, n);
+                    totalBits += encoder.measure(chunk, 0, n);
+                }
+            }
+
+            byte[] header = codebook.toHeader();
+            long outputSize = LENGTH_BYTES + header.length + (totalBits + 7) / 8 + 1;
+            boolean written = false;
+            try (FileChannel channel = FileChannel.open(output, StandardOpenOption.CREATE,
+                    StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ,
+                    StandardOpenOption.WRITE)) {
+                MappedOutput out = new MappedOutput(channel, outputSize);
+                for (int shift = 56; shift >= 0; shift -= 8) {
+                    out.put((byte) (size >>> shift));
+                }
+                for (byte b : header) {
+                    out.put(b);
+                }
+                byte[] packed = new byte[chunk.length / 8 * codebook.maxLength() + 2];
+                long bit = 0;
+                // packed holds the whole bytes of each chunk's codes, then the partial byte left
+                // over is moved to the front for the next chunk to continue
+                for (long start = 0; start < size; start += windowSize) {
+                    MappedByteBuffer window = map(in, FileChannel.MapMode.READ_ONLY, start, size);
+                    while (window.hasRemaining()) {
+                        int n = Math.min(chunk.length, window.remaining());
+                        window.get(chunk, 0, n);
+                        bit = encoder.pack(chunk, 0, n, packed, bit);
+                        int whole = (int) (bit >>> 3);
+                        out.put(packed, 0, whole);
+                        packed[0] = packed[whole];
+                        bit &= 7;
+                    }
+                }
+                if (bit > 0) {
+                    out.put(packed[0]);
+                }
+                out.put((byte) ((8 - bit) & 7));
+                out.finish();
+                written = true;
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            } finally {
+                if (!written) {
+                    deletePartial(output);
+                }
+            }
+            return outputSize;
+        }
+    }
+
+    /**
+     * Decompresses a file. The length it claims is checked against the most symbols its data could
+     * hold before the output is created, and an output left incomplete by a failure is deleted.
+     *
+     * @param input  a file written by {@link #compress(Path, Path)}
+     * @param output the file to write, replaced if it exists
+     * @return the size of the output in bytes
+     * @throws IllegalArgumentException if input or output is null or the input is malformed or
+     *                                  not decodable
+     * @throws IOException              if a file cannot be read, written or mapped
+     */
+    public long decompress(Path input, Path output) throws IOException {
+        if (input == null || output == null) {
+            throw new IllegalArgumentException();
+        }
+        try (FileChannel in = FileChannel.open(input, StandardOpenOption.READ)) {
+            long size = in.size();
+            ByteBuffer head = in.map(FileChannel.MapMode.READ_ONLY, 0,
+                    Math.min(size, LENGTH_BYTES + MAX_HEADER_BYTES));
+            if (head.remaining() < LENGTH_BYTES + 2) {
+                throw new IllegalArgumentException();
+            }
+            long length = head.getLong();
+            Codebook codebook = Codebook.fromHeader(head);
+            int maxSymbol = codebook.symbol(codebook.size() - 1);
+            int minLength = Codebook.MAX_LENGTH;
+            for (int i = 0; i < codebook.size(); i++) {
+                minLength = Math.min(minLength, codebook.length(i));
+            }
+            // checked before the output is mapped at that length
+            if (length < 0 || length > (size - head.position()) * 8 / minLength
+                    || maxSymbol >= FrequencyCounter.BYTE_ALPHABET_SIZE) {
+                throw new IllegalArgumentException();
+            }
+
+            boolean written = false;
+            try (FileChannel channel = FileChannel.open(output, StandardOpenOption.CREATE,
+                    StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ,
+                    StandardOpenOption.WRITE)) {
+                MappedOutput out = new MappedOutput(channel, length);
+                BitReader bits = new BitReader(new MappedInput(in, head.position(), size),
+                        READ_BUFFER);
+                codebook.decode(bits, symbol -> out.put((byte) symbol));
+                if (out.written() != length) {
+                    throw new IllegalArgumentException();
+                }
+                out.finish();
+                written = true;
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            } finally {
+                if (!written) {
+                    deletePartial(output);
+                }
+            }
+            return length;
+        }
+    }
+
+    /**
+     * Deletes an output left incomplete by a failure.
+     */
+    private static void deletePartial(Path output) {
+        try {
+            Files.deleteIfExists(output);
+        } catch (IOException e) {
+            // the failure that got us here is the one to report
+        }
+    }
+
+    private MappedByteBuffer map(FileChannel channel, FileChannel.MapMode mode, long start,
+                                 long end) throws IOException {
+        return channel.map(mode, start, Math.min(windowSize, end - start));
+    }
+
+    /**
+     * Writes a file of known size through consecutive read-write windows. Mapping errors met while
+     * decoding are rethrown as {@link UncheckedIOException}.
+     */
+    private class MappedOutput {
+        private final FileChannel channel;
+        private final long size;
+        private long next;
+        // file offset of the window after the current one
+        private MappedByteBuffer window;
+
+        MappedOutput(FileChannel channel, long size) {
+            this.channel = channel;
+            this.size = size;
+        }
+
+        /**
+         * @throws IllegalArgumentException if the file is full
+         */
+        void put(byte b) {
+            if (window == null || !window.hasRemaining()) {
+                advance();
+            }
+            window.put(b);
+        }
+
+        /**
+         * @throws IllegalArgumentException if the file is full
+         */
+        void put(byte[] b, int off, int len) {
+            while (len > 0) {
+                if (window == null || !window.hasRemaining()) {
+                    advance();
+                }
+                int n = Math.min(len, window.remaining());
+                window.put(b, off, n);
+                off += n;
+                len -= n;
+            }
+        }
+
+        private void advance() {
+            if (next == size) {
+                throw new IllegalArgumentException();
+            }
+            if (window != null) {
+                window.force();
+            }
+            try {
+                window = map(channel, FileChannel.MapMode.READ_WRITE, next, size);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            next += window.limit();
+        }
+
+        long written() {
+            return window == null ? 0 : next - window.remaining();
+        }
+
+        void finish() {
+            if (window != null) {
+                window.force();
+            }
+        }
+    }
+
+    /**
+     * Reads a region of a file through consecutive read-only windows.
+     */
+    private class MappedInput extends InputStream {
+        private final FileChannel channel;
+        private final long end;
+        private long next;
+        private MappedByteBuffer window;
+
+        MappedInput(FileChannel channel, long start, long end) {
+            this.channel = channel;
+            this.next = start;
+            this.end = end;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] b = new byte[1];
+            return read(b, 0, 1) < 0 ? -1 : b[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (window == null || !window.hasRemaining()) {
+                if (next == end) {
+                    return -1;
+                }
+                window = map(channel, FileChannel.MapMode.READ_ONLY, next, end);
+                next += window.limit();
+            }
+            int n = Math.min(len, window.remaining());
+            window.get(b, off, n);
+            return n;
+        }
+    }
+
+    /**
+     * Command-line entry point:
+     * {@code java MappedFileCodec compress|decompress <input> <output>}.
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length != 3 || !(args[0].equals("compress") || args[0].equals("decompress"))) {
+            System.err.println("usage: java MappedFileCodec compress|decompress <input> <output>");
+            System.exit(2);
+        }
+        Path input = Paths.get(args[1]);
+        Path output = Paths.get(args[2]);
+        MappedFileCodec codec = new MappedFileCodec();
+        long written;
+        if (args[0].equals("compress")) {
+            written = codec.compress(input, output);
+        } else {
+            try {
+                written = codec.decompress(input, output);
+            } catch (IllegalArgumentException e) {
+                System.err.println(input + ": not a file written by MappedFileCodec compress");
+                System.exit(1);
+                return;
+            }
+        }
+        System.out.println(input + " (" + input.toFile().length() + " bytes) -> " + output
+                + " (" + written + " bytes)");
+    }
+}
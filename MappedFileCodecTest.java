@@ -0,0 +1,129 @@
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class MappedFileCodecTest {
+
+    private static byte[] skewedBytes(int length) {
+        Random random = new Random(17);
+        byte[] data = new byte[length];
+        for (int i = 0; i < length; i++) {
+            data[i] = (byte) (random.nextInt(4) == 0 ? random.nextInt(256) : random.nextInt(8));
+        }
+        return data;
+    }
+
+    private static byte[] roundTrip(MappedFileCodec codec, byte[] data) throws IOException {
+        Path in = Files.createTempFile("mapped", ".in");
+        Path packed = Files.createTempFile("mapped", ".huf");
+        Path out = Files.createTempFile("mapped", ".out");
+        try {
+            Files.write(in, data);
+            long packedSize = codec.compress(in, packed);
+            assertEquals(Files.size(packed), packedSize);
+            assertEquals(data.length, codec.decompress(packed, out));
+            return Files.readAllBytes(out);
+        } finally {
+            Files.delete(in);
+            Files.delete(packed);
+            Files.delete(out);
+        }
+    }
+
+    @Test
+    public void testRoundTripAcrossWindows() throws IOException {
+        byte[] data = skewedBytes(20000);
+        assertArrayEquals(data, roundTrip(new MappedFileCodec(13), data));
+        assertArrayEquals(data, roundTrip(new MappedFileCodec(4096), data));
+        assertArrayEquals(data, roundTrip(new MappedFileCodec(), data));
+    }
+
+    @Test
+    public void testEmptyFile() throws IOException {
+        assertArrayEquals(new byte[0], roundTrip(new MappedFileCodec(5), new byte[0]));
+    }
+
+    @Test
+    public void testLayoutMatchesInMemoryCodec() throws IOException {
+        byte[] data = skewedBytes(5000);
+        Path in = Files.createTempFile("mapped", ".in");
+        Path packed = Files.createTempFile("mapped", ".huf");
+        try {
+            Files.write(in, data);
+            Codebook codebook = MappedFileCodec.sample(in);
+            assertEquals(256, codebook.size());
+            new MappedFileCodec(7).compress(in, packed, codebook);
+            byte[] bytes = Files.readAllBytes(packed);
+            byte[] header = codebook.toHeader();
+            int dataStart = MappedFileCodec.LENGTH_BYTES + header.length;
+            assertEquals(data.length, ByteBuffer.wrap(bytes).getLong());
+            assertArrayEquals(header,
+                    Arrays.copyOfRange(bytes, MappedFileCodec.LENGTH_BYTES, dataStart));
+            assertArrayEquals(codebook.compress(data),
+                    Arrays.copyOfRange(bytes, dataStart, bytes.length));
+            assertTrue(bytes.length < data.length);
+        } finally {
+            Files.delete(in);
+            Files.delete(packed);
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testByteWithoutCode() throws IOException {
+        Path in = Files.createTempFile("mapped", ".in");
+        Path packed = Files.createTempFile("mapped", ".huf");
+        try {
+            Files.write(in, new byte[]{0, 1, 2, 3});
+            Codebook codebook = Codebook.canonical(new int[]{0, 1, 2}, new int[]{1, 2, 2});
+            new MappedFileCodec().compress(in, packed, codebook);
+        } finally {
+            Files.delete(in);
+            Files.delete(packed);
+        }
+    }
+
+    @Test
+    public void testMalformedInput() throws IOException {
+        Path in = Files.createTempFile("mapped", ".in");
+        Path packed = Files.createTempFile("mapped", ".huf");
+        Path out = Files.createTempFile("mapped", ".out");
+        try {
+            Files.write(in, skewedBytes(100));
+            MappedFileCodec codec = new MappedFileCodec(3);
+            codec.compress(in, packed);
+            byte[] bytes = Files.readAllBytes(packed);
+            byte[] truncated = Arrays.copyOf(bytes, bytes.length - 2);
+            byte[] huge = bytes.clone();
+            huge[4] = 0x40;
+            bytes[7]++;
+            // truncated data, too short for a header, a length one past the data and a length
+            // no data of this size could hold
+            for (byte[] m : new byte[][]{truncated, new byte[3], bytes, huge}) {
+                Files.write(packed, m);
+                try {
+                    codec.decompress(packed, out);
+                    fail();
+                } catch (IllegalArgumentException expected) {
+                }
+                // nothing of the failed output is left behind
+                assertTrue(!Files.exists(out) || Files.size(out) == 0);
+            }
+        } finally {
+            Files.delete(in);
+            Files.delete(packed);
+            Files.deleteIfExists(out);
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testWindowSizeNotPositive() {
+        new MappedFileCodec(0);
+    }
+}
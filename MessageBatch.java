@@ -0,0 +1,192 @@
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+
+/**
+ * Many small messages coded back to back into one shared buffer, with an index of where each one
+ * ends. Messages are not byte aligned: message i occupies bits {@link #bitOffset(int)} up to
+ * {@link #bitOffset(int)} + {@link #bitLength(int)} of {@link #data()}, most significant bit first.
+ * <p/>
+ * A batch is meant to be reused. Encoding into it with {@link BatchCodec} or reading into it with
+ * {@link #readFrom(ByteBuffer)} overwrites the previous contents and only allocates when the
+ * buffers need to grow, so a steady stream of batches settles into no allocation at all.
+ * <p/>
+ * The serialized form is the message count and each message's bit length as varints, followed by
+ * the data bytes.
+ */
+public final class MessageBatch {
+
+    byte[] data = new byte[64];
+    // data bytes plus slack for word stores past the last one
+    long[] ends = new long[16];
+    // ends[i] is the bit after message i
+    int size;
+
+
+    /**
+     * @return the number of messages
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return the number of coded bits across all messages
+     */
+    public long totalBits() {
+        return size == 0 ? 0 : ends[size - 1];
+    }
+
+    /**
+     * @param message the index of a message
+     * @return the position of the message's first bit in {@link #data()}
+     * @throws IllegalArgumentException if the message does not exist
+     */
+    public long bitOffset(int message) {
+        check(message);
+        return message == 0 ? 0 : ends[message - 1];
+    }
+
+    /**
+     * @param message the index of a message
+     * @return the number of bits coding the message
+     * @throws IllegalArgumentException if the message does not exist
+     */
+    public long bitLength(int message) {
+        check(message);
+        return ends[message] - (message == 0 ? 0 : ends[message - 1]);
+    }
+
+    private void check(int message) {
+        if (message < 0 || message >= size) {
+            throw new IllegalArgumentException();
+        }
+    }
+
+    /**
+     * @return the backing array, whose first (totalBits + 7) / 8 bytes hold the coded messages;
+     *         it is overwritten when the batch is reused
+     */
+    public byte[] data() {
+        return data;
+    }
+
+    /**
+     * Empties the batch, keeping its buffers.
+     */
+    public void clear() {
+        size = 0;
+    }
+
+    /**
+     * Drops the current contents and makes room for the given number of messages.
+     */
+    void reserve(int messages) {
+        size = 0;
+        ensureEnds(messages);
+    }
+
+    /**
+     * Makes room for the given number of data bits, with slack for word stores.
+     */
+    void reserveBits(long bits) {
+        ensureData((bits + 7) / 8);
+    }
+
+    private void ensureData(long bytes) {
+        if (bytes > Integer.MAX_VALUE - 16) {
+            throw new IllegalArgumentException();
+        }
+        if (data.length < bytes + 8) {
+            data = new byte[grown(bytes + 8, data.length)];
+        }
+    }
+
+    private void ensureEnds(long messages) {
+        if (ends.length < messages) {
+            ends = new long[grown(messages, ends.length)];
+        }
+    }
+
+    private static int grown(long needed, int length) {
+        return (int) Math.max(needed, Math.min(2L * length, Integer.MAX_VALUE - 8));
+    }
+
+    /**
+     * @return the number of bytes {@link #writeTo(ByteBuffer)} writes
+     */
+    public int serializedSize() {
+        long bytes = varintBytes(size) + (totalBits() + 7) / 8;
+        for (int i = 0; i < size; i++) {
+            bytes += varintBytes(bitLength(i));
+        }
+        return (int) bytes;
+    }
+
+    private static int varintBytes(long value) {
+        return Math.max(1, (64 - Long.numberOfLeadingZeros(value) + 6) / 7);
+    }
+
+    /**
+     * Writes the serialized form at the buffer's position.
+     *
+     * @param out the buffer to write to
+     * @throws IllegalArgumentException if out is null
+     * @throws java.nio.BufferOverflowException if the buffer does not have enough room
+     */
+    public void writeTo(ByteBuffer out) {
+        if (out == null) {
+            throw new IllegalArgumentException();
+        }
+        Codebook.putVarint(out, size);
+        for (int i = 0; i < size; i++) {
+            Codebook.putVarint(out, bitLength(i));
+        }
+        out.put(data, 0, (int) ((totalBits() + 7) / 8));
+    }
+
+    /**
+     * @return the serialized form
+     */
+    public byte[] toByteArray() {
+        ByteBuffer out = ByteBuffer.allocate(serializedSize());
+        writeTo(out);
+        return out.array();
+    }
+
+    /**
+     * Replaces the contents with a serialized batch read from the buffer's position.
+     *
+     * @param in the buffer to read from
+     * @throws IllegalArgumentException if in is null or does not hold a whole serialized batch; the
+     *                                  batch is left empty
+     */
+    public void readFrom(ByteBuffer in) {
+        if (in == null) {
+            throw new IllegalArgumentException();
+        }
+        size = 0;
+        try {
+            long count = Codebook.getVarint(in);
+            // every message takes at least one byte of index
+            if (count < 0 || count > in.remaining()) {
+                throw new IllegalArgumentException();
+            }
+            ensureEnds(count);
+            long total = 0;
+            for (int i = 0; i < count; i++) {
+                long length = Codebook.getVarint(in);
+                if (length < 0 || length > 8L * in.remaining() - total) {
+                    throw new IllegalArgumentException();
+                }
+                total += length;
+                ends[i] = total;
+            }
+            int bytes = (int) ((total + 7) / 8);
+            ensureData(bytes);
+            in.get(data, 0, bytes);
+            size = (int) count;
+        } catch (BufferUnderflowException e) {
+            throw new IllegalArgumentException(e);
+        }
+    }
+}
@@ -0,0 +1,393 @@
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.function.IntConsumer;
+
+/**
+ * A codec whose encode and decode tables live in one direct buffer outside the Java heap, taken
+ * from a {@link BufferPool} and given back by {@link #close()}. Whatever the size of the
+ * codebook, a live codec holds the same few objects on the heap, so many codecs can stay loaded
+ * without adding to the collector's work. Compressed output goes to caller-supplied buffers or
+ * to buffers drawn from the same pool.
+ * <p/>
+ * The table holds, in native byte order:
+ * <ul>
+ * <li>for every symbol up to the largest, its code and length packed into one long, or 0 if it has
+ * no code;</li>
+ * <li>a primary decode table indexed by the next {@link #PRIMARY_BITS} bits, giving the symbol and
+ * length of codes that short;</li>
+ * <li>for each longer length, the first canonical code, how many codes have it and where their
+ * symbols start;</li>
+ * <li>the symbols with longer codes, ordered by length and then symbol.</li>
+ * </ul>
+ * Longer codes are decoded with copies of the codebook's canonical tables, as {@link
+ * Codebook#decodeCanonical} does, so the codebook must be canonical. Codes are at most 56 bits, so
+ * encoding can add a code to a 64-bit accumulator that still holds up to 7 bits.
+ * <p/>
+ * Encoding and decoding can run on many threads at once. A closed codec throws {@link
+ * IllegalStateException}; it must not be closed while other threads are still using it.
+ */
+public final class OffHeapCodec implements AutoCloseable {
+
+    static final int PRIMARY_BITS = 10;
+    static final int MAX_CODE_LENGTH = 56;
+
+    private final BufferPool pool;
+    private volatile ByteBuffer table;
+    // null once closed
+    private final int maxSymbol;
+    private final int maxLength;
+    private final int primaryBits;
+    private final int primaryOffset;
+    private final int lengthOffset;
+    private final int symbolOffset;
+
+
+    /**
+     * Builds the tables in a buffer from the {@link BufferPool#shared() shared pool}.
+     *
+     * @param codebook a canonical codebook of symbols up to 65535 and codes up to 56 bits
+     * @throws IllegalArgumentException if the codebook is null or not of that kind
+     */
+    public OffHeapCodec(Codebook codebook) {
+        this(codebook, BufferPool.shared());
+    }
+
+    /**
+     * @param codebook a canonical codebook of symbols up to 65535 and codes up to 56 bits
+     * @param pool     supplies the table and the buffers of {@link #compress(CharSequence)}
+     * @throws IllegalArgumentException if an argument is null or the codebook is not of that kind
+     */
+    public OffHeapCodec(Codebook codebook, BufferPool pool) {
+        if (codebook == null || pool == null || !codebook.isCanonical()
+                || codebook.symbol(codebook.size() - 1) > 0xFFFF
+                || codebook.maxLength() > MAX_CODE_LENGTH) {
+            throw new IllegalArgumentException();
+        }
+        this.pool = pool;
+        maxSymbol = codebook.symbol(codebook.size() - 1);
+        maxLength = codebook.maxLength();
+        primaryBits = Math.min(maxLength, PRIMARY_BITS);
+        int base = codebook.firstIndex(primaryBits + 1);
+        int longCodes = codebook.size() - base;
+        primaryOffset = 8 * (maxSymbol + 1);
+        lengthOffset = primaryOffset + (4 << primaryBits);
+        symbolOffset = lengthOffset + 16 * (maxLength + 1);
+        int size = symbolOffset + 4 * longCodes;
+
+        ByteBuffer t = pool.acquire(size).order(ByteOrder.nativeOrder());
+        for (int i = 0; i < symbolOffset; i += 4) {
+            t.putInt(i, 0);
+        }
+        for (int i = 0; i < codebook.size(); i++) {
+            int symbol = codebook.symbol(i);
+            int length = codebook.length(i);
+            long code = codebook.code(i);
+            t.putLong(8 * symbol, code << 8 | length);
+            if (length <= primaryBits) {
+                int first = (int) (code << (primaryBits - length));
+                for (int index = first; index < first + (1 << (primaryBits - length)); index++) {
+                    t.putInt(primaryOffset + 4 * index, symbol << 8 | length);
+                }
+            }
+        }
+        // the codebook's canonical decode tables, for the lengths the primary table misses
+        for (int length = primaryBits + 1; length <= maxLength; length++) {
+            int at = lengthOffset + 16 * length;
+            t.putLong(at, codebook.firstCode(length));
+            t.putInt(at + 8, codebook.lengthCount(length));
+            t.putInt(at + 12, codebook.firstIndex(length) - base);
+        }
+        for (int i = 0; i < longCodes; i++) {
+            t.putInt(symbolOffset + 4 * i, codebook.symbolByCode(base + i));
+        }
+        table = t;
+    }
+
+    private ByteBuffer table() {
+        ByteBuffer t = table;
+        if (t == null) {
+            throw new IllegalStateException();
+        }
+        return t;
+    }
+
+    /**
+     * @return the number of bytes of off-heap table, 0 once closed
+     */
+    public int tableBytes() {
+        ByteBuffer t = table;
+        return t == null ? 0 : t.limit();
+    }
+
+    /**
+     * Encodes characters into the packed form of {@link BitWriter#toByteArray()}, written at the
+     * buffer's position, which is then advanced past it. Nothing is written if the input has a
+     * character without a code or the output is too small.
+     *
+     * @param input the characters to encode
+     * @param out   the buffer to write to, direct or not
+     * @return the number of bytes written
+     * @throws IllegalArgumentException if an argument is null or a character has no code
+     * @throws BufferOverflowException  if out does not have enough room
+     * @throws IllegalStateException    if the codec is closed
+     */
+    public int encode(CharSequence input, ByteBuffer out) {
+        if (input == null || out == null) {
+            throw new IllegalArgumentException();
+        }
+        ByteBuffer t = table();
+        long bits = measure(t, input, null, 0, input.length());
+        return pack(t, input, null, 0, input.length(), bits, out);
+    }
+
+    /**
+     * Encodes the bytes between the input's position and limit, each an unsigned symbol 0-255, as
+     * {@link #encode(CharSequence, ByteBuffer)} does. The input's position is advanced to its limit
+     * once the output is written.
+     *
+     * @param input the bytes to encode
+     * @param out   the buffer to write to
+     * @return the number of bytes written
+     * @throws IllegalArgumentException if an argument is null or a byte has no code
+     * @throws BufferOverflowException  if out does not have enough room
+     * @throws IllegalStateException    if the codec is closed
+     */
+    public int encode(ByteBuffer input, ByteBuffer out) {
+        if (input == null || out == null) {
+            throw new IllegalArgumentException();
+        }
+        ByteBuffer t = table();
+        long bits = measure(t, null, input, input.position(), input.limit());
+        int written = pack(t, null, input, input.position(), input.limit(), bits, out);
+        input.position(input.limit());
+        return written;
+    }
+
+    /**
+     * Encodes characters into a buffer from the codec's pool, which the caller should hand back
+     * with {@link #release(ByteBuffer)} when done with it.
+     *
+     * @param input the characters to encode
+     * @return a direct buffer holding the packed form between position 0 and its limit
+     * @throws IllegalArgumentException if the input is null or a character has no code
+     * @throws IllegalStateException    if the codec is closed
+     */
+    public ByteBuffer compress(CharSequence input) {
+        if (input == null) {
+            throw new IllegalArgumentException();
+        }
+        ByteBuffer t = table();
+        long bits = measure(t, input, null, 0, input.length());
+        ByteBuffer out = pool.acquire(packedSize(bits));
+        pack(t, input, null, 0, input.length(), bits, out);
+        return out.flip();
+    }
+
+    /**
+     * Encodes the bytes between the input's position and limit into a buffer from the codec's
+     * pool, as {@link #compress(CharSequence)} does.
+     *
+     * @param input the bytes to encode
+     * @return a direct buffer holding the packed form between position 0 and its limit
+     * @throws IllegalArgumentException if the input is null or a byte has no code
+     * @throws IllegalStateException    if the codec is closed
+     */
+    public ByteBuffer compress(ByteBuffer input) {
+        if (input == null) {
+            throw new IllegalArgumentException();
+        }
+        ByteBuffer t = table();
+        long bits = measure(t, null, input, input.position(), input.limit());
+        ByteBuffer out = pool.acquire(packedSize(bits));
+        pack(t, null, input, input.position(), input.limit(), bits, out);
+        input.position(input.limit());
+        return out.flip();
+    }
+
+    /**
+     * Hands a buffer from {@link #compress(CharSequence)} back to the pool.
+     *
+     * @param buffer the buffer, which must not be used afterwards
+     * @throws IllegalArgumentException if buffer is null
+     */
+    public void release(ByteBuffer buffer) {
+        pool.release(buffer);
+    }
+
+    private static int packedSize(long bits) {
+        long bytes = (bits + 7) / 8 + 1;
+        if (bytes > Integer.MAX_VALUE - 8) {
+            throw new IllegalArgumentException();
+        }
+        return (int) bytes;
+    }
+
+    /**
+     * @return the code bits of the symbols from index from up to index to of whichever of chars
+     *         and bytes is not null
+     * @throws IllegalArgumentException if a symbol has no code
+     */
+    private long measure(ByteBuffer t, CharSequence chars, ByteBuffer bytes, int from, int to) {
+        long total = 0;
+        for (int i = from; i < to; i++) {
+            int symbol = chars != null ? chars.charAt(i) : bytes.get(i) & 0xFF;
+            if (symbol > maxSymbol) {
+                throw new IllegalArgumentException();
+            }
+            int length = (int) t.getLong(8 * symbol) & 0xFF;
+            if (length == 0) {
+                throw new IllegalArgumentException();
+            }
+            total += length;
+        }
+        return total;
+    }
+
+    /**
+     * Packs symbols {@link #measure} accepted, storing the accumulator a word at a time while at
+     * least 8 data bytes remain, then byte by byte, so nothing past the output is touched.
+     */
+    private int pack(ByteBuffer t, CharSequence chars, ByteBuffer bytes, int from, int to,
+                     long totalBits, ByteBuffer out) {
+        int size = packedSize(totalBits);
+        if (out.remaining() < size) {
+            throw new BufferOverflowException();
+        }
+        boolean swap = out.order() != ByteOrder.BIG_ENDIAN;
+        int flushAt = 63 - maxLength;
+        int pos = out.position();
+        int dataEnd = pos + size - 1;
+        long acc = 0;
+        int bits = 0;
+        for (int i = from; i < to; i++) {
+            int symbol = chars != null ? chars.charAt(i) : bytes.get(i) & 0xFF;
+            long entry = t.getLong(8 * symbol);
+            bits += (int) entry & 0xFF;
+            acc |= (entry >>> 8) << (64 - bits);
+            if (bits > flushAt) {
+                if (pos + 8 <= dataEnd) {
+                    out.putLong(pos, swap ? Long.reverseBytes(acc) : acc);
+                    pos += bits >>> 3;
+                    acc <<= bits & ~7;
+                    bits &= 7;
+                } else {
+                    for (; bits >= 8; bits -= 8) {
+                        out.put(pos++, (byte) (acc >>> 56));
+                        acc <<= 8;
+                    }
+                }
+            }
+        }
+        for (; bits > 0; bits -= 8) {
+            out.put(pos++, (byte) (acc >>> 56));
+            acc <<= 8;
+        }
+        out.put(dataEnd, (byte) ((8 - totalBits % 8) & 7));
+        out.position(dataEnd + 1);
+        return size;
+    }
+
+    /**
+     * Decodes the packed form between the buffer's position and limit, whose last byte is the
+     * padding trailer, and advances the position to the limit.
+     *
+     * @param packed the packed bits, in the layout of {@link BitWriter#toByteArray()}
+     * @param out    receives the decoded symbols
+     * @throws IllegalArgumentException if an argument is null or the input is malformed or not
+     *                                  decodable
+     * @throws IllegalStateException    if the codec is closed
+     */
+    public void decode(ByteBuffer packed, IntConsumer out) {
+        if (packed == null || out == null || !packed.hasRemaining()) {
+            throw new IllegalArgumentException();
+        }
+        ByteBuffer t = table();
+        int pos = packed.position();
+        int dataEnd = packed.limit() - 1;
+        int padding = packed.get(dataEnd);
+        if (padding < 0 || padding > 7 || (padding > 0 && pos == dataEnd)) {
+            throw new IllegalArgumentException();
+        }
+        long remaining = (dataEnd - pos) * 8L - padding;
+        long window = 0;
+        int windowBits = 0;
+        while (remaining > 0) {
+            for (; windowBits <= 56 && pos < dataEnd; windowBits += 8) {
+                window |= (packed.get(pos++) & 0xFFL) << (56 - windowBits);
+            }
+            int entry = t.getInt(primaryOffset + 4 * (int) (window >>> (64 - primaryBits)));
+            int length = entry & 0xFF;
+            int symbol = entry >>> 8;
+            if (length == 0) {
+                symbol = -1;
+                for (length = primaryBits + 1; length <= maxLength; length++) {
+                    int at = lengthOffset + 16 * length;
+                    long index = (window >>> (64 - length)) - t.getLong(at);
+                    if (index >= 0 && index < t.getInt(at + 8)) {
+                        symbol = t.getInt(symbolOffset + 4 * (t.getInt(at + 12) + (int) index));
+                        break;
+                    }
+                }
+            }
+            if (symbol < 0 || length > remaining) {
+                throw new IllegalArgumentException();
+            }
+            window <<= length;
+            windowBits -= length;
+            remaining -= length;
+            out.accept(symbol);
+        }
+        packed.position(packed.limit());
+    }
+
+    /**
+     * Decodes packed bytes into a buffer, as {@link #decode(ByteBuffer, IntConsumer)} does.
+     *
+     * @param packed the packed bits
+     * @param out    the buffer to write the decoded bytes to
+     * @throws IllegalArgumentException if an argument is null or the input is malformed, not
+     *                                  decodable or decodes to a symbol above 255
+     * @throws BufferOverflowException  if out does not have enough room
+     * @throws IllegalStateException    if the codec is closed
+     */
+    public void decode(ByteBuffer packed, ByteBuffer out) {
+        if (out == null) {
+            throw new IllegalArgumentException();
+        }
+        decode(packed, symbol -> {
+            if (symbol > 0xFF) {
+                throw new IllegalArgumentException();
+            }
+            out.put((byte) symbol);
+        });
+    }
+
+    /**
+     * Decodes packed characters, as {@link #decode(ByteBuffer, IntConsumer)} does.
+     *
+     * @param packed the packed bits
+     * @param out    receives the decoded characters
+     * @throws IllegalArgumentException if an argument is null or the input is malformed or not
+     *                                  decodable
+     * @throws IllegalStateException    if the codec is closed
+     */
+    public void decode(ByteBuffer packed, StringBuilder out) {
+        if (out == null) {
+            throw new IllegalArgumentException();
+        }
+        decode(packed, symbol -> out.append((char) symbol));
+    }
+
+    /**
+     * Gives the table back to the pool. Closing again has no effect.
+     */
+    @Override
+    public synchronized void close() {
+        ByteBuffer t = table;
+        if (t != null) {
+            table = null;
+            pool.release(t);
+        }
+    }
+}
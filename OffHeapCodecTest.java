@@ -0,0 +1,220 @@
+import org.junit.Test;
+
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class OffHeapCodecTest {
+
+    private static final String TEXT = "the quick brown fox jumps over the lazy dog, again and again";
+
+    @Test
+    public void testMatchesCodebookOutput() {
+        Codebook codebook = new Huffman(TEXT, true).codebook();
+        try (OffHeapCodec codec = new OffHeapCodec(codebook)) {
+            for (int n = 0; n <= TEXT.length(); n += 7) {
+                String input = TEXT.substring(0, n);
+                ByteBuffer out = codec.compress(input);
+                byte[] packed = new byte[out.remaining()];
+                out.get(packed);
+                assertArrayEquals(codebook.compress(input), packed);
+                codec.release(out);
+            }
+        }
+    }
+
+    @Test
+    public void testRoundTripIntoHeapAndDirectBuffers() {
+        try (OffHeapCodec codec = new OffHeapCodec(new Huffman(TEXT, true).codebook())) {
+            for (ByteBuffer out : new ByteBuffer[]{
+                    ByteBuffer.allocate(100), ByteBuffer.allocateDirect(100),
+                    ByteBuffer.allocate(100).order(ByteOrder.LITTLE_ENDIAN)}) {
+                out.put((byte) 42);
+                int written = codec.encode(TEXT, out);
+                assertEquals(1 + written, out.position());
+                out.flip().get();
+                StringBuilder decoded = new StringBuilder();
+                codec.decode(out, decoded);
+                assertEquals(TEXT, decoded.toString());
+                assertFalse(out.hasRemaining());
+            }
+        }
+    }
+
+    @Test
+    public void testBytesWithLongCodes() {
+        // skewed counts push the rarest bytes past the primary table
+        long[] histogram = new long[256];
+        for (int b = 0; b < 256; b++) {
+            histogram[b] = b < 20 ? 1L << (20 - b) : 1;
+        }
+        Codebook codebook = new Huffman(histogram, Alphabet.BYTES, true).codebook();
+        assertTrue(codebook.maxLength() > OffHeapCodec.PRIMARY_BITS);
+        byte[] input = new byte[5000];
+        Random random = new Random(11);
+        for (int i = 0; i < input.length; i++) {
+            input[i] = (byte) (random.nextInt(4) == 0 ? random.nextInt(256) : random.nextInt(3));
+        }
+        try (OffHeapCodec codec = new OffHeapCodec(codebook)) {
+            ByteBuffer source = ByteBuffer.wrap(input);
+            ByteBuffer packed = codec.compress(source);
+            assertFalse(source.hasRemaining());
+            byte[] heap = new byte[packed.remaining()];
+            packed.duplicate().get(heap);
+            assertArrayEquals(codebook.compress(input), heap);
+            ByteBuffer decoded = ByteBuffer.allocateDirect(input.length);
+            codec.decode(packed, decoded);
+            byte[] result = new byte[input.length];
+            decoded.flip().get(result);
+            assertArrayEquals(input, result);
+            codec.release(packed);
+        }
+    }
+
+    @Test
+    public void testOutputTooSmallWritesNothing() {
+        try (OffHeapCodec codec = new OffHeapCodec(new Huffman(TEXT, true).codebook())) {
+            ByteBuffer out = ByteBuffer.allocate(8);
+            try {
+                codec.encode(TEXT, out);
+                fail();
+            } catch (BufferOverflowException expected) {
+            }
+            assertEquals(0, out.position());
+            assertArrayEquals(new byte[8], out.array());
+        }
+    }
+
+    @Test
+    public void testRejectsBadInput() {
+        try (OffHeapCodec codec = new OffHeapCodec(new Huffman(TEXT, true).codebook())) {
+            try {
+                codec.encode("THE FOX", ByteBuffer.allocate(100));
+                fail();
+            } catch (IllegalArgumentException expected) {
+            }
+            try {
+                codec.compress("\u4e00");
+                fail();
+            } catch (IllegalArgumentException expected) {
+            }
+            ByteBuffer packed = codec.compress(TEXT);
+            packed.put(packed.limit() - 1, (byte) 9);
+            try {
+                codec.decode(packed, new StringBuilder());
+                fail();
+            } catch (IllegalArgumentException expected) {
+            }
+        }
+    }
+
+    @Test
+    public void testCloseReturnsTableToPool() {
+        BufferPool pool = new BufferPool(1 << 20);
+        OffHeapCodec codec = new OffHeapCodec(new Huffman(TEXT, true).codebook(), pool);
+        assertTrue(codec.tableBytes() > 0);
+        assertEquals(0, pool.retainedBytes());
+        codec.close();
+        codec.close();
+        assertEquals(0, codec.tableBytes());
+        assertTrue(pool.retainedBytes() > 0);
+        try {
+            codec.compress(TEXT);
+            fail();
+        } catch (IllegalStateException expected) {
+        }
+        // the next codec reuses the table, whatever was left in it
+        long retained = pool.retainedBytes();
+        try (OffHeapCodec next = new OffHeapCodec(new Huffman("zyx", true).codebook(), pool)) {
+            assertTrue(pool.retainedBytes() < retained);
+            StringBuilder decoded = new StringBuilder();
+            next.decode(next.compress("xyzzy"), decoded);
+            assertEquals("xyzzy", decoded.toString());
+        }
+    }
+
+    @Test
+    public void testPoolReusesAndBounds() {
+        BufferPool pool = new BufferPool(256);
+        ByteBuffer a = pool.acquire(100);
+        assertTrue(a.isDirect());
+        assertEquals(128, a.capacity());
+        assertEquals(100, a.limit());
+        pool.release(a);
+        assertEquals(128, pool.retainedBytes());
+        ByteBuffer b = pool.acquire(70);
+        assertSame(a, b);
+        assertEquals(70, b.limit());
+        assertEquals(0, pool.retainedBytes());
+        pool.release(b);
+        pool.release(pool.acquire(200));
+        pool.release(ByteBuffer.allocate(64));
+        assertEquals(128, pool.retainedBytes());
+        assertEquals(64, pool.acquire(0).capacity());
+    }
+
+    @Test
+    public void testPoolIgnoresBuffersItDidNotHandOut() {
+        BufferPool pool = new BufferPool(1 << 20);
+        ByteBuffer a = pool.acquire(256);
+        // a direct power-of-two view of a pooled buffer, and a buffer from elsewhere
+        pool.release(a.duplicate());
+        pool.release(a.duplicate().limit(128).slice());
+        pool.release(ByteBuffer.allocateDirect(128));
+        assertEquals(0, pool.retainedBytes());
+        pool.release(a);
+        pool.release(a);
+        assertEquals(256, pool.retainedBytes());
+        assertSame(a, pool.acquire(200));
+        assertNotSame(a, pool.acquire(200));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNonCanonicalCodebook() {
+        new OffHeapCodec(new Huffman(TEXT).codebook());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testCodesTooLong() {
+        int[] symbols = new int[61];
+        int[] lengths = new int[61];
+        for (int i = 0; i < 61; i++) {
+            symbols[i] = i;
+            lengths[i] = Math.min(i + 1, 60);
+        }
+        new OffHeapCodec(Codebook.canonical(symbols, lengths));
+    }
+
+    @Test
+    public void testConcurrentUse() throws InterruptedException {
+        Codebook codebook = new Huffman(TEXT, true).codebook();
+        try (OffHeapCodec codec = new OffHeapCodec(codebook)) {
+            Thread[] threads = new Thread[4];
+            AtomicInteger mismatches = new AtomicInteger();
+            for (int t = 0; t < threads.length; t++) {
+                int id = t;
+                threads[t] = new Thread(() -> {
+                    for (int i = 0; i < 500; i++) {
+                        String input = TEXT.substring(id, TEXT.length() - i % 20);
+                        ByteBuffer packed = codec.compress(input);
+                        StringBuilder decoded = new StringBuilder();
+                        codec.decode(packed, decoded);
+                        codec.release(packed);
+                        if (!input.contentEquals(decoded)) {
+                            mismatches.incrementAndGet();
+                        }
+                    }
+                });
+                threads[t].start();
+            }
+            for (Thread thread : threads) {
+                thread.join();
+            }
+            assertEquals(0, mismatches.get());
+        }
+    }
+}
@@ -0,0 +1,419 @@
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+
+/**
+ * Order-1 context-modeled Huffman coding: each symbol is coded with a codebook chosen by the symbol
+ * before it, which captures the pairwise structure an order-0 {@link Huffman} tree cannot.
+ * <p/>
+ * Every previous symbol seen at least {@link #MIN_CONTEXT_COUNT} times in the seed gets a
+ * canonical codebook of the symbols that followed it, plus an escape symbol counted once per
+ * distinct follower. A symbol the context never saw is sent as the escape code followed by its
+ * order-0 code. Sparser contexts, and the first symbol, use the order-0 codebook directly, so the
+ * model only grows where the seed supports it.
+ * <p/>
+ * Contexts are looked up in an array indexed by the previous symbol, and the codes of symbols
+ * below 256 in arrays indexed by the symbol, so coding costs about the same as order-0. Only
+ * {@link Alphabet#BYTES} and {@link Alphabet#CHARS} are supported, which bounds that array.
+ */
+public class Order1Huffman {
+
+    static final int MIN_CONTEXT_COUNT = 32;
+    static final int DENSE_SYMBOLS = 256;
+    // symbols below this have their codes in arrays rather than looked up in the codebook
+
+    private final Alphabet alphabet;
+    private final int escape;
+    // the escape symbol, one past the alphabet
+    private final Context order0;
+    private final Context[] contexts;
+    // indexed by the previous symbol, null where the order-0 codebook is used
+    private final int contextCount;
+
+
+    /**
+     * Builds a model over {@link Alphabet#CHARS} from a seed.
+     *
+     * @param seed the characters from which to build the model
+     * @throws IllegalArgumentException if seed is null or has fewer than 2 distinct characters
+     */
+    public Order1Huffman(String seed) {
+        this(Alphabet.CHARS, seed == null ? null : seed.chars().toArray());
+    }
+
+    /**
+     * Builds a model over {@link Alphabet#BYTES} from a seed.
+     *
+     * @param seed the bytes from which to build the model
+     * @throws IllegalArgumentException if seed is null or has fewer than 2 distinct byte values
+     */
+    public Order1Huffman(byte[] seed) {
+        this(Alphabet.BYTES, symbols(seed));
+    }
+
+    private Order1Huffman(Alphabet alphabet, int[] seed) {
+        if (seed == null) {
+            throw new IllegalArgumentException();
+        }
+        this.alphabet = alphabet;
+        this.escape = alphabet.size();
+        this.contexts = new Context[alphabet.size()];
+        int[] sorted = seed.clone();
+        Arrays.sort(sorted);
+        long[] runs = runs(sorted);
+        this.order0 = new Context(Codebook.fromCounts(runSymbols(runs), runCounts(runs)));
+
+        long[] pairs = new long[Math.max(0, seed.length - 1)];
+        for (int i = 1; i < seed.length; i++) {
+            pairs[i - 1] = (long) seed[i - 1] << 32 | seed[i];
+        }
+        Arrays.sort(pairs);
+        int count = 0;
+        for (int start = 0, end; start < pairs.length; start = end) {
+            int previous = (int) (pairs[start] >>> 32);
+            end = start + 1;
+            while (end < pairs.length && (int) (pairs[end] >>> 32) == previous) {
+                end++;
+            }
+            if (end - start < MIN_CONTEXT_COUNT) {
+                continue;
+            }
+            int[] followers = new int[end - start];
+            for (int i = start; i < end; i++) {
+                followers[i - start] = (int) pairs[i];
+            }
+            runs = runs(followers);
+            int[] symbols = Arrays.copyOf(runSymbols(runs), runs.length + 1);
+            long[] counts = Arrays.copyOf(runCounts(runs), runs.length + 1);
+            symbols[runs.length] = escape;
+            counts[runs.length] = runs.length;
+            contexts[previous] = new Context(Codebook.fromCounts(symbols, counts));
+            count++;
+        }
+        this.contextCount = count;
+    }
+
+    private Order1Huffman(Alphabet alphabet, Context order0, Context[] contexts, int contextCount) {
+        this.alphabet = alphabet;
+        this.escape = alphabet.size();
+        this.order0 = order0;
+        this.contexts = contexts;
+        this.contextCount = contextCount;
+    }
+
+    private static int[] symbols(byte[] bytes) {
+        if (bytes == null) {
+            return null;
+        }
+        int[] symbols = new int[bytes.length];
+        for (int i = 0; i < bytes.length; i++) {
+            symbols[i] = bytes[i] & 0xFF;
+        }
+        return symbols;
+    }
+
+    /**
+     * @return each distinct value of a sorted array in the high half and its count in the low half
+     */
+    private static long[] runs(int[] sorted) {
+        long[] runs = new long[sorted.length];
+        int n = 0;
+        for (int i = 0; i < sorted.length; i++) {
+            if (i == 0 || sorted[i] != sorted[i - 1]) {
+                runs[n++] = (long) sorted[i] << 32;
+            }
+            runs[n - 1]++;
+        }
+        return Arrays.copyOf(runs, n);
+    }
+
+    private static int[] runSymbols(long[] runs) {
+        int[] symbols = new int[runs.length];
+        for (int i = 0; i < runs.length; i++) {
+            symbols[i] = (int) (runs[i] >>> 32);
+        }
+        return symbols;
+    }
+
+    private static long[] runCounts(long[] runs) {
+        long[] counts = new long[runs.length];
+        for (int i = 0; i < runs.length; i++) {
+            counts[i] = runs[i] & 0xFFFFFFFFL;
+        }
+        return counts;
+    }
+
+    /**
+     * A codebook with the codes of its small symbols also laid out by symbol value.
+     */
+    private static class Context {
+        final Codebook codebook;
+        final long[] codes = new long[DENSE_SYMBOLS];
+        final int[] lengths = new int[DENSE_SYMBOLS];
+        // 0 where the symbol has no code
+        final long escapeCode;
+        final int escapeLength;
+        // the code of the last symbol, which is the escape in every context but order-0
+
+        Context(Codebook codebook) {
+            this.codebook = codebook;
+            for (int i = 0; i < codebook.size() && codebook.symbol(i) < DENSE_SYMBOLS; i++) {
+                codes[codebook.symbol(i)] = codebook.code(i);
+                lengths[codebook.symbol(i)] = codebook.length(i);
+            }
+            escapeCode = codebook.code(codebook.size() - 1);
+            escapeLength = codebook.length(codebook.size() - 1);
+        }
+
+        /**
+         * @return whether the symbol has a code in this context
+         */
+        boolean write(int symbol, BitWriter out) {
+            if (symbol < DENSE_SYMBOLS) {
+                if (lengths[symbol] == 0) {
+                    return false;
+                }
+                out.writeBits(codes[symbol], lengths[symbol]);
+                return true;
+            }
+            int i = codebook.indexOf(symbol);
+            if (i < 0) {
+                return false;
+            }
+            out.writeBits(codebook.code(i), codebook.length(i));
+            return true;
+        }
+    }
+
+    /**
+     * @return the kind of symbol this model codes
+     */
+    public Alphabet alphabet() {
+        return alphabet;
+    }
+
+    /**
+     * @return the number of previous symbols with a codebook of their own
+     */
+    public int contextCount() {
+        return contextCount;
+    }
+
+    /**
+     * @return the codebook used for the first symbol, sparse contexts and after an escape
+     */
+    public Codebook order0() {
+        return order0.codebook;
+    }
+
+    /**
+     * Encodes one symbol.
+     *
+     * @param previous the symbol before it, or -1 for the first symbol
+     * @param symbol   the symbol
+     * @param out      receives the code, escaped if the context has none
+     * @throws IllegalArgumentException if either symbol is outside the alphabet or the symbol has
+     *                                  no order-0 code
+     */
+    public void encode(int previous, int symbol, BitWriter out) {
+        if (symbol < 0 || symbol >= escape || previous >= escape) {
+            throw new IllegalArgumentException();
+        }
+        Context context = previous < 0 ? null : contexts[previous];
+        if (context != null && context.write(symbol, out)) {
+            return;
+        }
+        if (context != null) {
+            out.writeBits(context.escapeCode, context.escapeLength);
+        }
+        if (!order0.write(symbol, out)) {
+            throw new IllegalArgumentException();
+        }
+    }
+
+    /**
+     * Decodes every remaining bit of the reader.
+     *
+     * @param in  the bits to decode
+     * @param out receives the decoded symbols
+     * @throws IllegalArgumentException if the bits are not a sequence of whole codes
+     */
+    public void decode(BitReader in, IntConsumer out) {
+        int previous = -1;
+        while (in.hasRemaining()) {
+            Context context = previous < 0 ? null : contexts[previous];
+            int symbol = (context == null ? order0 : context).codebook.decodeSymbol(in);
+            if (symbol == escape) {
+                symbol = order0.codebook.decodeSymbol(in);
+            }
+            out.accept(symbol);
+            previous = symbol;
+        }
+    }
+
+    /**
+     * Compresses a string; a {@link Alphabet#BYTES} model codes its UTF-8 bytes.
+     *
+     * @param input the string to compress
+     * @return the packed encoding, in the layout of {@link BitWriter#toByteArray()}
+     * @throws IllegalArgumentException if the input is null or has a symbol without a code
+     */
+    public byte[] compress(CharSequence input) {
+        if (input == null) {
+            throw new IllegalArgumentException();
+        }
+        if (alphabet == Alphabet.BYTES) {
+            return compressBytes(Huffman.utf8(input));
+        }
+        BitWriter out = new BitWriter(input.length() / 2 + 16);
+        int previous = -1;
+        for (int i = 0; i < input.length(); i++) {
+            encode(previous, input.charAt(i), out);
+            previous = input.charAt(i);
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * @param input the bytes to compress
+     * @return the packed encoding, in the layout of {@link BitWriter#toByteArray()}
+     * @throws IllegalArgumentException if the input is null or has a byte without a code
+     * @throws IllegalStateException    if the model does not code {@link Alphabet#BYTES}
+     */
+    public byte[] compressBytes(byte[] input) {
+        if (alphabet != Alphabet.BYTES) {
+            throw new IllegalStateException();
+        }
+        if (input == null) {
+            throw new IllegalArgumentException();
+        }
+        BitWriter out = new BitWriter(input.length / 2 + 16);
+        int previous = -1;
+        for (byte b : input) {
+            encode(previous, b & 0xFF, out);
+            previous = b & 0xFF;
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * @param packed bits produced by {@link #compress(CharSequence)}
+     * @return the decoded string
+     * @throws IllegalArgumentException if packed is null or not decodable
+     */
+    public String decompress(byte[] packed) {
+        if (alphabet == Alphabet.BYTES) {
+            try {
+                return StandardCharsets.UTF_8.newDecoder()
+                        .decode(ByteBuffer.wrap(decompressBytes(packed))).toString();
+            } catch (CharacterCodingException e) {
+                throw new IllegalArgumentException(e);
+            }
+        }
+        StringBuilder out = new StringBuilder();
+        decode(BitReader.packed(packed), symbol -> out.append((char) symbol));
+        return out.toString();
+    }
+
+    /**
+     * @param packed bits produced by {@link #compressBytes(byte[])}
+     * @return the decoded bytes
+     * @throws IllegalArgumentException if packed is null or not decodable
+     * @throws IllegalStateException    if the model does not code {@link Alphabet#BYTES}
+     */
+    public byte[] decompressBytes(byte[] packed) {
+        if (alphabet != Alphabet.BYTES) {
+            throw new IllegalStateException();
+        }
+        BitReader in = BitReader.packed(packed);
+        byte[][] out = {new byte[Math.max(16, packed.length * 2)]};
+        int[] size = new int[1];
+        decode(in, symbol -> {
+            if (size[0] == out[0].length) {
+                out[0] = Arrays.copyOf(out[0], size[0] * 2);
+            }
+            out[0][size[0]++] = (byte) symbol;
+        });
+        return Arrays.copyOf(out[0], size[0]);
+    }
+
+    /**
+     * Serializes the model: the alphabet ordinal, the order-0 codebook, then the number of contexts
+     * and, for each in ascending order, the gap from the previous context symbol as a varint
+     * followed by its codebook. Codebooks take the form of {@link Codebook#toHeader()}.
+     *
+     * @return the header bytes
+     */
+    public byte[] toHeader() {
+        byte[][] headers = new byte[contextCount + 1][];
+        headers[0] = order0.codebook.toHeader();
+        int size = 1 + headers[0].length + 5 * (contextCount + 1);
+        for (int s = 0, n = 1; s < contexts.length; s++) {
+            if (contexts[s] != null) {
+                headers[n] = contexts[s].codebook.toHeader();
+                size += headers[n++].length;
+            }
+        }
+        ByteBuffer out = ByteBuffer.allocate(size);
+        out.put((byte) alphabet.ordinal()).put(headers[0]);
+        Codebook.putVarint(out, contextCount);
+        for (int s = 0, n = 1, previous = -1; s < contexts.length; s++) {
+            if (contexts[s] != null) {
+                Codebook.putVarint(out, s - previous - 1);
+                out.put(headers[n++]);
+                previous = s;
+            }
+        }
+        return Arrays.copyOf(out.array(), out.position());
+    }
+
+    /**
+     * Reads a model serialized by {@link #toHeader()}.
+     *
+     * @param header the header bytes
+     * @return the model
+     * @throws IllegalArgumentException if the header is null or malformed
+     */
+    public static Order1Huffman fromHeader(byte[] header) {
+        if (header == null) {
+            throw new IllegalArgumentException();
+        }
+        try {
+            ByteBuffer in = ByteBuffer.wrap(header);
+            int ordinal = in.get();
+            if (ordinal != Alphabet.BYTES.ordinal() && ordinal != Alphabet.CHARS.ordinal()) {
+                throw new IllegalArgumentException();
+            }
+            Alphabet alphabet = Alphabet.values()[ordinal];
+            Codebook order0 = Codebook.fromHeader(in);
+            if (order0.symbol(order0.size() - 1) >= alphabet.size()) {
+                throw new IllegalArgumentException();
+            }
+            long count = Codebook.getVarint(in);
+            if (count < 0 || count > alphabet.size()) {
+                throw new IllegalArgumentException();
+            }
+            Context[] contexts = new Context[alphabet.size()];
+            long previous = -1;
+            for (int n = 0; n < count; n++) {
+                long symbol = previous + 1 + Codebook.getVarint(in);
+                Codebook codebook = Codebook.fromHeader(in);
+                if (symbol >= alphabet.size() || codebook.size() < 2
+                        || codebook.symbol(codebook.size() - 1) != alphabet.size()) {
+                    throw new IllegalArgumentException();
+                }
+                contexts[(int) symbol] = new Context(codebook);
+                previous = symbol;
+            }
+            if (in.hasRemaining()) {
+                throw new IllegalArgumentException();
+            }
+            return new Order1Huffman(alphabet, new Context(order0), contexts, (int) count);
+        } catch (BufferUnderflowException e) {
+            throw new IllegalArgumentException(e);
+        }
+    }
+}
@@ -0,0 +1,116 @@
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class Order1HuffmanTest {
+
+    private static final String[] WORDS = {
+            "<record>", "</record>", "<name>", "</name>", "<id>", "</id>", "quartz", "query",
+            "quick", "yellow", "zebra", "jazz", "xylophone", "\n", "  "
+    };
+
+    /**
+     * Markup-like text in which each character strongly predicts the next.
+     */
+    private static String structured(int words, long seed) {
+        Random random = new Random(seed);
+        StringBuilder out = new StringBuilder();
+        for (int i = 0; i < words; i++) {
+            out.append(WORDS[random.nextInt(WORDS.length)]);
+        }
+        return out.toString();
+    }
+
+    @Test
+    public void testRoundTripChars() {
+        String seed = structured(2000, 1);
+        Order1Huffman model = new Order1Huffman(seed);
+        assertEquals(Alphabet.CHARS, model.alphabet());
+        String input = structured(500, 2);
+        assertEquals(input, model.decompress(model.compress(input)));
+        assertEquals("", model.decompress(model.compress("")));
+        assertEquals("q", model.decompress(model.compress("q")));
+    }
+
+    @Test
+    public void testBeatsOrder0OnStructuredText() {
+        String seed = structured(2000, 1);
+        String input = structured(2000, 3);
+        byte[] order1 = new Order1Huffman(seed).compress(input);
+        byte[] order0 = new Huffman(seed).compressToBytes(input);
+        assertTrue(order1.length + " vs " + order0.length, order1.length * 10 < order0.length * 7);
+    }
+
+    @Test
+    public void testEscapesToOrder0() {
+        String seed = structured(2000, 1);
+        Order1Huffman model = new Order1Huffman(seed);
+        // pairs the seed never shows, such as "zq" and "><", but every character is known
+        String input = "zqzq><<>jjjjxxxx" + structured(20, 4) + "eeeeeee";
+        assertEquals(input, model.decompress(model.compress(input)));
+    }
+
+    @Test
+    public void testSparseContextsUseOrder0() {
+        StringBuilder seed = new StringBuilder();
+        for (int i = 0; i < 200; i++) {
+            seed.append("ab");
+        }
+        seed.append("xyz");
+        Order1Huffman model = new Order1Huffman(seed.toString());
+        // only 'a' and 'b' precede anything often enough
+        assertEquals(2, model.contextCount());
+        String input = "abxyzzyxbaab";
+        assertEquals(input, model.decompress(model.compress(input)));
+    }
+
+    @Test
+    public void testHeaderRoundTrip() {
+        String seed = structured(2000, 1);
+        Order1Huffman model = new Order1Huffman(seed);
+        Order1Huffman copy = Order1Huffman.fromHeader(model.toHeader());
+        assertEquals(model.contextCount(), copy.contextCount());
+        String input = structured(300, 5);
+        byte[] packed = model.compress(input);
+        assertArrayEquals(packed, copy.compress(input));
+        assertEquals(input, copy.decompress(packed));
+        assertTrue(model.toHeader().length < seed.length() / 4);
+    }
+
+    @Test
+    public void testRoundTripBytes() {
+        byte[] seed = Huffman.utf8(structured(1000, 6));
+        Order1Huffman model = new Order1Huffman(seed);
+        byte[] input = Huffman.utf8(structured(300, 7));
+        assertArrayEquals(input, model.decompressBytes(model.compressBytes(input)));
+        Order1Huffman copy = Order1Huffman.fromHeader(model.toHeader());
+        assertEquals(Alphabet.BYTES, copy.alphabet());
+        assertArrayEquals(input, copy.decompressBytes(model.compressBytes(input)));
+        String text = structured(50, 8);
+        assertEquals(text, model.decompress(model.compress(text)));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testSymbolWithoutCode() {
+        new Order1Huffman(structured(100, 1)).compress("quick!");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testSeedWithOneSymbol() {
+        new Order1Huffman("aaaa");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testMalformedHeader() {
+        byte[] header = new Order1Huffman(structured(500, 1)).toHeader();
+        Order1Huffman.fromHeader(Arrays.copyOf(header, header.length - 3));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testBytesNeedByteModel() {
+        new Order1Huffman(structured(100, 1)).compressBytes(new byte[]{1});
+    }
+}
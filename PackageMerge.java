@@ -0,0 +1,95 @@
+import java.util.Arrays;
+
+/**
+ * Computes optimal length-limited prefix code lengths with the package-merge algorithm.
+ * <p/>
+ * The symbols are treated as coins whose face value is their weight. Starting from the deepest
+ * level, adjacent items of the previous list are paired into packages and merged back into the
+ * sorted leaves, once per allowed code length. The cheapest {@code 2n - 2} items of the final list
+ * then determine the code lengths: every occurrence of a leaf inside them adds one bit to that
+ * symbol's code. Runs in O(n L) time for n symbols and a limit of L bits.
+ */
+public final class PackageMerge {
+
+    private PackageMerge() {
+    }
+
+    /**
+     * @param weights   the weight of each symbol, non-negative
+     * @param maxLength the longest code length allowed
+     * @return the code length of each symbol, in the order of the weights
+     * @throws IllegalArgumentException if there are fewer than 2 weights, a weight is negative, or
+     *                                  {@code 2^maxLength} is smaller than the number of weights
+     */
+    public static int[] codeLengths(long[] weights, int maxLength) {
+        int n = weights == null ? 0 : weights.length;
+        if (n < 2 || maxLength < 1 || (maxLength < 31 && (1 << maxLength) < n)) {
+            throw new IllegalArgumentException();
+        }
+        maxLength = Math.min(maxLength, n - 1);
+
+        Integer[] boxed = new Integer[n];
+        for (int i = 0; i < n; i++) {
+            if (weights[i] < 0) {
+                throw new IllegalArgumentException();
+            }
+            boxed[i] = i;
+        }
+        Arrays.sort(boxed, (a, b) -> Long.compare(weights[a], weights[b]));
+        int[] order = new int[n];
+        long[] sorted = new long[n];
+        for (int i = 0; i < n; i++) {
+            order[i] = boxed[i];
+            sorted[i] = weights[order[i]];
+        }
+
+        int[][] items = new int[maxLength][];
+        // items[level][k] is the leaf index in sorted order, or -1 for a package
+        long[] previous = sorted;
+        items[0] = new int[n];
+        for (int i = 0; i < n; i++) {
+            items[0][i] = i;
+        }
+        for (int level = 1; level < maxLength; level++) {
+            int packages = previous.length / 2;
+            long[] merged = new long[n + packages];
+            int[] kinds = new int[n + packages];
+            int leaf = 0;
+            int pack = 0;
+            for (int k = 0; k < merged.length; k++) {
+                long packWeight = pack < packages
+                        ? previous[2 * pack] + previous[2 * pack + 1] : Long.MAX_VALUE;
+                if (leaf < n && sorted[leaf] <= packWeight) {
+                    merged[k] = sorted[leaf];
+                    kinds[k] = leaf++;
+                } else {
+                    merged[k] = packWeight;
+                    kinds[k] = -1;
+                    pack++;
+                }
+            }
+            items[level] = kinds;
+            previous = merged;
+        }
+
+        int[] sortedLengths = new int[n];
+        int take = 2 * n - 2;
+        for (int level = maxLength - 1; level >= 0; level--) {
+            int packages = 0;
+            for (int k = 0; k < take; k++) {
+                if (items[level][k] < 0) {
+                    packages++;
+                } else {
+                    sortedLengths[items[level][k]]++;
+                }
+            }
+            take = 2 * packages;
+        }
+
+        int[] lengths = new int[n];
+        for (int i = 0; i < n; i++) {
+            lengths[order[i]] = sortedLengths[i];
+        }
+        return lengths;
+    }
+}
@@ -0,0 +1,61 @@
+import org.junit.Test;
+
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+public class PackageMergeTest {
+
+    private static long[] fibonacci(int n) {
+        long[] w = new long[n];
+        w[0] = 1;
+        w[1] = 1;
+        for (int i = 2; i < n; i++) {
+            w[i] = w[i - 1] + w[i - 2];
+        }
+        return w;
+    }
+
+    private static double kraft(int[] lengths) {
+        double sum = 0;
+        for (int l : lengths) {
+            sum += Math.pow(2, -l);
+        }
+        return sum;
+    }
+
+    @Test
+    public void testUnlimitedMatchesHuffman() {
+        assertArrayEquals(new int[]{3, 3, 2, 1}, PackageMerge.codeLengths(new long[]{2, 3, 5, 8}, 15));
+    }
+
+    @Test
+    public void testLengthsRespectLimit() {
+        long[] w = fibonacci(30);
+        int[] lengths = PackageMerge.codeLengths(w, 12);
+        for (int l : lengths) {
+            assertTrue(l >= 1 && l <= 12);
+        }
+        assertEquals(1.0, kraft(lengths), 1e-12);
+    }
+
+    @Test
+    public void testFlatWhenLimitIsTight() {
+        int[] lengths = PackageMerge.codeLengths(fibonacci(8), 3);
+        assertArrayEquals(new int[]{3, 3, 3, 3, 3, 3, 3, 3}, lengths);
+    }
+
+    @Test
+    public void testLimitedCostIsOptimal() {
+        // weights 1, 1, 2, 4: the only 2-bit code is the flat one
+        int[] lengths = PackageMerge.codeLengths(new long[]{1, 1, 2, 4}, 2);
+        assertArrayEquals(new int[]{2, 2, 2, 2}, lengths);
+        lengths = PackageMerge.codeLengths(new long[]{1, 1, 2, 4}, 3);
+        assertArrayEquals(new int[]{3, 3, 2, 1}, lengths);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testAlphabetTooLargeForLimit() {
+        PackageMerge.codeLengths(new long[]{1, 1, 1, 1, 1}, 2);
+    }
+}
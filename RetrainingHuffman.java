@@ -0,0 +1,362 @@
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A codec that follows a drifting symbol distribution. Every compression samples its input into
+ * a histogram, and once enough symbols have been sampled a new canonical codebook is built in the
+ * background and swapped in when it would code the sample at least a given fraction smaller than
+ * the current one.
+ * <p/>
+ * The histogram decays: each check halves it, so older traffic weighs half as much as the traffic
+ * since. Symbols the current codebook codes keep a code in its successors. A compression that
+ * fails on symbols the current codebook lacks counts every one of them, sampled or not, and
+ * schedules a check right away, so the next version can code them.
+ * <p/>
+ * Each codebook has a version number, and the output of {@link #compress(CharSequence)} starts
+ * with the version that coded it. The last {@link #RETAINED_VERSIONS} versions stay available to
+ * {@link #decompress(byte[])} and {@link #codebook(int)}, so data and streams started with an
+ * older version still decode after a swap. Swaps replace the current version atomically;
+ * compressions in progress finish with the version they read.
+ */
+public class RetrainingHuffman {
+
+    static final int DEFAULT_SAMPLE_STRIDE = 8;
+    static final int DEFAULT_CHECK_INTERVAL = 1 << 16;
+    static final double DEFAULT_MIN_GAIN = 0.02;
+    static final int RETAINED_VERSIONS = 8;
+    static final int VERSION_BYTES = 4;
+
+    private final Alphabet alphabet;
+    private final int sampleStride;
+    private final int checkInterval;
+    private final double minGain;
+    private final Executor executor;
+    private final AtomicLongArray histogram;
+    private final LongAdder sampled = new LongAdder();
+    private final AtomicBoolean retraining = new AtomicBoolean();
+    private final AtomicReference<Version> current;
+    private final LinkedHashMap<Integer, Codebook> retained;
+    private final CompressionStats stats = new CompressionStats();
+
+
+    /**
+     * Starts from a character seed with the default sampling and threshold, retraining on the
+     * common fork-join pool.
+     *
+     * @param seed the characters from which to build the first codebook
+     * @throws IllegalArgumentException if seed is null or has fewer than 2 distinct characters
+     */
+    public RetrainingHuffman(String seed) {
+        this(FrequencyCounter.count(seed), Alphabet.CHARS, DEFAULT_SAMPLE_STRIDE,
+                DEFAULT_CHECK_INTERVAL, DEFAULT_MIN_GAIN, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * @param histogram     entry s holds the seed frequency of symbol s
+     * @param alphabet      {@link Alphabet#BYTES} or {@link Alphabet#CHARS}
+     * @param sampleStride  every how many input symbols to count one
+     * @param checkInterval the number of sampled symbols between retraining checks
+     * @param minGain       the fraction of the sample's coded size a new codebook must save
+     * @param executor      runs retraining checks
+     * @throws IllegalArgumentException if an argument is null or out of range, or the histogram is
+     *                                  not valid for {@link Huffman#Huffman(long[], Alphabet,
+     *                                  boolean)}
+     */
+    public RetrainingHuffman(long[] histogram, Alphabet alphabet, int sampleStride,
+                             int checkInterval, double minGain, Executor executor) {
+        if (alphabet == null || alphabet == Alphabet.CODE_POINTS || sampleStride < 1
+                || checkInterval < 1 || !(minGain >= 0 && minGain < 1) || executor == null) {
+            throw new IllegalArgumentException();
+        }
+        this.alphabet = alphabet;
+        this.sampleStride = sampleStride;
+        this.checkInterval = checkInterval;
+        this.minGain = minGain;
+        this.executor = executor;
+        this.current = new AtomicReference<>(
+                new Version(1, new Huffman(histogram, alphabet, true).codebook()));
+        this.histogram = new AtomicLongArray(alphabet.size());
+        for (int s = 0; s < histogram.length; s++) {
+            this.histogram.set(s, histogram[s]);
+        }
+        this.retained = new LinkedHashMap<Integer, Codebook>() {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, Codebook> eldest) {
+                return size() > RETAINED_VERSIONS;
+            }
+        };
+        retained.put(1, current.get().codebook);
+    }
+
+    /**
+     * A codebook and the version number it is known by.
+     */
+    public static final class Version {
+        private final int id;
+        private final Codebook codebook;
+
+        Version(int id, Codebook codebook) {
+            this.id = id;
+            this.codebook = codebook;
+        }
+
+        public int id() {
+            return id;
+        }
+
+        public Codebook codebook() {
+            return codebook;
+        }
+    }
+
+    /**
+     * @return the version new compressions use; streams should hold on to it until they end
+     */
+    public Version current() {
+        return current.get();
+    }
+
+    /**
+     * @param id a version number
+     * @return the codebook of that version, or null if it is not (or no longer) retained
+     */
+    public synchronized Codebook codebook(int id) {
+        return retained.get(id);
+    }
+
+    /**
+     * @return sizes of every compression so far, across versions
+     */
+    public CompressionStats stats() {
+        return stats;
+    }
+
+    /**
+     * Samples the input, then compresses it with the current version. A {@link Alphabet#BYTES}
+     * codec compresses the string's UTF-8 bytes.
+     *
+     * @param input the characters to compress
+     * @return the version number followed by the packed bits
+     * @throws IllegalArgumentException if the input is null or has a symbol the current version
+     *                                  does not code
+     */
+    public byte[] compress(CharSequence input) {
+        if (input == null) {
+            throw new IllegalArgumentException();
+        }
+        if (alphabet == Alphabet.BYTES) {
+            return compressBytes(Huffman.utf8(input));
+        }
+        for (int i = 0; i < input.length(); i += sampleStride) {
+            histogram.incrementAndGet(input.charAt(i));
+        }
+        sampled(input.length());
+        Version version = current.get();
+        byte[] packed;
+        try {
+            packed = version.codebook.compress(input);
+        } catch (IllegalArgumentException e) {
+            for (int i = 0; i < input.length(); i++) {
+                learn(version, input.charAt(i));
+            }
+            check();
+            throw e;
+        }
+        return frame(version, packed, input.length() * 16L);
+    }
+
+    /**
+     * @param input the bytes to compress
+     * @return the version number followed by the packed bits
+     * @throws IllegalArgumentException if the input is null or has a byte the current version does
+     *                                  not code
+     * @throws IllegalStateException    if the codec does not code {@link Alphabet#BYTES}
+     */
+    public byte[] compressBytes(byte[] input) {
+        if (alphabet != Alphabet.BYTES) {
+            throw new IllegalStateException();
+        }
+        if (input == null) {
+            throw new IllegalArgumentException();
+        }
+        for (int i = 0; i < input.length; i += sampleStride) {
+            histogram.incrementAndGet(input[i] & 0xFF);
+        }
+        sampled(input.length);
+        Version version = current.get();
+        byte[] packed;
+        try {
+            packed = version.codebook.compress(input);
+        } catch (IllegalArgumentException e) {
+            for (byte b : input) {
+                learn(version, b & 0xFF);
+            }
+            check();
+            throw e;
+        }
+        return frame(version, packed, input.length * 8L);
+    }
+
+    /**
+     * Counts a symbol the version has no code for; only called once a compression has failed.
+     */
+    private void learn(Version version, int symbol) {
+        if (version.codebook.indexOf(symbol) < 0) {
+            histogram.incrementAndGet(symbol);
+        }
+    }
+
+    private byte[] frame(Version version, byte[] packed, long inputBits) {
+        stats.record(inputBits, (packed.length - 1) * 8L - packed[packed.length - 1]);
+        return ByteBuffer.allocate(VERSION_BYTES + packed.length)
+                .putInt(version.id).put(packed).array();
+    }
+
+    private void sampled(int symbols) {
+        sampled.add((symbols + sampleStride - 1) / sampleStride);
+        if (sampled.sum() >= checkInterval) {
+            check();
+        }
+    }
+
+    /**
+     * Runs {@link #retrain()} on the executor unless a check is already pending.
+     */
+    private void check() {
+        if (retraining.compareAndSet(false, true)) {
+            sampled.reset();
+            try {
+                executor.execute(() -> {
+                    try {
+                        retrain();
+                    } finally {
+                        retraining.set(false);
+                    }
+                });
+            } catch (RuntimeException e) {
+                retraining.set(false);
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Checks the sampled histogram now rather than waiting for the next interval: builds a
+     * codebook from it and makes that the current version if it codes the sample at least the
+     * minimum gain smaller. The histogram is halved either way. A codebook is only built when the
+     * sample's entropy leaves room for the gain.
+     *
+     * @return whether a new version was swapped in
+     */
+    public synchronized boolean retrain() {
+        Version version = current.get();
+        long[] counts = new long[histogram.length()];
+        long total = 0;
+        for (int s = 0; s < counts.length; s++) {
+            long count = histogram.get(s);
+            // halve relative to what was read, keeping increments that race with this
+            histogram.addAndGet(s, -(count - count / 2));
+            counts[s] = Math.min(count, Integer.MAX_VALUE);
+            total += counts[s];
+        }
+        for (int i = 0; i < version.codebook.size(); i++) {
+            int s = version.codebook.symbol(i);
+            if (counts[s] == 0) {
+                counts[s] = 1;
+                total++;
+            }
+        }
+
+        boolean missing = false;
+        long currentBits = 0;
+        double entropy = 0;
+        for (int s = 0; s < counts.length; s++) {
+            if (counts[s] > 0) {
+                int index = version.codebook.indexOf(s);
+                missing |= index < 0;
+                currentBits += index < 0 ? 0 : counts[s] * version.codebook.length(index);
+                entropy += counts[s] * (Math.log((double) total / counts[s]) / Math.log(2));
+            }
+        }
+        if (!missing && entropy > (1 - minGain) * currentBits) {
+            return false;
+        }
+        Codebook candidate = new Huffman(counts, alphabet, true).codebook();
+        long candidateBits = 0;
+        for (int i = 0; i < candidate.size(); i++) {
+            candidateBits += counts[candidate.symbol(i)] * candidate.length(i);
+        }
+        if (!missing && candidateBits > (1 - minGain) * currentBits) {
+            return false;
+        }
+        Version next = new Version(version.id + 1, candidate);
+        retained.put(next.id, candidate);
+        current.set(next);
+        return true;
+    }
+
+    /**
+     * @param framed bytes produced by {@link #compress(CharSequence)} with any retained version
+     * @return the decoded string
+     * @throws IllegalArgumentException if the input is null, malformed or not decodable, or its
+     *                                  version is no longer retained
+     */
+    public String decompress(byte[] framed) {
+        if (alphabet == Alphabet.BYTES) {
+            try {
+                return StandardCharsets.UTF_8.newDecoder()
+                        .decode(ByteBuffer.wrap(decompressBytes(framed))).toString();
+            } catch (CharacterCodingException e) {
+                throw new IllegalArgumentException(e);
+            }
+        }
+        return codebookFor(framed).decompress(packed(framed));
+    }
+
+    /**
+     * @param framed bytes produced by {@link #compressBytes(byte[])} with any retained version
+     * @return the decoded bytes
+     * @throws IllegalArgumentException if the input is null, malformed or not decodable, or its
+     *                                  version is no longer retained
+     * @throws IllegalStateException    if the codec does not code {@link Alphabet#BYTES}
+     */
+    public byte[] decompressBytes(byte[] framed) {
+        if (alphabet != Alphabet.BYTES) {
+            throw new IllegalStateException();
+        }
+        return codebookFor(framed).decompressToBytes(packed(framed));
+    }
+
+    private Codebook codebookFor(byte[] framed) {
+        if (framed == null) {
+            throw new IllegalArgumentException();
+        }
+        try {
+            int id = ByteBuffer.wrap(framed).getInt();
+            Version version = current.get();
+            Codebook codebook = id == version.id ? version.codebook : codebook(id);
+            if (codebook == null) {
+                throw new IllegalArgumentException();
+            }
+            return codebook;
+        } catch (BufferUnderflowException e) {
+            throw new IllegalArgumentException(e);
+        }
+    }
+
+    private static byte[] packed(byte[] framed) {
+        byte[] packed = new byte[framed.length - VERSION_BYTES];
+        System.arraycopy(framed, VERSION_BYTES, packed, 0, packed.length);
+        return packed;
+    }
+}
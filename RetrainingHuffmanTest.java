@@ -0,0 +1,174 @@
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class RetrainingHuffmanTest {
+
+    private static final String SEED = "the quick brown fox jumps over the lazy dog 0123456789";
+
+    private static RetrainingHuffman chars(int checkInterval) {
+        return new RetrainingHuffman(FrequencyCounter.count(SEED), Alphabet.CHARS, 1,
+                checkInterval, RetrainingHuffman.DEFAULT_MIN_GAIN, Runnable::run);
+    }
+
+    private static String digits(int length, long seed) {
+        Random random = new Random(seed);
+        StringBuilder out = new StringBuilder();
+        for (int i = 0; i < length; i++) {
+            out.append((char) ('0' + random.nextInt(4)));
+        }
+        return out.toString();
+    }
+
+    @Test
+    public void testRoundTrip() {
+        RetrainingHuffman codec = new RetrainingHuffman(SEED);
+        assertEquals(1, codec.current().id());
+        assertEquals(SEED, codec.decompress(codec.compress(SEED)));
+        assertEquals("", codec.decompress(codec.compress("")));
+        assertEquals(2, codec.stats().calls());
+    }
+
+    @Test
+    public void testDriftSwapsInSmallerCodebook() {
+        RetrainingHuffman codec = chars(1000);
+        String drifted = digits(500, 1);
+        byte[] before = codec.compress(drifted);
+        assertEquals(1, codec.current().id());
+        // the second call crosses the interval and retrains on the calling thread
+        byte[] second = codec.compress(digits(500, 2));
+        assertEquals(2, codec.current().id());
+        byte[] after = codec.compress(drifted);
+        assertTrue(after.length < before.length);
+        assertEquals(drifted, codec.decompress(before));
+        assertEquals(drifted, codec.decompress(after));
+        assertEquals(digits(500, 2), codec.decompress(second));
+        assertNotNull(codec.codebook(1));
+        assertSame(codec.current().codebook(), codec.codebook(2));
+    }
+
+    @Test
+    public void testLearnsSymbolOffStride() {
+        List<Runnable> checks = new ArrayList<>();
+        RetrainingHuffman codec = new RetrainingHuffman(FrequencyCounter.count("abababababc"),
+                Alphabet.CHARS, 8, 1 << 20, RetrainingHuffman.DEFAULT_MIN_GAIN, checks::add);
+        // only indices 0 and 8 are sampled, so the z is seen only through the failure
+        try {
+            codec.compress("abzabababab");
+            fail();
+        } catch (IllegalArgumentException expected) {
+        }
+        assertEquals(1, checks.size());
+        checks.get(0).run();
+        assertEquals(2, codec.current().id());
+        assertEquals("abzabababab", codec.decompress(codec.compress("abzabababab")));
+    }
+
+    @Test
+    public void testLearnsByteOffStride() {
+        long[] seed = new long[256];
+        seed['a'] = 10;
+        seed['b'] = 5;
+        RetrainingHuffman codec = new RetrainingHuffman(seed, Alphabet.BYTES, 8, 1 << 20,
+                RetrainingHuffman.DEFAULT_MIN_GAIN, Runnable::run);
+        byte[] input = {'a', 'b', (byte) 0xC3, 'a', 'b', 'a', 'b', 'a', 'b'};
+        try {
+            codec.compressBytes(input);
+            fail();
+        } catch (IllegalArgumentException expected) {
+        }
+        assertEquals(2, codec.current().id());
+        assertArrayEquals(input, codec.decompressBytes(codec.compressBytes(input)));
+    }
+
+    @Test
+    public void testStableDistributionKeepsVersion() {
+        RetrainingHuffman codec = chars(SEED.length());
+        for (int i = 0; i < 20; i++) {
+            codec.compress(SEED);
+        }
+        assertEquals(1, codec.current().id());
+        assertFalse(codec.retrain());
+        assertEquals(1, codec.current().id());
+    }
+
+    @Test
+    public void testUnseenSymbolIsLearned() {
+        RetrainingHuffman codec = chars(1 << 20);
+        try {
+            codec.compress("QQQ");
+            fail();
+        } catch (IllegalArgumentException expected) {
+        }
+        // the failure scheduled a check, which ran on the calling thread
+        assertEquals(2, codec.current().id());
+        assertEquals("QQQ the fox", codec.decompress(codec.compress("QQQ the fox")));
+        // symbols of the previous version keep their codes
+        assertEquals(SEED, codec.decompress(codec.compress(SEED)));
+    }
+
+    @Test
+    public void testBytes() {
+        byte[] seed = Huffman.utf8(SEED);
+        RetrainingHuffman codec = new RetrainingHuffman(
+                FrequencyCounter.countBytes(seed, 0, seed.length), Alphabet.BYTES, 1, 200,
+                RetrainingHuffman.DEFAULT_MIN_GAIN, Runnable::run);
+        byte[] drifted = Huffman.utf8(digits(300, 3));
+        byte[] first = codec.compressBytes(drifted);
+        assertEquals(2, codec.current().id());
+        assertArrayEquals(drifted, codec.decompressBytes(first));
+        assertArrayEquals(drifted, codec.decompressBytes(codec.compressBytes(drifted)));
+        assertEquals(SEED, codec.decompress(codec.compress(SEED)));
+    }
+
+    @Test
+    public void testRetiredVersionIsRejected() {
+        RetrainingHuffman codec = chars(1 << 20);
+        byte[] first = codec.compress(SEED);
+        List<byte[]> outputs = new ArrayList<>();
+        for (int v = 0; v < RetrainingHuffman.RETAINED_VERSIONS; v++) {
+            // alternate the distribution so that every check swaps
+            codec.compress(v % 2 == 0 ? digits(2000, v) : SEED + SEED + SEED + SEED);
+            for (int i = 0; i < 40; i++) {
+                codec.compress(v % 2 == 0 ? digits(100, i) : SEED);
+            }
+            assertTrue(codec.retrain());
+            outputs.add(codec.compress(SEED));
+        }
+        assertNull(codec.codebook(1));
+        try {
+            codec.decompress(first);
+            fail();
+        } catch (IllegalArgumentException expected) {
+        }
+        assertEquals(SEED, codec.decompress(outputs.get(1)));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testUnknownVersion() {
+        RetrainingHuffman codec = chars(1000);
+        byte[] framed = codec.compress(SEED);
+        framed[3] = 9;
+        codec.decompress(framed);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testTruncated() {
+        chars(1000).decompress(new byte[]{0, 0});
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testBytesNeedByteAlphabet() {
+        chars(1000).compressBytes(new byte[]{1});
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testCodePointsUnsupported() {
+        new RetrainingHuffman(FrequencyCounter.count(SEED), Alphabet.CODE_POINTS, 1, 10, 0.02,
+                Runnable::run);
+    }
+}
@@ -0,0 +1,85 @@
+package huffman;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link BinaryMinHeapImpl} operations at the same scales and steady heap sizes as {@link
+ * LongMinHeapBenchmark}, for comparing the boxed heap against the primitive one. Keys are boxed
+ * longs, as the primitive heap's keys are longs.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class BinaryMinHeapImplBenchmark {
+
+    @Param({"1000", "100000", "1000000"})
+    public int size;
+
+    private long[] keys;
+    private BinaryMinHeapImpl<Long, Integer> full;
+    private long[] current;
+    private int cursor;
+
+
+    @Setup(Level.Trial)
+    public void keys() {
+        Random random = new Random(121);
+        keys = new long[size];
+        for (int i = 0; i < size; i++) {
+            keys[i] = random.nextInt(Integer.MAX_VALUE);
+        }
+    }
+
+    @Setup(Level.Iteration)
+    public void fill() {
+        full = new BinaryMinHeapImpl<>();
+        current = keys.clone();
+        for (int i = 0; i < size; i++) {
+            full.add(keys[i], i);
+        }
+        cursor = 0;
+    }
+
+    private long next() {
+        long key = keys[cursor];
+        cursor = cursor + 1 == size ? 0 : cursor + 1;
+        return key;
+    }
+
+    @Benchmark
+    public BinaryMinHeapImpl<Long, Integer> add() {
+        BinaryMinHeapImpl<Long, Integer> heap = new BinaryMinHeapImpl<>();
+        for (int i = 0; i < size; i++) {
+            heap.add(keys[i], i);
+        }
+        return heap;
+    }
+
+    @Benchmark
+    public long extractMin() {
+        long sum = 0;
+        for (int i = 0; i < size; i++) {
+            long min = full.peek().key;
+            int id = full.extractMin().value;
+            full.add(min + next(), id);
+            sum += id;
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public BinaryMinHeapImpl<Long, Integer> decreaseKey() {
+        next();
+        for (int i = 0; i < size; i++) {
+            current[i] -= next();
+            full.decreaseKey(i, current[i]);
+        }
+        return full;
+    }
+}
@@ -0,0 +1,77 @@
+package huffman;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Codebook construction: counting a seed and building the tree and codes, or building from
+ * frequencies that were already counted.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class BuildBenchmark {
+
+    @Param({"UNIFORM_16", "UNIFORM_256", "UNIFORM_4096", "ZIPF_16", "ZIPF_256", "ZIPF_4096",
+            "ENGLISH", "BINARY"})
+    public String workload;
+
+    @Param({"65536"})
+    public int seedLength;
+
+    private String seed;
+    private byte[] binarySeed;
+    private long[] histogram;
+    private Map<Character, Integer> frequencies;
+
+
+    @Setup
+    public void setUp() {
+        if (Workloads.isBinary(workload)) {
+            binarySeed = Workloads.bytes(seedLength);
+            histogram = FrequencyCounter.countBytes(binarySeed, 0, binarySeed.length);
+        } else {
+            seed = Workloads.text(workload, seedLength);
+            histogram = FrequencyCounter.count(seed);
+        }
+        frequencies = new HashMap<>();
+        for (int c = 0; c < histogram.length; c++) {
+            if (histogram[c] > 0) {
+                frequencies.put((char) c, (int) histogram[c]);
+            }
+        }
+    }
+
+    @Benchmark
+    public Huffman fromSeed() {
+        return binarySeed != null ? new Huffman(binarySeed) : new Huffman(seed);
+    }
+
+    @Benchmark
+    public Huffman canonicalFromSeed() {
+        return binarySeed != null ? new Huffman(histogram, Alphabet.BYTES, true)
+                : new Huffman(seed, true);
+    }
+
+    @Benchmark
+    public Huffman fromFrequencyMap() {
+        return new Huffman(frequencies);
+    }
+
+    @Benchmark
+    public Huffman fromHistogram() {
+        return new Huffman(histogram, false);
+    }
+
+    @Benchmark
+    public long[] countSeed() {
+        return binarySeed != null ? FrequencyCounter.countBytes(binarySeed, 0, binarySeed.length)
+                : FrequencyCounter.count(seed);
+    }
+}
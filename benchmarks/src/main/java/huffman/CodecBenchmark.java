@@ -0,0 +1,69 @@
+package huffman;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Encode and decode throughput over a megabyte of input. Besides operations per second, each
+ * benchmark reports the secondary metric {@code bytes}: uncompressed bytes processed per second,
+ * counting two bytes per char, so MB/s is that figure divided by 10^6.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CodecBenchmark {
+
+    static final int INPUT_BYTES = 1 << 20;
+
+    @Param({"UNIFORM_16", "UNIFORM_256", "UNIFORM_4096", "ZIPF_16", "ZIPF_256", "ZIPF_4096",
+            "ENGLISH", "BINARY"})
+    public String workload;
+
+    private Huffman huffman;
+    private String text;
+    private byte[] binary;
+    private byte[] packed;
+    private int inputBytes;
+
+
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    @State(Scope.Thread)
+    public static class Bytes {
+        public long bytes;
+
+        @Setup(Level.Iteration)
+        public void clear() {
+            bytes = 0;
+        }
+    }
+
+    @Setup
+    public void setUp() {
+        if (Workloads.isBinary(workload)) {
+            binary = Workloads.bytes(INPUT_BYTES);
+            huffman = new Huffman(binary);
+            packed = huffman.compressBytes(binary);
+        } else {
+            text = Workloads.text(workload, INPUT_BYTES / 2);
+            huffman = new Huffman(text);
+            packed = huffman.compressToBytes(text);
+        }
+        inputBytes = INPUT_BYTES;
+    }
+
+    @Benchmark
+    public byte[] compress(Bytes counter) {
+        counter.bytes += inputBytes;
+        return binary != null ? huffman.compressBytes(binary) : huffman.compressToBytes(text);
+    }
+
+    @Benchmark
+    public Object decompress(Bytes counter) {
+        counter.bytes += inputBytes;
+        return binary != null ? huffman.decompressBytes(packed) : huffman.decompressFromBytes(packed);
+    }
+}
@@ -0,0 +1,92 @@
+package huffman;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link LongMinHeap} operations at scale. Each benchmark performs {@code size} operations, so the
+ * score divided by size is the cost of one operation.
+ * <p/>
+ * extractMin and decreaseKey run on a heap of {@code size} ids filled once per iteration and kept
+ * at that size: each extraction re-adds the id it removed, a key above the old minimum as in the
+ * hold model of event queues, and each decrease lowers a key by a random amount, so the ids keep
+ * changing order. Refilling per invocation instead would be timed by JMH's per-call bookkeeping.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class LongMinHeapBenchmark {
+
+    @Param({"1000", "100000", "1000000"})
+    public int size;
+
+    private long[] keys;
+    // random values below 2^31, used as initial keys, hold increments and decrements
+    private LongMinHeap full;
+    private long[] current;
+    // the key of each id in full
+    private int cursor;
+
+
+    @Setup(Level.Trial)
+    public void keys() {
+        Random random = new Random(121);
+        keys = new long[size];
+        for (int i = 0; i < size; i++) {
+            keys[i] = random.nextInt(Integer.MAX_VALUE);
+        }
+    }
+
+    @Setup(Level.Iteration)
+    public void fill() {
+        full = new LongMinHeap(size);
+        current = keys.clone();
+        for (int i = 0; i < size; i++) {
+            full.add(keys[i], i);
+        }
+        cursor = 0;
+    }
+
+    private long next() {
+        long key = keys[cursor];
+        cursor = cursor + 1 == size ? 0 : cursor + 1;
+        return key;
+    }
+
+    @Benchmark
+    public LongMinHeap add() {
+        LongMinHeap heap = new LongMinHeap(size);
+        for (int i = 0; i < size; i++) {
+            heap.add(keys[i], i);
+        }
+        return heap;
+    }
+
+    @Benchmark
+    public long extractMin() {
+        long sum = 0;
+        for (int i = 0; i < size; i++) {
+            long min = full.minKey();
+            int id = full.extractMin();
+            full.add(min + next(), id);
+            sum += id;
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public LongMinHeap decreaseKey() {
+        // the cursor advances one past a full pass, so each pass pairs ids with other decrements
+        next();
+        for (int i = 0; i < size; i++) {
+            current[i] -= next();
+            full.decreaseKey(i, current[i]);
+        }
+        return full;
+    }
+}
@@ -0,0 +1,97 @@
+package huffman;
+
+import java.util.Random;
+
+/**
+ * Deterministic inputs for the benchmarks. A workload name is a profile, optionally followed by an
+ * alphabet size: {@code UNIFORM_256} draws 256 symbols with equal probability, {@code ZIPF_4096}
+ * draws symbol r with probability proportional to 1 / (r + 1), {@code ENGLISH} strings together
+ * common English words, and {@code BINARY} is skewed byte data typical of protocol messages.
+ */
+final class Workloads {
+
+    private static final String[] WORDS = (
+            "the of and to in a is that for it as was with be by on not he i this are or his from at "
+                    + "which but have an they you were their one all we can her has there been if more "
+                    + "when will would who so no she other its time into only could new them man some "
+                    + "these then two first may any like now my such make over our even most me state "
+                    + "after also made many did must before back see through way where get much go well "
+                    + "your know should down work year because come people just say each those take day")
+            .split(" ");
+    private static final int FIRST_SYMBOL = 0x20;
+    private static final long SEED = 121;
+
+    private Workloads() {
+    }
+
+    static boolean isBinary(String workload) {
+        return workload.equals("BINARY");
+    }
+
+    /**
+     * @param workload a workload name other than {@code BINARY}
+     * @param length   the number of characters
+     * @return the text
+     */
+    static String text(String workload, int length) {
+        Random random = new Random(SEED);
+        StringBuilder sb = new StringBuilder(length + 16);
+        if (workload.equals("ENGLISH")) {
+            double[] cumulative = zipf(WORDS.length);
+            while (sb.length() < length) {
+                sb.append(WORDS[draw(cumulative, random)]).append(random.nextInt(12) == 0 ? ". " : " ");
+            }
+            sb.setLength(length);
+            return sb.toString();
+        }
+        int size = Integer.parseInt(workload.substring(workload.indexOf('_') + 1));
+        double[] cumulative = workload.startsWith("ZIPF") ? zipf(size) : null;
+        for (int i = 0; i < length; i++) {
+            int symbol = cumulative == null ? random.nextInt(size) : draw(cumulative, random);
+            sb.append((char) (FIRST_SYMBOL + symbol));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * @param length the number of bytes
+     * @return mostly small values with occasional arbitrary bytes
+     */
+    static byte[] bytes(int length) {
+        Random random = new Random(SEED);
+        byte[] data = new byte[length];
+        double[] cumulative = zipf(256);
+        for (int i = 0; i < length; i++) {
+            data[i] = (byte) draw(cumulative, random);
+        }
+        return data;
+    }
+
+    private static double[] zipf(int size) {
+        double[] cumulative = new double[size];
+        double sum = 0;
+        for (int r = 0; r < size; r++) {
+            sum += 1.0 / (r + 1);
+            cumulative[r] = sum;
+        }
+        for (int r = 0; r < size; r++) {
+            cumulative[r] /= sum;
+        }
+        return cumulative;
+    }
+
+    private static int draw(double[] cumulative, Random random) {
+        double u = random.nextDouble();
+        int lo = 0;
+        int hi = cumulative.length - 1;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (cumulative[mid] < u) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+}